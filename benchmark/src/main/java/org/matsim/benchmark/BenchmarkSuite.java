@@ -0,0 +1,192 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BenchmarkSuite.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this module and compares the results with a baseline.
+ * <p></p>
+ * Usage: <code>BenchmarkSuite outputDirectory [baselineFile [tolerance]] [-- JMH options]</code>
+ * <p></p>
+ * The results are written to <code>outputDirectory/benchmark_results.txt</code> (one tab-separated line per
+ * benchmark and parameter combination) and, in JMH's own format, to <code>outputDirectory/jmh_results.json</code>.
+ * A results file of an earlier run can be used as baseline: every benchmark which got slower by more than the
+ * tolerance (default: 0.1, i.e. 10%) is reported, and the program exits with status 1. JMH options, e.g.
+ * <code>-p gridSize=200</code> to change the scale of the fixtures, or a regular expression selecting the
+ * benchmarks to run, can be given after <code>--</code>.
+ */
+public final class BenchmarkSuite {
+
+	private final static Logger log = Logger.getLogger(BenchmarkSuite.class);
+
+	public static final String RESULTS_FILENAME = "benchmark_results.txt";
+
+	private static final String HEADER = "benchmark\tparameters\tmode\tscore\terror\tunit";
+
+	private BenchmarkSuite() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		int separator = Arrays.asList(args).indexOf("--");
+		String[] suiteArgs = separator < 0 ? args : Arrays.copyOfRange(args, 0, separator);
+		String[] jmhArgs = separator < 0 ? new String[0] : Arrays.copyOfRange(args, separator + 1, args.length);
+		if (suiteArgs.length < 1 || suiteArgs.length > 3) {
+			System.err.println("Usage: BenchmarkSuite outputDirectory [baselineFile [tolerance]] [-- JMH options]");
+			System.exit(2);
+		}
+		String outputDirectory = suiteArgs[0];
+		String baselineFile = suiteArgs.length > 1 ? suiteArgs[1] : null;
+		double tolerance = suiteArgs.length > 2 ? Double.parseDouble(suiteArgs[2]) : 0.1;
+		new File(outputDirectory).mkdirs();
+
+		CommandLineOptions jmhOptions = new CommandLineOptions(jmhArgs);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(jmhOptions);
+		if (jmhOptions.getIncludes().isEmpty()) {
+			options.include(BenchmarkSuite.class.getPackage().getName() + "\\..*Benchmark");
+		}
+		options.resultFormat(ResultFormatType.JSON);
+		options.result(new File(outputDirectory, "jmh_results.json").getPath());
+
+		Collection<RunResult> runResults = new Runner(options.build()).run();
+
+		Map<String, String[]> results = new LinkedHashMap<>();
+		for (RunResult runResult : runResults) {
+			BenchmarkParams params = runResult.getParams();
+			results.put(getKey(params), new String[] {
+					params.getMode().shortLabel(),
+					Double.toString(runResult.getPrimaryResult().getScore()),
+					Double.toString(runResult.getPrimaryResult().getScoreError()),
+					runResult.getPrimaryResult().getScoreUnit()});
+		}
+		String resultsFile = new File(outputDirectory, RESULTS_FILENAME).getPath();
+		writeResults(resultsFile, results);
+		log.info("benchmark results written to " + resultsFile);
+
+		if (baselineFile != null) {
+			List<String> regressions = compare(readResults(baselineFile), results, tolerance);
+			for (String regression : regressions) {
+				log.warn(regression);
+			}
+			log.info(regressions.size() + " benchmarks got slower by more than " + Math.round(tolerance * 100) + "% compared to " + baselineFile);
+			if (!regressions.isEmpty()) {
+				System.exit(1);
+			}
+		}
+	}
+
+	/** Returns the benchmark name and its parameters, separated by a tab, with the parameters sorted by name. */
+	private static String getKey(final BenchmarkParams params) {
+		StringBuilder parameters = new StringBuilder();
+		for (String key : new TreeSet<>(params.getParamsKeys())) {
+			if (parameters.length() > 0) parameters.append(',');
+			parameters.append(key).append('=').append(params.getParam(key));
+		}
+		return params.getBenchmark() + "\t" + parameters;
+	}
+
+	/**
+	 * Compares the results with the baseline. Benchmarks measuring throughput regress if their score decreases,
+	 * all others if their score increases by more than the tolerance. Benchmarks missing in the baseline are ignored.
+	 */
+	static List<String> compare(final Map<String, String[]> baseline, final Map<String, String[]> results, final double tolerance) {
+		List<String> regressions = new ArrayList<>();
+		for (Map.Entry<String, String[]> entry : results.entrySet()) {
+			String[] baselineValues = baseline.get(entry.getKey());
+			if (baselineValues == null) {
+				continue;
+			}
+			String mode = entry.getValue()[0];
+			double score = Double.parseDouble(entry.getValue()[1]);
+			double baselineScore = Double.parseDouble(baselineValues[1]);
+			boolean regressed;
+			if (mode.equals(Mode.Throughput.shortLabel())) {
+				regressed = score < baselineScore * (1.0 - tolerance);
+			} else {
+				regressed = score > baselineScore * (1.0 + tolerance);
+			}
+			if (regressed) {
+				regressions.add(entry.getKey().replace('\t', ' ') + ": " + score + " " + entry.getValue()[3]
+						+ " (baseline: " + baselineScore + " " + baselineValues[3] + ")");
+			}
+		}
+		return regressions;
+	}
+
+	static void writeResults(final String filename, final Map<String, String[]> results) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Map.Entry<String, String[]> entry : results.entrySet()) {
+				writer.write(entry.getKey());
+				for (String value : entry.getValue()) {
+					writer.write('\t');
+					writer.write(value);
+				}
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static Map<String, String[]> readResults(final String filename) {
+		Map<String, String[]> results = new LinkedHashMap<>();
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			String line = reader.readLine();
+			if (!HEADER.equals(line)) {
+				throw new IllegalArgumentException(filename + " is not a file written by " + BenchmarkSuite.class.getSimpleName());
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				results.put(parts[0] + "\t" + parts[1], Arrays.copyOfRange(parts, 2, parts.length));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,166 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonDepartureEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.vehicles.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the dispatching of events to event handlers by the {@link EventsManager}, and the writing of events
+ * with {@link EventWriterXML}. The events are written into a stream discarding all data, so only the
+ * serialization is measured, not the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventsBenchmark {
+
+	private static final int NUMBER_OF_EVENTS = 4096;
+
+	@Param({"10"})
+	public int handlersPerType;
+
+	private Event[] events;
+	private int event = 0;
+	private EventsManager eventsManager;
+	private EventWriterXML writer;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(4711);
+		this.events = new Event[NUMBER_OF_EVENTS];
+		for (int i = 0; i < NUMBER_OF_EVENTS; i++) {
+			double time = 6 * 3600 + i;
+			Id<Person> personId = Id.createPersonId(random.nextInt(1000));
+			Id<Link> linkId = Id.createLinkId(random.nextInt(1000));
+			Id<Vehicle> vehicleId = Id.createVehicleId(personId);
+			switch (i % 4) {
+			case 0:
+				this.events[i] = new LinkEnterEvent(time, vehicleId, linkId);
+				break;
+			case 1:
+				this.events[i] = new LinkLeaveEvent(time, vehicleId, linkId);
+				break;
+			case 2:
+				this.events[i] = new PersonDepartureEvent(time, personId, linkId, TransportMode.car);
+				break;
+			default:
+				this.events[i] = new ActivityEndEvent(time, personId, linkId, null, "h");
+			}
+		}
+
+		this.eventsManager = EventsUtils.createEventsManager();
+		for (int i = 0; i < this.handlersPerType; i++) {
+			this.eventsManager.addHandler(new CountingHandler());
+		}
+		this.eventsManager.initProcessing();
+
+		this.writer = new EventWriterXML(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.eventsManager.finishProcessing();
+		this.writer.closeFile();
+	}
+
+	private Event nextEvent() {
+		int i = this.event;
+		this.event = (i + 1) % NUMBER_OF_EVENTS;
+		return this.events[i];
+	}
+
+	@Benchmark
+	public void processEvent() {
+		this.eventsManager.processEvent(nextEvent());
+	}
+
+	@Benchmark
+	public void writeEvent() {
+		this.writer.handleEvent(nextEvent());
+	}
+
+	private static class CountingHandler implements LinkEnterEventHandler, LinkLeaveEventHandler, PersonDepartureEventHandler, BasicEventHandler {
+		private int count = 0;
+
+		@Override
+		public void handleEvent(LinkEnterEvent event) {
+			this.count++;
+		}
+
+		@Override
+		public void handleEvent(LinkLeaveEvent event) {
+			this.count++;
+		}
+
+		@Override
+		public void handleEvent(PersonDepartureEvent event) {
+			this.count++;
+		}
+
+		@Override
+		public void handleEvent(Event event) {
+			this.count++;
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.count = 0;
+		}
+	}
+
+}
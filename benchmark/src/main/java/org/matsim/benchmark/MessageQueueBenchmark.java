@@ -0,0 +1,160 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * MessageQueueBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.core.mobsim.jdeqsim.Message;
+import org.matsim.core.mobsim.jdeqsim.MessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link MessageQueue} of JDEQSim with the message trace of <code>TestMessageQueue.testMessageTrace</code>:
+ * messages of activities ending in the morning, each processed message sending up to two new ones, mostly with
+ * delays below a minute, sometimes hours, and some messages being deleted before they arrive. The same trace is
+ * replayed on a plain {@link PriorityQueue}, which the message queue used before, as reference. Messages to be deleted
+ * are picked the same way as in the test, but removed from the list of candidates in constant time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageQueueBenchmark {
+
+	/** the number of messages in flight; the trace processes twenty times as many */
+	@Param({"1000", "100000"})
+	public int initialMessages;
+
+	@Benchmark
+	public int messageQueue() {
+		final MessageQueue queue = new MessageQueue();
+		return replayTrace(new TraceQueue() {
+			@Override
+			public void putMessage(Message m) {
+				queue.putMessage(m);
+			}
+
+			@Override
+			public Message getNextMessage() {
+				return queue.getNextMessage();
+			}
+
+			@Override
+			public void removeMessage(Message m) {
+				queue.removeMessage(m);
+			}
+		});
+	}
+
+	@Benchmark
+	public int priorityQueue() {
+		final PriorityQueue<Message> queue = new PriorityQueue<>();
+		return replayTrace(new TraceQueue() {
+			@Override
+			public void putMessage(Message m) {
+				queue.add(m);
+			}
+
+			@Override
+			public Message getNextMessage() {
+				Message m;
+				while ((m = queue.poll()) != null && !m.isAlive()) {
+				}
+				return m;
+			}
+
+			@Override
+			public void removeMessage(Message m) {
+				m.killMessage();
+			}
+		});
+	}
+
+	/**
+	 * @return the number of messages processed, so the trace cannot be optimized away
+	 */
+	private int replayTrace(final TraceQueue queue) {
+		Random random = new Random(4711);
+		List<Message> alive = new ArrayList<>();
+
+		for (int i = 0; i < this.initialMessages; i++) {
+			Message m = new TraceMessage();
+			m.setMessageArrivalTime(6 * 3600 + random.nextInt(4 * 3600));
+			queue.putMessage(m);
+		}
+
+		int processed = 0;
+		Message m;
+		while ((m = queue.getNextMessage()) != null) {
+			processed++;
+			if (processed < 20 * this.initialMessages) {
+				int n = random.nextInt(3);
+				for (int i = 0; i < n; i++) {
+					Message next = new TraceMessage();
+					double delay = random.nextDouble() < 0.05 ? random.nextInt(8 * 3600) : random.nextDouble() * 60;
+					next.setMessageArrivalTime(m.getMessageArrivalTime() + (random.nextBoolean() ? Math.floor(delay) : delay));
+					next.setPriority(random.nextInt(3) * 50);
+					queue.putMessage(next);
+					alive.add(next);
+				}
+				if (random.nextDouble() < 0.1 && !alive.isEmpty()) {
+					// swap with the last one, as removing from the middle would dominate large traces
+					int k = random.nextInt(alive.size());
+					Message killed = alive.get(k);
+					alive.set(k, alive.get(alive.size() - 1));
+					alive.remove(alive.size() - 1);
+					if (killed.isAlive() && killed.getMessageArrivalTime() > m.getMessageArrivalTime()) {
+						queue.removeMessage(killed);
+					}
+				}
+			}
+		}
+		return processed;
+	}
+
+	private interface TraceQueue {
+		void putMessage(Message m);
+
+		Message getNextMessage();
+
+		void removeMessage(Message m);
+	}
+
+	private static final class TraceMessage extends Message {
+		@Override
+		public void processEvent() {
+		}
+
+		@Override
+		public void handleMessage() {
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PopulationReaderBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures reading a population file, into memory and streaming. The population is written to a temporary file
+ * in the format of the current population writer before the benchmark starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PopulationReaderBenchmark {
+
+	@Param({"30"})
+	public int gridSize;
+
+	@Param({"10000"})
+	public int numberOfPersons;
+
+	@Param({"false", "true"})
+	public boolean compressed;
+
+	private Scenario fixture;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		this.fixture = ScenarioFixtures.createScenario(this.gridSize, this.numberOfPersons);
+		this.file = File.createTempFile("population", this.compressed ? ".xml.gz" : ".xml");
+		new PopulationWriter(this.fixture.getPopulation(), this.fixture.getNetwork()).write(this.file.getAbsolutePath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	/** Creates a scenario sharing the network of the fixture, so that only reading the population is measured. */
+	private Scenario createEmptyScenario() {
+		MutableScenario scenario = ScenarioUtils.createMutableScenario(this.fixture.getConfig());
+		scenario.setNetwork(this.fixture.getNetwork());
+		return scenario;
+	}
+
+	@Benchmark
+	public Scenario readPopulation() {
+		Scenario scenario = createEmptyScenario();
+		new PopulationReader(scenario).readFile(this.file.getAbsolutePath());
+		return scenario;
+	}
+
+	@Benchmark
+	public Scenario streamPopulation() {
+		Scenario scenario = createEmptyScenario();
+		new StreamingPopulationReader(scenario).readFile(this.file.getAbsolutePath());
+		return scenario;
+	}
+
+}
@@ -0,0 +1,88 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QuadTreeBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.QuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures nearest neighbour and range queries on a {@link QuadTree} filled with random points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QuadTreeBenchmark {
+
+	private static final int NUMBER_OF_QUERIES = 1024;
+
+	@Param({"100"})
+	public int gridSize;
+
+	@Param({"100000"})
+	public int numberOfPoints;
+
+	private QuadTree<Coord> quadTree;
+	private Coord[] queries;
+	private int query = 0;
+
+	@Setup
+	public void setup() {
+		double extent = (this.gridSize - 1) * ScenarioFixtures.NODE_DISTANCE;
+		this.quadTree = new QuadTree<>(0, 0, extent, extent);
+		for (Coord coord : ScenarioFixtures.createRandomCoords(this.gridSize, this.numberOfPoints)) {
+			this.quadTree.put(coord.getX(), coord.getY(), coord);
+		}
+		// use a different part of the random sequence for the queries than for the points
+		Coord[] coords = ScenarioFixtures.createRandomCoords(this.gridSize, this.numberOfPoints + NUMBER_OF_QUERIES);
+		this.queries = new Coord[NUMBER_OF_QUERIES];
+		System.arraycopy(coords, this.numberOfPoints, this.queries, 0, NUMBER_OF_QUERIES);
+	}
+
+	private Coord nextQuery() {
+		int i = this.query;
+		this.query = (i + 1) % NUMBER_OF_QUERIES;
+		return this.queries[i];
+	}
+
+	@Benchmark
+	public Coord getClosest() {
+		Coord coord = nextQuery();
+		return this.quadTree.getClosest(coord.getX(), coord.getY());
+	}
+
+	@Benchmark
+	public Collection<Coord> getDisk() {
+		Coord coord = nextQuery();
+		return this.quadTree.getDisk(coord.getX(), coord.getY(), 2 * ScenarioFixtures.NODE_DISTANCE);
+	}
+
+}
@@ -0,0 +1,270 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ScenarioFixtures.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+/**
+ * Creates synthetic scenarios for the benchmarks, so that they do not depend on scenario files and can be run
+ * at any scale. The network is a grid of <code>gridSize</code> x <code>gridSize</code> nodes, connected by links
+ * in both directions. Each person has a home-work-home plan with routed car legs between random links. The transit
+ * schedule has one line along every second row and column of the grid, with a stop at every node.
+ * <p></p>
+ * All random numbers are drawn from a fixed seed, so the fixtures are the same in every run.
+ */
+public final class ScenarioFixtures {
+
+	public static final double NODE_DISTANCE = 500.0;
+	public static final double FREESPEED = 50.0 / 3.6;
+	public static final double CAPACITY = 1000.0;
+
+	private static final long SEED = 4711;
+
+	private ScenarioFixtures() {
+	}
+
+	public static Config createConfig() {
+		Config config = ConfigUtils.createConfig();
+		ActivityParams home = new ActivityParams("h");
+		home.setTypicalDuration(12 * 3600);
+		config.planCalcScore().addActivityParams(home);
+		ActivityParams work = new ActivityParams("w");
+		work.setTypicalDuration(8 * 3600);
+		work.setOpeningTime(7 * 3600);
+		work.setClosingTime(18 * 3600);
+		config.planCalcScore().addActivityParams(work);
+		config.qsim().setEndTime(30 * 3600);
+		return config;
+	}
+
+	/**
+	 * Creates a scenario with a grid network and <code>numberOfPersons</code> persons with routed car plans.
+	 */
+	public static Scenario createScenario(final int gridSize, final int numberOfPersons) {
+		Scenario scenario = ScenarioUtils.createScenario(createConfig());
+		createGridNetwork(scenario.getNetwork(), gridSize);
+		createPopulation(scenario, numberOfPersons);
+		return scenario;
+	}
+
+	public static void createGridNetwork(final Network network, final int gridSize) {
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				NetworkUtils.createAndAddNode(network, nodeId(row, col), new Coord(col * NODE_DISTANCE, row * NODE_DISTANCE));
+			}
+		}
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				if (col + 1 < gridSize) {
+					addLinks(network, row, col, row, col + 1);
+				}
+				if (row + 1 < gridSize) {
+					addLinks(network, row, col, row + 1, col);
+				}
+			}
+		}
+	}
+
+	private static void addLinks(final Network network, final int fromRow, final int fromCol, final int toRow, final int toCol) {
+		Node from = network.getNodes().get(nodeId(fromRow, fromCol));
+		Node to = network.getNodes().get(nodeId(toRow, toCol));
+		NetworkUtils.createAndAddLink(network, linkId(from, to), from, to, NODE_DISTANCE, FREESPEED, CAPACITY, 1);
+		NetworkUtils.createAndAddLink(network, linkId(to, from), to, from, NODE_DISTANCE, FREESPEED, CAPACITY, 1);
+	}
+
+	public static Id<Node> nodeId(final int row, final int col) {
+		return Id.createNodeId(row + "_" + col);
+	}
+
+	private static Id<Link> linkId(final Node from, final Node to) {
+		return Id.createLinkId(from.getId() + "-" + to.getId());
+	}
+
+	public static void createPopulation(final Scenario scenario, final int numberOfPersons) {
+		Network network = scenario.getNetwork();
+		Link[] links = network.getLinks().values().toArray(new Link[network.getLinks().size()]);
+		FreespeedTravelTimeAndDisutility freespeed = new FreespeedTravelTimeAndDisutility(scenario.getConfig().planCalcScore());
+		LeastCostPathCalculator router = new DijkstraFactory().createPathCalculator(network, freespeed, freespeed);
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < numberOfPersons; i++) {
+			Link homeLink = links[random.nextInt(links.length)];
+			Link workLink = links[random.nextInt(links.length)];
+			double workStart = 6 * 3600 + random.nextInt(4 * 3600);
+
+			Person person = factory.createPerson(Id.createPersonId(i));
+			Plan plan = factory.createPlan();
+			Activity home = factory.createActivityFromLinkId("h", homeLink.getId());
+			home.setCoord(homeLink.getCoord());
+			home.setEndTime(workStart);
+			plan.addActivity(home);
+			Leg toWork = createCarLeg(factory, router, homeLink, workLink, workStart);
+			plan.addLeg(toWork);
+			Activity work = factory.createActivityFromLinkId("w", workLink.getId());
+			work.setCoord(workLink.getCoord());
+			work.setStartTime(workStart + toWork.getTravelTime());
+			work.setEndTime(workStart + 8 * 3600);
+			plan.addActivity(work);
+			Leg toHome = createCarLeg(factory, router, workLink, homeLink, workStart + 8 * 3600);
+			plan.addLeg(toHome);
+			Activity home2 = factory.createActivityFromLinkId("h", homeLink.getId());
+			home2.setCoord(homeLink.getCoord());
+			home2.setStartTime(workStart + 8 * 3600 + toHome.getTravelTime());
+			plan.addActivity(home2);
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+	}
+
+	private static Leg createCarLeg(final PopulationFactory factory, final LeastCostPathCalculator router, final Link fromLink,
+			final Link toLink, final double departureTime) {
+		Leg leg = factory.createLeg(TransportMode.car);
+		leg.setDepartureTime(departureTime);
+		List<Id<Link>> linkIds = new ArrayList<>();
+		double travelTime = 0;
+		if (fromLink != toLink) {
+			Path path = router.calcLeastCostPath(fromLink.getToNode(), toLink.getFromNode(), departureTime, null, null);
+			for (Link link : path.links) {
+				linkIds.add(link.getId());
+			}
+			travelTime = path.travelTime;
+		}
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(fromLink.getId(), linkIds, toLink.getId());
+		route.setTravelTime(travelTime);
+		leg.setRoute(route);
+		leg.setTravelTime(travelTime);
+		return leg;
+	}
+
+	/**
+	 * Adds a transit line along every second row and column of the grid network created by
+	 * {@link #createGridNetwork(Network, int)}, with a departure in each direction every 10 minutes.
+	 */
+	public static void createTransitSchedule(final Scenario scenario, final int gridSize) {
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		TransitScheduleFactory factory = schedule.getFactory();
+		Network network = scenario.getNetwork();
+
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				Id<Node> nodeId = nodeId(row, col);
+				TransitStopFacility stop = factory.createTransitStopFacility(Id.create(nodeId, TransitStopFacility.class),
+						network.getNodes().get(nodeId).getCoord(), false);
+				schedule.addStopFacility(stop);
+			}
+		}
+
+		for (int i = 0; i < gridSize; i += 2) {
+			List<Id<Node>> rowNodes = new ArrayList<>();
+			List<Id<Node>> colNodes = new ArrayList<>();
+			for (int j = 0; j < gridSize; j++) {
+				rowNodes.add(nodeId(i, j));
+				colNodes.add(nodeId(j, i));
+			}
+			addTransitLine(scenario, "row_" + i, rowNodes);
+			addTransitLine(scenario, "col_" + i, colNodes);
+		}
+	}
+
+	private static void addTransitLine(final Scenario scenario, final String name, final List<Id<Node>> nodeIds) {
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		TransitScheduleFactory factory = schedule.getFactory();
+		TransitLine line = factory.createTransitLine(Id.create(name, TransitLine.class));
+		for (int direction = 0; direction < 2; direction++) {
+			List<Id<Node>> nodes = new ArrayList<>(nodeIds);
+			if (direction == 1) {
+				Collections.reverse(nodes);
+			}
+			List<TransitRouteStop> stops = new ArrayList<>();
+			List<Id<Link>> linkIds = new ArrayList<>();
+			double offset = 0;
+			for (int i = 0; i < nodes.size(); i++) {
+				TransitStopFacility stop = schedule.getFacilities().get(Id.create(nodes.get(i), TransitStopFacility.class));
+				stops.add(factory.createTransitRouteStop(stop, offset, offset + 30));
+				offset += 30 + NODE_DISTANCE / FREESPEED;
+				if (i > 0) {
+					linkIds.add(Id.createLinkId(nodes.get(i - 1) + "-" + nodes.get(i)));
+				}
+			}
+			Id<Link> startLinkId = linkIds.get(0);
+			Id<Link> endLinkId = linkIds.get(linkIds.size() - 1);
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(startLinkId,
+					linkIds.subList(1, Math.max(1, linkIds.size() - 1)), endLinkId);
+			TransitRoute transitRoute = factory.createTransitRoute(Id.create(name + "_" + direction, TransitRoute.class), route,
+					stops, "pt");
+			for (double time = 5 * 3600; time < 22 * 3600; time += 600) {
+				transitRoute.addDeparture(factory.createDeparture(
+						Id.create(name + "_" + direction + "_" + (int) time, Departure.class), time));
+			}
+			line.addRoute(transitRoute);
+		}
+		schedule.addTransitLine(line);
+	}
+
+	/**
+	 * Returns <code>count</code> random coordinates within the area of a grid network of the given size.
+	 */
+	public static Coord[] createRandomCoords(final int gridSize, final int count) {
+		Random random = new Random(SEED);
+		double extent = (gridSize - 1) * NODE_DISTANCE;
+		Coord[] coords = new Coord[count];
+		for (int i = 0; i < count; i++) {
+			coords[i] = new Coord(random.nextDouble() * extent, random.nextDouble() * extent);
+		}
+		return coords;
+	}
+
+}
@@ -0,0 +1,84 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ScoringBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.scoring.ScoringFunction;
+import org.matsim.core.scoring.ScoringFunctionFactory;
+import org.matsim.core.scoring.functions.CharyparNagelScoringFunctionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures scoring the plans of the whole population with the default scoring function, the way the experienced
+ * plans are scored after the mobsim: one scoring function per person, fed with all activities and legs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScoringBenchmark {
+
+	@Param({"30"})
+	public int gridSize;
+
+	@Param({"10000"})
+	public int numberOfPersons;
+
+	private Scenario scenario;
+	private ScoringFunctionFactory scoringFunctionFactory;
+
+	@Setup
+	public void setup() {
+		this.scenario = ScenarioFixtures.createScenario(this.gridSize, this.numberOfPersons);
+		this.scoringFunctionFactory = new CharyparNagelScoringFunctionFactory(this.scenario);
+	}
+
+	@Benchmark
+	public double scorePlans() {
+		double sum = 0;
+		for (Person person : this.scenario.getPopulation().getPersons().values()) {
+			ScoringFunction scoringFunction = this.scoringFunctionFactory.createNewScoringFunction(person);
+			for (PlanElement planElement : person.getSelectedPlan().getPlanElements()) {
+				if (planElement instanceof Activity) {
+					scoringFunction.handleActivity((Activity) planElement);
+				} else {
+					scoringFunction.handleLeg((Leg) planElement);
+				}
+			}
+			scoringFunction.finish();
+			sum += scoringFunction.getScore();
+		}
+		return sum;
+	}
+
+}
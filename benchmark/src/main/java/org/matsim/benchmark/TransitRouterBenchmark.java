@@ -0,0 +1,84 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TransitRouterBenchmark.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.router.FakeFacility;
+import org.matsim.pt.router.TransitRouterConfig;
+import org.matsim.pt.router.TransitRouterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the time to calculate one transit route with {@link TransitRouterImpl} between random coordinates
+ * on a synthetic grid schedule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransitRouterBenchmark {
+
+	private static final int NUMBER_OF_QUERIES = 256;
+
+	@Param({"30"})
+	public int gridSize;
+
+	private TransitRouterImpl router;
+	private FakeFacility[] fromFacilities;
+	private FakeFacility[] toFacilities;
+	private int query = 0;
+
+	@Setup
+	public void setup() {
+		Scenario scenario = ScenarioUtils.createScenario(ScenarioFixtures.createConfig());
+		ScenarioFixtures.createGridNetwork(scenario.getNetwork(), this.gridSize);
+		ScenarioFixtures.createTransitSchedule(scenario, this.gridSize);
+		this.router = new TransitRouterImpl(new TransitRouterConfig(scenario.getConfig()), scenario.getTransitSchedule());
+
+		Coord[] coords = ScenarioFixtures.createRandomCoords(this.gridSize, 2 * NUMBER_OF_QUERIES);
+		this.fromFacilities = new FakeFacility[NUMBER_OF_QUERIES];
+		this.toFacilities = new FakeFacility[NUMBER_OF_QUERIES];
+		for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+			this.fromFacilities[i] = new FakeFacility(coords[2 * i]);
+			this.toFacilities[i] = new FakeFacility(coords[2 * i + 1]);
+		}
+	}
+
+	@Benchmark
+	public List<Leg> calcRoute() {
+		int i = this.query;
+		this.query = (i + 1) % NUMBER_OF_QUERIES;
+		return this.router.calcRoute(this.fromFacilities[i], this.toFacilities[i], 8 * 3600, null);
+	}
+
+}
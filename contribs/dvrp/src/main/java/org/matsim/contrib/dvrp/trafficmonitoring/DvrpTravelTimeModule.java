@@ -21,6 +21,7 @@ package org.matsim.contrib.dvrp.trafficmonitoring;
 
 import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
 import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.trafficmonitoring.TravelTimeStore;
 import org.matsim.withinday.trafficmonitoring.WithinDayTravelTime;
 
 /**
@@ -32,7 +33,12 @@ public class DvrpTravelTimeModule extends AbstractModule {
 	public static final String DVRP_ESTIMATED = "dvrp_estimated";
 
 	public void install() {
-		addTravelTimeBinding(DvrpTravelTimeModule.DVRP_INITIAL).to(QSimFreeSpeedTravelTime.class).asEagerSingleton();
+		if (getConfig().travelTimeCalculator().getInputTravelTimesFile() != null) {
+			// start the estimation from the travel times of an earlier run, as read by the TravelTimeCalculatorModule
+			addTravelTimeBinding(DvrpTravelTimeModule.DVRP_INITIAL).to(TravelTimeStore.class);
+		} else {
+			addTravelTimeBinding(DvrpTravelTimeModule.DVRP_INITIAL).to(QSimFreeSpeedTravelTime.class).asEagerSingleton();
+		}
 		addTravelTimeBinding(DvrpTravelTimeModule.DVRP_OBSERVED).to(networkTravelTime());
 		addTravelTimeBinding(DVRP_ESTIMATED).to(DvrpTravelTimeEstimator.class);
 
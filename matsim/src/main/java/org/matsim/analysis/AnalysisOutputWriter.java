@@ -0,0 +1,118 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AnalysisOutputWriter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.analysis;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.inject.Singleton;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.ShutdownListener;
+
+/**
+ * Writes the output of the iteration analysis (text files, charts) in a background thread,
+ * so that the controler can continue with the next iteration while the files of the previous
+ * one are still being written.
+ * <p></p>
+ * Tasks are executed one after the other in the order they were submitted. The submitted tasks
+ * must not depend on data that is modified later on; the listeners using this class thus hand
+ * over immutable snapshots of their data, so that they can reset it at the start of the next
+ * iteration without waiting for the output to be written.
+ * <p></p>
+ * At shutdown, the writer waits until all submitted tasks have finished and stops its thread.
+ * Tasks submitted after that are executed immediately in the calling thread.
+ */
+@Singleton
+public final class AnalysisOutputWriter implements ShutdownListener {
+
+	private final static Logger log = Logger.getLogger(AnalysisOutputWriter.class);
+
+	private ExecutorService executor = null;
+	private final List<Future<?>> pending = new LinkedList<>();
+	private boolean shutdown = false;
+
+	/**
+	 * Schedules the given task to be executed in the background.
+	 */
+	public synchronized void submit(final Runnable task) {
+		if (this.shutdown) {
+			task.run();
+			return;
+		}
+		if (this.executor == null) {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, AnalysisOutputWriter.class.getSimpleName());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		this.pending.add(this.executor.submit(task));
+	}
+
+	/**
+	 * Blocks until all submitted tasks have finished.
+	 *
+	 * @throws RuntimeException if one of the tasks failed.
+	 */
+	public synchronized void awaitCompletion() {
+		RuntimeException exception = null;
+		while (!this.pending.isEmpty()) {
+			Future<?> future = this.pending.remove(0);
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				log.error("writing analysis output failed.", e.getCause());
+				if (exception == null) {
+					exception = new RuntimeException("writing analysis output failed.", e.getCause());
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	@Override
+	public synchronized void notifyShutdown(final ShutdownEvent event) {
+		this.shutdown = true;
+		try {
+			awaitCompletion();
+		} finally {
+			if (this.executor != null) {
+				this.executor.shutdown();
+				this.executor = null;
+			}
+		}
+	}
+
+}
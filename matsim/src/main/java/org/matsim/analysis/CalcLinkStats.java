@@ -53,6 +53,17 @@ public class CalcLinkStats {
 			this.volumes = linksVolumes.clone();
 			this.ttimes = linksTTimes.clone();
 		}
+
+		LinkData(final LinkData data) {
+			this.volumes = new double[data.volumes.length][];
+			for (int i = 0; i < this.volumes.length; i++) {
+				this.volumes[i] = data.volumes[i].clone();
+			}
+			this.ttimes = new double[data.ttimes.length][];
+			for (int i = 0; i < this.ttimes.length; i++) {
+				this.ttimes[i] = data.ttimes[i].clone();
+			}
+		}
 	}
 
 	private double volScaleFactor = 1.0;
@@ -75,6 +86,17 @@ public class CalcLinkStats {
 		reset();
 	}
 
+	private CalcLinkStats(final CalcLinkStats stats) {
+		this.network = stats.network;
+		this.nofHours = stats.nofHours;
+		this.volScaleFactor = stats.volScaleFactor;
+		this.count = stats.count;
+		this.linkData = new TreeMap<>();
+		for (Map.Entry<Id<Link>, LinkData> entry : stats.linkData.entrySet()) {
+			this.linkData.put(entry.getKey(), new LinkData(entry.getValue()));
+		}
+	}
+
 	/**
 	 * @param network
 	 * @param vol_scale_factor scaling factor when reading in values from a file
@@ -145,6 +167,14 @@ public class CalcLinkStats {
 		}
 	}
 
+	/**
+	 * @return a copy of the gathered data, which is not affected by later calls to {@link #addData(VolumesAnalyzer, TravelTime)}
+	 * or {@link #reset()}, e.g. to write it in the background.
+	 */
+	/*package*/ CalcLinkStats snapshot() {
+		return new CalcLinkStats(this);
+	}
+
 	public void reset() {
 		this.linkData.clear();
 		this.count = 0;
@@ -27,6 +27,13 @@ import org.matsim.core.utils.misc.Time;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -37,6 +44,14 @@ import java.util.Map.Entry;
  * remembering time stamps. The class collects all the data and provides a simple analysis of the time stamps
  * and durations for operations for each iteration in the simulation. This analysis can be dumped to console
  * or to a file using the <code>write()</code>-methods.
+ * <p></p>
+ * In addition to the wall clock time, the resource usage of each operation is recorded where supported
+ * by the JVM: the cpu time of all threads and of the whole process, the bytes allocated by all threads,
+ * the time spent in and the number of garbage collections, and the heap used after the most recent garbage
+ * collection at the end of the operation. The cpu time and allocated bytes of all threads are summed over the
+ * threads alive at the end of the operation, so that work done e.g. by the mobsim or replanning threads is
+ * included; threads which terminate before the end of the operation are not included. See {@link #writeOperationsFile(String)}
+ * and {@link IterationStopWatchComparison}.
  *
  * @author mrieser
  */
@@ -51,6 +66,19 @@ public final class IterationStopWatch {
 	 */
 	public static final String OPERATION_OTHER = "other";
 
+	/** Column names of the resource usage values, as written by {@link #writeOperationsFile(String)}. */
+	public static final String[] RESOURCE_NAMES = {"threads_cpu_ms", "process_cpu_ms", "threads_allocated_bytes", "gc_time_ms", "gc_count", "heap_after_gc_bytes"};
+
+	private static final int THREADS_CPU = 0;
+	private static final int PROCESS_CPU = 1;
+	private static final int THREADS_ALLOCATED_BYTES = 2;
+	private static final int GC_TIME = 3;
+	private static final int GC_COUNT = 4;
+	private static final int HEAP_AFTER_GC = 5;
+
+	/** Marks resource usage values which are not supported by the JVM. */
+	private static final long NOT_AVAILABLE = -1;
+
 	/** The current iteration number, or null if not yet initialized. */
 	private Integer iteration = null;
 
@@ -66,6 +94,15 @@ public final class IterationStopWatch {
 	/** A cache for easy access to the current object in <code>iterations</code>. */
 	private Map<String, Long> currentIterationValues;
 
+	/** The resource usage at the begin and end of operations, using the same keys as <code>iterations</code>. */
+	private final Map<Integer, Map<String, long[]>> resources;
+
+	/** A cache for easy access to the current object in <code>resources</code>. */
+	private Map<String, long[]> currentIterationResources;
+
+	/** The per-thread resource usage at the begin of the currently running operations. */
+	private final Map<String, ThreadResources> beginThreadResources = new HashMap<String, ThreadResources>();
+
 	/** The position within <code>identifiers</code>, where the next identifier is expected. */
 	private int nextIdentifierPosition = 0;
 
@@ -86,6 +123,8 @@ public final class IterationStopWatch {
 		this.identifiers = new LinkedList<String>();
 		this.operations = new LinkedList<String>();
 		this.currentIterationValues = null;
+		this.resources = new LinkedHashMap<Integer, Map<String, long[]>>();
+		this.currentIterationResources = null;
 		this.children = new LinkedHashMap<Integer, Map<String, List<String>>>();
 	}
 
@@ -97,7 +136,10 @@ public final class IterationStopWatch {
 		this.nextOperationPosition = 0;
 		this.iteration = null;
 		this.currentIterationValues = null;
+		this.currentIterationResources = null;
 		this.iterations.clear();
+		this.resources.clear();
+		this.beginThreadResources.clear();
 		this.identifiers.clear();
 		this.operations.clear();
 		this.currentMeasuredOperations.clear();
@@ -117,6 +159,8 @@ public final class IterationStopWatch {
 		if (this.iterations.get(this.iteration) == null) {
 			this.currentIterationValues = new HashMap<String, Long>();
 			this.iterations.put(this.iteration, this.currentIterationValues);
+			this.currentIterationResources = new HashMap<String, long[]>();
+			this.resources.put(this.iteration, this.currentIterationResources);
 			this.nextIdentifierPosition = 0;
 			this.nextOperationPosition = 0;
 			this.currentMeasuredOperations = new Stack<String>();
@@ -140,6 +184,9 @@ public final class IterationStopWatch {
 		String ident = "BEGIN " + identifier;
 		ensureIdentifier(ident);
 		this.currentIterationValues.put(ident, Long.valueOf(System.currentTimeMillis()));
+		ThreadResources threadResources = ThreadResources.measure();
+		this.beginThreadResources.put(identifier, threadResources);
+		this.currentIterationResources.put(ident, measureResources(threadResources, null));
 		
 		this.currentIterationChildren.put(identifier, new ArrayList<String>());
 
@@ -163,6 +210,8 @@ public final class IterationStopWatch {
 		String ident = "END " + identifier;
 		ensureIdentifier(ident);
 		ensureOperation(identifier);
+		ThreadResources begin = this.beginThreadResources.remove(identifier);
+		this.currentIterationResources.put(ident, measureResources(ThreadResources.measure(), begin));
 		this.currentIterationValues.put(ident, Long.valueOf(System.currentTimeMillis()));
 		
 		
@@ -241,6 +290,57 @@ public final class IterationStopWatch {
 		}
 	}
 
+	/**
+	 * Writes the duration and resource usage of each operation in each iteration tab-separated into a text file,
+	 * one line per operation and iteration. All values are plain numbers (milliseconds, bytes or counts), so the
+	 * file can easily be processed by other tools, e.g. {@link IterationStopWatchComparison}. The values of nested
+	 * operations are included in the values of their parent operations. Values not supported by the JVM are empty.
+	 *
+	 * @param filename The name of a file where to write the gathered data, without the file extension.
+	 */
+	public void writeOperationsFile(final String filename) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename + "_operations.txt")) {
+			writer.write("iteration\toperation\twallclock_ms");
+			for (String name : RESOURCE_NAMES) {
+				writer.write('\t');
+				writer.write(name);
+			}
+			writer.newLine();
+
+			for (Map.Entry<Integer, Map<String, Long>> entry : this.iterations.entrySet()) {
+				Map<String, Long> data = entry.getValue();
+				Map<String, long[]> resourceData = this.resources.get(entry.getKey());
+				for (String identifier : this.operations) {
+					Long startTime = data.get("BEGIN " + identifier);
+					Long endTime = data.get("END " + identifier);
+					if (startTime == null || endTime == null) {
+						continue;
+					}
+					long[] begin = resourceData.get("BEGIN " + identifier);
+					long[] end = resourceData.get("END " + identifier);
+					writer.write(entry.getKey().toString());
+					writer.write('\t');
+					writer.write(identifier);
+					writer.write('\t');
+					writer.write(Long.toString(endTime.longValue() - startTime.longValue()));
+					for (int i = 0; i < RESOURCE_NAMES.length; i++) {
+						writer.write('\t');
+						if (i == HEAP_AFTER_GC) {
+							if (end[i] != NOT_AVAILABLE) writer.write(Long.toString(end[i]));
+						} else if (begin[i] != NOT_AVAILABLE && end[i] != NOT_AVAILABLE) {
+							long diff = end[i] - begin[i];
+							if (i == THREADS_CPU || i == PROCESS_CPU) diff /= 1000000; // nanoseconds to milliseconds
+							writer.write(Long.toString(diff));
+						}
+					}
+					writer.newLine();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Writes the gathered data as graph into a png file.
 	 *
@@ -358,6 +458,120 @@ public final class IterationStopWatch {
 		}
 	}
 
+	/**
+	 * Measures the current resource usage. The values are only meaningful as differences between two
+	 * measurements, except for the heap used after the last garbage collection.
+	 * <p></p>
+	 * At the begin of an operation (<code>begin == null</code>), the per-thread values are summed over all
+	 * threads. At the end, the per-thread values are summed over the threads alive at the end, as the values of
+	 * the threads at the begin plus their usage since then, so that threads which terminated in between do not
+	 * make the difference between both measurements negative.
+	 */
+	private static long[] measureResources(final ThreadResources threads, final ThreadResources begin) {
+		long[] values = new long[RESOURCE_NAMES.length];
+		Arrays.fill(values, NOT_AVAILABLE);
+
+		if (threads.cpuTimes != null && (begin == null || begin.cpuTimes != null)) {
+			values[THREADS_CPU] = begin == null ? sum(threads.cpuTimes) : sum(begin.cpuTimes) + threads.usageSince(threads.cpuTimes, begin, begin.cpuTimes);
+		}
+		if (threads.allocatedBytes != null && (begin == null || begin.allocatedBytes != null)) {
+			values[THREADS_ALLOCATED_BYTES] = begin == null ? sum(threads.allocatedBytes) : sum(begin.allocatedBytes) + threads.usageSince(threads.allocatedBytes, begin, begin.allocatedBytes);
+		}
+
+		OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			long processCpuTime = ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+			if (processCpuTime >= 0) values[PROCESS_CPU] = processCpuTime;
+		}
+
+		long gcTime = 0;
+		long gcCount = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0, gcBean.getCollectionTime());
+			gcCount += Math.max(0, gcBean.getCollectionCount());
+		}
+		values[GC_TIME] = gcTime;
+		values[GC_COUNT] = gcCount;
+
+		long heapAfterGc = 0;
+		boolean heapAfterGcAvailable = false;
+		for (MemoryPoolMXBean poolBean : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (poolBean.getType() == MemoryType.HEAP) {
+				MemoryUsage usage = poolBean.getCollectionUsage();
+				if (usage != null) {
+					heapAfterGc += usage.getUsed();
+					heapAfterGcAvailable = true;
+				}
+			}
+		}
+		if (heapAfterGcAvailable) values[HEAP_AFTER_GC] = heapAfterGc;
+
+		return values;
+	}
+
+	/** Sums up the given per-thread values, ignoring threads for which no value is available. */
+	private static long sum(final long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			if (value > 0) sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * The cpu time and allocated bytes of all live threads, measured with a single call to the
+	 * {@link ThreadMXBean} each. The arrays are <code>null</code> if the values are not supported by the JVM.
+	 */
+	private static final class ThreadResources {
+		final long[] threadIds;
+		final long[] cpuTimes;
+		final long[] allocatedBytes;
+
+		private ThreadResources(final long[] threadIds, final long[] cpuTimes, final long[] allocatedBytes) {
+			this.threadIds = threadIds;
+			this.cpuTimes = cpuTimes;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		static ThreadResources measure() {
+			ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+			long[] threadIds = threadBean.getAllThreadIds();
+			Arrays.sort(threadIds);
+			long[] cpuTimes = null;
+			long[] allocatedBytes = null;
+			if (threadBean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+				if (sunThreadBean.isThreadCpuTimeSupported() && sunThreadBean.isThreadCpuTimeEnabled()) {
+					cpuTimes = sunThreadBean.getThreadCpuTime(threadIds);
+				}
+				if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+					allocatedBytes = sunThreadBean.getThreadAllocatedBytes(threadIds);
+				}
+			} else if (threadBean.isThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled()) {
+				cpuTimes = new long[threadIds.length];
+				for (int i = 0; i < threadIds.length; i++) {
+					cpuTimes[i] = threadBean.getThreadCpuTime(threadIds[i]);
+				}
+			}
+			return new ThreadResources(threadIds, cpuTimes, allocatedBytes);
+		}
+
+		/**
+		 * Sums up the increase of the given values of the threads alive now since the begin measurement.
+		 * Threads started since then count with their whole value.
+		 */
+		long usageSince(final long[] values, final ThreadResources begin, final long[] beginValues) {
+			long usage = 0;
+			for (int i = 0; i < this.threadIds.length; i++) {
+				if (values[i] <= 0) continue;
+				int pos = Arrays.binarySearch(begin.threadIds, this.threadIds[i]);
+				long beginValue = pos >= 0 ? Math.max(0, beginValues[pos]) : 0;
+				usage += Math.max(0, values[i] - beginValue);
+			}
+			return usage;
+		}
+	}
+
 	/**
 	 * Formats the time given in milliseconds (e.g. returned by {@link java.lang.System#currentTimeMillis()}
 	 * nicely for output.
@@ -0,0 +1,166 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IterationStopWatchComparison.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+/**
+ * Compares the values of the operations measured by the {@link IterationStopWatch} across iterations,
+ * reading the file written by {@link IterationStopWatch#writeOperationsFile(String)}. For every operation,
+ * each iteration is compared to a baseline iteration, and every value (duration, cpu time, allocated bytes,
+ * garbage collection, heap after garbage collection) which grew by more than a given tolerance is reported
+ * as regression. A steadily growing heap after garbage collection, for example, hints at a memory leak
+ * long before the run fails with an OutOfMemoryError.
+ * <p></p>
+ * Usage: <code>IterationStopWatchComparison stopwatch_operations.txt [baselineIteration] [tolerance]</code>.
+ * If no baseline iteration is given, every operation is compared to the first iteration in which it was
+ * measured. The tolerance defaults to 0.2, i.e. values must grow by more than 20% to be reported.
+ *
+ * @see IterationStopWatch
+ */
+public final class IterationStopWatchComparison {
+
+	private final static Logger log = Logger.getLogger(IterationStopWatchComparison.class);
+
+	private static final long MISSING = Long.MIN_VALUE;
+
+	public static final class Regression {
+		public final String operation;
+		public final String value;
+		public final int baselineIteration;
+		public final long baselineValue;
+		public final int iteration;
+		public final long iterationValue;
+
+		Regression(String operation, String value, int baselineIteration, long baselineValue, int iteration, long iterationValue) {
+			this.operation = operation;
+			this.value = value;
+			this.baselineIteration = baselineIteration;
+			this.baselineValue = baselineValue;
+			this.iteration = iteration;
+			this.iterationValue = iterationValue;
+		}
+
+		@Override
+		public String toString() {
+			return "iteration " + this.iteration + ", " + this.operation + ", " + this.value + ": " + this.iterationValue
+					+ " (iteration " + this.baselineIteration + ": " + this.baselineValue + ", +"
+					+ Math.round(100.0 * (this.iterationValue - this.baselineValue) / this.baselineValue) + "%)";
+		}
+	}
+
+	/** The names of the values, i.e. the columns after iteration and operation. */
+	private final String[] valueNames;
+
+	/** operation -> iteration -> values */
+	private final Map<String, TreeMap<Integer, long[]>> data = new LinkedHashMap<>();
+
+	public IterationStopWatchComparison(final String filename) {
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			String header = reader.readLine();
+			if (header == null) {
+				throw new IllegalArgumentException("file " + filename + " is empty.");
+			}
+			String[] columns = header.split("\t", -1);
+			this.valueNames = Arrays.copyOfRange(columns, 2, columns.length);
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				int iteration = Integer.parseInt(parts[0]);
+				long[] values = new long[this.valueNames.length];
+				for (int i = 0; i < values.length; i++) {
+					String value = i + 2 < parts.length ? parts[i + 2] : "";
+					values[i] = value.isEmpty() ? MISSING : Long.parseLong(value);
+				}
+				TreeMap<Integer, long[]> iterations = this.data.get(parts[1]);
+				if (iterations == null) {
+					iterations = new TreeMap<>();
+					this.data.put(parts[1], iterations);
+				}
+				iterations.put(iteration, values);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param baselineIteration the iteration to compare the others with, or <code>null</code> to compare each operation
+	 *        with the first iteration in which it was measured.
+	 * @param tolerance the relative growth of a value which is still accepted, e.g. 0.2 for 20%.
+	 * @return all values which grew by more than the tolerance compared to the baseline iteration.
+	 */
+	public List<Regression> findRegressions(final Integer baselineIteration, final double tolerance) {
+		List<Regression> regressions = new ArrayList<>();
+		for (Map.Entry<String, TreeMap<Integer, long[]>> entry : this.data.entrySet()) {
+			TreeMap<Integer, long[]> iterations = entry.getValue();
+			int baseline = baselineIteration == null ? iterations.firstKey() : baselineIteration;
+			long[] baselineValues = iterations.get(baseline);
+			if (baselineValues == null) {
+				continue;
+			}
+			for (Map.Entry<Integer, long[]> iterationEntry : iterations.entrySet()) {
+				if (iterationEntry.getKey() == baseline) {
+					continue;
+				}
+				long[] values = iterationEntry.getValue();
+				for (int i = 0; i < this.valueNames.length; i++) {
+					if (baselineValues[i] <= 0 || values[i] == MISSING) {
+						continue;
+					}
+					if (values[i] > baselineValues[i] * (1.0 + tolerance)) {
+						regressions.add(new Regression(entry.getKey(), this.valueNames[i], baseline, baselineValues[i],
+								iterationEntry.getKey(), values[i]));
+					}
+				}
+			}
+		}
+		return regressions;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: IterationStopWatchComparison stopwatch_operations.txt [baselineIteration] [tolerance]");
+			System.exit(1);
+		}
+		Integer baselineIteration = args.length > 1 ? Integer.valueOf(args[1]) : null;
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+
+		List<Regression> regressions = new IterationStopWatchComparison(args[0]).findRegressions(baselineIteration, tolerance);
+		for (Regression regression : regressions) {
+			log.warn(regression);
+		}
+		log.info("found " + regressions.size() + " values growing by more than " + Math.round(tolerance * 100) + "%.");
+	}
+
+}
@@ -77,6 +77,15 @@ public class LegHistogram implements PersonDepartureEventHandler, PersonArrivalE
 		reset(0);
 	}
 
+	private LegHistogram(final LegHistogram histogram) {
+		this.iteration = histogram.iteration;
+		this.binSize = histogram.binSize;
+		this.nofBins = histogram.nofBins;
+		for (Map.Entry<String, DataFrame> entry : histogram.data.entrySet()) {
+			this.data.put(entry.getKey(), new DataFrame(entry.getValue()));
+		}
+	}
+
 	/** Creates a new LegHistogram with the specified binSize and a default number of bins, such
 	 * that 30 hours are analyzed.
 	 *
@@ -115,6 +124,14 @@ public class LegHistogram implements PersonDepartureEventHandler, PersonArrivalE
 		}
 	}
 
+	/**
+	 * @return a copy of the gathered data, which is not affected by later events or calls to {@link #reset(int)},
+	 * e.g. to write it in the background.
+	 */
+	/*package*/ LegHistogram snapshot() {
+		return new LegHistogram(this);
+	}
+
 	@Override
 	public void reset(final int iter) {
 		this.iteration = iter;
@@ -278,6 +295,13 @@ public class LegHistogram implements PersonDepartureEventHandler, PersonArrivalE
 			this.countsStuck = new int[nofBins];
             this.binSize = binSize;
 		}
+
+		DataFrame(final DataFrame dataFrame) {
+			this.countsDep = dataFrame.countsDep.clone();
+			this.countsArr = dataFrame.countsArr.clone();
+			this.countsStuck = dataFrame.countsStuck.clone();
+			this.binSize = dataFrame.binSize;
+		}
 	}
 
 }
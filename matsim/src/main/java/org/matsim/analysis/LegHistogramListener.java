@@ -34,13 +34,15 @@ import javax.inject.Inject;
 /**
  * Integrates the {@link org.matsim.analysis.LegHistogram} into the
  * {@link org.matsim.core.controler.Controler}, so the leg histogram is
- * automatically created every iteration.
+ * automatically created every iteration. The files are written in the background
+ * by the {@link AnalysisOutputWriter}, from a snapshot of the histogram.
  *
  * @author mrieser
  */
 final class LegHistogramListener implements IterationEndsListener, IterationStartsListener {
 
 	@Inject private LegHistogram histogram;
+	@Inject private AnalysisOutputWriter outputWriter;
 	@Inject private ControlerConfigGroup controlerConfigGroup;
 	@Inject private OutputDirectoryHierarchy controlerIO;
 
@@ -53,15 +55,22 @@ final class LegHistogramListener implements IterationEndsListener, IterationStar
 
 	@Override
 	public void notifyIterationEnds(final IterationEndsEvent event) {
-		this.histogram.write(controlerIO.getIterationFilename(event.getIteration(), "legHistogram.txt"));
 		this.printStats();
-		if (controlerConfigGroup.isCreateGraphs()) {
-			LegHistogramChart.writeGraphic(this.histogram, controlerIO.getIterationFilename(event.getIteration(), "legHistogram_all.png"));
-			for (String legMode : this.histogram.getLegModes()) {
-				LegHistogramChart.writeGraphic(this.histogram, controlerIO.getIterationFilename(event.getIteration(), "legHistogram_" + legMode + ".png"), legMode);
+		final int iteration = event.getIteration();
+		final boolean createGraphs = controlerConfigGroup.isCreateGraphs();
+		final LegHistogram histogram = this.histogram.snapshot();
+		this.outputWriter.submit(new Runnable() {
+			@Override
+			public void run() {
+				histogram.write(controlerIO.getIterationFilename(iteration, "legHistogram.txt"));
+				if (createGraphs) {
+					LegHistogramChart.writeGraphic(histogram, controlerIO.getIterationFilename(iteration, "legHistogram_all.png"));
+					for (String legMode : histogram.getLegModes()) {
+						LegHistogramChart.writeGraphic(histogram, controlerIO.getIterationFilename(iteration, "legHistogram_" + legMode + ".png"), legMode);
+					}
+				}
 			}
-		}
-
+		});
 	}
 
 	private void printStats() {
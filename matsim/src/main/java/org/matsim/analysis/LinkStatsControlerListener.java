@@ -44,6 +44,7 @@ final class LinkStatsControlerListener implements IterationEndsListener, Iterati
 	@Inject private CalcLinkStats linkStats;
 	@Inject private VolumesAnalyzer volumes;
 	@Inject private OutputDirectoryHierarchy controlerIO;
+	@Inject private AnalysisOutputWriter outputWriter;
 	@Inject private Map<String, TravelTime> travelTime;
     private int iterationsUsed = 0;
 	private boolean doReset = false;
@@ -58,7 +59,14 @@ final class LinkStatsControlerListener implements IterationEndsListener, Iterati
 		}
 
 		if (createLinkStatsInIteration(iteration)) {
-			linkStats.writeFile(this.controlerIO.getIterationFilename(iteration, Controler.FILENAME_LINKSTATS));
+			final String filename = this.controlerIO.getIterationFilename(iteration, Controler.FILENAME_LINKSTATS);
+			final CalcLinkStats linkStats = this.linkStats.snapshot();
+			this.outputWriter.submit(new Runnable() {
+				@Override
+				public void run() {
+					linkStats.writeFile(filename);
+				}
+			});
 			this.doReset = true;
 		}
 	}
@@ -22,6 +22,7 @@ package org.matsim.analysis;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,7 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationEndsEvent;
@@ -46,6 +48,9 @@ import org.matsim.core.controler.events.StartupEvent;
 import org.matsim.core.controler.listener.IterationEndsListener;
 import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
+import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils.PersonAlgorithmProvider;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.StageActivityTypes;
 import org.matsim.core.router.TripRouter;
@@ -60,6 +65,9 @@ import org.matsim.core.utils.io.UncheckedIOException;
  * For multi-modal trips, this is only as accurate as your main mode identifier.
  * The calculated values are written to a file, each iteration on
  * a separate line.
+ * <p></p>
+ * The trips are counted in parallel using the configured number of threads, and the
+ * chart is written in the background by the {@link AnalysisOutputWriter}.
  *
  * @author mrieser
  */
@@ -75,12 +83,12 @@ ShutdownListener {
 
 	private final boolean createPNG;
 	private final ControlerConfigGroup controlerConfigGroup;
+	private final GlobalConfigGroup globalConfigGroup;
+	private final AnalysisOutputWriter outputWriter;
 
 	Map<String,Map<Integer,Double>> modeHistories = new HashMap<>() ;
 	private int minIteration = 0;
 	private final Provider<TripRouter> tripRouterFactory;
-	private StageActivityTypes stageActivities;
-	private MainModeIdentifier mainModeIdentifier;
 	private Map<String,Double> modeCnt = new TreeMap<>() ;
 	
 	private final Set<String> modes;
@@ -88,9 +96,11 @@ ShutdownListener {
 	private final static Logger log = Logger.getLogger(ModeStatsControlerListener.class);
 
 	@Inject
-	ModeStatsControlerListener(ControlerConfigGroup controlerConfigGroup, Population population1, OutputDirectoryHierarchy controlerIO,
-			PlanCalcScoreConfigGroup scoreConfig, Provider<TripRouter> tripRouterFactory ) {
+	ModeStatsControlerListener(ControlerConfigGroup controlerConfigGroup, GlobalConfigGroup globalConfigGroup, Population population1, OutputDirectoryHierarchy controlerIO,
+			PlanCalcScoreConfigGroup scoreConfig, Provider<TripRouter> tripRouterFactory, AnalysisOutputWriter outputWriter ) {
 		this.controlerConfigGroup = controlerConfigGroup;
+		this.globalConfigGroup = globalConfigGroup;
+		this.outputWriter = outputWriter;
 		this.population = population1;
 		this.modeFileName = controlerIO.getOutputFilename( FILENAME_MODESTATS ) ;
 		this.createPNG = controlerConfigGroup.isCreateGraphs();
@@ -112,9 +122,6 @@ ShutdownListener {
 	@Override
 	public void notifyStartup(final StartupEvent event) {
 		this.minIteration = controlerConfigGroup.getFirstIteration();
-		TripRouter tripRouter = tripRouterFactory.get();
-		this.stageActivities = tripRouter.getStageActivityTypes() ;
-		this.mainModeIdentifier = tripRouter.getMainModeIdentifier() ;
 	}
 
 	@Override
@@ -123,19 +130,24 @@ ShutdownListener {
 	}
 
 	private void collectModeShareInfo(final IterationEndsEvent event) {
-		for (Person person : this.population.getPersons().values()) {
-			Plan plan = person.getSelectedPlan() ;
-			List<Trip> trips = TripStructureUtils.getTrips(plan, stageActivities) ;
-			for ( Trip trip : trips ) {
-				String mode = this.mainModeIdentifier.identifyMainMode( trip.getTripElements() ) ;
-				// yy as stated elsewhere, the "computer science" mode identification may not be the same as the "transport planning" 
-				// mode identification.  Maybe revise.  kai, nov'16
-				
-				Double cnt = this.modeCnt.get( mode );
+		final List<TripModeCounter> counters = new ArrayList<>();
+		ParallelPersonAlgorithmUtils.run(this.population, this.globalConfigGroup.getNumberOfThreads(), new PersonAlgorithmProvider() {
+			@Override
+			public PersonAlgorithm getPersonAlgorithm() {
+				// one trip router per thread, as trip routers are not thread-safe
+				TripRouter tripRouter = tripRouterFactory.get();
+				TripModeCounter counter = new TripModeCounter(tripRouter.getStageActivityTypes(), tripRouter.getMainModeIdentifier());
+				counters.add(counter);
+				return counter;
+			}
+		});
+		for (TripModeCounter counter : counters) {
+			for (Entry<String, int[]> e : counter.cnt.entrySet()) {
+				Double cnt = this.modeCnt.get( e.getKey() );
 				if ( cnt==null ) {
 					cnt = 0. ;
 				}
-				this.modeCnt.put( mode, cnt + 1 ) ;
+				this.modeCnt.put( e.getKey(), cnt + e.getValue()[0] ) ;
 			}
 		}
 
@@ -174,7 +186,7 @@ ShutdownListener {
 		// Why? The charts seem to be useful (JB, April 2017)
 		if (this.createPNG && event.getIteration() > this.minIteration) {
 			// create chart when data of more than one iteration is available.
-			XYLineChart chart = new XYLineChart("Mode Statistics", "iteration", "mode");
+			final XYLineChart chart = new XYLineChart("Mode Statistics", "iteration", "mode");
 			for ( Entry<String, Map<Integer, Double>> entry : this.modeHistories.entrySet() ) {
 				String mode = entry.getKey() ;
 				Map<Integer, Double> history = entry.getValue() ;
@@ -185,7 +197,13 @@ ShutdownListener {
 				chart.addSeries(mode, history ) ;
 			}
 			chart.addMatsimLogo();
-			chart.saveAsPng(this.modeFileName + ".png", 800, 600);
+			// the chart has copied all data, so rendering it does not interfere with the next iteration
+			this.outputWriter.submit(new Runnable() {
+				@Override
+				public void run() {
+					chart.saveAsPng(modeFileName + ".png", 800, 600);
+				}
+			});
 		}
 		modeCnt.clear();
 	}
@@ -199,4 +217,38 @@ ShutdownListener {
 		}
 
 	}
+
+	/**
+	 * Counts the trips per main mode of the selected plans of the persons it handles.
+	 * One instance is used per thread.
+	 */
+	private static final class TripModeCounter implements PersonAlgorithm {
+
+		private final StageActivityTypes stageActivities;
+		private final MainModeIdentifier mainModeIdentifier;
+		private final Map<String, int[]> cnt = new HashMap<>();
+
+		TripModeCounter(final StageActivityTypes stageActivities, final MainModeIdentifier mainModeIdentifier) {
+			this.stageActivities = stageActivities;
+			this.mainModeIdentifier = mainModeIdentifier;
+		}
+
+		@Override
+		public void run(final Person person) {
+			Plan plan = person.getSelectedPlan() ;
+			List<Trip> trips = TripStructureUtils.getTrips(plan, stageActivities) ;
+			for ( Trip trip : trips ) {
+				String mode = this.mainModeIdentifier.identifyMainMode( trip.getTripElements() ) ;
+				// yy as stated elsewhere, the "computer science" mode identification may not be the same as the "transport planning" 
+				// mode identification.  Maybe revise.  kai, nov'16
+
+				int[] modeCnt = this.cnt.get( mode );
+				if ( modeCnt==null ) {
+					modeCnt = new int[1] ;
+					this.cnt.put( mode, modeCnt ) ;
+				}
+				modeCnt[0]++ ;
+			}
+		}
+	}
 }
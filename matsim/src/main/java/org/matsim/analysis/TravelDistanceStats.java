@@ -64,6 +64,7 @@ public class TravelDistanceStats {
 
 	private final ControlerConfigGroup controlerConfigGroup;
 	private final GlobalConfigGroup globalConfigGroup;
+	private final AnalysisOutputWriter outputWriter;
 	final private BufferedWriter out;
 	final private String fileName;
 
@@ -77,8 +78,8 @@ public class TravelDistanceStats {
 	private final static Logger log = Logger.getLogger(TravelDistanceStats.class);
 
 	@Inject
-	TravelDistanceStats(ControlerConfigGroup controlerConfigGroup, GlobalConfigGroup globalConfigGroup, OutputDirectoryHierarchy controlerIO) {
-		this(controlerConfigGroup, globalConfigGroup, controlerIO.getOutputFilename(Controler.FILENAME_TRAVELDISTANCESTATS), controlerConfigGroup.isCreateGraphs());
+	TravelDistanceStats(ControlerConfigGroup controlerConfigGroup, GlobalConfigGroup globalConfigGroup, OutputDirectoryHierarchy controlerIO, AnalysisOutputWriter outputWriter) {
+		this(controlerConfigGroup, globalConfigGroup, controlerIO.getOutputFilename(Controler.FILENAME_TRAVELDISTANCESTATS), controlerConfigGroup.isCreateGraphs(), outputWriter);
 	}
 
 	/**
@@ -87,12 +88,16 @@ public class TravelDistanceStats {
 	 * @throws UncheckedIOException
 	 */
 	public TravelDistanceStats(final Config config, final String filename, final boolean createPNG) throws UncheckedIOException {
-		this(config.controler(), config.global(), filename, createPNG);
+		this(config.controler(), config.global(), filename, createPNG, null);
 	}
 
-	TravelDistanceStats(ControlerConfigGroup controlerConfigGroup, GlobalConfigGroup globalConfigGroup, String filename, boolean createPNG) {
+	/**
+	 * @param outputWriter if not <code>null</code>, the charts are written in the background by this writer.
+	 */
+	TravelDistanceStats(ControlerConfigGroup controlerConfigGroup, GlobalConfigGroup globalConfigGroup, String filename, boolean createPNG, AnalysisOutputWriter outputWriter) {
 		this.controlerConfigGroup = controlerConfigGroup;
 		this.globalConfigGroup = globalConfigGroup;
+		this.outputWriter = outputWriter;
 		this.fileName = filename;
 		if (createPNG) {
 			int iterations = controlerConfigGroup.getLastIteration() - controlerConfigGroup.getFirstIteration();
@@ -175,7 +180,7 @@ public class TravelDistanceStats {
 
 			if (iteration != controlerConfigGroup.getFirstIteration()) {
 				// create chart when data of more than one iteration is available.
-				XYLineChart chart = new XYLineChart("Leg Travel Distance Statistics", "iteration", "average of the average leg distance per plan ");
+				final XYLineChart chart = new XYLineChart("Leg Travel Distance Statistics", "iteration", "average of the average leg distance per plan ");
 				double[] iterations = new double[index + 1];
 				for (int i = 0; i <= index; i++) {
 					iterations[i] = i + controlerConfigGroup.getFirstIteration();
@@ -184,7 +189,16 @@ public class TravelDistanceStats {
 				System.arraycopy(this.history, 0, values, 0, index + 1);
 				chart.addSeries("executed plan", iterations, values);
 				chart.addMatsimLogo();
-				chart.saveAsPng(this.fileName + ".png", 800, 600);
+				if (this.outputWriter == null) {
+					chart.saveAsPng(this.fileName + ".png", 800, 600);
+				} else {
+					this.outputWriter.submit(new Runnable() {
+						@Override
+						public void run() {
+							chart.saveAsPng(fileName + ".png", 800, 600);
+						}
+					});
+				}
 			}
 			if (index == (this.history.length - 1)) {
 				// we cannot store more information, so disable the graph feature.
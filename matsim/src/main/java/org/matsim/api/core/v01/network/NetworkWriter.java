@@ -48,11 +48,15 @@ public class NetworkWriter implements MatsimWriter {
 	}
 
 	/**
-	 * Writes the network in the current default format (currently network_v1.dtd). 
+	 * Writes the network in the current default format (currently network_v2.dtd), or in the binary format
+	 * if the filename ends with ".mnet" (optionally followed by ".gz" or the extension of another compression).
 	 */
 	@Override
 	public void write(final String filename) {
-		writeV2(filename);
+		final org.matsim.core.network.io.NetworkWriter writer =
+				new org.matsim.core.network.io.NetworkWriter(network);
+		writer.putAttributeConverters( converters );
+		writer.write(filename);
 	}
 		
 	/**
@@ -71,4 +75,16 @@ public class NetworkWriter implements MatsimWriter {
 		writer.writeFileV2(filename);
 	}
 
+	/**
+	 * Writes the network in a binary format, which is much faster to read than xml.
+	 *
+	 * @see org.matsim.core.network.io.NetworkWriter#writeFileBinary(String)
+	 */
+	public void writeBinary(final String filename) {
+		final org.matsim.core.network.io.NetworkWriter writer =
+				new org.matsim.core.network.io.NetworkWriter(network);
+		writer.putAttributeConverters( converters );
+		writer.writeFileBinary(filename);
+	}
+
 }
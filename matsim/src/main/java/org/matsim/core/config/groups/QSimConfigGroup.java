@@ -105,6 +105,8 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	public static enum SnapshotStyle { equiDist, queue, withHoles, withHolesAndShowHoles,
 		kinematicWaves /*kinematicWaves and withHoles produce same snapshots Amit Mar'17*/ } ;
 	private SnapshotStyle snapshotStyle = SnapshotStyle.equiDist ;
+	private static final String SNAPSHOT_BOUNDING_BOX = "snapshotBoundingBox";
+	private double[] snapshotBoundingBox = null ; // all links
 
 	// ---
 	private static final String MAIN_MODE = "mainMode";
@@ -252,6 +254,8 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		map.put(INSERTING_WAITING_VEHICLES_BEFORE_DRIVING_VEHICLES, 
 				"decides if waiting vehicles enter the network after or before the already driving vehicles were moved. Default: false"); 
 		map.put(NODE_OFFSET, "Shortens a link in the visualization, i.e. its start and end point are moved into towards the center. Does not affect traffic flow. ");
+		map.put(SNAPSHOT_BOUNDING_BOX, "minX,minY,maxX,maxY. Snapshots only contain the agents on links with a node inside the box. "
+				+ "Leave empty for all links.");
 		map.put(LINK_WIDTH, "The (initial) width of the links of the network. Use positive floating point values. This is used only for visualisation.");
 		{
 			StringBuilder stb = new StringBuilder() ;
@@ -384,6 +388,40 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		return this.snapshotStyle;
 	}
 
+	@StringSetter(SNAPSHOT_BOUNDING_BOX)
+	private void setSnapshotBoundingBox(final String value) {
+		if (value == null || value.trim().isEmpty()) {
+			this.snapshotBoundingBox = null;
+			return;
+		}
+		String[] parts = value.split(",");
+		if (parts.length != 4) {
+			throw new IllegalArgumentException("snapshot bounding box must be given as minX,minY,maxX,maxY, but is " + value);
+		}
+		setSnapshotBoundingBox(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+				Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+	}
+
+	@StringGetter(SNAPSHOT_BOUNDING_BOX)
+	private String getSnapshotBoundingBoxAsString() {
+		if (this.snapshotBoundingBox == null) {
+			return "";
+		}
+		return this.snapshotBoundingBox[0] + "," + this.snapshotBoundingBox[1] + ","
+				+ this.snapshotBoundingBox[2] + "," + this.snapshotBoundingBox[3];
+	}
+
+	public void setSnapshotBoundingBox(final double minX, final double minY, final double maxX, final double maxY) {
+		this.snapshotBoundingBox = new double[] { minX, minY, maxX, maxY };
+	}
+
+	/**
+	 * @return minX, minY, maxX and maxY of the links in snapshots, or <code>null</code> for all links
+	 */
+	public double[] getSnapshotBoundingBox() {
+		return this.snapshotBoundingBox == null ? null : this.snapshotBoundingBox.clone();
+	}
+
 	@StringSetter(TRAFFIC_DYNAMICS)
 	public void setTrafficDynamics(final TrafficDynamics str) {
 		this.trafficDynamics = str;
@@ -19,6 +19,7 @@
  * *********************************************************************** */
 package org.matsim.core.config.groups;
 
+import java.net.URL;
 import java.util.Map;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.core.config.ReflectiveConfigGroup;
@@ -47,6 +48,9 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private static final String FILTERMODES = "filterModes";
 	private static final String SEPARATEMODES = "separateModes";
 
+	private static final String INPUT_TRAVEL_TIMES_FILE = "inputTravelTimesFile";
+	private static final String WRITE_TRAVEL_TIMES_INTERVAL = "writeTravelTimesInterval";
+
 	private TravelTimeCalculatorType travelTimeCalculator = TravelTimeCalculatorType.TravelTimeCalculatorArray;
 	private String travelTimeAggregator = "optimistic";
 	private String travelTimeGetter = "average";
@@ -60,6 +64,9 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private boolean filterModes = false;
 	private boolean separateModes = false;
 
+	private String inputTravelTimesFile = null;
+	private int writeTravelTimesInterval = 0;
+
 	public TravelTimeCalculatorConfigGroup() {
 		super(GROUPNAME);
 	}
@@ -79,6 +86,12 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 				"includes also busses from the pt simulation module. Use this parameter in combination with 'filterModes' = true!");
 		map.put(FILTERMODES, "If true, link travel times from legs performed on modes not included in the 'analyzedModes' parameter are ignored.");
 		map.put(SEPARATEMODES, "If true, link travel times are measured and calculated separately for each mode in analyzedModes. Other modes are ignored. If true, filterModes has no effect.");
+		map.put(INPUT_TRAVEL_TIMES_FILE, "Link travel times of an earlier run (e.g. its output_linkTravelTimes.bin.gz), used for routing " +
+				"until travel times have been measured in the first iteration. If not set, free speed travel times are used. " +
+				"Not available with separateModes.");
+		map.put(WRITE_TRAVEL_TIMES_INTERVAL, "iterationNumber % writeTravelTimesInterval == 0 defines in which iterations the link travel " +
+				"times are written to a file which can be used as inputTravelTimesFile; they are then also written in the last iteration. " +
+				"`0' disables writing them. Not available with separateModes.");
 		// === 
 		StringBuilder str = new StringBuilder();
 		for ( TravelTimeCalculatorType type : TravelTimeCalculatorType.values() ) {
@@ -204,4 +217,28 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 		this.separateModes = separateModes;
 	}
 
+	@StringGetter(INPUT_TRAVEL_TIMES_FILE)
+	public String getInputTravelTimesFile() {
+		return this.inputTravelTimesFile;
+	}
+
+	@StringSetter(INPUT_TRAVEL_TIMES_FILE)
+	public void setInputTravelTimesFile(final String inputTravelTimesFile) {
+		this.inputTravelTimesFile = inputTravelTimesFile;
+	}
+
+	public URL getInputTravelTimesFileURL(final URL context) {
+		return getInputFileURL(context, this.inputTravelTimesFile);
+	}
+
+	@StringGetter(WRITE_TRAVEL_TIMES_INTERVAL)
+	public int getWriteTravelTimesInterval() {
+		return this.writeTravelTimesInterval;
+	}
+
+	@StringSetter(WRITE_TRAVEL_TIMES_INTERVAL)
+	public void setWriteTravelTimesInterval(final int writeTravelTimesInterval) {
+		this.writeTravelTimesInterval = writeTravelTimesInterval;
+	}
+
 }
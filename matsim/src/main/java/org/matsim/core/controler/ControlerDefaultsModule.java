@@ -49,6 +49,9 @@ public final class ControlerDefaultsModule extends AbstractModule {
         install(new StrategyManagerModule());
 
         // I think that the ones coming here are all for analysis only, and thus not central to the iterations. kai, apr'18
+        // the analysis listeners below share one writer, so their output is written in order on a single background thread
+        bind(AnalysisOutputWriter.class);
+        addControlerListenerBinding().to(AnalysisOutputWriter.class);
         install(new LinkStatsModule());
         install(new VolumesAnalyzerModule());
         install(new LegHistogramModule());
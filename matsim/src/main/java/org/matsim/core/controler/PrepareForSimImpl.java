@@ -1,16 +1,24 @@
 package org.matsim.core.controler;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
@@ -22,12 +30,13 @@ import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
-import org.matsim.core.population.algorithms.AbstractPersonAlgorithm;
 import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.population.algorithms.PersonPrepareForSim;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.PlanRouter;
 import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.Lockable;
 import org.matsim.facilities.ActivityFacilities;
 import org.matsim.facilities.FacilitiesFromPopulation;
@@ -105,13 +114,7 @@ class PrepareForSimImpl implements PrepareForSim {
 		}
 
 		// make sure all routes are calculated.
-		ParallelPersonAlgorithmUtils.run(population, globalConfigGroup.getNumberOfThreads(),
-				new ParallelPersonAlgorithmUtils.PersonAlgorithmProvider() {
-					@Override
-					public AbstractPersonAlgorithm getPersonAlgorithm() {
-						return new PersonPrepareForSim(new PlanRouter(tripRouterProvider.get(), activityFacilities), scenario, net);
-					}
-				});
+		routePlans(net);
 
 		// though the vehicles should be created before creating a route, however,
 		// as of now, it is not clear how to provide (store) vehicle id to the route afterwards. Amit may'17
@@ -195,6 +198,124 @@ class PrepareForSimImpl implements PrepareForSim {
 		// (yyyy means that if someone replaces prepareForSim and does not add the above lines, the containers are not locked.  kai, nov'16)
 	}
 
+	/**
+	 * First links the activities without link of all plans, in parallel, collecting the trips which need to be
+	 * routed. Then routes only these trips, with the persons sorted by their origin link, so each thread routes
+	 * trips from the same part of the network one after the other. Ties are broken by the person id, so every
+	 * router gets the same persons in the same order in each run, as the routers may draw random numbers.
+	 */
+	private void routePlans(final Network carOnlyNetwork) {
+		final Queue<PersonTrips> work = new ConcurrentLinkedQueue<>();
+		ParallelPersonAlgorithmUtils.run(population, globalConfigGroup.getNumberOfThreads(),
+				new ParallelPersonAlgorithmUtils.PersonAlgorithmProvider() {
+					@Override
+					public PersonAlgorithm getPersonAlgorithm() {
+						return new PersonLinker(createPersonPrepareForSim(carOnlyNetwork), work);
+					}
+				});
+
+		final List<PersonTrips> personTrips = new ArrayList<>(work);
+		if (personTrips.isEmpty()) {
+			return;
+		}
+		Collections.sort(personTrips);
+		final Map<Person, Map<Plan, List<Trip>>> tripsByPerson = new IdentityHashMap<>(personTrips.size());
+		List<Person> persons = new ArrayList<>(personTrips.size());
+		for (PersonTrips trips : personTrips) {
+			tripsByPerson.put(trips.person, trips.trips);
+			persons.add(trips.person);
+		}
+		log.info("routing trips of " + persons.size() + " persons.");
+
+		ParallelPersonAlgorithmUtils.run(persons, globalConfigGroup.getNumberOfThreads(),
+				new ParallelPersonAlgorithmUtils.PersonAlgorithmProvider() {
+					@Override
+					public PersonAlgorithm getPersonAlgorithm() {
+						return new PersonTripRouter(createPersonPrepareForSim(carOnlyNetwork), tripsByPerson);
+					}
+				});
+	}
+
+	private PersonPrepareForSim createPersonPrepareForSim(final Network carOnlyNetwork) {
+		return new PersonPrepareForSim(new PlanRouter(tripRouterProvider.get(), activityFacilities), scenario, carOnlyNetwork);
+	}
+
+	private static class PersonLinker implements PersonAlgorithm {
+		private final PersonPrepareForSim prepare;
+		private final Queue<PersonTrips> work;
+
+		PersonLinker(final PersonPrepareForSim prepare, final Queue<PersonTrips> work) {
+			this.prepare = prepare;
+			this.work = work;
+		}
+
+		@Override
+		public void run(final Person person) {
+			Map<Plan, List<Trip>> trips = this.prepare.linkActivities(person);
+			if (!trips.isEmpty()) {
+				this.work.add(new PersonTrips(person, trips));
+			}
+		}
+	}
+
+	private static class PersonTripRouter implements PersonAlgorithm {
+		private final PersonPrepareForSim prepare;
+		private final Map<Person, Map<Plan, List<Trip>>> tripsByPerson;
+
+		PersonTripRouter(final PersonPrepareForSim prepare, final Map<Person, Map<Plan, List<Trip>>> tripsByPerson) {
+			this.prepare = prepare;
+			this.tripsByPerson = tripsByPerson;
+		}
+
+		@Override
+		public void run(final Person person) {
+			for (Map.Entry<Plan, List<Trip>> e : this.tripsByPerson.get(person).entrySet()) {
+				this.prepare.routeTrips(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * The trips of the plans of a person to route, ordered by the origin link of the first trip, then by person id.
+	 */
+	private static class PersonTrips implements Comparable<PersonTrips> {
+		final Person person;
+		final Map<Plan, List<Trip>> trips;
+		final Id<Link> originLinkId;
+
+		PersonTrips(final Person person, final Map<Plan, List<Trip>> trips) {
+			this.person = person;
+			this.trips = trips;
+			Map.Entry<Plan, List<Trip>> first = trips.entrySet().iterator().next();
+			this.originLinkId = getOriginLinkId(first.getKey(), first.getValue());
+		}
+
+		private static Id<Link> getOriginLinkId(final Plan plan, final List<Trip> trips) {
+			if (trips != null && !trips.isEmpty()) {
+				return trips.get(0).getOriginActivity().getLinkId();
+			}
+			if (!plan.getPlanElements().isEmpty() && plan.getPlanElements().get(0) instanceof Activity) {
+				return ((Activity) plan.getPlanElements().get(0)).getLinkId();
+			}
+			return null;
+		}
+
+		@Override
+		public int compareTo(final PersonTrips o) {
+			if (this.originLinkId == null || o.originLinkId == null) {
+				if (this.originLinkId != o.originLinkId) {
+					return this.originLinkId == null ? 1 : -1;
+				}
+			} else {
+				int cmp = this.originLinkId.compareTo(o.originLinkId);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return this.person.getId().compareTo(o.person.getId());
+		}
+	}
+
 	private void createVehiclesForEveyNetworkMode(final Map<String, VehicleType> modeVehicleTypes) {
 		// yyyy maybe better just take the modes from qsim.mainMode???  kai, dec'17
 		// agree. A network mode may not be main mode (e.g. ride) and in this case,
@@ -0,0 +1,448 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IndexedEventsReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasLinkId;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.core.events.EventsReaderXMLv1.CustomEventMapper;
+import org.matsim.core.events.algorithms.EventWriterIndexed;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+/**
+ * Reads events from files written by {@link EventWriterIndexed}, which are split into blocks of events by time
+ * and have an index of the blocks by time, person and link. Only the blocks containing the events asked for are
+ * read, memory-mapped from the file, so queries for a time window or some agents are fast also on huge files. The
+ * indices by person and link are memory-mapped as well and binary-searched, so opening a file reads only the
+ * table of the blocks.
+ * <p></p>
+ * Example:
+ * <pre>
+ * try (IndexedEventsReader reader = new IndexedEventsReader("output/events.mevents")) {
+ * 	reader.read(events, new IndexedEventsReader.Query().setTimeWindow(7 * 3600, 9 * 3600).setPersons(personIds));
+ * }
+ * </pre>
+ */
+public final class IndexedEventsReader implements Closeable {
+
+	private final static Logger log = Logger.getLogger(IndexedEventsReader.class);
+
+	public static final String FILE_EXTENSION = ".mevents";
+
+	/** The first bytes of an indexed events file, followed by {@link #VERSION}. */
+	public static final String MAGIC = "MATSimEV";
+	public static final int VERSION = 1;
+
+	private static final byte[] EVENTS_START = "<events>".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] EVENTS_END = "</events>".getBytes(StandardCharsets.US_ASCII);
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long[] blockOffsets;
+	private final int[] blockLengths;
+	private final double[] blockStartTimes;
+	private final double[] blockEndTimes;
+	private final Postings personBlocks;
+	private final Postings linkBlocks;
+	private final Map<String, CustomEventMapper<?>> customEventMappers = new HashMap<>();
+
+	public IndexedEventsReader(final String filename) throws UncheckedIOException {
+		try {
+			this.file = new RandomAccessFile(filename, "r");
+			this.channel = this.file.getChannel();
+			byte[] magic = new byte[MAGIC.length()];
+			this.file.readFully(magic);
+			if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+				throw new UncheckedIOException("Not an indexed events file: " + filename);
+			}
+			int version = this.file.readInt();
+			if (version != VERSION) {
+				throw new UncheckedIOException("Unsupported version of indexed events file: " + version);
+			}
+
+			long size = this.channel.size();
+			this.file.seek(size - 8);
+			long indexOffset = this.file.readLong();
+			MappedByteBuffer index = this.channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - 8 - indexOffset);
+
+			int blockCount = index.getInt();
+			this.blockOffsets = new long[blockCount];
+			this.blockLengths = new int[blockCount];
+			this.blockStartTimes = new double[blockCount];
+			this.blockEndTimes = new double[blockCount];
+			for (int i = 0; i < blockCount; i++) {
+				this.blockOffsets[i] = index.getLong();
+				this.blockLengths[i] = index.getInt();
+				this.blockStartTimes[i] = index.getDouble();
+				this.blockEndTimes[i] = index.getDouble();
+			}
+			this.personBlocks = new Postings(index);
+			this.linkBlocks = new Postings(index);
+			log.info(filename + " has " + blockCount + " blocks of events of " + this.personBlocks.describe("persons")
+					+ " on " + this.linkBlocks.describe("links") + ".");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The order of the ids in the index: by their utf-8 bytes, compared as unsigned numbers.
+	 */
+	public static int compareIds(final byte[] id1, final byte[] id2) {
+		int length = Math.min(id1.length, id2.length);
+		for (int i = 0; i < length; i++) {
+			int cmp = (id1[i] & 0xff) - (id2[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return id1.length - id2.length;
+	}
+
+	/**
+	 * @return <code>true</code> if the file starts like an indexed events file.
+	 */
+	public static boolean isIndexedEventsFile(final String filename) {
+		try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			if (file.length() < MAGIC.length()) {
+				return false;
+			}
+			byte[] magic = new byte[MAGIC.length()];
+			file.readFully(magic);
+			return MAGIC.equals(new String(magic, StandardCharsets.US_ASCII));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public void addCustomEventMapper(final String eventType, final CustomEventMapper<?> mapper) {
+		this.customEventMappers.put(eventType, mapper);
+	}
+
+	/**
+	 * Passes all events of the file to the events manager.
+	 */
+	public void readAll(final EventsManager events) {
+		read(events, new Query());
+	}
+
+	/**
+	 * Passes the events matching the query to the events manager, in the order they were written.
+	 */
+	public void read(final EventsManager events, final Query query) {
+		BitSet blocks = new BitSet(this.blockOffsets.length);
+		for (int i = 0; i < this.blockOffsets.length; i++) {
+			if (this.blockEndTimes[i] >= query.fromTime && this.blockStartTimes[i] < query.toTime) {
+				blocks.set(i);
+			}
+		}
+		if (query.hasIdFilter() && (this.personBlocks.isIndexed() || query.personIds.isEmpty())
+				&& (this.linkBlocks.isIndexed() || query.linkIds.isEmpty())) {
+			// otherwise, all blocks in the time window have to be read
+			BitSet agentBlocks = new BitSet(this.blockOffsets.length);
+			this.personBlocks.addBlocks(agentBlocks, query.personIds);
+			this.linkBlocks.addBlocks(agentBlocks, query.linkIds);
+			blocks.and(agentBlocks);
+		}
+
+		EventsReaderXMLv1 reader = new EventsReaderXMLv1(new FilteringEventsManager(events, query));
+		for (Map.Entry<String, CustomEventMapper<?>> e : this.customEventMappers.entrySet()) {
+			reader.addCustomEventMapper(e.getKey(), e.getValue());
+		}
+		for (int i = blocks.nextSetBit(0); i >= 0; i = blocks.nextSetBit(i + 1)) {
+			reader.parse(readBlock(i));
+		}
+	}
+
+
+	private InputStream readBlock(final int block) {
+		try {
+			MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.blockOffsets[block], this.blockLengths[block]);
+			return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+					new ByteArrayInputStream(EVENTS_START), new ByteBufferInputStream(buffer), new ByteArrayInputStream(EVENTS_END))));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public int getNumberOfBlocks() {
+		return this.blockOffsets.length;
+	}
+
+	@Override
+	public void close() {
+		try {
+			this.file.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Selects the events to read: events in the time window, and, if persons or links are set, only events of these
+	 * persons or on these links. Persons and links are matched by {@link HasPersonId} and {@link HasLinkId}.
+	 */
+	public static final class Query {
+		private double fromTime = Double.NEGATIVE_INFINITY;
+		private double toTime = Double.POSITIVE_INFINITY;
+		private final Set<String> personIds = new HashSet<>();
+		private final Set<String> linkIds = new HashSet<>();
+
+		/**
+		 * @param fromTime the earliest time of events to read, inclusive
+		 * @param toTime the latest time of events to read, exclusive
+		 */
+		public Query setTimeWindow(final double fromTime, final double toTime) {
+			this.fromTime = fromTime;
+			this.toTime = toTime;
+			return this;
+		}
+
+		public Query setPersons(final Collection<Id<Person>> personIds) {
+			for (Id<Person> id : personIds) {
+				this.personIds.add(id.toString());
+			}
+			return this;
+		}
+
+		public Query setLinks(final Collection<Id<Link>> linkIds) {
+			for (Id<Link> id : linkIds) {
+				this.linkIds.add(id.toString());
+			}
+			return this;
+		}
+
+		boolean hasIdFilter() {
+			return !this.personIds.isEmpty() || !this.linkIds.isEmpty();
+		}
+
+		boolean matches(final Event event) {
+			if (event.getTime() < this.fromTime || event.getTime() >= this.toTime) {
+				return false;
+			}
+			if (!hasIdFilter()) {
+				return true;
+			}
+			if (event instanceof HasPersonId) {
+				Id<Person> personId = ((HasPersonId) event).getPersonId();
+				if (personId != null && this.personIds.contains(personId.toString())) {
+					return true;
+				}
+			}
+			if (event instanceof HasLinkId) {
+				Id<Link> linkId = ((HasLinkId) event).getLinkId();
+				if (linkId != null && this.linkIds.contains(linkId.toString())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The blocks containing events of a person or link, read from the memory-mapped index. The entries are sorted
+	 * by id, see {@link #compareIds(byte[], byte[])}, and found by binary search over the table of their offsets.
+	 */
+	private static final class Postings {
+		private final ByteBuffer index;
+		// -1 if the ids are not indexed
+		private final int count;
+		private final int tableStart;
+		private final int entriesStart;
+
+		/**
+		 * Reads the postings at the position of the index, and moves the position to the end of the postings.
+		 */
+		Postings(final ByteBuffer index) {
+			this.index = index;
+			this.count = index.getInt();
+			if (this.count < 0) {
+				this.tableStart = -1;
+				this.entriesStart = -1;
+				return;
+			}
+			int entriesLength = index.getInt();
+			this.tableStart = index.position();
+			this.entriesStart = this.tableStart + 4 * this.count;
+			index.position(this.entriesStart + entriesLength);
+		}
+
+		boolean isIndexed() {
+			return this.count >= 0;
+		}
+
+		String describe(final String ids) {
+			return isIndexed() ? this.count + " " + ids : "not indexed " + ids;
+		}
+
+		void addBlocks(final BitSet blocks, final Set<String> ids) {
+			for (String id : ids) {
+				int entry = find(id.getBytes(StandardCharsets.UTF_8));
+				if (entry >= 0) {
+					int idLength = this.index.getInt(entry);
+					int position = entry + 4 + idLength;
+					int blockCount = this.index.getInt(position);
+					for (int b = 0; b < blockCount; b++) {
+						position += 4;
+						blocks.set(this.index.getInt(position));
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the position of the entry of the id in the index, or -1
+		 */
+		private int find(final byte[] id) {
+			int low = 0;
+			int high = this.count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int entry = this.entriesStart + this.index.getInt(this.tableStart + 4 * mid);
+				int cmp = compareId(entry, id);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return entry;
+				}
+			}
+			return -1;
+		}
+
+		private int compareId(final int entry, final byte[] id) {
+			int idLength = this.index.getInt(entry);
+			int length = Math.min(idLength, id.length);
+			for (int i = 0; i < length; i++) {
+				int cmp = (this.index.get(entry + 4 + i) & 0xff) - (id[i] & 0xff);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return idLength - id.length;
+		}
+	}
+
+	/**
+	 * Passes on the events of a block which match the query, as blocks may also contain other events.
+	 */
+	private static final class FilteringEventsManager implements EventsManager {
+		private final EventsManager delegate;
+		private final Query query;
+
+		FilteringEventsManager(final EventsManager delegate, final Query query) {
+			this.delegate = delegate;
+			this.query = query;
+		}
+
+		@Override
+		public void processEvent(final Event event) {
+			if (this.query.matches(event)) {
+				this.delegate.processEvent(event);
+			}
+		}
+
+		@Override
+		public void addHandler(final EventHandler handler) {
+			this.delegate.addHandler(handler);
+		}
+
+		@Override
+		public void removeHandler(final EventHandler handler) {
+			this.delegate.removeHandler(handler);
+		}
+
+		@Override
+		public void resetHandlers(final int iteration) {
+			this.delegate.resetHandlers(iteration);
+		}
+
+		@Override
+		public void initProcessing() {
+			this.delegate.initProcessing();
+		}
+
+		@Override
+		public void afterSimStep(final double time) {
+			this.delegate.afterSimStep(time);
+		}
+
+		@Override
+		public void finishProcessing() {
+			this.delegate.finishProcessing();
+		}
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			if (!this.buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(length, this.buffer.remaining());
+			this.buffer.get(bytes, offset, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventWriterIndexed.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasLinkId;
+import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.core.events.IndexedEventsReader;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+/**
+ * Writes events to an indexed events file, to be read with {@link IndexedEventsReader}.
+ * <p></p>
+ * The events are written as xml, like by {@link EventWriterXML}, but in blocks covering a fixed time span
+ * (15 minutes by default). At the end of the file follows an index with the position and the time span of every
+ * block, and for every person and link the blocks containing events of it. The file is not compressed, so the
+ * blocks and the index can be memory-mapped when reading. The indices by person and by link are optional, as they
+ * can get large.
+ * <p></p>
+ * File layout (big-endian):
+ * <pre>
+ * "MATSimEV" version:int
+ * blocks of utf-8 encoded &lt;event .../&gt; lines
+ * blockCount:int { offset:long length:int firstTime:double lastTime:double }
+ * person postings
+ * link postings
+ * indexOffset:long
+ * </pre>
+ * The postings are <code>-1:int</code> if the ids are not indexed, or else, with the ids sorted by their utf-8 bytes:
+ * <pre>
+ * idCount:int entriesLength:int { entryOffset:int } { idLength:int id:utf-8 blockCount:int blocks:int[] }
+ * </pre>
+ * where the entry offsets are relative to the first entry.
+ */
+public class EventWriterIndexed implements EventWriter, BasicEventHandler {
+
+	public static final double DEFAULT_BLOCK_DURATION = 900.0;
+
+	/** A block is also ended if it gets that large, so it can be read in a short time. */
+	private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+
+	private final DataOutputStream out;
+	private final double blockDuration;
+	private final StringBuilder buffer = new StringBuilder(64 * 1024);
+	private long position;
+
+	private double blockEnd = Double.NEGATIVE_INFINITY;
+	private double blockFirstTime = Double.POSITIVE_INFINITY;
+	private double blockLastTime = Double.NEGATIVE_INFINITY;
+	private int blockCount = 0;
+	private long[] blockOffsets = new long[64];
+	private int[] blockLengths = new int[64];
+	private double[] blockFirstTimes = new double[64];
+	private double[] blockLastTimes = new double[64];
+
+	// null if not indexed
+	private final Map<Id<?>, Postings> personBlocks;
+	private final Map<Id<?>, Postings> linkBlocks;
+
+	public EventWriterIndexed(final String filename) {
+		this(filename, DEFAULT_BLOCK_DURATION);
+	}
+
+	/**
+	 * @param blockDuration the time span of the events in one block, in seconds. Shorter blocks make queries for short
+	 * 		time windows or single agents faster, but the index larger.
+	 */
+	public EventWriterIndexed(final String filename, final double blockDuration) {
+		this(filename, blockDuration, true, true);
+	}
+
+	/**
+	 * @param indexPersons whether to write the index of the blocks by person. Without it, queries for persons read all
+	 * 		blocks in their time window.
+	 * @param indexLinks whether to write the index of the blocks by link, likewise.
+	 */
+	public EventWriterIndexed(final String filename, final double blockDuration, final boolean indexPersons, final boolean indexLinks) {
+		this.personBlocks = indexPersons ? new HashMap<>() : null;
+		this.linkBlocks = indexLinks ? new HashMap<>() : null;
+		if (IOUtils.getCompressionCodec(filename) != null) {
+			throw new IllegalArgumentException("Indexed events files cannot be compressed, as they are read memory-mapped: " + filename);
+		}
+		this.blockDuration = blockDuration;
+		try {
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1024 * 1024));
+			byte[] magic = IndexedEventsReader.MAGIC.getBytes(StandardCharsets.US_ASCII);
+			this.out.write(magic);
+			this.out.writeInt(IndexedEventsReader.VERSION);
+			this.position = magic.length + 4;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(final Event event) {
+		double time = event.getTime();
+		if (this.buffer.length() > 0 && (time >= this.blockEnd || this.buffer.length() >= MAX_BLOCK_SIZE)) {
+			writeBlock();
+		}
+		if (this.buffer.length() == 0) {
+			this.blockEnd = (Math.floor(time / this.blockDuration) + 1) * this.blockDuration;
+		}
+		this.blockFirstTime = Math.min(this.blockFirstTime, time);
+		this.blockLastTime = Math.max(this.blockLastTime, time);
+		XmlEventFormatter.appendEvent(this.buffer, event);
+
+		if (this.personBlocks != null && event instanceof HasPersonId) {
+			addPosting(this.personBlocks, ((HasPersonId) event).getPersonId());
+		}
+		if (this.linkBlocks != null && event instanceof HasLinkId) {
+			addPosting(this.linkBlocks, ((HasLinkId) event).getLinkId());
+		}
+	}
+
+	private void addPosting(final Map<Id<?>, Postings> postings, final Id<?> id) {
+		if (id == null) {
+			return;
+		}
+		Postings blocks = postings.get(id);
+		if (blocks == null) {
+			blocks = new Postings();
+			postings.put(id, blocks);
+		}
+		blocks.add(this.blockCount);
+	}
+
+	private void writeBlock() {
+		byte[] bytes = this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+		try {
+			this.out.write(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (this.blockCount == this.blockOffsets.length) {
+			int length = this.blockCount * 2;
+			this.blockOffsets = Arrays.copyOf(this.blockOffsets, length);
+			this.blockLengths = Arrays.copyOf(this.blockLengths, length);
+			this.blockFirstTimes = Arrays.copyOf(this.blockFirstTimes, length);
+			this.blockLastTimes = Arrays.copyOf(this.blockLastTimes, length);
+		}
+		this.blockOffsets[this.blockCount] = this.position;
+		this.blockLengths[this.blockCount] = bytes.length;
+		this.blockFirstTimes[this.blockCount] = this.blockFirstTime;
+		this.blockLastTimes[this.blockCount] = this.blockLastTime;
+		this.blockCount++;
+		this.position += bytes.length;
+
+		this.buffer.setLength(0);
+		this.blockFirstTime = Double.POSITIVE_INFINITY;
+		this.blockLastTime = Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public void closeFile() {
+		if (this.buffer.length() > 0) {
+			writeBlock();
+		}
+		try {
+			long indexOffset = this.position;
+			this.out.writeInt(this.blockCount);
+			for (int i = 0; i < this.blockCount; i++) {
+				this.out.writeLong(this.blockOffsets[i]);
+				this.out.writeInt(this.blockLengths[i]);
+				this.out.writeDouble(this.blockFirstTimes[i]);
+				this.out.writeDouble(this.blockLastTimes[i]);
+			}
+			writePostings(this.personBlocks);
+			writePostings(this.linkBlocks);
+			this.out.writeLong(indexOffset);
+			this.out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writePostings(final Map<Id<?>, Postings> postings) throws IOException {
+		if (postings == null) {
+			this.out.writeInt(-1);
+			return;
+		}
+		List<Postings> sorted = new ArrayList<>(postings.size());
+		for (Map.Entry<Id<?>, Postings> e : postings.entrySet()) {
+			Postings blocks = e.getValue();
+			blocks.id = e.getKey().toString().getBytes(StandardCharsets.UTF_8);
+			sorted.add(blocks);
+		}
+		sorted.sort((p1, p2) -> IndexedEventsReader.compareIds(p1.id, p2.id));
+		int entriesLength = 0;
+		for (Postings blocks : sorted) {
+			entriesLength += 4 + blocks.id.length + 4 + 4 * blocks.size;
+		}
+		this.out.writeInt(sorted.size());
+		this.out.writeInt(entriesLength);
+		int entryOffset = 0;
+		for (Postings blocks : sorted) {
+			this.out.writeInt(entryOffset);
+			entryOffset += 4 + blocks.id.length + 4 + 4 * blocks.size;
+		}
+		for (Postings blocks : sorted) {
+			this.out.writeInt(blocks.id.length);
+			this.out.write(blocks.id);
+			this.out.writeInt(blocks.size);
+			for (int i = 0; i < blocks.size; i++) {
+				this.out.writeInt(blocks.blocks[i]);
+			}
+		}
+	}
+
+	@Override
+	public void reset(final int iteration) {
+	}
+
+	/**
+	 * The ascending numbers of the blocks containing events of a person or link.
+	 */
+	private static final class Postings {
+		// the utf-8 bytes of the id, set when writing the index
+		byte[] id = null;
+		int[] blocks = new int[2];
+		int size = 0;
+
+		void add(final int block) {
+			if (this.size > 0 && this.blocks[this.size - 1] == block) {
+				return;
+			}
+			if (this.size == this.blocks.length) {
+				this.blocks = Arrays.copyOf(this.blocks, this.size * 2);
+			}
+			this.blocks[this.size++] = block;
+		}
+	}
+
+}
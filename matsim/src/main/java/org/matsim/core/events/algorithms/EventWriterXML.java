@@ -24,47 +24,67 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.util.Map;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.UncheckedIOException;
 
+/**
+ * Writes events to an xml file.
+ * <p></p>
+ * The events are formatted by {@link XmlEventFormatter} into a buffer, without creating the attribute
+ * maps of the core event types. When writing to a file, full buffers are handed over to a separate
+ * thread, which encodes and compresses the data and writes it to the file, so the formatting and the
+ * compression of the events run in parallel.
+ */
 public class EventWriterXML implements EventWriter, BasicEventHandler {
-	private final BufferedWriter out;
+
+	/** The number of characters collected before they are passed on to the writer. */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/** The number of chunks which can be filled while the writer thread is busy. */
+	private static final int NUMBER_OF_CHUNKS = 4;
+
+	private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE + 1024);
+	private final Writer out;
+	private final ChunkWriter chunkWriter;
+	private char[] chunk = new char[CHUNK_SIZE];
 
 	public EventWriterXML(final String outfilename) {
 		this.out = IOUtils.getBufferedWriter(outfilename);
-		try {
-			this.out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
+		this.chunkWriter = new ChunkWriter(this.out);
+		this.chunkWriter.start();
+		this.buffer.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
 	}
 
 	/**
 	 * Constructor so you can pass System.out or System.err to the writer to see the result on the console.
+	 * The events are written by the calling thread.
 	 * 
 	 * @param stream
 	 */
 	public EventWriterXML(final PrintStream stream ) {
 		this.out = new BufferedWriter(new OutputStreamWriter(stream));
-		try {
-			this.out.write("<events>\n");
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		this.chunkWriter = null;
+		this.buffer.append("<events>\n");
 	}
 
 	@Override
 	public void closeFile() {
+		this.buffer.append("</events>");
+		// I added a "\n" to make it look nicer on the console.  Can't say if this may have unintended side
+		// effects anywhere else.  kai, oct'12
+		// fails signalsystems test (and presumably other tests in contrib/playground) since they compare
+		// checksums of event files.  Removed that change again.  kai, oct'12
+		writeBuffer();
 		try {
-			this.out.write("</events>");
-			// I added a "\n" to make it look nicer on the console.  Can't say if this may have unintended side
-			// effects anywhere else.  kai, oct'12
-			// fails signalsystems test (and presumably other tests in contrib/playground) since they compare
-			// checksums of event files.  Removed that change again.  kai, oct'12
+			if (this.chunkWriter != null) {
+				this.chunkWriter.finish();
+			}
 			this.out.close();
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
@@ -82,74 +102,110 @@ public class EventWriterXML implements EventWriter, BasicEventHandler {
 
 	@Override
 	public void handleEvent(final Event event) {
-		try {
-			this.out.append("\t<event ");
-			Map<String, String> attr = event.getAttributes();
-			for (Map.Entry<String, String> entry : attr.entrySet()) {
-				this.out.append(entry.getKey());
-				this.out.append("=\"");
-				this.out.append(encodeAttributeValue(entry.getValue()));
-				this.out.append("\" ");
+		XmlEventFormatter.appendEvent(this.buffer, event);
+		if (this.buffer.length() >= CHUNK_SIZE) {
+			writeBuffer();
+		}
+	}
+
+	private void writeBuffer() {
+		int length = this.buffer.length();
+		if (this.chunk.length < length) {
+			this.chunk = new char[length];
+		}
+		this.buffer.getChars(0, length, this.chunk, 0);
+		this.buffer.setLength(0);
+		if (this.chunkWriter != null) {
+			this.chunk = this.chunkWriter.write(this.chunk, length);
+		} else {
+			try {
+				this.out.write(this.chunk, 0, length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			this.out.append(" />\n");
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 	}
 
-	// the following method was taken from MatsimXmlWriter in order to correctly encode attributes, but
-	// to forego the overhead of using the full MatsimXmlWriter.
 	/**
-	 * Encodes the given string in such a way that it no longer contains
-	 * characters that have a special meaning in xml.
-	 * 
-	 * @see <a href="http://www.w3.org/International/questions/qa-escapes#use">http://www.w3.org/International/questions/qa-escapes#use</a>
-	 * @param attributeValue
-	 * @return String with some characters replaced by their xml-encoding.
+	 * Writes chunks of characters in a separate thread. The filled chunks are passed to the thread through a
+	 * queue, and empty chunks are passed back through a second queue, so no new chunks need to be allocated.
 	 */
-	private String encodeAttributeValue(final String attributeValue) {
-		if (attributeValue == null) {
-			return null;
+	private static final class ChunkWriter extends Thread {
+
+		private static final class Chunk {
+			final char[] chars;
+			final int length;
+
+			Chunk(final char[] chars, final int length) {
+				this.chars = chars;
+				this.length = length;
+			}
 		}
-		int len = attributeValue.length();
-		boolean encode = false;
-		for (int pos = 0; pos < len; pos++) {
-			char ch = attributeValue.charAt(pos);
-			if (ch == '<') {
-				encode = true;
-				break;
-			} else if (ch == '>') {
-				encode = true;
-				break;
-			} else if (ch == '\"') {
-				encode = true;
-				break;
-			} else if (ch == '&') {
-				encode = true;
-				break;
+
+		private static final Chunk END = new Chunk(new char[0], 0);
+
+		private final Writer out;
+		private final BlockingQueue<Chunk> filledChunks = new ArrayBlockingQueue<>(NUMBER_OF_CHUNKS);
+		private final BlockingQueue<char[]> emptyChunks = new ArrayBlockingQueue<>(NUMBER_OF_CHUNKS);
+		private volatile IOException exception = null;
+
+		ChunkWriter(final Writer out) {
+			super(EventWriterXML.class.getSimpleName());
+			setDaemon(true);
+			this.out = out;
+			for (int i = 0; i < NUMBER_OF_CHUNKS - 1; i++) {
+				this.emptyChunks.add(new char[CHUNK_SIZE]);
 			}
 		}
-		if (encode) {
-			StringBuffer bf = new StringBuffer();
-			for (int pos = 0; pos < len; pos++) {
-				char ch = attributeValue.charAt(pos);
-				if (ch == '<') {
-					bf.append("&lt;");
-				} else if (ch == '>') {
-					bf.append("&gt;");
-				} else if (ch == '\"') {
-					bf.append("&quot;");
-				} else if (ch == '&') {
-					bf.append("&amp;");
-				} else {
-					bf.append(ch);
-				}
+
+		/**
+		 * Passes the chunk to the writer thread and returns an empty chunk, blocking if the writer thread
+		 * cannot keep up.
+		 */
+		char[] write(final char[] chars, final int length) {
+			checkException();
+			try {
+				this.filledChunks.put(new Chunk(chars, length));
+				return this.emptyChunks.take();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
 			}
-			
-			return bf.toString();
 		}
-		return attributeValue;
 
+		void finish() {
+			try {
+				this.filledChunks.put(END);
+				join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			checkException();
+		}
+
+		private void checkException() {
+			if (this.exception != null) {
+				throw new UncheckedIOException(this.exception);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Chunk chunk;
+				while ((chunk = this.filledChunks.take()) != END) {
+					if (this.exception == null) {
+						try {
+							this.out.write(chunk.chars, 0, chunk.length);
+						} catch (IOException e) {
+							this.exception = e;
+						}
+					}
+					this.emptyChunks.put(chunk.chars);
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,597 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelSnapshotGenerator.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonDepartureEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.config.groups.QSimConfigGroup.SnapshotStyle;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.IndexedEventsReader;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.algorithms.SnapshotGenerator.EventAgent;
+import org.matsim.core.events.algorithms.SnapshotGenerator.EventLink;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfoFactory;
+import org.matsim.vis.snapshotwriters.SnapshotLinkWidthCalculator;
+import org.matsim.vis.snapshotwriters.SnapshotWriter;
+
+/**
+ * Generates the same snapshots as the {@link SnapshotGenerator}, but spreads the work over several threads.
+ * The links are split into one part per thread. Each part has its own thread, which keeps the vehicles on its
+ * links and calculates their positions. The thread handling the events only looks up the link and the driver
+ * of an event and passes it on to the thread of the link. Every snapshot writer runs in a thread of its own.
+ * <p></p>
+ * Snapshots can be restricted to a time window with {@link #setTimeWindow(double, double)}. Events after the
+ * end of the time window are ignored, and {@link #run(String)} does not even read them from indexed events
+ * files. The events before the start of the time window are still needed to know where the vehicles are.
+ * <p></p>
+ * {@link #finish()} must be called after the last event to write the remaining snapshots and to stop the threads.
+ */
+public final class ParallelSnapshotGenerator implements PersonDepartureEventHandler, PersonArrivalEventHandler,
+		LinkEnterEventHandler, LinkLeaveEventHandler, VehicleEntersTrafficEventHandler, PersonStuckEventHandler,
+		VehicleLeavesTrafficEventHandler {
+
+	private final static Logger log = Logger.getLogger(ParallelSnapshotGenerator.class);
+
+	private static final byte DEPARTURE = 0;
+	private static final byte ARRIVAL = 1;
+	private static final byte ENTER = 2;
+	private static final byte LEAVE = 3;
+	private static final byte WAIT2LINK = 4;
+	private static final byte STUCK = 5;
+
+	private static final int QUEUE_CAPACITY = 8;
+
+	private final Network network;
+	private final int numberOfThreads;
+	private final double snapshotPeriod;
+	private final double capCorrectionFactor;
+	private final double storageCapFactor;
+	private final SnapshotStyle snapshotStyle;
+	private final SnapshotLinkWidthCalculator linkWidthCalculator = new SnapshotLinkWidthCalculator();
+	private final AgentSnapshotInfoFactory snapshotInfoFactory = new AgentSnapshotInfoFactory(linkWidthCalculator);
+	private final List<SnapshotWriter> snapshotWriters = new ArrayList<>();
+	private final Vehicle2DriverEventHandler delegate = new Vehicle2DriverEventHandler();
+
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
+	private int lastSnapshotIndex = -1;
+
+	private final HashMap<Id<Link>, PartitionLink> links;
+	private final HashMap<Id<Person>, PartitionLink> currentLinks = new HashMap<>(1000, 0.95f);
+	private final List<Partition> partitions = new ArrayList<>();
+	private final List<WriterThread> writerThreads = new ArrayList<>();
+	private boolean running = false;
+	private volatile RuntimeException failure = null;
+
+	public ParallelSnapshotGenerator(final Network network, final double snapshotPeriod, final QSimConfigGroup config,
+			final int numberOfThreads) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be at least 1, but is " + numberOfThreads);
+		}
+		this.network = network;
+		this.numberOfThreads = numberOfThreads;
+		this.links = new HashMap<>((int) (network.getLinks().size() * 1.1), 0.95f);
+		this.snapshotPeriod = snapshotPeriod;
+		this.capCorrectionFactor = config.getFlowCapFactor() / network.getCapacityPeriod();
+		this.storageCapFactor = config.getStorageCapFactor();
+		this.snapshotStyle = config.getSnapshotStyle();
+
+		if (! Double.isNaN( config.getLinkWidthForVis() )){
+			this.linkWidthCalculator.setLinkWidthForVis( config.getLinkWidthForVis() );
+		}
+		if (! Double.isNaN(network.getEffectiveLaneWidth())){
+			this.linkWidthCalculator.setLaneWidth(network.getEffectiveLaneWidth());
+		}
+
+		reset(-1);
+	}
+
+	public final void addSnapshotWriter(final SnapshotWriter writer) {
+		this.snapshotWriters.add(writer);
+	}
+
+	public final boolean removeSnapshotWriter(final SnapshotWriter writer) {
+		return this.snapshotWriters.remove(writer);
+	}
+
+	/**
+	 * Only writes the snapshots from <code>fromTime</code> up to and including <code>toTime</code>.
+	 */
+	public final void setTimeWindow(final double fromTime, final double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
+	/**
+	 * Reads the events file, passes the events on to this generator and calls {@link #finish()}. Of indexed
+	 * events files (see {@link IndexedEventsReader}), only the blocks before the end of the time window are read.
+	 */
+	public final void run(final String eventsFile) {
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(this);
+		if (IndexedEventsReader.isIndexedEventsFile(eventsFile)) {
+			try (IndexedEventsReader reader = new IndexedEventsReader(eventsFile)) {
+				reader.read(events, new IndexedEventsReader.Query().setTimeWindow(Double.NEGATIVE_INFINITY, this.toTime));
+			}
+		} else {
+			new MatsimEventsReader(events).readFile(eventsFile);
+		}
+		finish();
+	}
+
+	@Override
+	public void handleEvent(final PersonDepartureEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			PartitionLink link = this.links.get(event.getLinkId());
+			this.currentLinks.put(event.getPersonId(), link);
+			link.partition.add(DEPARTURE, link.link, event.getPersonId(), event.getTime());
+		}
+	}
+
+	@Override
+	public void handleEvent(final PersonArrivalEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			PartitionLink link = this.links.get(event.getLinkId());
+			link.partition.add(ARRIVAL, link.link, event.getPersonId(), event.getTime());
+		}
+	}
+
+	@Override
+	public void handleEvent(final LinkEnterEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			PartitionLink link = this.links.get(event.getLinkId());
+			Id<Person> driverId = this.delegate.getDriverOfVehicle(event.getVehicleId());
+			PartitionLink currentLink = this.currentLinks.put(driverId, link);
+			if (currentLink != null) {
+				// use stuck to remove it from wherever it is
+				currentLink.partition.add(STUCK, currentLink.link, driverId, event.getTime());
+			}
+			link.partition.add(ENTER, link.link, driverId, event.getTime());
+		}
+	}
+
+	@Override
+	public void handleEvent(final LinkLeaveEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			PartitionLink link = this.links.get(event.getLinkId());
+			Id<Person> driverId = this.delegate.getDriverOfVehicle(event.getVehicleId());
+			this.currentLinks.remove(driverId);
+			link.partition.add(LEAVE, link.link, driverId, event.getTime());
+		}
+	}
+
+	@Override
+	public void handleEvent(final VehicleEntersTrafficEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			PartitionLink link = this.links.get(event.getLinkId());
+			link.partition.add(WAIT2LINK, link.link, event.getPersonId(), event.getTime());
+
+			this.delegate.handleEvent(event);
+		}
+	}
+
+	@Override
+	public void handleEvent(final PersonStuckEvent event) {
+		if (testForSnapshot(event.getTime())) {
+			if (event.getLinkId() != null) { // link id is optional - agent can be teleporting or whatever.
+				PartitionLink link = this.links.get(event.getLinkId());
+				this.currentLinks.remove(event.getPersonId());
+				link.partition.add(STUCK, link.link, event.getPersonId(), event.getTime());
+			}
+		}
+	}
+
+	@Override
+	public void handleEvent(final VehicleLeavesTrafficEvent event) {
+		if (event.getTime() < this.toTime) {
+			this.delegate.handleEvent(event);
+		}
+	}
+
+	@Override
+	public void reset(final int iteration) {
+		stopThreads();
+		this.failure = null;
+
+		// same map as in SnapshotGenerator, so the links are in the same order
+		HashMap<Id<Link>, EventLink> eventLinks = new HashMap<>((int) (this.network.getLinks().size() * 1.1), 0.95f);
+		for (Link link : this.network.getLinks().values()) {
+			eventLinks.put(link.getId(), new EventLink(link, this.capCorrectionFactor, this.network.getEffectiveCellSize(), this.storageCapFactor));
+		}
+		List<Id<Link>> linkIds = new ArrayList<>(eventLinks.keySet());
+		List<EventLink> linkList = new ArrayList<>(eventLinks.values());
+		// consecutive links in each partition, so the positions of the partitions can be written one after the other
+		this.partitions.clear();
+		this.links.clear();
+		for (int i = 0; i < this.numberOfThreads; i++) {
+			int from = i * linkList.size() / this.numberOfThreads;
+			int to = (i + 1) * linkList.size() / this.numberOfThreads;
+			Partition partition = new Partition(i, linkList.subList(from, to));
+			for (int j = from; j < to; j++) {
+				this.links.put(linkIds.get(j), new PartitionLink(linkList.get(j), partition));
+			}
+			this.partitions.add(partition);
+		}
+		this.currentLinks.clear();
+		this.lastSnapshotIndex = -1;
+
+		this.delegate.reset(iteration);
+	}
+
+	/**
+	 * @return <code>false</code> if the time is after the time window, i.e. the event must be ignored
+	 */
+	private boolean testForSnapshot(final double time) {
+		if (time >= this.toTime) {
+			return false;
+		}
+		if (!this.running) {
+			startThreads();
+		}
+		int snapshotIndex = (int) (time / this.snapshotPeriod);
+		if (this.lastSnapshotIndex == -1) {
+			this.lastSnapshotIndex = snapshotIndex;
+		}
+		while (snapshotIndex > this.lastSnapshotIndex) {
+			this.lastSnapshotIndex++;
+			double snapshotTime = this.lastSnapshotIndex * this.snapshotPeriod;
+			doSnapshot(snapshotTime);
+		}
+		return true;
+	}
+
+	private void doSnapshot(final double time) {
+		if (time >= this.fromTime && !this.snapshotWriters.isEmpty()) {
+			SnapshotGenerator.checkSnapshotStyle(this.snapshotStyle);
+			checkFailure();
+			Snapshot snapshot = new Snapshot(time, this.partitions.size());
+			for (Partition partition : this.partitions) {
+				partition.addSnapshot(snapshot);
+			}
+			for (WriterThread writerThread : this.writerThreads) {
+				put(writerThread.snapshots, snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Writes the snapshots up to the end of the time window, if one is set, and waits for the writers.
+	 */
+	public final void finish() {
+		if (this.toTime != Double.POSITIVE_INFINITY && this.lastSnapshotIndex != -1) {
+			int snapshotIndex = (int) (this.toTime / this.snapshotPeriod);
+			while (snapshotIndex > this.lastSnapshotIndex) {
+				this.lastSnapshotIndex++;
+				doSnapshot(this.lastSnapshotIndex * this.snapshotPeriod);
+			}
+		}
+		stopThreads();
+		checkFailure();
+		for (SnapshotWriter writer : this.snapshotWriters) {
+			writer.finish();
+		}
+	}
+
+	private void startThreads() {
+		for (Partition partition : this.partitions) {
+			partition.start();
+		}
+		this.writerThreads.clear();
+		for (int i = 0; i < this.snapshotWriters.size(); i++) {
+			WriterThread writerThread = new WriterThread(this.snapshotWriters.get(i), "SnapshotWriter-" + i);
+			writerThread.setDaemon(true);
+			writerThread.start();
+			this.writerThreads.add(writerThread);
+		}
+		this.running = true;
+	}
+
+	private void stopThreads() {
+		if (!this.running) {
+			return;
+		}
+		for (Partition partition : this.partitions) {
+			partition.stop();
+		}
+		for (WriterThread writerThread : this.writerThreads) {
+			put(writerThread.snapshots, Snapshot.LAST);
+		}
+		try {
+			for (Partition partition : this.partitions) {
+				partition.thread.join();
+			}
+			for (WriterThread writerThread : this.writerThreads) {
+				writerThread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		this.writerThreads.clear();
+		this.running = false;
+		log.info("stopped " + this.partitions.size() + " snapshot threads and " + this.snapshotWriters.size() + " writer threads.");
+	}
+
+	private void fail(final RuntimeException e) {
+		if (this.failure == null) {
+			this.failure = e;
+		}
+	}
+
+	private void checkFailure() {
+		if (this.failure != null) {
+			throw new RuntimeException("generating the snapshots failed", this.failure);
+		}
+	}
+
+	private static <T> void put(final BlockingQueue<T> queue, final T element) {
+		try {
+			queue.put(element);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static final class PartitionLink {
+		private final EventLink link;
+		private final Partition partition;
+
+		private PartitionLink(final EventLink link, final Partition partition) {
+			this.link = link;
+			this.partition = partition;
+		}
+	}
+
+	/**
+	 * The events of some agents on the links of a partition, and the snapshot to take after them.
+	 */
+	private static final class Batch {
+		private static final int CAPACITY = 1024;
+
+		private final byte[] types = new byte[CAPACITY];
+		private final EventLink[] links = new EventLink[CAPACITY];
+		@SuppressWarnings("unchecked")
+		private final Id<Person>[] personIds = new Id[CAPACITY];
+		private final double[] times = new double[CAPACITY];
+		private int size = 0;
+		private Snapshot snapshot = null;
+		private boolean last = false;
+	}
+
+	private final class Partition implements Runnable {
+		private final int index;
+		private final List<EventLink> links;
+		private final HashMap<Id<Person>, EventAgent> eventAgents = new HashMap<>(1000, 0.95f);
+		private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final Queue<Batch> emptyBatches = new ConcurrentLinkedQueue<>();
+		private Batch batch = new Batch();
+		private Thread thread = null;
+
+		private Partition(final int index, final List<EventLink> links) {
+			this.index = index;
+			this.links = links;
+		}
+
+		private void start() {
+			this.eventAgents.clear();
+			this.batches.clear();
+			this.batch = new Batch();
+			this.thread = new Thread(this, "SnapshotGenerator-" + this.index);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		private void add(final byte type, final EventLink link, final Id<Person> personId, final double time) {
+			Batch batch = this.batch;
+			batch.types[batch.size] = type;
+			batch.links[batch.size] = link;
+			batch.personIds[batch.size] = personId;
+			batch.times[batch.size] = time;
+			batch.size++;
+			if (batch.size == Batch.CAPACITY) {
+				flush();
+			}
+		}
+
+		private void addSnapshot(final Snapshot snapshot) {
+			this.batch.snapshot = snapshot;
+			flush();
+		}
+
+		private void stop() {
+			this.batch.last = true;
+			flush();
+		}
+
+		private void flush() {
+			put(this.batches, this.batch);
+			this.batch = this.emptyBatches.poll();
+			if (this.batch == null) {
+				this.batch = new Batch();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Batch batch = this.batches.take();
+					if (failure == null) {
+						try {
+							handleEvents(batch);
+						} catch (RuntimeException e) {
+							fail(e);
+						}
+					}
+					if (batch.snapshot != null) {
+						List<AgentSnapshotInfo> positions = new ArrayList<>();
+						try {
+							if (failure == null) {
+								SnapshotGenerator.addVehiclePositions(positions, this.links, batch.snapshot.time, snapshotStyle, snapshotInfoFactory);
+							}
+						} catch (RuntimeException e) {
+							fail(e);
+						} finally {
+							batch.snapshot.positions.set(this.index, positions);
+							batch.snapshot.computed.countDown();
+						}
+					}
+					if (batch.last) {
+						return;
+					}
+					batch.size = 0;
+					batch.snapshot = null;
+					this.emptyBatches.add(batch);
+				}
+			} catch (InterruptedException e) {
+				fail(new RuntimeException(e));
+			}
+		}
+
+		private void handleEvents(final Batch batch) {
+			for (int i = 0; i < batch.size; i++) {
+				EventAgent agent = getEventAgent(batch.personIds[i], batch.times[i]);
+				EventLink link = batch.links[i];
+				switch (batch.types[i]) {
+				case DEPARTURE:
+					link.departure(agent);
+					break;
+				case ARRIVAL:
+					link.arrival(agent);
+					break;
+				case ENTER:
+					link.enter(agent);
+					break;
+				case LEAVE:
+					link.leave(agent);
+					break;
+				case WAIT2LINK:
+					link.wait2link(agent);
+					break;
+				case STUCK:
+					link.stuck(agent);
+					break;
+				default:
+					throw new IllegalStateException("unknown type " + batch.types[i]);
+				}
+			}
+		}
+
+		private EventAgent getEventAgent(final Id<Person> id, final double time) {
+			EventAgent agent = this.eventAgents.get(id);
+			if (agent == null) {
+				agent = new EventAgent(id, time);
+				this.eventAgents.put(id, agent);
+			}
+			agent.time = time;
+			return agent;
+		}
+	}
+
+	/**
+	 * The positions of one snapshot, one list per partition.
+	 */
+	private static final class Snapshot {
+		private static final Snapshot LAST = new Snapshot(Double.NaN, 0);
+
+		private final double time;
+		private final List<List<AgentSnapshotInfo>> positions;
+		private final CountDownLatch computed;
+
+		private Snapshot(final double time, final int numberOfPartitions) {
+			this.time = time;
+			this.positions = new ArrayList<>(numberOfPartitions);
+			for (int i = 0; i < numberOfPartitions; i++) {
+				this.positions.add(null);
+			}
+			this.computed = new CountDownLatch(numberOfPartitions);
+		}
+	}
+
+	private final class WriterThread extends Thread {
+		private final SnapshotWriter writer;
+		private final BlockingQueue<Snapshot> snapshots = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+		private WriterThread(final SnapshotWriter writer, final String name) {
+			super(name);
+			this.writer = writer;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Snapshot snapshot = this.snapshots.take();
+					if (snapshot == Snapshot.LAST) {
+						return;
+					}
+					snapshot.computed.await();
+					if (failure == null) {
+						try {
+							this.writer.beginSnapshot(snapshot.time);
+							for (List<AgentSnapshotInfo> positions : snapshot.positions) {
+								for (AgentSnapshotInfo position : positions) {
+									this.writer.addAgent(position);
+								}
+							}
+							this.writer.endSnapshot();
+						} catch (RuntimeException e) {
+							fail(e);
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				fail(new RuntimeException(e));
+			}
+		}
+	}
+
+}
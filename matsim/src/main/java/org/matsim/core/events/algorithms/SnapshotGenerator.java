@@ -105,7 +105,10 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 	@Override
 	public void handleEvent(final PersonDepartureEvent event) {
 		testForSnapshot(event.getTime());
-		this.eventLinks.get(event.getLinkId()).departure(getEventAgent(event.getPersonId(), event.getTime()));
+		EventLink link = this.eventLinks.get(event.getLinkId());
+		EventAgent agent = getEventAgent(event.getPersonId(), event.getTime());
+		agent.currentLink = link;
+		link.departure(agent);
 	}
 
 	@Override
@@ -117,13 +120,21 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 	@Override
 	public void handleEvent(final LinkEnterEvent event) {
 		testForSnapshot(event.getTime());
-		this.eventLinks.get(event.getLinkId()).enter(getEventAgent(delegate.getDriverOfVehicle(event.getVehicleId()), event.getTime()));
+		EventLink link = this.eventLinks.get(event.getLinkId());
+		EventAgent agent = getEventAgent(delegate.getDriverOfVehicle(event.getVehicleId()), event.getTime());
+		if (agent.currentLink != null) {
+			agent.currentLink.stuck(agent); // use stuck to remove it from wherever it is
+		}
+		agent.currentLink = link;
+		link.enter(agent);
 	}
 
 	@Override
 	public void handleEvent(final LinkLeaveEvent event) {
 		testForSnapshot(event.getTime());
-		this.eventLinks.get(event.getLinkId()).leave(getEventAgent(delegate.getDriverOfVehicle(event.getVehicleId()), event.getTime()));
+		EventAgent agent = getEventAgent(delegate.getDriverOfVehicle(event.getVehicleId()), event.getTime());
+		this.eventLinks.get(event.getLinkId()).leave(agent);
+		agent.currentLink = null;
 	}
 
 	@Override
@@ -138,7 +149,9 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 	public void handleEvent(final PersonStuckEvent event) {
 		testForSnapshot(event.getTime());
 		if (event.getLinkId() != null) { // link id is optional - agent can be teleporting or whatever.
-			this.eventLinks.get(event.getLinkId()).stuck(getEventAgent(event.getPersonId(), event.getTime()));
+			EventAgent agent = getEventAgent(event.getPersonId(), event.getTime());
+			this.eventLinks.get(event.getLinkId()).stuck(agent);
+			agent.currentLink = null;
 		}
 	}
 
@@ -197,21 +210,31 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 
 	private Collection<AgentSnapshotInfo> getVehiclePositions(final double time) {
 		Collection<AgentSnapshotInfo> positions = new ArrayList<>();
-		if (this.snapshotStyle == SnapshotStyle.queue) {
-			for (EventLink link : this.linkList) {
-				link.getVehiclePositionsQueue(positions, time, this.snapshotInfoFactory);
-			}
-		} else if (this.snapshotStyle == SnapshotStyle.equiDist) {
-			for (EventLink link : this.linkList) {
-				link.getVehiclePositionsEquil(positions, time, this.snapshotInfoFactory);
+		addVehiclePositions(positions, this.linkList, time, this.snapshotStyle, this.snapshotInfoFactory);
+		return positions;
+	}
+
+	/*package*/ static void addVehiclePositions(final Collection<AgentSnapshotInfo> positions, final List<EventLink> links,
+			final double time, final SnapshotStyle snapshotStyle, final AgentSnapshotInfoFactory snapshotInfoFactory) {
+		checkSnapshotStyle(snapshotStyle);
+		if (snapshotStyle == SnapshotStyle.queue) {
+			for (EventLink link : links) {
+				link.getVehiclePositionsQueue(positions, time, snapshotInfoFactory);
 			}
 		} else {
+			for (EventLink link : links) {
+				link.getVehiclePositionsEquil(positions, time, snapshotInfoFactory);
+			}
+		}
+	}
+
+	/*package*/ static void checkSnapshotStyle(final SnapshotStyle snapshotStyle) {
+		if (snapshotStyle != SnapshotStyle.queue && snapshotStyle != SnapshotStyle.equiDist) {
 			// log statement to clarify: why only two snapshot styles. Amit Mar'17
-			log.warn("Cannot generate snapshots offline (e.g., from events) for "+this.snapshotStyle
+			log.warn("Cannot generate snapshots offline (e.g., from events) for "+snapshotStyle
 					+ ". This snapshot style is supported during simulation only.");
-			throw new RuntimeException("The snapshotStyle \"" + this.snapshotStyle + "\" is not supported.");
+			throw new RuntimeException("The snapshotStyle \"" + snapshotStyle + "\" is not supported.");
 		}
-		return positions;
 	}
 
 	public final void finish() {
@@ -232,7 +255,7 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 		this.skipUntil = when;
 	}
 
-	private static class EventLink {
+	/*package*/ static class EventLink {
 		private final Link link;
 		private final List<EventAgent> drivingQueue;
 		private final List<EventAgent> parkingQueue;
@@ -248,7 +271,7 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 
 		private final double effectiveCellSize;
 
-		private EventLink(final Link link2, final double capCorrectionFactor, final double effectiveCellSize, final double storageCapFactor) {
+		/*package*/ EventLink(final Link link2, final double capCorrectionFactor, final double effectiveCellSize, final double storageCapFactor) {
 			this.link = link2;
 			this.drivingQueue = new ArrayList<>();
 			this.parkingQueue = new ArrayList<>();
@@ -263,44 +286,37 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 			this.spaceCap = (this.link.getLength() * this.link.getNumberOfLanes()) / this.effectiveCellSize * storageCapFactor;
 		}
 
-		private void enter(final EventAgent agent) {
-			if (agent.currentLink != null) {
-				agent.currentLink.stuck(agent); // use stuck to remove it from wherever it is
-			}
-			agent.currentLink = this;
+		/*package*/ void enter(final EventAgent agent) {
 			this.drivingQueue.add(agent);
 		}
 
-		private void leave(final EventAgent agent) {
+		/*package*/ void leave(final EventAgent agent) {
 			this.drivingQueue.remove(agent);
 			this.buffer.remove(agent);
-			agent.currentLink = null;
 		}
 
-		private void arrival(final EventAgent agent) {
+		/*package*/ void arrival(final EventAgent agent) {
 			this.buffer.remove(agent);
 			this.drivingQueue.remove(agent);
 			this.parkingQueue.add(agent);
 		}
 
-		private void departure(final EventAgent agent) {
-			agent.currentLink = this;
+		/*package*/ void departure(final EventAgent agent) {
 			this.parkingQueue.remove(agent);
 			this.waitingQueue.add(agent);
 		}
 
-		private void wait2link(final EventAgent agent) {
+		/*package*/ void wait2link(final EventAgent agent) {
 			this.waitingQueue.remove(agent);
 			this.buffer.add(agent);
 		}
 
-		private void stuck(final EventAgent agent) {
+		/*package*/ void stuck(final EventAgent agent) {
 			// vehicles can be anywhere when they get stuck
 			this.drivingQueue.remove(agent);
 			this.parkingQueue.remove(agent);
 			this.waitingQueue.remove(agent);
 			this.buffer.remove(agent);
-			agent.currentLink = null;
 		}
 
 		/**
@@ -483,7 +499,7 @@ public class SnapshotGenerator implements PersonDepartureEventHandler, PersonArr
 		}
 	}
 
-	private static class EventAgent implements Comparable<EventAgent> {
+	/*package*/ static class EventAgent implements Comparable<EventAgent> {
 		protected final Id<Person> id;
 		protected final int intId;
 		protected double time;
@@ -0,0 +1,256 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * XmlEventFormatter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleAbortsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
+import org.matsim.core.api.experimental.events.LaneEnterEvent;
+import org.matsim.core.api.experimental.events.LaneLeaveEvent;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
+
+/**
+ * Formats events as xml elements, as written to events files.
+ * <p></p>
+ * The core event types are written directly from their getters, without creating the map of
+ * {@link Event#getAttributes()}, with the same attributes in the same order. All other events, including
+ * subclasses of the core event types, are written from their attribute map, so the output is always the same.
+ */
+/*package*/ final class XmlEventFormatter {
+
+	private interface AttributesFormatter<T extends Event> {
+		/**
+		 * Appends the attributes of the event, except time and type.
+		 */
+		void append(StringBuilder out, T event);
+	}
+
+	private static final Map<Class<? extends Event>, AttributesFormatter<?>> FORMATTERS = new HashMap<>();
+
+	private static <T extends Event> void add(final Class<T> eventClass, final AttributesFormatter<T> formatter) {
+		FORMATTERS.put(eventClass, formatter);
+	}
+
+	static {
+		add(ActivityEndEvent.class, (out, e) -> {
+			appendAttribute(out, ActivityEndEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			if (e.getLinkId() != null) {
+				appendAttribute(out, ActivityEndEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			}
+			if (e.getFacilityId() != null) {
+				appendAttribute(out, ActivityEndEvent.ATTRIBUTE_FACILITY, e.getFacilityId().toString());
+			}
+			appendAttribute(out, ActivityEndEvent.ATTRIBUTE_ACTTYPE, e.getActType());
+		});
+		add(ActivityStartEvent.class, (out, e) -> {
+			appendAttribute(out, ActivityStartEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			if (e.getLinkId() != null) {
+				appendAttribute(out, ActivityStartEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			}
+			if (e.getFacilityId() != null) {
+				appendAttribute(out, ActivityStartEvent.ATTRIBUTE_FACILITY, e.getFacilityId().toString());
+			}
+			appendAttribute(out, ActivityStartEvent.ATTRIBUTE_ACTTYPE, e.getActType());
+		});
+		add(LinkEnterEvent.class, (out, e) -> {
+			appendAttribute(out, LinkEnterEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, LinkEnterEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+		});
+		add(LinkLeaveEvent.class, (out, e) -> {
+			appendAttribute(out, LinkLeaveEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, LinkLeaveEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+		});
+		add(PersonArrivalEvent.class, (out, e) -> {
+			appendAttribute(out, PersonArrivalEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			appendAttribute(out, PersonArrivalEvent.ATTRIBUTE_LINK, toString(e.getLinkId()));
+			if (e.getLegMode() != null) {
+				appendAttribute(out, PersonArrivalEvent.ATTRIBUTE_LEGMODE, e.getLegMode());
+			}
+		});
+		add(PersonDepartureEvent.class, (out, e) -> {
+			appendAttribute(out, PersonDepartureEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			appendAttribute(out, PersonDepartureEvent.ATTRIBUTE_LINK, toString(e.getLinkId()));
+			if (e.getLegMode() != null) {
+				appendAttribute(out, PersonDepartureEvent.ATTRIBUTE_LEGMODE, e.getLegMode());
+			}
+		});
+		add(PersonEntersVehicleEvent.class, (out, e) -> {
+			appendAttribute(out, PersonEntersVehicleEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			appendAttribute(out, PersonEntersVehicleEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+		});
+		add(PersonLeavesVehicleEvent.class, (out, e) -> {
+			appendAttribute(out, PersonLeavesVehicleEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			appendAttribute(out, PersonLeavesVehicleEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+		});
+		add(PersonMoneyEvent.class, (out, e) -> {
+			appendAttribute(out, PersonMoneyEvent.ATTRIBUTE_AMOUNT, e.getAmount());
+			appendAttribute(out, PersonMoneyEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+		});
+		add(PersonStuckEvent.class, (out, e) -> {
+			if (e.getLinkId() != null) {
+				appendAttribute(out, PersonStuckEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			}
+			if (e.getLegMode() != null) {
+				appendAttribute(out, PersonStuckEvent.ATTRIBUTE_LEGMODE, e.getLegMode());
+			}
+			appendAttribute(out, PersonStuckEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+		});
+		add(TransitDriverStartsEvent.class, (out, e) -> {
+			appendAttribute(out, TransitDriverStartsEvent.ATTRIBUTE_DRIVER_ID, e.getDriverId().toString());
+			appendAttribute(out, TransitDriverStartsEvent.ATTRIBUTE_VEHICLE_ID, e.getVehicleId().toString());
+			appendAttribute(out, TransitDriverStartsEvent.ATTRIBUTE_TRANSIT_LINE_ID, e.getTransitLineId().toString());
+			appendAttribute(out, TransitDriverStartsEvent.ATTRIBUTE_TRANSIT_ROUTE_ID, e.getTransitRouteId().toString());
+			appendAttribute(out, TransitDriverStartsEvent.ATTRIBUTE_DEPARTURE_ID, e.getDepartureId().toString());
+		});
+		add(VehicleAbortsEvent.class, (out, e) -> {
+			appendAttribute(out, VehicleAbortsEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			appendAttribute(out, VehicleAbortsEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+		});
+		add(VehicleEntersTrafficEvent.class, (out, e) -> {
+			appendAttribute(out, VehicleEntersTrafficEvent.ATTRIBUTE_DRIVER, e.getPersonId().toString());
+			appendAttribute(out, VehicleEntersTrafficEvent.ATTRIBUTE_LINK, toString(e.getLinkId()));
+			if (e.getVehicleId() != null) {
+				appendAttribute(out, VehicleEntersTrafficEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			}
+			if (e.getNetworkMode() != null) {
+				appendAttribute(out, VehicleEntersTrafficEvent.ATTRIBUTE_NETWORKMODE, e.getNetworkMode());
+			}
+			appendAttribute(out, VehicleEntersTrafficEvent.ATTRIBUTE_POSITION, e.getRelativePositionOnLink());
+		});
+		add(VehicleLeavesTrafficEvent.class, (out, e) -> {
+			appendAttribute(out, VehicleLeavesTrafficEvent.ATTRIBUTE_DRIVER, e.getPersonId().toString());
+			appendAttribute(out, VehicleLeavesTrafficEvent.ATTRIBUTE_LINK, toString(e.getLinkId()));
+			if (e.getVehicleId() != null) {
+				appendAttribute(out, VehicleLeavesTrafficEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			}
+			if (e.getNetworkMode() != null) {
+				appendAttribute(out, VehicleLeavesTrafficEvent.ATTRIBUTE_NETWORKMODE, e.getNetworkMode());
+			}
+			appendAttribute(out, VehicleLeavesTrafficEvent.ATTRIBUTE_POSITION, e.getRelativePositionOnLink());
+		});
+		add(AgentWaitingForPtEvent.class, (out, e) -> {
+			appendAttribute(out, AgentWaitingForPtEvent.ATTRIBUTE_AGENT, e.getPersonId().toString());
+			appendAttribute(out, AgentWaitingForPtEvent.ATTRIBUTE_WAITSTOP, e.getWaitingAtStopId().toString());
+			appendAttribute(out, AgentWaitingForPtEvent.ATTRIBUTE_DESTINATIONSTOP, e.getDestinationStopId().toString());
+		});
+		add(LaneEnterEvent.class, (out, e) -> {
+			appendAttribute(out, LaneEnterEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, LaneEnterEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			appendAttribute(out, LaneEnterEvent.ATTRIBUTE_LANE, e.getLaneId().toString());
+		});
+		add(LaneLeaveEvent.class, (out, e) -> {
+			appendAttribute(out, LaneLeaveEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, LaneLeaveEvent.ATTRIBUTE_LINK, e.getLinkId().toString());
+			appendAttribute(out, LaneLeaveEvent.ATTRIBUTE_LANE, e.getLaneId().toString());
+		});
+		add(TeleportationArrivalEvent.class, (out, e) -> {
+			appendAttribute(out, TeleportationArrivalEvent.ATTRIBUTE_PERSON, e.getPersonId().toString());
+			appendAttribute(out, TeleportationArrivalEvent.ATTRIBUTE_DISTANCE, e.getDistance());
+		});
+		add(VehicleArrivesAtFacilityEvent.class, (out, e) -> {
+			appendAttribute(out, VehicleArrivesAtFacilityEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, VehicleArrivesAtFacilityEvent.ATTRIBUTE_FACILITY, e.getFacilityId().toString());
+			appendAttribute(out, VehicleArrivesAtFacilityEvent.ATTRIBUTE_DELAY, e.getDelay());
+		});
+		add(VehicleDepartsAtFacilityEvent.class, (out, e) -> {
+			appendAttribute(out, VehicleDepartsAtFacilityEvent.ATTRIBUTE_VEHICLE, e.getVehicleId().toString());
+			appendAttribute(out, VehicleDepartsAtFacilityEvent.ATTRIBUTE_FACILITY, e.getFacilityId().toString());
+			appendAttribute(out, VehicleDepartsAtFacilityEvent.ATTRIBUTE_DELAY, e.getDelay());
+		});
+	}
+
+	private XmlEventFormatter() {
+	}
+
+	/**
+	 * Appends the event as xml element to the given StringBuilder.
+	 */
+	@SuppressWarnings("unchecked")
+	static void appendEvent(final StringBuilder out, final Event event) {
+		out.append("\t<event ");
+		AttributesFormatter<Event> formatter = (AttributesFormatter<Event>) FORMATTERS.get(event.getClass());
+		if (formatter != null) {
+			appendAttribute(out, Event.ATTRIBUTE_TIME, event.getTime());
+			appendAttribute(out, Event.ATTRIBUTE_TYPE, event.getEventType());
+			formatter.append(out, event);
+		} else {
+			for (Map.Entry<String, String> entry : event.getAttributes().entrySet()) {
+				appendAttribute(out, entry.getKey(), entry.getValue());
+			}
+		}
+		out.append(" />\n");
+	}
+
+	private static String toString(final Id<?> id) {
+		return id == null ? null : id.toString();
+	}
+
+	/**
+	 * Appends <code>name="value" </code> to the given StringBuilder, encoding the characters of the value
+	 * which have a special meaning in xml. A <code>null</code> value is written as <code>null</code>.
+	 */
+	private static void appendAttribute(final StringBuilder out, final String name, final String value) {
+		out.append(name).append("=\"");
+		if (value == null) {
+			out.append("null");
+		} else {
+			int len = value.length();
+			for (int pos = 0; pos < len; pos++) {
+				char ch = value.charAt(pos);
+				switch (ch) {
+				case '<': out.append("&lt;"); break;
+				case '>': out.append("&gt;"); break;
+				case '\"': out.append("&quot;"); break;
+				case '&': out.append("&amp;"); break;
+				default: out.append(ch);
+				}
+			}
+		}
+		out.append("\" ");
+	}
+
+	/**
+	 * Same as {@link #appendAttribute(StringBuilder, String, String)}, formatting the value like {@link Double#toString(double)}.
+	 */
+	private static void appendAttribute(final StringBuilder out, final String name, final double value) {
+		out.append(name).append("=\"").append(value).append("\" ");
+	}
+
+}
@@ -28,12 +28,18 @@ import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.mobsim.external.ExternalMobsim;
 import org.matsim.core.mobsim.jdeqsim.JDEQSimulation;
 import org.matsim.core.mobsim.qsim.QSimModule;
+import org.matsim.core.mobsim.qsim.QSimStepStatisticsWriter;
+
+import com.google.inject.Singleton;
 
 public class DefaultMobsimModule extends AbstractModule {
     @Override
     public void install() {
         if (getConfig().controler().getMobsim().equals(ControlerConfigGroup.MobsimType.qsim.toString())) {
             install(new QSimModule());
+            bind(QSimStepStatisticsWriter.class).in(Singleton.class);
+            addMobsimListenerBinding().to(QSimStepStatisticsWriter.class);
+            addControlerListenerBinding().to(QSimStepStatisticsWriter.class);
         } else if (getConfig().controler().getMobsim().equals(ControlerConfigGroup.MobsimType.JDEQSim.toString())) {
             bindMobsim().to(JDEQSimulation.class);
         } else if (getConfig().getModule(ExternalMobimConfigGroup.GROUP_NAME) != null &&
@@ -66,13 +66,20 @@ public class JDEQSimulation implements Mobsim {
 		Timer t = new Timer();
 		t.startTimer();
 
-		Scheduler scheduler = new Scheduler(new MessageQueue(), config.getSimulationEndTime());
+		Scheduler scheduler;
+		ParallelScheduler parallelScheduler = null;
+		if (config.getNumberOfThreads() > 1) {
+			parallelScheduler = new ParallelScheduler(this.scenario.getNetwork(), config.getNumberOfThreads(), config.getSimulationEndTime());
+			scheduler = parallelScheduler;
+		} else {
+			scheduler = new Scheduler(new MessageQueue(), config.getSimulationEndTime());
+		}
 		Road.setAllRoads(new HashMap<Id<Link>, Road>());
 
 		// initialize network
 		Road road;
 		for (Link link : this.scenario.getNetwork().getLinks().values()) {
-			road = new Road(scheduler, link);
+			road = parallelScheduler != null ? parallelScheduler.createRoad(link) : new Road(scheduler, link);
 			Road.getAllRoads().put(link.getId(), road);
 		}
 
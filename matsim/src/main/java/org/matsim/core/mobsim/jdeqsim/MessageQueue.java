@@ -19,15 +19,38 @@
 
 package org.matsim.core.mobsim.jdeqsim;
 
+import java.util.ArrayList;
 import java.util.PriorityQueue;
 
 /**
  * The message queue of the micro-simulation.
+ * 
+ * It is a calendar queue: The messages are put into buckets of one second by
+ * their arrival time, and only the messages of the current bucket are kept
+ * sorted in a (small) heap. As most messages arrive within the next few
+ * minutes, putting and getting a message takes amortized constant time.
+ * Messages arriving after the buckets of the calendar are kept in a heap until
+ * the calendar reaches them.
  *
  * @author rashid_waraich
  */
 public class MessageQueue {
-	private PriorityQueue<Message> queue1 = new PriorityQueue<Message>();
+
+	// the time span of a bucket, in seconds
+	private static final double BUCKET_WIDTH = 1.0;
+	// the number of buckets in the calendar, must be a power of two
+	private static final int NUMBER_OF_BUCKETS = 4096;
+	private static final long MAX_BUCKET = Long.MAX_VALUE / 4;
+
+	// the messages up to and including the current bucket
+	private final PriorityQueue<Message> currentMessages = new PriorityQueue<Message>();
+	// the messages of the buckets after the current bucket
+	@SuppressWarnings("unchecked")
+	private final ArrayList<Message>[] buckets = new ArrayList[NUMBER_OF_BUCKETS];
+	private int messagesInBuckets = 0;
+	// the messages after the last bucket of the calendar
+	private final PriorityQueue<Message> futureMessages = new PriorityQueue<Message>();
+	private long currentBucket = -1;
 	private int queueSize = 0;
 
 	/**
@@ -37,10 +60,32 @@ public class MessageQueue {
 	 * @param m
 	 */
 	public void putMessage(Message m) {
-		queue1.add(m);
+		long bucket = getBucket(m.getMessageArrivalTime());
+		if (bucket <= this.currentBucket) {
+			this.currentMessages.add(m);
+		} else if (bucket - this.currentBucket < NUMBER_OF_BUCKETS) {
+			int index = (int) (bucket & (NUMBER_OF_BUCKETS - 1));
+			if (this.buckets[index] == null) {
+				this.buckets[index] = new ArrayList<Message>();
+			}
+			this.buckets[index].add(m);
+			this.messagesInBuckets++;
+		} else {
+			this.futureMessages.add(m);
+		}
 		queueSize++;
 	}
 
+	private static long getBucket(double time) {
+		double bucket = Math.floor(time / BUCKET_WIDTH);
+		if (bucket >= MAX_BUCKET) {
+			return MAX_BUCKET;
+		} else if (bucket <= -MAX_BUCKET) {
+			return -MAX_BUCKET;
+		}
+		return (long) bucket;
+	}
+
 	/**
 	 * 
 	 * Remove the message from the queue and discard it. - queue1.remove(m) does
@@ -65,27 +110,77 @@ public class MessageQueue {
 	 * @return
 	 */
 	public Message getNextMessage() {
-		Message m = null;
-		if (queue1.peek() != null) {
-			// skip over dead messages
-			while ((m = queue1.poll()) != null && !m.isAlive()) {
+		Message m = peekNextMessage();
+		// only decrement, if message fetched
+		if (m != null) {
+			this.currentMessages.poll();
+			queueSize--;
+		}
+		return m;
+	}
 
+	/**
+	 * 
+	 * get the first message in the queue without removing it, or null if there
+	 * are no more messages alive in the queue
+	 *
+	 * @return
+	 */
+	public Message peekNextMessage() {
+		while (true) {
+			Message m;
+			// discard dead messages at the head of the queue
+			while ((m = this.currentMessages.peek()) != null && !m.isAlive()) {
+				this.currentMessages.poll();
 			}
-			// only decrement, if message fetched
 			if (m != null) {
-				queueSize--;
+				return m;
+			}
+			if (!nextBucket()) {
+				return null;
 			}
 		}
+	}
 
-		return m;
+	/**
+	 * moves the messages of the next non-empty bucket to the current messages
+	 * 
+	 * @return false, if there are no more messages
+	 */
+	private boolean nextBucket() {
+		if (this.messagesInBuckets == 0) {
+			if (this.futureMessages.isEmpty()) {
+				return false;
+			}
+			// skip the empty buckets
+			this.currentBucket = getBucket(this.futureMessages.peek().getMessageArrivalTime()) - 1;
+		}
+		this.currentBucket++;
+
+		// the calendar now reaches one bucket further
+		Message future;
+		while ((future = this.futureMessages.peek()) != null
+				&& getBucket(future.getMessageArrivalTime()) - this.currentBucket < NUMBER_OF_BUCKETS) {
+			this.futureMessages.poll();
+			this.queueSize--;
+			putMessage(future);
+		}
+
+		ArrayList<Message> bucket = this.buckets[(int) (this.currentBucket & (NUMBER_OF_BUCKETS - 1))];
+		if (bucket != null && !bucket.isEmpty()) {
+			this.currentMessages.addAll(bucket);
+			this.messagesInBuckets -= bucket.size();
+			bucket.clear();
+		}
+		return true;
 	}
 
 	public boolean isEmpty() {
-		return queue1.size() == 0;
+		return this.currentMessages.isEmpty() && this.messagesInBuckets == 0 && this.futureMessages.isEmpty();
 	}
 
 	public int getQueueSize() {
 		return queueSize;
 	}
 
-}
\ No newline at end of file
+}
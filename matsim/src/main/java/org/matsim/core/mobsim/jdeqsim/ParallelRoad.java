@@ -0,0 +1,146 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelRoad.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * A road of the {@link ParallelScheduler}. Its entry belongs to the partition of
+ * the from node of the link, its exit to the partition of the to node. The two
+ * ends only communicate through messages, which arrive at least the lookahead
+ * of the road later:
+ * <ul>
+ * <li>a vehicle entering the road is added to the queue of cars at the exit
+ * after the lookahead, which is not longer than the free speed travel time,
+ * so the vehicle leaves the road at the same time as in the serial
+ * simulation.</li>
+ * <li>the space of a vehicle leaving the road is available again at the entry
+ * when the gap has travelled back, i.e. after the gap travel time. The serial
+ * simulation only delays the entry of the next vehicle by that time.</li>
+ * </ul>
+ */
+class ParallelRoad extends Road {
+
+	final int entryPartition;
+	final int exitPartition;
+
+	// the delay of adding an entering vehicle at the exit of the road
+	private final double lookahead;
+
+	// the number of cars on the road, as known at the entry of the road
+	private int carsOnRoadAtEntry = 0;
+
+	ParallelRoad(ParallelScheduler scheduler, Link link, int entryPartition, int exitPartition) {
+		super(scheduler, link);
+		this.entryPartition = entryPartition;
+		this.exitPartition = exitPartition;
+		this.lookahead = getLookahead(link);
+	}
+
+	/**
+	 * the minimal time between an event at one end of the road and its effect
+	 * at the other end
+	 */
+	static double getLookahead(Link link) {
+		return Math.min(link.getLength() / link.getFreespeed(), link.getLength() / config.getGapTravelSpeed());
+	}
+
+	@Override
+	protected int getNumberOfCarsOnRoad() {
+		return this.carsOnRoadAtEntry;
+	}
+
+	@Override
+	protected void addCarToRoad(Vehicle vehicle, double simTime, double nextAvailableTimeForLeavingStreet) {
+		this.carsOnRoadAtEntry++;
+		sendMessage(new AddCarMessage(this.scheduler, vehicle, nextAvailableTimeForLeavingStreet), this, simTime + this.lookahead);
+	}
+
+	@Override
+	protected void freeSpaceOnRoad(double simTime) {
+		sendMessage(new FreeSpaceMessage(this.scheduler, simTime), this, simTime + this.gapTravelTime);
+	}
+
+	/**
+	 * Adds a vehicle which entered the road to the queue of cars at the exit of
+	 * the road.
+	 */
+	static class AddCarMessage extends EventMessage {
+
+		private final double nextAvailableTimeForLeavingStreet;
+
+		AddCarMessage(Scheduler scheduler, Vehicle vehicle, double nextAvailableTimeForLeavingStreet) {
+			super(scheduler, vehicle);
+			this.nextAvailableTimeForLeavingStreet = nextAvailableTimeForLeavingStreet;
+			this.priority = JDEQSimConfigGroup.PRIORITY_LEAVE_ROAD_MESSAGE;
+		}
+
+		@Override
+		public void handleMessage() {
+			ParallelRoad road = (ParallelRoad) getReceivingUnit();
+			/*
+			 * only if the free speed of the link has been increased by a network
+			 * change event, the vehicle could reach the end of the road before
+			 * this message arrives
+			 */
+			road.addCarAtExit(this.vehicle, Math.max(this.nextAvailableTimeForLeavingStreet, getMessageArrivalTime()));
+		}
+
+		@Override
+		public void processEvent() {
+			// don't need to output any event
+		}
+	}
+
+	private void addCarAtExit(Vehicle vehicle, double nextAvailableTimeForLeavingStreet) {
+		super.addCarToRoad(vehicle, nextAvailableTimeForLeavingStreet, nextAvailableTimeForLeavingStreet);
+	}
+
+	/**
+	 * Frees the space of a vehicle which left the road at the entry of the road.
+	 */
+	static class FreeSpaceMessage extends EventMessage {
+
+		private final double leaveTime;
+
+		FreeSpaceMessage(Scheduler scheduler, double leaveTime) {
+			super(scheduler, null);
+			this.leaveTime = leaveTime;
+			this.priority = JDEQSimConfigGroup.PRIORITY_LEAVE_ROAD_MESSAGE;
+		}
+
+		@Override
+		public void handleMessage() {
+			((ParallelRoad) getReceivingUnit()).freeSpaceAtEntry(this.leaveTime);
+		}
+
+		@Override
+		public void processEvent() {
+			// don't need to output any event
+		}
+	}
+
+	private void freeSpaceAtEntry(double leaveTime) {
+		this.carsOnRoadAtEntry--;
+		super.freeSpaceOnRoad(leaveTime);
+	}
+
+}
@@ -0,0 +1,485 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelScheduler.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.gbl.Gbl;
+
+/**
+ * A scheduler simulating the roads in parallel, as a conservative parallel
+ * discrete event simulation.
+ * <p></p>
+ * The nodes of the network are partitioned by their x coordinate, and every
+ * partition has its own message queue and thread. The entry of a road belongs
+ * to the partition of the from node of its link, the exit to the partition of
+ * the to node (see {@link ParallelRoad}). The two ends of a road only
+ * communicate through messages arriving at least the lookahead of the road
+ * later, which is the minimum of the free speed and the gap travel time of the
+ * road. So the partitions can process all messages of a time window as long as
+ * the smallest lookahead of the roads between partitions independently. Links
+ * with a lookahead below {@link #MIN_LOOKAHEAD} are not cut between partitions.
+ * <p></p>
+ * Arrivals and the departures of legs not simulated on the network do not
+ * change the state of their road, so they are processed in the partition
+ * sending them, at their exact time, e.g. also if a leg not simulated on the
+ * network ends in another partition.
+ * <p></p>
+ * The events of a time window are passed to the events manager ordered by
+ * time after the window, while the partitions already process the next window.
+ * <p></p>
+ * The results are slightly different to the ones of the serial
+ * {@link Scheduler}: The space of a vehicle leaving a road is only available
+ * again when the gap has travelled to the entry of the road (the serial
+ * scheduler only delays the entry of the next vehicle), messages with the same
+ * time in different partitions are processed in a different order, and a car
+ * leg departing from a link in another partition than the one where the
+ * agent arrived at the activity (only possible after a leg not simulated on
+ * the network) departs at the end of the time window, if its departure time
+ * is before. So activities shorter than the lookahead between such legs may
+ * be extended by up to the lookahead.
+ */
+public class ParallelScheduler extends Scheduler {
+
+	private static final Logger log = Logger.getLogger(ParallelScheduler.class);
+
+	/**
+	 * the minimal lookahead of a link between partitions, in seconds
+	 */
+	public static final double MIN_LOOKAHEAD = 1.0;
+
+	private final double simulationEndTime;
+	private final Map<Id<Node>, Integer> nodePartitions;
+	private final Partition[] partitions;
+	private final double lookahead;
+
+	private final ThreadLocal<Partition> currentPartition = new ThreadLocal<>();
+	private final CyclicBarrier startBarrier;
+	private final CyclicBarrier endBarrier;
+	private volatile double windowEnd;
+	private volatile boolean simulationFinished = false;
+	private long delayedMessages = 0;
+
+	public ParallelScheduler(Network network, int numberOfPartitions, double simulationEndTime) {
+		super(new MessageQueue(), simulationEndTime);
+		this.simulationEndTime = simulationEndTime;
+		this.nodePartitions = partitionNodes(network, numberOfPartitions);
+
+		this.partitions = new Partition[numberOfPartitions];
+		for (int i = 0; i < numberOfPartitions; i++) {
+			this.partitions[i] = new Partition(i);
+		}
+		this.startBarrier = new CyclicBarrier(numberOfPartitions + 1);
+		this.endBarrier = new CyclicBarrier(numberOfPartitions + 1);
+
+		double minLookahead = Double.POSITIVE_INFINITY;
+		int cutLinks = 0;
+		for (Link link : network.getLinks().values()) {
+			if (!this.nodePartitions.get(link.getFromNode().getId()).equals(this.nodePartitions.get(link.getToNode().getId()))) {
+				minLookahead = Math.min(minLookahead, ParallelRoad.getLookahead(link));
+				cutLinks++;
+			}
+		}
+		this.lookahead = cutLinks > 0 ? minLookahead : MIN_LOOKAHEAD;
+		log.info(numberOfPartitions + " partitions with " + cutLinks + " of " + network.getLinks().size()
+				+ " links between partitions, lookahead " + this.lookahead + "[s]");
+	}
+
+	/**
+	 * Partitions the nodes by their x coordinate into partitions with about the
+	 * same number of links. The two nodes of a link with a lookahead below
+	 * {@link #MIN_LOOKAHEAD} are always in the same partition.
+	 */
+	private static Map<Id<Node>, Integer> partitionNodes(Network network, int numberOfPartitions) {
+		final Node[] nodes = network.getNodes().values().toArray(new Node[network.getNodes().size()]);
+		Map<Id<Node>, Integer> nodeIndices = new HashMap<>(nodes.length * 2);
+		for (int i = 0; i < nodes.length; i++) {
+			nodeIndices.put(nodes[i].getId(), i);
+		}
+
+		// union the nodes of links with a short lookahead to clusters
+		int[] clusters = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			clusters[i] = i;
+		}
+		for (Link link : network.getLinks().values()) {
+			if (ParallelRoad.getLookahead(link) < MIN_LOOKAHEAD) {
+				int from = getCluster(clusters, nodeIndices.get(link.getFromNode().getId()));
+				int to = getCluster(clusters, nodeIndices.get(link.getToNode().getId()));
+				clusters[Math.max(from, to)] = Math.min(from, to);
+			}
+		}
+
+		int[] weights = new int[nodes.length];
+		int totalWeight = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			int weight = nodes[i].getInLinks().size() + nodes[i].getOutLinks().size();
+			weights[getCluster(clusters, i)] += weight;
+			totalWeight += weight;
+		}
+
+		Integer[] order = new Integer[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return Double.compare(nodes[i].getCoord().getX(), nodes[j].getCoord().getX());
+			}
+		});
+
+		// the partition of a cluster is decided by its node with the smallest x coordinate
+		int[] clusterPartitions = new int[nodes.length];
+		Arrays.fill(clusterPartitions, -1);
+		long assignedWeight = 0;
+		Map<Id<Node>, Integer> nodePartitions = new HashMap<>(nodes.length * 2);
+		for (int i : order) {
+			int cluster = getCluster(clusters, i);
+			if (clusterPartitions[cluster] < 0) {
+				clusterPartitions[cluster] = totalWeight == 0 ? 0
+						: (int) Math.min(numberOfPartitions - 1, assignedWeight * numberOfPartitions / totalWeight);
+				assignedWeight += weights[cluster];
+			}
+			nodePartitions.put(nodes[i].getId(), clusterPartitions[cluster]);
+		}
+		return nodePartitions;
+	}
+
+	private static int getCluster(int[] clusters, int node) {
+		int cluster = node;
+		while (clusters[cluster] != cluster) {
+			clusters[cluster] = clusters[clusters[cluster]];
+			cluster = clusters[cluster];
+		}
+		return cluster;
+	}
+
+	public Road createRoad(Link link) {
+		return new ParallelRoad(this, link, this.nodePartitions.get(link.getFromNode().getId()),
+				this.nodePartitions.get(link.getToNode().getId()));
+	}
+
+	public double getLookahead() {
+		return this.lookahead;
+	}
+
+	/**
+	 * @return whether the message changes the state of its road. The others, arrivals and departures
+	 * of legs not simulated on the network, can be processed in any partition.
+	 */
+	private static boolean changesRoad(Message m) {
+		if (m instanceof EndLegMessage) {
+			return false;
+		}
+		if (m instanceof StartingLegMessage) {
+			Vehicle vehicle = ((StartingLegMessage) m).vehicle;
+			return vehicle.getCurrentLeg().getMode().equals(TransportMode.car) && vehicle.getCurrentLinkRoute().length > 0;
+		}
+		return true;
+	}
+
+	private static int getPartition(Message m) {
+		ParallelRoad road = (ParallelRoad) m.getReceivingUnit();
+		if (m instanceof EndRoadMessage || m instanceof LeaveRoadMessage || m instanceof ParallelRoad.AddCarMessage) {
+			return road.exitPartition;
+		}
+		return road.entryPartition;
+	}
+
+	@Override
+	public void schedule(Message m) {
+		Partition partition = this.currentPartition.get();
+		int target = getPartition(m);
+		if (partition == null) {
+			// initialization of the simulation
+			this.partitions[target].queue.putMessage(m);
+		} else if (partition.index == target || !changesRoad(m)) {
+			partition.queue.putMessage(m);
+		} else {
+			partition.outbox.add(m);
+		}
+	}
+
+	@Override
+	public void unschedule(Message m) {
+		Partition partition = this.currentPartition.get();
+		if (partition == null) {
+			partition = this.partitions[getPartition(m)];
+		}
+		partition.queue.removeMessage(m);
+	}
+
+	@Override
+	public double getSimTime() {
+		Partition partition = this.currentPartition.get();
+		return partition == null ? this.windowEnd : partition.simTime;
+	}
+
+	@Override
+	public void startSimulation() {
+		EventsManager events = Message.eventsManager;
+		Message.setEventsManager(new PartitionEvents(events));
+		for (Partition partition : this.partitions) {
+			Thread thread = new Thread(partition);
+			thread.setName("JDEQSim partition " + partition.index);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		double simulationStartTime = System.currentTimeMillis();
+		double hourlyLogTime = 3600;
+		try {
+			double windowStart;
+			while ((windowStart = getNextMessageTime()) < this.simulationEndTime) {
+				this.windowEnd = Math.min(windowStart + this.lookahead, this.simulationEndTime);
+				await(this.startBarrier);
+				// pass on the events of the previous window while the partitions process this one
+				RuntimeException flushException = null;
+				try {
+					flushEvents(events);
+				} catch (RuntimeException e) {
+					flushException = e;
+				}
+				await(this.endBarrier);
+				if (flushException != null) {
+					throw flushException;
+				}
+
+				for (Partition partition : this.partitions) {
+					if (partition.error != null) {
+						throw new RuntimeException("Exception in partition " + partition.index, partition.error);
+					}
+					partition.swapEvents();
+				}
+				deliverMessages();
+
+				if (windowStart > hourlyLogTime) {
+					hourlyLogTime = windowStart + 3600;
+					log.info("Simulation at " + windowStart / 3600 + "[h]; s/r:" + windowStart / (System.currentTimeMillis() - simulationStartTime) * 1000);
+					Gbl.printMemoryUsage();
+				}
+			}
+			flushEvents(events);
+		} finally {
+			this.simulationFinished = true;
+			await(this.startBarrier);
+			Message.setEventsManager(events);
+		}
+
+		if (this.delayedMessages > 0) {
+			log.info(this.delayedMessages + " car departures after an arrival in another partition were delayed to the end of their time window.");
+		}
+	}
+
+	private double getNextMessageTime() {
+		double time = Double.POSITIVE_INFINITY;
+		for (Partition partition : this.partitions) {
+			Message m = partition.queue.peekNextMessage();
+			if (m != null) {
+				time = Math.min(time, m.getMessageArrivalTime());
+			}
+		}
+		return time;
+	}
+
+	/**
+	 * Puts the messages sent to other partitions during the last time window
+	 * into the queues of these partitions.
+	 */
+	private void deliverMessages() {
+		for (Partition partition : this.partitions) {
+			for (Message m : partition.outbox) {
+				if (m.getMessageArrivalTime() < this.windowEnd) {
+					// only possible for car departures after an arrival in another partition
+					m.setMessageArrivalTime(this.windowEnd);
+					this.delayedMessages++;
+				}
+				this.partitions[getPartition(m)].queue.putMessage(m);
+			}
+			partition.outbox.clear();
+		}
+	}
+
+	/**
+	 * Merges the events of the partitions of the previous time window by the
+	 * time of the messages producing them.
+	 */
+	private void flushEvents(EventsManager events) {
+		int[] next = new int[this.partitions.length];
+		while (true) {
+			int nextPartition = -1;
+			double nextTime = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < this.partitions.length; i++) {
+				Partition partition = this.partitions[i];
+				if (next[i] < partition.flushTimes.size() && partition.flushTimes.get(next[i]) < nextTime) {
+					nextTime = partition.flushTimes.get(next[i]);
+					nextPartition = i;
+				}
+			}
+			if (nextPartition < 0) {
+				break;
+			}
+			events.processEvent(this.partitions[nextPartition].flushEvents.get(next[nextPartition]++));
+		}
+		for (Partition partition : this.partitions) {
+			partition.flushEvents.clear();
+			partition.flushTimes.resetQuick();
+		}
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private class Partition implements Runnable {
+
+		final int index;
+		final MessageQueue queue = new MessageQueue();
+		final List<Message> outbox = new ArrayList<>();
+		double simTime = 0;
+		volatile Throwable error = null;
+
+		// the events of the current and of the previous time window, with the time of the messages producing them
+		List<Event> events = new ArrayList<>();
+		TDoubleArrayList eventTimes = new TDoubleArrayList();
+		List<Event> flushEvents = new ArrayList<>();
+		TDoubleArrayList flushTimes = new TDoubleArrayList();
+
+		Partition(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			currentPartition.set(this);
+			while (true) {
+				await(startBarrier);
+				if (simulationFinished) {
+					return;
+				}
+				try {
+					double end = windowEnd;
+					Message m;
+					while ((m = this.queue.peekNextMessage()) != null && m.getMessageArrivalTime() < end) {
+						this.queue.getNextMessage();
+						this.simTime = m.getMessageArrivalTime();
+						m.processEvent();
+						m.handleMessage();
+					}
+				} catch (Throwable e) {
+					this.error = e;
+				}
+				await(endBarrier);
+			}
+		}
+
+		void swapEvents() {
+			List<Event> events = this.flushEvents;
+			this.flushEvents = this.events;
+			this.events = events;
+			TDoubleArrayList eventTimes = this.flushTimes;
+			this.flushTimes = this.eventTimes;
+			this.eventTimes = eventTimes;
+		}
+
+	}
+
+	/**
+	 * Collects the events produced by the messages in the partition of the
+	 * current thread. Everything else is passed to the events manager of the
+	 * simulation.
+	 */
+	private class PartitionEvents implements EventsManager {
+
+		private final EventsManager delegate;
+
+		PartitionEvents(EventsManager delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void processEvent(Event event) {
+			Partition partition = currentPartition.get();
+			if (partition == null) {
+				// not produced by a message, e.g. during the initialization
+				this.delegate.processEvent(event);
+				return;
+			}
+			partition.events.add(event);
+			partition.eventTimes.add(partition.simTime);
+		}
+
+		@Override
+		public void addHandler(EventHandler handler) {
+			this.delegate.addHandler(handler);
+		}
+
+		@Override
+		public void removeHandler(EventHandler handler) {
+			this.delegate.removeHandler(handler);
+		}
+
+		@Override
+		public void resetHandlers(int iteration) {
+			this.delegate.resetHandlers(iteration);
+		}
+
+		@Override
+		public void initProcessing() {
+			this.delegate.initProcessing();
+		}
+
+		@Override
+		public void afterSimStep(double time) {
+			this.delegate.afterSimStep(time);
+		}
+
+		@Override
+		public void finishProcessing() {
+			this.delegate.finishProcessing();
+		}
+
+	}
+
+}
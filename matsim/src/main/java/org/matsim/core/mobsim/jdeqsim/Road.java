@@ -87,7 +87,7 @@ public class Road extends SimUnit {
 	private long maxNumberOfCarsOnRoad = 0;
 
 	// the time it takes for a gap to get to the back of the road
-	private double gapTravelTime = 0;
+	protected double gapTravelTime = 0;
 
 	// the cars, which are currently on the road
 	protected LinkedList<Vehicle> carsOnTheRoad = new LinkedList<>();
@@ -141,12 +141,33 @@ public class Road extends SimUnit {
 
 	public void leaveRoad(Vehicle vehicle, double simTime) {
 		assert (this.carsOnTheRoad.getFirst() == vehicle);
-		assert (this.interestedInEnteringRoad.size()==this.deadlockPreventionMessages.size());
 
 		this.carsOnTheRoad.removeFirst();
 		this.earliestDepartureTimeOfCar.removeFirst();
 		this.timeOfLastLeavingVehicle = simTime;
 
+		freeSpaceOnRoad(simTime);
+
+		/*
+		 * tell the car behind the fist car (which is the first car now), when
+		 * it reaches the end of the read
+		 */
+		if (this.carsOnTheRoad.size() > 0) {
+			Vehicle nextVehicle = this.carsOnTheRoad.getFirst();
+			double nextAvailableTimeForLeavingStreet = Math.max(this.earliestDepartureTimeOfCar.getFirst(),
+					this.timeOfLastLeavingVehicle + this.inverseOutFlowCapacity);
+			nextVehicle.scheduleEndRoadMessage(nextAvailableTimeForLeavingStreet, this);
+		}
+
+	}
+
+	/**
+	 * Hands the space of a vehicle, which has left the road at the given time,
+	 * to the vehicles waiting to enter the road.
+	 */
+	protected void freeSpaceOnRoad(double simTime) {
+		assert (this.interestedInEnteringRoad.size()==this.deadlockPreventionMessages.size());
+
 		/*
 		 * the next car waiting for entering the road should now be alloted a
 		 * time for entering the road
@@ -177,23 +198,11 @@ public class Road extends SimUnit {
 				 * and there are no cars on the road, then reset gap (this is
 				 * required, for enterRequest to function properly)
 				 */
-				if (this.carsOnTheRoad.size() == 0) {
+				if (getNumberOfCarsOnRoad() == 0) {
 					this.gap = null;
 				}
 			}
 		}
-
-		/*
-		 * tell the car behind the fist car (which is the first car now), when
-		 * it reaches the end of the read
-		 */
-		if (this.carsOnTheRoad.size() > 0) {
-			Vehicle nextVehicle = this.carsOnTheRoad.getFirst();
-			double nextAvailableTimeForLeavingStreet = Math.max(this.earliestDepartureTimeOfCar.getFirst(),
-					this.timeOfLastLeavingVehicle + this.inverseOutFlowCapacity);
-			nextVehicle.scheduleEndRoadMessage(nextAvailableTimeForLeavingStreet, this);
-		}
-
 	}
 
 	public void enterRoad(Vehicle vehicle, double simTime) {
@@ -202,6 +211,14 @@ public class Road extends SimUnit {
 				/ this.link.getFreespeed(simTime);
 
 		this.noOfCarsPromisedToEnterRoad--;
+		addCarToRoad(vehicle, simTime, nextAvailableTimeForLeavingStreet);
+	}
+
+	/**
+	 * Puts a vehicle, which has entered the road at the given time, at the end
+	 * of the queue of cars on the road.
+	 */
+	protected void addCarToRoad(Vehicle vehicle, double simTime, double nextAvailableTimeForLeavingStreet) {
 		this.carsOnTheRoad.add(vehicle);
 
 		/*
@@ -244,7 +261,7 @@ public class Road extends SimUnit {
 		 */
 
 		// is there any space on the road (including promised entries?)
-		if (this.carsOnTheRoad.size() + this.noOfCarsPromisedToEnterRoad < this.maxNumberOfCarsOnRoad) {
+		if (getNumberOfCarsOnRoad() + this.noOfCarsPromisedToEnterRoad < this.maxNumberOfCarsOnRoad) {
 			/*
 			 * - check, if the gap needs to be considered for entering the road -
 			 * we can find out, the time since when we have a free road for
@@ -309,6 +326,10 @@ public class Road extends SimUnit {
 		}
 	}
 
+	protected int getNumberOfCarsOnRoad() {
+		return this.carsOnTheRoad.size();
+	}
+
 	public void giveBackPromisedSpaceToRoad() {
 		this.noOfCarsPromisedToEnterRoad--;
 	}
@@ -0,0 +1,325 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AgentTimeWheel.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import gnu.trove.map.custom_hash.TObjectDoubleCustomHashMap;
+import gnu.trove.strategy.IdentityHashingStrategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.matsim.core.mobsim.framework.MobsimAgent;
+
+/**
+ * Agents waiting for a point in time, e.g. the end of their activity, in buckets
+ * of one second. Agents are appended to their bucket unsorted; a bucket is sorted
+ * by time once it becomes the current one, agents with the same time by descending
+ * id. Agents more than {@link #NUMBER_OF_BUCKETS} seconds ahead of the current
+ * bucket wait in an overflow heap, from which only the agents that come within
+ * reach of the buckets are moved; agents removed from the overflow are only marked
+ * and dropped once they reach the top of the heap.
+ * <p></p>
+ * Adding, removing and polling an agent does not allocate objects, apart from
+ * growing and sorting the buckets and the entries of the overflow. The methods are synchronized, as agents may be added
+ * from the threads of the parallel qsim, and removed from within-day replanning
+ * threads.
+ */
+final class AgentTimeWheel {
+
+	// about one and a half days
+	private static final int NUMBER_OF_BUCKETS = 1 << 17;
+	private static final long MIN_SLOT = Long.MIN_VALUE / 4;
+	private static final long MAX_SLOT = Long.MAX_VALUE / 4;
+
+	private final Bucket[] buckets = new Bucket[NUMBER_OF_BUCKETS];
+	private final PriorityQueue<OverflowEntry> overflow = new PriorityQueue<>(11, OverflowEntry.BY_TIME);
+	private final Map<MobsimAgent, OverflowEntry> overflowEntries = new IdentityHashMap<>();
+	private long currentSlot = 0;
+	private int agentsInBuckets = 0;
+
+	private final TObjectDoubleCustomHashMap<MobsimAgent> times =
+			new TObjectDoubleCustomHashMap<>(new IdentityHashingStrategy<MobsimAgent>(), 500, 0.5f, Double.NaN);
+
+	private final Comparator<MobsimAgent> byTime = new Comparator<MobsimAgent>() {
+		@Override
+		public int compare(MobsimAgent agent0, MobsimAgent agent1) {
+			return AgentTimeWheel.compare(times.get(agent0), agent0, times.get(agent1), agent1);
+		}
+	};
+
+	private static long getSlot(double time) {
+		double slot = Math.floor(time);
+		if (slot <= MIN_SLOT) {
+			return MIN_SLOT;
+		} else if (slot >= MAX_SLOT) {
+			return MAX_SLOT;
+		}
+		return (long) slot;
+	}
+
+	public synchronized void add(MobsimAgent agent, double time) {
+		this.times.put(agent, time);
+		addToBucket(agent, time);
+	}
+
+	private void addToBucket(MobsimAgent agent, double time) {
+		long slot = Math.max(getSlot(time), this.currentSlot);
+		if (slot - this.currentSlot >= NUMBER_OF_BUCKETS) {
+			OverflowEntry entry = new OverflowEntry(agent, time);
+			this.overflow.add(entry);
+			this.overflowEntries.put(agent, entry);
+			return;
+		}
+		int index = (int) (slot & (NUMBER_OF_BUCKETS - 1));
+		Bucket bucket = this.buckets[index];
+		if (bucket == null) {
+			bucket = new Bucket();
+			this.buckets[index] = bucket;
+		}
+		bucket.append(agent, time);
+		this.agentsInBuckets++;
+	}
+
+	/**
+	 * @return <code>false</code> if the agent was not waiting
+	 */
+	public synchronized boolean remove(MobsimAgent agent) {
+		double time = this.times.remove(agent);
+		if (Double.isNaN(time)) {
+			return false;
+		}
+		OverflowEntry entry = this.overflowEntries.remove(agent);
+		if (entry != null) {
+			entry.removed = true;
+		} else {
+			long slot = Math.max(getSlot(time), this.currentSlot);
+			this.buckets[(int) (slot & (NUMBER_OF_BUCKETS - 1))].remove(agent);
+			this.agentsInBuckets--;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the agents with a time not after <code>now</code> and adds them,
+	 * ordered, to the list.
+	 *
+	 * @return the number of agents added to the list
+	 */
+	public synchronized int pollDue(double now, List<MobsimAgent> agents) {
+		int count = 0;
+		long nowSlot = getSlot(now);
+		while (true) {
+			Bucket bucket = this.buckets[(int) (this.currentSlot & (NUMBER_OF_BUCKETS - 1))];
+			if (bucket != null && bucket.size > 0) {
+				bucket.sort(this.byTime, this.times);
+				int due = bucket.countDue(now);
+				for (int i = 0; i < due; i++) {
+					agents.add(bucket.agents[i]);
+					this.times.remove(bucket.agents[i]);
+				}
+				bucket.removeFirst(due);
+				this.agentsInBuckets -= due;
+				count += due;
+			}
+			if (this.currentSlot >= nowSlot) {
+				return count;
+			}
+			if (this.agentsInBuckets == 0) {
+				// skip the empty buckets
+				OverflowEntry first = peekOverflow();
+				this.currentSlot = first == null ? nowSlot : Math.min(nowSlot, getSlot(first.time));
+			} else {
+				this.currentSlot++;
+			}
+			moveOverflowToBuckets();
+		}
+	}
+
+	/**
+	 * @return the earliest agent in the overflow that was not removed, or <code>null</code>
+	 */
+	private OverflowEntry peekOverflow() {
+		OverflowEntry entry = this.overflow.peek();
+		while (entry != null && entry.removed) {
+			this.overflow.poll();
+			entry = this.overflow.peek();
+		}
+		return entry;
+	}
+
+	/**
+	 * Moves the agents of the overflow which are now within reach of the buckets.
+	 */
+	private void moveOverflowToBuckets() {
+		OverflowEntry entry = peekOverflow();
+		while (entry != null && getSlot(entry.time) - this.currentSlot < NUMBER_OF_BUCKETS) {
+			this.overflow.poll();
+			this.overflowEntries.remove(entry.agent);
+			addToBucket(entry.agent, entry.time);
+			entry = peekOverflow();
+		}
+	}
+
+	/**
+	 * Adds all waiting agents to the list, ordered by their time.
+	 */
+	public synchronized void getAgents(List<MobsimAgent> agents) {
+		int first = agents.size();
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			Bucket bucket = this.buckets[(int) ((this.currentSlot + i) & (NUMBER_OF_BUCKETS - 1))];
+			if (bucket != null && bucket.size > 0) {
+				bucket.sort(this.byTime, this.times);
+				agents.addAll(Arrays.asList(bucket.agents).subList(0, bucket.size));
+			}
+		}
+		List<MobsimAgent> overflowAgents = new ArrayList<>(this.overflowEntries.keySet());
+		Collections.sort(overflowAgents, this.byTime);
+		agents.addAll(overflowAgents);
+		assert agents.size() - first == this.times.size();
+	}
+
+	public synchronized void clear() {
+		for (Bucket bucket : this.buckets) {
+			if (bucket != null) {
+				bucket.removeFirst(bucket.size);
+			}
+		}
+		this.overflow.clear();
+		this.overflowEntries.clear();
+		this.agentsInBuckets = 0;
+		this.times.clear();
+	}
+
+	/**
+	 * @return the time the agent is waiting for, or {@link Double#NaN} if the agent is not waiting
+	 */
+	public synchronized double getTime(MobsimAgent agent) {
+		return this.times.get(agent);
+	}
+
+	public synchronized int size() {
+		return this.times.size();
+	}
+
+	private static final class Bucket {
+		MobsimAgent[] agents = new MobsimAgent[4];
+		double[] times = new double[4];
+		int size = 0;
+		boolean sorted = true;
+
+		private void ensureCapacity() {
+			if (this.size == this.agents.length) {
+				this.agents = Arrays.copyOf(this.agents, this.size * 2);
+				this.times = Arrays.copyOf(this.times, this.size * 2);
+			}
+		}
+
+		void append(MobsimAgent agent, double time) {
+			ensureCapacity();
+			if (this.size > 0 && compare(this.times[this.size - 1], this.agents[this.size - 1], time, agent) > 0) {
+				this.sorted = false;
+			}
+			this.agents[this.size] = agent;
+			this.times[this.size] = time;
+			this.size++;
+		}
+
+		/**
+		 * sorts the agents if some were appended since the last sort
+		 */
+		void sort(Comparator<MobsimAgent> byTime, TObjectDoubleCustomHashMap<MobsimAgent> agentTimes) {
+			if (this.sorted) {
+				return;
+			}
+			Arrays.sort(this.agents, 0, this.size, byTime);
+			for (int i = 0; i < this.size; i++) {
+				this.times[i] = agentTimes.get(this.agents[i]);
+			}
+			this.sorted = true;
+		}
+
+		void remove(MobsimAgent agent) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.agents[i] == agent) {
+					System.arraycopy(this.agents, i + 1, this.agents, i, this.size - i - 1);
+					System.arraycopy(this.times, i + 1, this.times, i, this.size - i - 1);
+					this.size--;
+					this.agents[this.size] = null;
+					return;
+				}
+			}
+		}
+
+		int countDue(double now) {
+			int due = 0;
+			while (due < this.size && this.times[due] <= now) {
+				due++;
+			}
+			return due;
+		}
+
+		void removeFirst(int count) {
+			System.arraycopy(this.agents, count, this.agents, 0, this.size - count);
+			System.arraycopy(this.times, count, this.times, 0, this.size - count);
+			Arrays.fill(this.agents, this.size - count, this.size, null);
+			this.size -= count;
+			if (this.size == 0) {
+				this.sorted = true;
+			}
+		}
+	}
+
+	private static final class OverflowEntry {
+		static final Comparator<OverflowEntry> BY_TIME = new Comparator<OverflowEntry>() {
+			@Override
+			public int compare(OverflowEntry entry0, OverflowEntry entry1) {
+				return AgentTimeWheel.compare(entry0.time, entry0.agent, entry1.time, entry1.agent);
+			}
+		};
+
+		final MobsimAgent agent;
+		final double time;
+		boolean removed = false;
+
+		OverflowEntry(MobsimAgent agent, double time) {
+			this.agent = agent;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Orders by time; if the times are equal, the agent with the larger id comes first.
+	 */
+	private static int compare(double time0, MobsimAgent agent0, double time1, MobsimAgent agent1) {
+		int cmp = Double.compare(time0, time1);
+		if (cmp == 0) {
+			return agent1.getId().compareTo(agent0.getId());
+		}
+		return cmp;
+	}
+
+}
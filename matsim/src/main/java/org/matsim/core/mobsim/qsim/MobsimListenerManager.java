@@ -89,13 +89,26 @@ class MobsimListenerManager implements MatsimManager {
 	}
 
 	/**
-	 * Creates the event and notifies all listeners
+	 * Creates the event and notifies all listeners, also if one of them fails, so that they can all release their
+	 * resources (e.g. background threads) when the mobsim aborts.  The first exception is rethrown afterwards.
 	 */
 	public void fireQueueSimulationBeforeCleanupEvent(){
 		MobsimBeforeCleanupEvent<Mobsim> event = new MobsimBeforeCleanupEvent<>(this.sim);
 		MobsimBeforeCleanupListener[] listener = this.listenerList.getListeners(MobsimBeforeCleanupListener.class);
+		RuntimeException exception = null;
         for (MobsimBeforeCleanupListener aListener : listener) {
-            aListener.notifyMobsimBeforeCleanup(event);
+            try {
+                aListener.notifyMobsimBeforeCleanup(event);
+            } catch (RuntimeException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    log.error("got exception while cleaning up", e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
         }
 	}
 
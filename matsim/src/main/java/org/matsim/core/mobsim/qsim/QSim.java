@@ -30,7 +30,6 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.config.groups.QSimConfigGroup.EndtimeInterpretation;
-import org.matsim.core.events.EventsUtils;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.core.mobsim.framework.AgentSource;
 import org.matsim.core.mobsim.framework.MobsimAgent;
@@ -43,6 +42,7 @@ import org.matsim.core.mobsim.qsim.pt.TransitQSimEngine;
 import org.matsim.core.mobsim.qsim.qnetsimengine.NetsimEngine;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEngine;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QVehicle;
+import org.matsim.core.mobsim.qsim.qnetsimengine.RunnerEventsManager;
 import org.matsim.core.network.NetworkChangeEvent;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.vehicles.Vehicle;
@@ -57,7 +57,6 @@ import com.google.inject.Injector;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This has developed over the last couple of months/years towards an increasingly pluggable module.  The current (dec'2011)
@@ -126,10 +125,25 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 	public static boolean analyzeRunTimes = false;
 	private long startTime = 0;
 	private long qSimInternalTime = 0;
-	private final Map<MobsimEngine, AtomicLong> mobsimEngineRunTimes;
+	private final Map<MobsimEngine, QSimStepStatistics.Column> mobsimEngineRunTimes;
+	private final QSimStepStatistics stepStatistics;
+	private final QSimStepStatistics.Column qSimInternalTimes;
+	private final QSimStepStatistics.Column activeLinks;
+	private final QSimStepStatistics.Column activeNodes;
 	{
-		if (analyzeRunTimes) this.mobsimEngineRunTimes = new HashMap<>();
-		else this.mobsimEngineRunTimes = null;
+		if (analyzeRunTimes) {
+			this.mobsimEngineRunTimes = new LinkedHashMap<>();
+			this.stepStatistics = new QSimStepStatistics(QNetsimEngine.numObservedTimeSteps);
+			this.qSimInternalTimes = this.stepStatistics.createColumn("qsim");
+			this.activeLinks = this.stepStatistics.createColumn("active_links");
+			this.activeNodes = this.stepStatistics.createColumn("active_nodes");
+		} else {
+			this.mobsimEngineRunTimes = null;
+			this.stepStatistics = null;
+			this.qSimInternalTimes = null;
+			this.activeLinks = null;
+			this.activeNodes = null;
+		}
 	}
 
 	/*package (for tests)*/ final InternalInterface internalInterface = new InternalInterface() {
@@ -199,7 +213,8 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 	public QSim(final Scenario sc, EventsManager events ) {
 		this.scenario = sc;
 		if (sc.getConfig().qsim().getNumberOfThreads() > 1) {
-			this.events = EventsUtils.getParallelFeedableInstance(events);
+			// collects the events of the netsim engine runners per runner
+			this.events = new RunnerEventsManager(events);
 		} else {
 			this.events = events;
 		}
@@ -253,6 +268,7 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 	 */
 	/*package*/ void prepareSim() {
 		events.initProcessing();
+		if (analyzeRunTimes) events.addHandler(this.stepStatistics);
 
 		createAgents();
 		this.initSimTimer();
@@ -318,18 +334,29 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 		if (gotException) throw new RuntimeException( "got exception while cleaning up the QSim. Please check the error messages above for details.");
 		events.finishProcessing();
 		if (analyzeRunTimes) {
+			events.removeHandler(this.stepStatistics);
 			log.info("qsim internal cpu time (nanos): " + qSimInternalTime);
-			for (Entry<MobsimEngine, AtomicLong> entry : this.mobsimEngineRunTimes.entrySet()) {
-				log.info(entry.getKey().getClass().toString() + " cpu time (nanos): " + entry.getValue().get());				
+			for (Entry<MobsimEngine, QSimStepStatistics.Column> entry : this.mobsimEngineRunTimes.entrySet()) {
+				log.info(entry.getKey().getClass().toString() + " cpu time (nanos): " + entry.getValue().getTotal());
 			}
 			log.info("");
 			if ( this.netEngine instanceof QNetsimEngine ) {
 				((QNetsimEngine)this.netEngine).printEngineRunTimes();
+				((QNetsimEngine)this.netEngine).addRunTimeColumns(this.stepStatistics);
 				// (yy should somehow be in afterSim()).
 			}
+			this.stepStatistics.logSummary();
 		}
 	}
 
+	/**
+	 * @return the per time step statistics, or <code>null</code> if {@link #analyzeRunTimes} was not set
+	 * @see QSimStepStatisticsWriter
+	 */
+	/*package*/ QSimStepStatistics getStepStatistics() {
+		return this.stepStatistics;
+	}
+
 	/**
 	 * Do one step of the simulation run.
 	 *
@@ -342,7 +369,11 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 
 		this.listenerManager.fireQueueSimulationBeforeSimStepEvent(now);
 		
-		if (analyzeRunTimes) this.qSimInternalTime += System.nanoTime() - this.startTime;
+		if (analyzeRunTimes) {
+			long runTime = System.nanoTime() - this.startTime;
+			this.qSimInternalTime += runTime;
+			this.stepStatistics.add(this.qSimInternalTimes, now, runTime);
+		}
 		
 		/*
 		 * The WithinDayEngine has to perform its replannings before
@@ -351,7 +382,7 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 		if (this.withindayEngine != null) {
 			if (analyzeRunTimes) startTime = System.nanoTime();
 			this.withindayEngine.doSimStep(now);
-			if (analyzeRunTimes) this.mobsimEngineRunTimes.get(this.withindayEngine).addAndGet(System.nanoTime() - this.startTime);
+			if (analyzeRunTimes) this.stepStatistics.add(this.mobsimEngineRunTimes.get(this.withindayEngine), now, System.nanoTime() - this.startTime);
 		}
 
 		// "added" engines
@@ -363,7 +394,12 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 
 			mobsimEngine.doSimStep(now);
 			
-			if (analyzeRunTimes) this.mobsimEngineRunTimes.get(mobsimEngine).addAndGet(System.nanoTime() - this.startTime);
+			if (analyzeRunTimes) this.stepStatistics.add(this.mobsimEngineRunTimes.get(mobsimEngine), now, System.nanoTime() - this.startTime);
+		}
+
+		if (analyzeRunTimes && this.netEngine instanceof QNetsimEngine) {
+			this.stepStatistics.add(this.activeLinks, now, ((QNetsimEngine) this.netEngine).getNumberOfSimulatedLinks());
+			this.stepStatistics.add(this.activeNodes, now, ((QNetsimEngine) this.netEngine).getNumberOfSimulatedNodes());
 		}
 
 		if (analyzeRunTimes) this.startTime = System.nanoTime();
@@ -387,7 +423,11 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 			this.simTimer.incrementTime();
 		}
 		
-		if (analyzeRunTimes) this.qSimInternalTime += System.nanoTime() - this.startTime;
+		if (analyzeRunTimes) {
+			long runTime = System.nanoTime() - this.startTime;
+			this.qSimInternalTime += runTime;
+			this.stepStatistics.add(this.qSimInternalTimes, now, runTime);
+		}
 
 		return doContinue;
 	}
@@ -571,7 +611,8 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 		mobsimEngine.setInternalInterface(this.internalInterface);
 		this.mobsimEngines.add(mobsimEngine);
 		
-		if (analyzeRunTimes) this.mobsimEngineRunTimes.put(mobsimEngine, new AtomicLong());
+		if (analyzeRunTimes) this.mobsimEngineRunTimes.put(mobsimEngine,
+				this.stepStatistics.createColumn(mobsimEngine.getClass().getSimpleName()));
 	}
 
 	@Override
@@ -0,0 +1,192 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QSimStepStatistics.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.qsim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+/**
+ * Collects per time step measurements of the QSim, e.g. the time spent in each engine, the time
+ * each QNetsimEngineRunner spent moving nodes and links or waiting at barriers, the number of active
+ * links and nodes, and the number of events created.
+ * <p></p>
+ * Each measurement is a column of primitive values, indexed by the (integer) time step, so recording
+ * a value is just an array access. The columns grow if the simulation runs longer than the initial number
+ * of time steps. Statistics are only collected if {@link QSim#analyzeRunTimes} is set.
+ * At the end of the simulation, the statistics can be written as tab-separated time series and a
+ * summary (total, median, 95th/99th percentile, maximum per column) can be logged.
+ *
+ * @see QSim#analyzeRunTimes
+ */
+public final class QSimStepStatistics implements BasicEventHandler {
+
+	private final static Logger log = Logger.getLogger(QSimStepStatistics.class);
+
+	private final int numTimeSteps;
+	private final List<Column> columns = new ArrayList<>();
+	private final Column events;
+
+	private int firstTimeStep = Integer.MAX_VALUE;
+	private int lastTimeStep = -1;
+
+	/**
+	 * @param numTimeSteps the initial number of time steps (starting at time 0) of each column.
+	 */
+	public QSimStepStatistics(final int numTimeSteps) {
+		this.numTimeSteps = numTimeSteps;
+		this.events = createColumn("events");
+	}
+
+	/**
+	 * Creates a new column. The values can be recorded with {@link #add(Column, double, long)}.
+	 */
+	public Column createColumn(final String name) {
+		Column column = new Column(name, new long[this.numTimeSteps]);
+		this.columns.add(column);
+		return column;
+	}
+
+	/**
+	 * Adds a column whose values are recorded by someone else, e.g. by a thread of a mobsim engine.
+	 * The values must only be written during the simulation, not while they are written to file.
+	 */
+	public void addColumn(final String name, final long[] values) {
+		this.columns.add(new Column(name, values));
+	}
+
+	/**
+	 * Adds <code>value</code> to the time step of <code>time</code> in the given column.
+	 * Must only be called by the thread running the simulation.
+	 */
+	public void add(final Column column, final double time, final long value) {
+		int timeStep = (int) time;
+		if (timeStep >= 0) {
+			column.add(timeStep, value);
+			if (timeStep < this.firstTimeStep) this.firstTimeStep = timeStep;
+			if (timeStep > this.lastTimeStep) this.lastTimeStep = timeStep;
+		}
+	}
+
+	@Override
+	public void handleEvent(final Event event) {
+		int timeStep = (int) event.getTime();
+		if (timeStep >= 0) {
+			this.events.add(timeStep, 1);
+		}
+	}
+
+	@Override
+	public void reset(final int iteration) {
+		// statistics are collected per QSim instance, nothing to do
+	}
+
+	public void logSummary() {
+		if (this.lastTimeStep < 0) {
+			return;
+		}
+		log.info("per time step statistics between time steps " + this.firstTimeStep + " and " + this.lastTimeStep + ":");
+		log.info("\tcolumn\ttotal\tmedian\tp95\tp99\tmax");
+		for (Column column : this.columns) {
+			long[] values = new long[this.lastTimeStep - this.firstTimeStep + 1];
+			long total = 0;
+			for (int t = this.firstTimeStep; t <= this.lastTimeStep; t++) {
+				values[t - this.firstTimeStep] = column.get(t);
+				total += values[t - this.firstTimeStep];
+			}
+			Arrays.sort(values);
+			log.info("\t" + column.name + "\t" + total + "\t" + percentile(values, 0.5) + "\t" + percentile(values, 0.95)
+					+ "\t" + percentile(values, 0.99) + "\t" + values[values.length - 1]);
+		}
+	}
+
+	private static long percentile(final long[] sortedValues, final double p) {
+		int index = (int) Math.ceil(p * sortedValues.length) - 1;
+		return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+	}
+
+	/**
+	 * Writes one line per observed time step, with one column per measurement. Times are in nanoseconds.
+	 */
+	public void writeFile(final String filename) {
+		try (BufferedWriter out = IOUtils.getBufferedWriter(filename)) {
+			out.write("time");
+			for (Column column : this.columns) {
+				out.write("\t");
+				out.write(column.name);
+			}
+			out.write("\n");
+			for (int t = Math.max(0, this.firstTimeStep); t <= this.lastTimeStep; t++) {
+				out.write(Integer.toString(t));
+				for (Column column : this.columns) {
+					out.write("\t");
+					out.write(Long.toString(column.get(t)));
+				}
+				out.write("\n");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The values of one measurement per time step. The array is replaced by a larger one when a value
+	 * is recorded beyond its end, so the column must only be written by a single thread.
+	 */
+	public static final class Column {
+
+		private final String name;
+		private long[] values;
+
+		private Column(final String name, final long[] values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		private void add(final int timeStep, final long value) {
+			if (timeStep >= this.values.length) {
+				this.values = Arrays.copyOf(this.values, Math.max(timeStep + 1, 2 * this.values.length));
+			}
+			this.values[timeStep] += value;
+		}
+
+		private long get(final int timeStep) {
+			return timeStep < this.values.length ? this.values[timeStep] : 0;
+		}
+
+		public long getTotal() {
+			long total = 0;
+			for (long value : this.values) {
+				total += value;
+			}
+			return total;
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QSimStepStatisticsWriter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.qsim;
+
+import javax.inject.Inject;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+
+/**
+ * Writes the {@link QSimStepStatistics} of each iteration into the iteration directory. It remembers the QSim
+ * when it is initialized, and writes its statistics after the mobsim, when all events are processed.
+ * Nothing is written if {@link QSim#analyzeRunTimes} is not set.
+ */
+public final class QSimStepStatisticsWriter implements MobsimInitializedListener, AfterMobsimListener {
+
+	private final static Logger log = Logger.getLogger(QSimStepStatisticsWriter.class);
+
+	public static final String FILENAME = "qsimStepStatistics.txt.gz";
+
+	private final OutputDirectoryHierarchy controlerIO;
+	private QSim qSim = null;
+
+	@Inject
+	QSimStepStatisticsWriter(final OutputDirectoryHierarchy controlerIO) {
+		this.controlerIO = controlerIO;
+	}
+
+	@Override
+	public void notifyMobsimInitialized(final MobsimInitializedEvent e) {
+		this.qSim = e.getQueueSimulation() instanceof QSim ? (QSim) e.getQueueSimulation() : null;
+	}
+
+	@Override
+	public void notifyAfterMobsim(final AfterMobsimEvent event) {
+		if (this.qSim == null) {
+			return;
+		}
+		QSimStepStatistics stepStatistics = this.qSim.getStepStatistics();
+		this.qSim = null;
+		if (stepStatistics != null) {
+			String filename = this.controlerIO.getIterationFilename(event.getIteration(), FILENAME);
+			log.info("writing qsim step statistics to " + filename);
+			stepStatistics.writeFile(filename);
+		}
+	}
+
+}
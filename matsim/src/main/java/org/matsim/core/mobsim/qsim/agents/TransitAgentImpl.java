@@ -65,6 +65,15 @@ public final class TransitAgentImpl implements PTPassengerAgent {
 		}
 	}
 
+	@Override
+	public final Id<TransitLine> getDesiredTransitLineId() {
+		Leg leg = basicAgentDelegate.getCurrentLeg();
+		if (leg.getRoute() instanceof ExperimentalTransitRoute) {
+			return ((ExperimentalTransitRoute) leg.getRoute()).getLineId();
+		}
+		return null;
+	}
+
 	@SuppressWarnings("static-method")
 	private final boolean containsId(List<TransitRouteStop> stopsToCome,
 			Id<TransitStopFacility> egressStopId) {
@@ -32,16 +32,27 @@ import org.matsim.core.mobsim.qsim.interfaces.TimeVariantLink;
 import org.matsim.core.network.NetworkChangeEvent;
 import org.matsim.core.network.NetworkUtils;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 
 /**
+ * Recalculates the time variant attributes of the netsim links when network change events start. The change events of
+ * the network are sorted once into an array, and each link changed in a time step is recalculated only once, also if
+ * several change events of the step concern it.
+ *
  * @author dgrether
  */
 public final class NetworkChangeEventsEngine implements NetworkChangeEventsEngineI {
 	private static final Logger log = Logger.getLogger(NetworkChangeEventsEngine.class) ;
 	
-	private Queue<NetworkChangeEvent> networkChangeEventsQueue = null;
+	private NetworkChangeEvent[] networkChangeEvents = null;
+	private int nextNetworkChangeEvent = 0;
+	/** change events added during the simulation */
+	private final Queue<NetworkChangeEvent> networkChangeEventsQueue = new PriorityQueue<>(11, new NetworkChangeEvent.StartTimeComparator());
+	private final Set<Link> changedLinks = new LinkedHashSet<>();
 	private Netsim mobsim;
 	
 	private NetworkChangeEventsEngine() {}
@@ -63,32 +74,36 @@ public final class NetworkChangeEventsEngine implements NetworkChangeEventsEngin
 	@Override
 	public void onPrepareSim() {
 		Queue<NetworkChangeEvent> changeEvents = NetworkUtils.getNetworkChangeEvents(this.mobsim.getScenario().getNetwork());
+		this.networkChangeEventsQueue.clear();
+		this.networkChangeEvents = null;
+		this.nextNetworkChangeEvent = 0;
 		if ((changeEvents != null) && (changeEvents.size() > 0)) {
-			this.networkChangeEventsQueue = new PriorityQueue<>(changeEvents.size(), new NetworkChangeEvent.StartTimeComparator());
-			this.networkChangeEventsQueue.addAll(changeEvents);
+			this.networkChangeEvents = changeEvents.toArray(new NetworkChangeEvent[changeEvents.size()]);
+			Arrays.sort(this.networkChangeEvents, new NetworkChangeEvent.StartTimeComparator());
 		}
 
-		// one could replace the above lines by
-//		this.networkChangeEventsQueue = NetworkUtils.getNetworkChangeEvents(this.mobsim.getScenario().getNetwork()) ;
-		// This also passes at least the core tests.  However, the code below "consumes" the network change events queue.
-		// It seems that we should rather not do this.
-
+		// one could iterate over the network change events of the network directly.
+		// However, the code below "consumes" the change events, which we should rather not do with the ones of the network.
 	}
 
 	@Override
 	public void doSimStep(double time) {
-		if ((this.networkChangeEventsQueue != null) && (this.networkChangeEventsQueue.size() > 0)) {
-			handleNetworkChangeEvents(time);
+		if (this.networkChangeEvents != null) {
+			while (this.nextNetworkChangeEvent < this.networkChangeEvents.length && this.networkChangeEvents[this.nextNetworkChangeEvent].getStartTime() <= time) {
+				this.changedLinks.addAll(this.networkChangeEvents[this.nextNetworkChangeEvent++].getLinks());
+			}
 		}
-	}
-
-	private void handleNetworkChangeEvents(final double time) {
 		while ((this.networkChangeEventsQueue.size() > 0) && (this.networkChangeEventsQueue.peek().getStartTime() <= time)) {
-			NetworkChangeEvent event = this.networkChangeEventsQueue.poll();
-			handleNetworkChangeEvent(event);
+			this.changedLinks.addAll(this.networkChangeEventsQueue.poll().getLinks());
+		}
+		if (!this.changedLinks.isEmpty()) {
+			for (Link link : this.changedLinks) {
+				recalcLink(link);
+			}
+			this.changedLinks.clear();
 		}
 	}
-	
+
 	public final void addNetworkChangeEvent( NetworkChangeEvent event ) {
 		// used (and thus implicitly tested) by bdi-abm-integration project.  A separate core test would be good. kai, feb'18
 		
@@ -106,12 +121,16 @@ public final class NetworkChangeEventsEngine implements NetworkChangeEventsEngin
 	
 	private void handleNetworkChangeEvent(NetworkChangeEvent event) {
 		for (Link link : event.getLinks()) {
-			final NetsimLink netsimLink = this.mobsim.getNetsimNetwork().getNetsimLink(link.getId());
-			if ( netsimLink instanceof TimeVariantLink) {
-				((TimeVariantLink) netsimLink).recalcTimeVariantAttributes();
-			} else {
-				throw new RuntimeException("link not time variant") ;
-			}
+			recalcLink(link);
+		}
+	}
+
+	private void recalcLink(Link link) {
+		final NetsimLink netsimLink = this.mobsim.getNetsimNetwork().getNetsimLink(link.getId());
+		if ( netsimLink instanceof TimeVariantLink) {
+			((TimeVariantLink) netsimLink).recalcTimeVariantAttributes();
+		} else {
+			throw new RuntimeException("link not time variant") ;
 		}
 	}
 	
@@ -67,6 +67,18 @@ public interface PTPassengerAgent extends PassengerAgent {
 	
 	public Id<TransitStopFacility> getDesiredDestinationStopId();
 
+	/**
+	 * Asks a passenger waiting at a stop which transit line it wants to use. Waiting passengers are looked up
+	 * by this line when a vehicle arrives, before asking them with {@link #getEnterTransitRoute}. If the line
+	 * changes while the passenger is waiting, e.g. by within-day replanning, the passenger must be indexed again
+	 * with {@link TransitStopAgentTracker#updateAgentAtStop}, otherwise vehicles of the new line will not find it.
+	 *
+	 * @return the transit line id, or <code>null</code> if the passenger may board any line.
+	 */
+	public default Id<TransitLine> getDesiredTransitLineId() {
+		return null;
+	}
+
 	/**
 	 * @return a statistical weight, how many "real" agents this agent represents, e.g. "5.0" if you simulate a 20%-sample.
 	 */
@@ -20,11 +20,16 @@
 
 package org.matsim.core.mobsim.qsim.pt;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
@@ -32,9 +37,19 @@ import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.mobsim.qsim.AgentTracker;
 import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 /**
+ * Keeps track of the agents waiting at transit stops.
+ * <p></p>
+ * The agents waiting at a stop are additionally indexed by the transit line they want to use
+ * ({@link PTPassengerAgent#getDesiredTransitLineId()}), so the agents possibly boarding a vehicle of a line can be
+ * found without looking at all agents waiting at the stop, see {@link #getAgentsAtFacility(Id, Id)}. If the line of
+ * a waiting agent changes, e.g. by within-day replanning, the agent must be indexed again with
+ * {@link #updateAgentAtStop(PTPassengerAgent, Id)}.
+ * Stops may be handled by several threads concurrently; the agents of one stop are synchronized on the stop.
+ *
  * @author mrieser
  */
 public class TransitStopAgentTracker implements AgentTracker {
@@ -42,7 +57,7 @@ public class TransitStopAgentTracker implements AgentTracker {
 	private final static Logger log = Logger.getLogger(TransitStopAgentTracker.class);
 	
 	private final EventsManager events;
-	private final Map<Id<TransitStopFacility>, List<PTPassengerAgent>> agentsAtStops = new ConcurrentHashMap<>();
+	private final Map<Id<TransitStopFacility>, WaitingAgents> agentsAtStops = new ConcurrentHashMap<>();
 
 	public TransitStopAgentTracker(final EventsManager events) {
 		this.events = events;
@@ -52,11 +67,7 @@ public class TransitStopAgentTracker implements AgentTracker {
 		if (stopId == null) {
 			throw new NullPointerException("stop must not be null.");
 		}
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
-		if (agents == null) {
-			agents = new CopyOnWriteArrayList<>();// TODO check again. this might turn out to be slow, but we likely need something thread safe here. marcel/oct2014 
-			this.agentsAtStops.put(stopId, agents);
-		}
+		WaitingAgents agents = this.agentsAtStops.computeIfAbsent(stopId, id -> new WaitingAgents());
 		if ( !agents.add(agent) ) {
 			log.error("did NOT add agent " + agent.getId() + " since it was already there.");
 		}
@@ -68,7 +79,7 @@ public class TransitStopAgentTracker implements AgentTracker {
 		if (stopId == null) {
 			throw new NullPointerException("stopId must not be null.");
 		}
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
 		if (agents != null) {
 			if (!agents.remove(agent)) {
 				log.error("Agent " + agent.getId() + " could not be removed from waiting at stop " + stopId);
@@ -78,16 +89,172 @@ public class TransitStopAgentTracker implements AgentTracker {
 		}
 	}
 
+	/**
+	 * Indexes the agent again by the line it now wants to use, see {@link PTPassengerAgent#getDesiredTransitLineId()}.
+	 * The agent keeps its place in the order of arrival at the stop.
+	 */
+	public void updateAgentAtStop(final PTPassengerAgent agent, final Id<TransitStopFacility> stopId) {
+		if (stopId == null) {
+			throw new NullPointerException("stopId must not be null.");
+		}
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
+		if (agents == null || !agents.update(agent)) {
+			log.error("Agent " + agent.getId() + " could not be updated since it is not waiting at stop " + stopId);
+		}
+	}
+
+	/**
+	 * @return all agents waiting at the stop, in the order they arrived at the stop.
+	 */
 	@Override
 	public List<PTPassengerAgent> getAgentsAtFacility(final Id<? extends Facility> stopId) {
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
 		if (agents == null) {
 			return Collections.emptyList();
 		}
-		return Collections.unmodifiableList(agents);
+		return Collections.unmodifiableList(agents.getAll());
 	}
 
+	/**
+	 * @return the agents waiting at the stop which want to use the line or any line, in the order they arrived at the stop;
+	 * all agents if the line is <code>null</code>.
+	 * Whether they really board a vehicle of the line must still be asked with {@link PTPassengerAgent#getEnterTransitRoute}.
+	 */
+	public List<PTPassengerAgent> getAgentsAtFacility(final Id<? extends Facility> stopId, final Id<TransitLine> lineId) {
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
+		if (agents == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(agents.getForLine(lineId));
+	}
+
+	/**
+	 * @return a copy of the agents waiting at each stop.
+	 */
 	public Map<Id<TransitStopFacility>, List<PTPassengerAgent>> getAgentsAtStop() {
-		return this.agentsAtStops;
+		Map<Id<TransitStopFacility>, List<PTPassengerAgent>> agentsAtStop = new LinkedHashMap<>();
+		for (Map.Entry<Id<TransitStopFacility>, WaitingAgents> e : this.agentsAtStops.entrySet()) {
+			agentsAtStop.put(e.getKey(), e.getValue().getAll());
+		}
+		return agentsAtStop;
+	}
+
+	/**
+	 * The agents waiting at one stop, in the order of their arrival, and by the line they want to use.
+	 */
+	private static final class WaitingAgents {
+		private long nextIndex = 0;
+		private final Map<PTPassengerAgent, Waiting> agents = new LinkedHashMap<>();
+		private final Map<Id<TransitLine>, LinkedHashSet<Waiting>> byLine = new HashMap<>();
+		private final LinkedHashSet<Waiting> anyLine = new LinkedHashSet<>();
+
+		synchronized boolean add(final PTPassengerAgent agent) {
+			if (this.agents.containsKey(agent)) {
+				return false;
+			}
+			Waiting waiting = new Waiting(agent, agent.getDesiredTransitLineId(), this.nextIndex++);
+			this.agents.put(agent, waiting);
+			getLineAgents(waiting.lineId, true).add(waiting);
+			return true;
+		}
+
+		synchronized boolean remove(final PTPassengerAgent agent) {
+			Waiting waiting = this.agents.remove(agent);
+			if (waiting == null) {
+				return false;
+			}
+			removeFromLine(waiting);
+			return true;
+		}
+
+		synchronized boolean update(final PTPassengerAgent agent) {
+			Waiting waiting = this.agents.get(agent);
+			if (waiting == null) {
+				return false;
+			}
+			Id<TransitLine> lineId = agent.getDesiredTransitLineId();
+			if (Objects.equals(lineId, waiting.lineId)) {
+				return true;
+			}
+			removeFromLine(waiting);
+			Waiting updated = new Waiting(agent, lineId, waiting.index);
+			this.agents.put(agent, updated);
+			LinkedHashSet<Waiting> lineAgents = getLineAgents(lineId, true);
+			List<Waiting> later = new ArrayList<>();
+			for (Iterator<Waiting> iter = lineAgents.iterator(); iter.hasNext(); ) {
+				Waiting other = iter.next();
+				if (other.index > updated.index) {
+					later.add(other);
+					iter.remove();
+				}
+			}
+			lineAgents.add(updated);
+			lineAgents.addAll(later);
+			return true;
+		}
+
+		private void removeFromLine(final Waiting waiting) {
+			LinkedHashSet<Waiting> lineAgents = getLineAgents(waiting.lineId, false);
+			lineAgents.remove(waiting);
+			if (lineAgents.isEmpty() && waiting.lineId != null) {
+				this.byLine.remove(waiting.lineId);
+			}
+		}
+
+		private LinkedHashSet<Waiting> getLineAgents(final Id<TransitLine> lineId, final boolean create) {
+			if (lineId == null) {
+				return this.anyLine;
+			}
+			LinkedHashSet<Waiting> lineAgents = this.byLine.get(lineId);
+			if (lineAgents == null && create) {
+				lineAgents = new LinkedHashSet<>();
+				this.byLine.put(lineId, lineAgents);
+			}
+			return lineAgents;
+		}
+
+		synchronized List<PTPassengerAgent> getAll() {
+			return new ArrayList<>(this.agents.keySet());
+		}
+
+		/**
+		 * Merges the agents waiting for the line with the agents waiting for any line, by their arrival.
+		 */
+		synchronized List<PTPassengerAgent> getForLine(final Id<TransitLine> lineId) {
+			if (lineId == null) {
+				return getAll();
+			}
+			LinkedHashSet<Waiting> lineAgents = this.byLine.get(lineId);
+			if (lineAgents == null) {
+				lineAgents = new LinkedHashSet<>();
+			}
+			List<PTPassengerAgent> agents = new ArrayList<>(lineAgents.size() + this.anyLine.size());
+			Iterator<Waiting> lineIter = lineAgents.iterator();
+			Iterator<Waiting> anyIter = this.anyLine.iterator();
+			Waiting nextLine = lineIter.hasNext() ? lineIter.next() : null;
+			Waiting nextAny = anyIter.hasNext() ? anyIter.next() : null;
+			while (nextLine != null || nextAny != null) {
+				if (nextAny == null || (nextLine != null && nextLine.index < nextAny.index)) {
+					agents.add(nextLine.agent);
+					nextLine = lineIter.hasNext() ? lineIter.next() : null;
+				} else {
+					agents.add(nextAny.agent);
+					nextAny = anyIter.hasNext() ? anyIter.next() : null;
+				}
+			}
+			return agents;
+		}
+	}
+
+	private static final class Waiting {
+		final PTPassengerAgent agent;
+		final Id<TransitLine> lineId;
+		final long index;
+
+		Waiting(final PTPassengerAgent agent, final Id<TransitLine> lineId, final long index) {
+			this.agent = agent;
+			this.lineId = lineId;
+			this.index = index;
+		}
 	}
 }
@@ -66,16 +66,15 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 			boolean first = true;
 			for (Identifiable passenger : peopleInVehicle) {
 				cnt2++ ;
-				AgentSnapshotInfo passengerPosition = snapshotInfoFactory.createAgentSnapshotInfo(passenger.getId(), link, 
-						0.9*link.getLength(), cnt2); // for the time being, same position as facilities
+				AgentState agentState;
 				if (passenger.getId().toString().startsWith("pt")) {
-					passengerPosition.setAgentState(AgentState.TRANSIT_DRIVER);
+					agentState = AgentState.TRANSIT_DRIVER;
 				} else if (first) {
-					passengerPosition.setAgentState(AgentState.PERSON_DRIVING_CAR);
+					agentState = AgentState.PERSON_DRIVING_CAR;
 				} else {
-					passengerPosition.setAgentState(AgentState.PERSON_OTHER_MODE);
+					agentState = AgentState.PERSON_OTHER_MODE;
 				}
-				positions.add(passengerPosition);
+				addLinkPosition(positions, passenger.getId(), link, 0.9*link.getLength(), cnt2, agentState); // for the time being, same position as facilities
 				first = false;
 			}
 		}
@@ -85,9 +84,7 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 	public final int positionAgentsInActivities(final Collection<AgentSnapshotInfo> positions, Link link,
 			Collection<MobsimAgent> agentsInActivities,  int cnt2) {
 		for (MobsimAgent pa : agentsInActivities) {
-			AgentSnapshotInfo agInfo = snapshotInfoFactory.createAgentSnapshotInfo(pa.getId(), link, 0.9*link.getLength(), cnt2) ;
-			agInfo.setAgentState( AgentState.PERSON_AT_ACTIVITY ) ;
-			positions.add(agInfo) ;
+			addLinkPosition(positions, pa.getId(), link, 0.9*link.getLength(), cnt2, AgentState.PERSON_AT_ACTIVITY) ;
 			cnt2++ ;
 		}
 		return cnt2;
@@ -109,15 +106,15 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 					if ( !it.hasPrevious() ) {
 						last = true ;
 					}
-					AgentSnapshotInfo passengerPosition = snapshotInfoFactory.createAgentSnapshotInfo(passenger.getId(), link, 0.9*link.getLength(), cnt2); // for the time being, same position as facilities
+					AgentState agentState;
 					if ( passenger.getId().toString().startsWith("pt")) {
-						passengerPosition.setAgentState(AgentState.TRANSIT_DRIVER);
+						agentState = AgentState.TRANSIT_DRIVER;
 					} else if (last) {
-						passengerPosition.setAgentState(AgentState.PERSON_DRIVING_CAR);
+						agentState = AgentState.PERSON_DRIVING_CAR;
 					} else {
-						passengerPosition.setAgentState(AgentState.PERSON_OTHER_MODE);
+						agentState = AgentState.PERSON_OTHER_MODE;
 					}
-					positions.add(passengerPosition);
+					addLinkPosition(positions, passenger.getId(), link, 0.9*link.getLength(), cnt2, agentState); // for the time being, same position as facilities
 					cnt2-- ;
 				}
 				cnt2 += peopleInVehicle.size() ; // setting it correctly for the next output
@@ -128,6 +125,12 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 		return cnt2 ;
 	}
 
+	private void addLinkPosition(Collection<AgentSnapshotInfo> positions, Id<Person> agentId, Link link, double distanceOnLink, int lane,
+			AgentState agentState) {
+		snapshotInfoFactory.addAgentSnapshotInfo(positions, agentId, link.getFromNode().getCoord(), link.getToNode().getCoord(),
+				distanceOnLink, lane, link.getLength(), 0., agentState);
+	}
+
 	public final void positionAgentGivenDistanceFromFNode(final Collection<AgentSnapshotInfo> positions, Coord startCoord, Coord endCoord,
 			double lengthOfCurve, QVehicle veh, double distanceFromFromNode, 
 			Integer lane,	double speedValueBetweenZeroAndOne){
@@ -135,25 +138,24 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 		// The reason for this, in return, is that positionVehiclesAlongLine(...) is a service method for queue models only.  kai, apr'16
 		
 		MobsimDriverAgent driverAgent = veh.getDriver();
-		AgentSnapshotInfo pos = snapshotInfoFactory.createAgentSnapshotInfo(driverAgent.getId(), startCoord, endCoord, 
-				distanceFromFromNode, lane, lengthOfCurve);
-		pos.setColorValueBetweenZeroAndOne(speedValueBetweenZeroAndOne);
+		AgentState agentState;
 		if (driverAgent instanceof TransitDriverAgent){
-			pos.setAgentState(AgentState.TRANSIT_DRIVER);
+			agentState = AgentState.TRANSIT_DRIVER;
 		} else if ( driverAgent.getMode().equals(TransportMode.car)) {
-			pos.setAgentState(AgentState.PERSON_DRIVING_CAR);
+			agentState = AgentState.PERSON_DRIVING_CAR;
 		} else {
-			pos.setAgentState(AgentState.PERSON_OTHER_MODE );
+			agentState = AgentState.PERSON_OTHER_MODE;
 		}
 		if ( scenario.getPopulation().getPersonAttributes().getAttribute( driverAgent.getId().toString(), "marker" ) != null ) { 
-			pos.setAgentState( AgentState.PERSON_OTHER_MODE ) ;
+			agentState = AgentState.PERSON_OTHER_MODE;
 		}
 
 		this.positionPassengers(positions, veh.getPassengers(), distanceFromFromNode, startCoord, 
 				endCoord, lengthOfCurve, lane+5, speedValueBetweenZeroAndOne);
-		// (this is deliberately first memorizing "pos" but then filling in the passengers first)
+		// (this is deliberately first determining the driver's state but then filling in the passengers first)
 
-		positions.add(pos);
+		snapshotInfoFactory.addAgentSnapshotInfo(positions, driverAgent.getId(), startCoord, endCoord, 
+				distanceFromFromNode, lane, lengthOfCurve, speedValueBetweenZeroAndOne, agentState);
 	}
 	
 	private static int wrnCnt = 0 ;
@@ -276,11 +278,8 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 	{
 		Integer lane = 20 ;
 		double speedValue = 1. ;
-		AgentSnapshotInfo pos = this.snapshotInfoFactory.createAgentSnapshotInfo(Id.create("hole", Person.class), upstreamCoord, downstreamCoord, 
-				distanceFromFromNode, lane, curvedLength);
-		pos.setColorValueBetweenZeroAndOne(speedValue);
-		pos.setAgentState(AgentState.PERSON_OTHER_MODE );
-		positions.add(pos);
+		this.snapshotInfoFactory.addAgentSnapshotInfo(positions, Id.create("hole", Person.class), upstreamCoord, downstreamCoord, 
+				distanceFromFromNode, lane, curvedLength, speedValue, AgentState.PERSON_OTHER_MODE);
 	}
 	
 	final void positionPassengers(Collection<AgentSnapshotInfo> positions,
@@ -293,11 +292,9 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 		}
 		for (PassengerAgent passenger : passengers) {
 			int lanePos = laneInt - 2*cnt ;
-			AgentSnapshotInfo passengerPosition = snapshotInfoFactory.createAgentSnapshotInfo(passenger.getId(), startCoord, endCoord, 
-					distanceOnLink, lanePos, lengthOfCurve);
-			passengerPosition.setColorValueBetweenZeroAndOne(speedValueBetweenZeroAndOne);
-			passengerPosition.setAgentState(AgentState.PERSON_OTHER_MODE); // in 2010, probably a passenger
-			positions.add(passengerPosition);
+			snapshotInfoFactory.addAgentSnapshotInfo(positions, passenger.getId(), startCoord, endCoord, 
+					distanceOnLink, lanePos, lengthOfCurve, speedValueBetweenZeroAndOne, 
+					AgentState.PERSON_OTHER_MODE); // in 2010, probably a passenger
 			cnt-- ;
 		}
 	}
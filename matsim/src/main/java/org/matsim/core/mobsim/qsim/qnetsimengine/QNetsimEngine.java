@@ -55,6 +55,7 @@ import org.matsim.core.mobsim.framework.MobsimDriverAgent;
 import org.matsim.core.mobsim.framework.MobsimTimer;
 import org.matsim.core.mobsim.qsim.InternalInterface;
 import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.mobsim.qsim.QSimStepStatistics;
 import org.matsim.core.mobsim.qsim.interfaces.AgentCounter;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimEngine;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimVehicle;
@@ -120,8 +121,22 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 	private ExecutorService pool;
 
 	private final boolean usingThreadpool;
+
+	/*
+	 * Only set if the QSim runs with more than one thread. Then, the runners
+	 * handle the departures from their links while moving, instead of the
+	 * thread calling the departure handler, and collect their events.
+	 */
+	private RunnerEventsManager runnerEvents = null;
+	private final ThreadLocal<QNetsimEngineRunner> currentRunner = new ThreadLocal<>();
+	private double lastRunTime = Double.NEGATIVE_INFINITY;
+
+	// departures which cannot be handled by a runner, as the vehicle is parked on another link
+	private final List<MobsimDriverAgent> serialDepartingAgents = new ArrayList<>();
+	private final List<Id<Link>> serialDepartureLinkIds = new ArrayList<>();
 	
 	// for detailed run time analysis - used in combination with QSim.analyzeRunTimes
+	// (initial number of observed time steps, the run time arrays grow if the simulation runs longer)
 	public static int numObservedTimeSteps = 24*3600;
 	public static boolean printRunTimesPerTimeStep = false;
 	
@@ -252,6 +267,14 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 			this.startBarrier.arriveAndAwaitAdvance();
 		}
 
+		if (this.runnerEvents != null) {
+			// departures handed over to the runners in the last time step
+			for (QNetsimEngineRunner engine : this.engines) {
+				engine.handleRemainingDepartures();
+			}
+			handleSerialDepartures(internalInterface.getMobsim().getSimTimer().getTimeOfDay());
+		}
+
 		/* Reset vehicles on ALL links. We cannot iterate only over the active links
 		 * (this.simLinksArray), because there may be links that have vehicles only
 		 * in the buffer (such links are *not* active, as the buffer gets emptied
@@ -336,6 +359,15 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 			this.startBarrier.arriveAndAwaitAdvance();
 			this.endBarrier.arriveAndAwaitAdvance();
 		}
+		this.lastRunTime = time;
+
+		if (this.runnerEvents != null) {
+			// pass on the events runner by runner, so their order does not depend on the scheduling of the threads
+			for (QNetsimEngineRunner engine : this.engines) {
+				this.runnerEvents.flush(engine.events);
+			}
+			handleSerialDepartures(time);
+		}
 	}
 
 
@@ -418,6 +450,62 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 		this.internalInterface.arrangeNextAgentState(driver);
 	}
 
+	/*package*/ void setCurrentRunner(QNetsimEngineRunner runner) {
+		if (runner == null) {
+			this.currentRunner.remove();
+		} else {
+			this.currentRunner.set(runner);
+		}
+	}
+
+	/**
+	 * Hands the departure of a driver over to the runner owning the departure
+	 * link, if the runners handle departures. Departures before the runners move
+	 * in the current time step are handled by the runners in this time step.
+	 * Departures while the runners move, i.e. of agents who arrived and
+	 * continue right away, are handled right away if they are from an active
+	 * link of the current runner, and in the next time step otherwise.
+	 *
+	 * @return <code>false</code> if the departure has to be handled right away
+	 */
+	/*package*/ boolean addDepartureToRunner(MobsimDriverAgent agent, Id<Link> linkId) {
+		if (this.runnerEvents == null) {
+			return false;
+		}
+		AbstractQLink qLink = (AbstractQLink) this.network.getNetsimLink(linkId);
+		QNetsimEngineRunner owner = (QNetsimEngineRunner) qLink.getNetElementActivationRegistry();
+		QNetsimEngineRunner runner = this.currentRunner.get();
+		if (runner == null) {
+			if (this.qsim.getSimTimer().getTimeOfDay() <= this.lastRunTime
+					|| !this.dpHandler.isDepartureLocalToLink(agent, linkId)) {
+				// the runners have already moved in this time step, or the vehicle is teleported from another link
+				return false;
+			}
+			owner.addDeparture(agent, linkId);
+		} else if (runner == owner && qLink.isActive() && this.dpHandler.isDepartureLocalToLink(agent, linkId)) {
+			// the link needs not be activated, which is not allowed while the runner moves its links
+			return false;
+		} else {
+			owner.addDelayedDeparture(agent, linkId);
+		}
+		return true;
+	}
+
+	/*package*/ void addSerialDeparture(MobsimDriverAgent agent, Id<Link> linkId) {
+		synchronized (this.serialDepartingAgents) {
+			this.serialDepartingAgents.add(agent);
+			this.serialDepartureLinkIds.add(linkId);
+		}
+	}
+
+	private void handleSerialDepartures(double now) {
+		for (int i = 0; i < this.serialDepartingAgents.size(); i++) {
+			this.dpHandler.handleCarDeparture(now, this.serialDepartingAgents.get(i), this.serialDepartureLinkIds.get(i));
+		}
+		this.serialDepartingAgents.clear();
+		this.serialDepartureLinkIds.clear();
+	}
+
 	private void initQSimEngineThreads() {
 
 		this.engines = new ArrayList<>();
@@ -427,6 +515,9 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 		this.endBarrier = new Phaser(this.numOfThreads + 1);
 
 		numOfRunners = this.numOfThreads;
+		if (this.numOfThreads > 1 && this.qsim.getEventsManager() instanceof RunnerEventsManager) {
+			this.runnerEvents = (RunnerEventsManager) this.qsim.getEventsManager();
+		}
 		if (this.usingThreadpool) {
 			// The number of runners should be larger than the number of threads, yes,
 			// but see MATSIM-404 - Simulation result still depends on the number of runners.
@@ -448,6 +539,9 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 				thread.setDaemon(true);	// make the Thread Daemons so they will terminate automatically
 				thread.start();
 			}
+			if (this.runnerEvents != null) {
+				engine.setAgentHandling(this, this.runnerEvents);
+			}
 			this.engines.add(engine);
 		}
 
@@ -527,13 +621,17 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 		long sum = 0;
 		long sumMin = 0;
 		long sumMax = 0;
-		for (int i = 0; i < numObservedTimeSteps; i++) {
+		int numTimeSteps = 0;
+		for (QNetsimEngineRunner runner : this.engines) {
+			numTimeSteps = Math.max(numTimeSteps, runner.runTimes.length);
+		}
+		for (int i = 0; i < numTimeSteps; i++) {
 			StringBuffer sb = new StringBuffer();
 			sb.append("\t" + i);
 			long min = Long.MAX_VALUE;
 			long max = Long.MIN_VALUE;
 			for (QNetsimEngineRunner runner : this.engines) {
-				long runTime = runner.runTimes[i];
+				long runTime = i < runner.runTimes.length ? runner.runTimes[i] : 0;
 				sum += runTime;
 				if (runTime < min) min = runTime;
 				if (runTime > max) max = runTime;
@@ -550,6 +648,22 @@ public class QNetsimEngine implements MobsimEngine, NetsimEngine {
 		log.info("sum all run times / num threads: " + sum / this.numOfThreads);
 	}
 	
+	/**
+	 * Adds the run times of the QNetsimEngineRunners per time step to the given statistics:
+	 * the time spent moving nodes, moving links, waiting at the barrier between the two, and in total.
+	 */
+	public void addRunTimeColumns(QSimStepStatistics statistics) {
+		if (!QSim.analyzeRunTimes) return;
+
+		for (int i = 0; i < this.engines.size(); i++) {
+			QNetsimEngineRunner runner = this.engines.get(i);
+			statistics.addColumn("runner_" + i + "_nodes", runner.nodeTimes);
+			statistics.addColumn("runner_" + i + "_links", runner.linkTimes);
+			statistics.addColumn("runner_" + i + "_wait", runner.waitTimes);
+			statistics.addColumn("runner_" + i + "_total", runner.runTimes);
+		}
+	}
+
 	private static class NamedThreadFactory implements ThreadFactory {
 		private int count = 0;
 
@@ -20,7 +20,11 @@
 
 package org.matsim.core.mobsim.qsim.qnetsimengine;
 
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.gbl.Gbl;
+import org.matsim.core.mobsim.framework.MobsimDriverAgent;
 import org.matsim.core.mobsim.qsim.QSim;
 
 import java.util.*;
@@ -76,11 +80,42 @@ class QNetsimEngineRunner extends NetElementActivationRegistry implements Runnab
 
 	private boolean movingNodes;
 
+	/*
+	 * Only set if the runners handle the departures from their links, i.e. if
+	 * the QSim runs with more than one thread. The events created while moving,
+	 * including those of arriving agents, are collected in the events list, and
+	 * passed on by the QNetsimEngine after all runners have finished the time step.
+	 */
+	private QNetsimEngine netsimEngine = null;
+	private RunnerEventsManager eventsManager = null;
+	/*package*/ final List<Event> events = new ArrayList<>();
+
+	// departures from links of this runner, added while the runners wait
+	private final List<MobsimDriverAgent> departingAgents = new ArrayList<>();
+	private final List<Id<Link>> departureLinkIds = new ArrayList<>();
+
+	// departures added by other runners while moving, handled in the next time step
+	private final List<MobsimDriverAgent> delayedDepartingAgents = new ArrayList<>();
+	private final List<Id<Link>> delayedDepartureLinkIds = new ArrayList<>();
+
 	/*package*/ long[] runTimes;
+	// time spent moving nodes, moving links, and waiting at the separation barrier, per time step
+	/*package*/ long[] nodeTimes;
+	/*package*/ long[] linkTimes;
+	/*package*/ long[] waitTimes;
 	private long startTime = 0;
 	{	
-		if (QSim.analyzeRunTimes) runTimes = new long[QNetsimEngine.numObservedTimeSteps];
-		else runTimes = null;
+		if (QSim.analyzeRunTimes) {
+			runTimes = new long[QNetsimEngine.numObservedTimeSteps];
+			nodeTimes = new long[QNetsimEngine.numObservedTimeSteps];
+			linkTimes = new long[QNetsimEngine.numObservedTimeSteps];
+			waitTimes = new long[QNetsimEngine.numObservedTimeSteps];
+		} else {
+			runTimes = null;
+			nodeTimes = null;
+			linkTimes = null;
+			waitTimes = null;
+		}
 	}
 	
 	/*package*/ QNetsimEngineRunner(Phaser startBarrier, Phaser separationBarrier, Phaser endBarrier) {
@@ -98,6 +133,12 @@ class QNetsimEngineRunner extends NetElementActivationRegistry implements Runnab
 
 	/*package*/ void setTime(final double t) {
 		time = t;
+		moveDelayedDepartures();
+	}
+
+	/*package*/ void setAgentHandling(QNetsimEngine netsimEngine, RunnerEventsManager eventsManager) {
+		this.netsimEngine = netsimEngine;
+		this.eventsManager = eventsManager;
 	}
 
 	public void afterSim() {
@@ -116,14 +157,43 @@ class QNetsimEngineRunner extends NetElementActivationRegistry implements Runnab
 			return false;
 		}
 
+		if (QSim.analyzeRunTimes) this.startTime = System.nanoTime();
+
+		startAgentHandling();
 		if (this.movingNodes) {
 			moveNodes();
 		} else {
+			handleDepartures();
 			moveLinks();
 		}
+		endAgentHandling();
+
+		if (QSim.analyzeRunTimes) {
+			int bin = (int) this.time;
+			if (bin >= 0) {
+				ensureRunTimesCapacity(bin);
+				long duration = System.nanoTime() - this.startTime;
+				if (this.movingNodes) this.nodeTimes[bin] = duration;
+				else this.linkTimes[bin] = duration;
+				this.runTimes[bin] += duration;
+			}
+		}
 		return true ;
 	}
 
+	/**
+	 * The run time arrays start with {@link QNetsimEngine#numObservedTimeSteps} time steps and grow if the
+	 * simulation runs longer. They are only written by the thread of this runner and read after the simulation.
+	 */
+	private void ensureRunTimesCapacity(int bin) {
+		if (bin < this.runTimes.length) return;
+		int length = Math.max(bin + 1, 2 * this.runTimes.length);
+		this.runTimes = Arrays.copyOf(this.runTimes, length);
+		this.nodeTimes = Arrays.copyOf(this.nodeTimes, length);
+		this.linkTimes = Arrays.copyOf(this.linkTimes, length);
+		this.waitTimes = Arrays.copyOf(this.waitTimes, length);
+	}
+
 	@Override
 	public void run() {
 
@@ -144,17 +214,32 @@ class QNetsimEngineRunner extends NetElementActivationRegistry implements Runnab
 				return;
 			}
 
+			startAgentHandling();
+
 			moveNodes();
 
+			long nodesEnd = QSim.analyzeRunTimes ? System.nanoTime() : 0;
+
 			// After moving the QNodes all we use a Phaser to synchronize the threads.
 			this.separationBarrier.arriveAndAwaitAdvance();
 
+			long linksStart = QSim.analyzeRunTimes ? System.nanoTime() : 0;
+
+			handleDepartures();
 			moveLinks();
 
+			endAgentHandling();
+
 			if (QSim.analyzeRunTimes) {
 				long end = System.nanoTime();
 				int bin = (int) this.time;
-				if (bin < this.runTimes.length) this.runTimes[bin] = end - this.startTime;
+				if (bin >= 0) {
+					ensureRunTimesCapacity(bin);
+					this.runTimes[bin] = end - this.startTime;
+					this.nodeTimes[bin] = nodesEnd - this.startTime;
+					this.waitTimes[bin] = linksStart - nodesEnd;
+					this.linkTimes[bin] = end - linksStart;
+				}
 			}
 			
 			/*
@@ -191,6 +276,70 @@ class QNetsimEngineRunner extends NetElementActivationRegistry implements Runnab
 		lockLinks = false;
 	}
 
+	private void startAgentHandling() {
+		if (this.netsimEngine != null) {
+			this.netsimEngine.setCurrentRunner(this);
+			this.eventsManager.setBuffer(this.events);
+		}
+	}
+
+	private void endAgentHandling() {
+		if (this.netsimEngine != null) {
+			this.netsimEngine.setCurrentRunner(null);
+			this.eventsManager.setBuffer(null);
+		}
+	}
+
+	/*
+	 * Departures are only added while the runners wait. Departures from
+	 * other runners are added while they move, thus they are handled in
+	 * the next time step.
+	 */
+	/*package*/ void addDeparture(MobsimDriverAgent agent, Id<Link> linkId) {
+		this.departingAgents.add(agent);
+		this.departureLinkIds.add(linkId);
+	}
+
+	/*package*/ void addDelayedDeparture(MobsimDriverAgent agent, Id<Link> linkId) {
+		synchronized (this.delayedDepartingAgents) {
+			this.delayedDepartingAgents.add(agent);
+			this.delayedDepartureLinkIds.add(linkId);
+		}
+	}
+
+	private void moveDelayedDepartures() {
+		synchronized (this.delayedDepartingAgents) {
+			this.departingAgents.addAll(this.delayedDepartingAgents);
+			this.departureLinkIds.addAll(this.delayedDepartureLinkIds);
+			this.delayedDepartingAgents.clear();
+			this.delayedDepartureLinkIds.clear();
+		}
+	}
+
+	private void handleDepartures() {
+		if (this.departingAgents.isEmpty()) {
+			return;
+		}
+		VehicularDepartureHandler departureHandler = this.netsimEngine.getDepartureHandler();
+		for (int i = 0; i < this.departingAgents.size(); i++) {
+			MobsimDriverAgent agent = this.departingAgents.get(i);
+			Id<Link> linkId = this.departureLinkIds.get(i);
+			if (departureHandler.isDepartureLocalToLink(agent, linkId)) {
+				departureHandler.handleCarDeparture(this.time, agent, linkId);
+			} else {
+				// the vehicle is parked on a link of another runner
+				this.netsimEngine.addSerialDeparture(agent, linkId);
+			}
+		}
+		this.departingAgents.clear();
+		this.departureLinkIds.clear();
+	}
+
+	/*package*/ void handleRemainingDepartures() {
+		moveDelayedDepartures();
+		handleDepartures();
+	}
+
 	/*
 	 * This method is only called while links are NOT "moved", i.e. their
 	 * doStimStep(...) methods are called. To ensure that, we  use a boolean lock.
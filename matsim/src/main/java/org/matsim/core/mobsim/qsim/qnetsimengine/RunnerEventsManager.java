@@ -0,0 +1,110 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * RunnerEventsManager.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.EventHandler;
+
+/**
+ * The events manager of a parallel {@link org.matsim.core.mobsim.qsim.QSim}.
+ * While a {@link QNetsimEngineRunner} moves its nodes and links, the events
+ * created by its thread are collected in a buffer of the runner. After all
+ * runners have finished the time step, the {@link QNetsimEngine} passes the
+ * buffers on runner by runner, so the events of a runner are neither
+ * interleaved with the events of other runners nor delayed by the lock of
+ * the synchronized events manager.
+ * <p></p>
+ * Events created by any other thread are passed on right away.
+ */
+public final class RunnerEventsManager implements EventsManager {
+
+	private final EventsManager delegate;
+
+	private final ThreadLocal<List<Event>> buffers = new ThreadLocal<>();
+
+	public RunnerEventsManager(EventsManager events) {
+		this.delegate = EventsUtils.getParallelFeedableInstance(events);
+	}
+
+	@Override
+	public void processEvent(Event event) {
+		List<Event> buffer = this.buffers.get();
+		if (buffer != null) {
+			buffer.add(event);
+		} else {
+			this.delegate.processEvent(event);
+		}
+	}
+
+	/**
+	 * Collects the events of the current thread in the buffer, or passes them
+	 * on right away again if the buffer is <code>null</code>.
+	 */
+	/*package*/ void setBuffer(List<Event> buffer) {
+		if (buffer == null) {
+			this.buffers.remove();
+		} else {
+			this.buffers.set(buffer);
+		}
+	}
+
+	/*package*/ void flush(List<Event> buffer) {
+		for (Event event : buffer) {
+			this.delegate.processEvent(event);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void addHandler(EventHandler handler) {
+		this.delegate.addHandler(handler);
+	}
+
+	@Override
+	public void removeHandler(EventHandler handler) {
+		this.delegate.removeHandler(handler);
+	}
+
+	@Override
+	public void resetHandlers(int iteration) {
+		this.delegate.resetHandlers(iteration);
+	}
+
+	@Override
+	public void initProcessing() {
+		this.delegate.initProcessing();
+	}
+
+	@Override
+	public void afterSimStep(double time) {
+		this.delegate.afterSimStep(time);
+	}
+
+	@Override
+	public void finishProcessing() {
+		this.delegate.finishProcessing();
+	}
+
+}
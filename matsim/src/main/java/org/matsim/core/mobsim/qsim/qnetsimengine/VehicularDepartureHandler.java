@@ -53,7 +53,9 @@ class VehicularDepartureHandler implements DepartureHandler {
 	public boolean handleDeparture(double now, MobsimAgent agent, Id<Link> linkId) {
 		if (this.transportModes.contains(agent.getMode())) {
 			if ( agent instanceof MobsimDriverAgent ) {
-				handleCarDeparture(now, (MobsimDriverAgent)agent, linkId);
+				if (!qNetsimEngine.addDepartureToRunner((MobsimDriverAgent)agent, linkId)) {
+					handleCarDeparture(now, (MobsimDriverAgent)agent, linkId);
+				}
 				return true;
 			} else {
 				throw new UnsupportedOperationException("wrong agent type to depart on a network mode");
@@ -62,7 +64,19 @@ class VehicularDepartureHandler implements DepartureHandler {
 		return false;
 	}
 
-	private void handleCarDeparture(double now, MobsimDriverAgent agent, Id<Link> linkId) {
+	/**
+	 * @return <code>false</code> if the vehicle of the agent is not parked on the link
+	 * and is teleported from another link, i.e. the departure changes other links
+	 */
+	/*package*/ boolean isDepartureLocalToLink(MobsimDriverAgent agent, Id<Link> linkId) {
+		if (vehicleBehavior != VehicleBehavior.teleport) {
+			return true;
+		}
+		QLinkI qlink = (QLinkI) qNetsimEngine.getNetsimNetwork().getNetsimLink(linkId);
+		return qlink.getParkedVehicle(agent.getPlannedVehicleId()) != null;
+	}
+
+	/*package*/ void handleCarDeparture(double now, MobsimDriverAgent agent, Id<Link> linkId) {
 		// The situation where a leg starts and ends at the same link used to be
 		// handled specially, for all agents except AbstractTransitDriverAgents.
 		// This however caused some problems in some cases, as apparently for taxicabs.
@@ -19,8 +19,6 @@
 
 package org.matsim.core.network;
 
-import java.util.*;
-
 import org.matsim.core.network.NetworkChangeEvent.ChangeValue;
 import org.matsim.core.trafficmonitoring.*;
 import org.matsim.core.utils.misc.Time;
@@ -29,115 +27,72 @@ import org.matsim.core.utils.misc.Time;
 /**
  * This class follows the rules assumed in {@link TravelTimeCalculator}: The constructor arguments
  * timeSlice and maxTime have the same meaning as there, and the last time bin is open ended.
+ * <p></p>
+ * The changes of the time bins are looked up in an array kept by the shared {@link TimeVariantProfile},
+ * so links do not need an array of values per time bin.
  */
 final class FixedIntervalTimeVariantAttribute
 implements TimeVariantAttribute
 {
 	private final int timeSlice;
 	private final int numSlots;
-
-	private double baseValue;
-	private double[] values;
-
-	private int eventsCount = 0;
-	private int eventsCountWhenLastRecalc = -1;
+	private final TimeVariantProfilePool pool;
+	// replaced as a whole, so readers need no lock
+	private volatile TimeVariantProfile profile = TimeVariantProfile.EMPTY;
 
 
 	public FixedIntervalTimeVariantAttribute(int timeSlice, int maxTime)
 	{
-		this.timeSlice = timeSlice;
-		this.numSlots = TimeBinUtils.getTimeBinCount(maxTime, timeSlice);
+		this(timeSlice, maxTime, null);
 	}
 
 
-	@Override
-	public boolean isRecalcRequired()
+	/**
+	 * @param pool to share the profiles with other links, may be <code>null</code>
+	 */
+	FixedIntervalTimeVariantAttribute(int timeSlice, int maxTime, TimeVariantProfilePool pool)
 	{
-		return eventsCountWhenLastRecalc != eventsCount;
+		this.timeSlice = timeSlice;
+		this.numSlots = TimeBinUtils.getTimeBinCount(maxTime, timeSlice);
+		this.pool = pool;
 	}
 
 
-	//TODO before calling this method we could convert changeEvents into a sequence of non-null changeValues
 	@Override
-	public void recalc(TreeMap<Double, NetworkChangeEvent> changeEvents,
-			ChangeValueGetter valueGetter, double baseValue1)
+	public void applyChange(double time, ChangeValue change)
 	{
-		this.baseValue = baseValue1;
-
-		if (eventsCount == 0) {
-			return;
-		}
-
-		//To save memory, the array is constructed only if there is at least one ChangeEvent.
-		//This saves a lot of memory in cases when only one attribute is time variant, while
-		//the remaining two are invariant.
-		if (values == null) {
-			values = new double[numSlots];
-		}
-
-		int numEvent = 0;
-		int fromBin = 0;//inclusive
-		double currentValue = baseValue1;
-		if (changeEvents != null) {
-			for (NetworkChangeEvent event : changeEvents.values()) {
-				ChangeValue value = valueGetter.getChangeValue(event);
-				if (value != null) {
-					numEvent++;
-
-					int toBin = (int) (event.getStartTime() / timeSlice);//exclusive
-					Arrays.fill(values, fromBin, toBin, currentValue);
-
-					switch ( value.getType() ) {
-					case ABSOLUTE_IN_SI_UNITS:
-						currentValue = value.getValue();
-						break;
-					case FACTOR:
-						currentValue *= value.getValue();
-						break;
-					case OFFSET_IN_SI_UNITS:
-						currentValue += value.getValue();
-						break;
-					default:
-						throw new RuntimeException( "unknown ChangeType" ) ;
-					}
-					fromBin = toBin;
-				}
-			}
-		}
-		Arrays.fill(values, fromBin, values.length, currentValue);
-		eventsCountWhenLastRecalc = eventsCount;
-
-		if (numEvent != this.eventsCount) {
-			throw new RuntimeException("Expected number of change events (" + (this.eventsCount)
-					+ ") differs from the number of events found (" + numEvent + ")!");
+		TimeVariantProfile changed = this.profile.withChange(time, change);
+		if (changed != this.profile) {
+			this.profile = this.pool == null ? changed : this.pool.intern(changed);
 		}
 	}
 
 
 	@Override
-	public double getValue(final double time)
+	public double getValue(final double time, final double baseValue)
 	{
-		if (time == Time.UNDEFINED_TIME || eventsCount == 0) {
+		TimeVariantProfile profile = this.profile;
+		if (time == Time.UNDEFINED_TIME || profile.getChangesCount() == 0) {
 			return baseValue;
 		}
 
 		int bin = TimeBinUtils.getTimeBinIndex(time, timeSlice, numSlots);
-		return values[bin];
+		return profile.getValue(profile.getBinSteps(timeSlice, numSlots)[bin], baseValue);
 	}
 
 
-	@Override
-	public void incChangeEvents()
+	/**
+	 * @return the profile of the changes, possibly shared with other links.
+	 */
+	/*package*/ TimeVariantProfile getProfile()
 	{
-		eventsCount++;
+		return this.profile;
 	}
 
 
 	@Override
 	public void clearEvents()
 	{
-		eventsCount = 0;
-		eventsCountWhenLastRecalc = -1;
-		values = null;
+		this.profile = TimeVariantProfile.EMPTY;
 	}
 }
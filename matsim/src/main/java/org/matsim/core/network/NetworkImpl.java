@@ -97,6 +97,7 @@ import java.util.Queue;
 
 	private boolean locked = false ;
 	private final Attributes attributes = new Attributes();
+	private final TimeVariantProfilePool timeVariantProfilePool = new TimeVariantProfilePool();
 
 	NetworkImpl() {
 		this.factory = new NetworkFactoryImpl(this);
@@ -287,6 +288,7 @@ import java.util.Queue;
 	 */
 	@Override public void setNetworkChangeEvents(final List<NetworkChangeEvent> events) {
 		this.networkChangeEvents.clear();
+		this.timeVariantProfilePool.clear();
 		for(Link link : getLinks().values()) {
 			if (link instanceof TimeVariantLinkImpl) {
 				((TimeVariantLinkImpl)link).clearEvents();
@@ -378,6 +380,13 @@ import java.util.Queue;
 	public Queue<NetworkChangeEvent> getNetworkChangeEvents() {
 		return this.networkChangeEvents;
 	}
+
+	/**
+	 * @return the pool sharing equal time variant profiles between the links of this network.
+	 */
+	/*package*/ TimeVariantProfilePool getTimeVariantProfilePool() {
+		return this.timeVariantProfilePool;
+	}
 	@Override
 	public NetworkFactory getFactory() {
 		return this.factory;
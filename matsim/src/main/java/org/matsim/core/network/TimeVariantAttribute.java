@@ -19,43 +19,24 @@
 
 package org.matsim.core.network;
 
-import java.util.TreeMap;
-
 import org.matsim.core.network.NetworkChangeEvent.ChangeValue;
 
 
+/**
+ * The time dependent value of one attribute of a {@link TimeVariantLinkImpl}. The attribute only references the
+ * shared {@link TimeVariantProfile} of its changes; the base value is kept by the link.
+ */
 public interface TimeVariantAttribute
 {
-	interface ChangeValueGetter {
-		ChangeValue getChangeValue(NetworkChangeEvent event);
-	}
-
-
-	static ChangeValueGetter FREESPEED_GETTER = new ChangeValueGetter() {
-		@Override public ChangeValue getChangeValue(NetworkChangeEvent event) {
-			return event.getFreespeedChange();
-		}
-	};
-
-	static ChangeValueGetter FLOW_CAPACITY_GETTER = new ChangeValueGetter() {
-		@Override public ChangeValue getChangeValue(NetworkChangeEvent event) {
-			return event.getFlowCapacityChange();
-		}
-	};
-
-	static ChangeValueGetter LANES_GETTER = new ChangeValueGetter() {
-		@Override public ChangeValue getChangeValue(NetworkChangeEvent event) {
-			return event.getLanesChange();
-		}
-	};
-
-	double getValue(final double time);
-
-	boolean isRecalcRequired();
-
-	void recalc(TreeMap<Double, NetworkChangeEvent> changeEvents, ChangeValueGetter valueGetter, double baseValue);
-
-	void incChangeEvents();
+	/**
+	 * @param baseValue the value of the link without change events
+	 */
+	double getValue(final double time, final double baseValue);
+
+	/**
+	 * @param change the change from the given time on, or <code>null</code> to remove the change at that time
+	 */
+	void applyChange(double time, ChangeValue change);
 
 	void clearEvents();
 }
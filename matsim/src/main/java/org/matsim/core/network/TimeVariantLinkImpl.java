@@ -20,8 +20,6 @@
 
 package org.matsim.core.network;
 
-import java.util.TreeMap;
-
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.*;
 
@@ -36,8 +34,6 @@ import org.matsim.api.core.v01.network.*;
 	// member variables
 	//////////////////////////////////////////////////////////////////////
 
-	private TreeMap<Double,NetworkChangeEvent> changeEvents;
-
 	private final TimeVariantAttribute variableFreespeed;
 	private final TimeVariantAttribute variableFlowCapacity;
 	private final TimeVariantAttribute variableLanes;
@@ -49,10 +45,11 @@ import org.matsim.api.core.v01.network.*;
 	public static TimeVariantLinkImpl createLinkWithVariableIntervalAttributes(final Id<Link> id,
 			final Node from, final Node to, final Network network, final double length,
 			final double freespeed, final double capacity, final double lanes) {
+		TimeVariantProfilePool pool = getProfilePool(network);
 		return new TimeVariantLinkImpl(id, from, to, network, length, freespeed, capacity, lanes,
-				new VariableIntervalTimeVariantAttribute(),
-				new VariableIntervalTimeVariantAttribute(),
-				new VariableIntervalTimeVariantAttribute());
+				new VariableIntervalTimeVariantAttribute(pool),
+				new VariableIntervalTimeVariantAttribute(pool),
+				new VariableIntervalTimeVariantAttribute(pool));
 	}
 
 
@@ -60,10 +57,16 @@ import org.matsim.api.core.v01.network.*;
 			final Node from, final Node to, final Network network, final double length,
 			final double freespeed, final double capacity, final double lanes, final int interval,
 			final int maxTime) {
+		TimeVariantProfilePool pool = getProfilePool(network);
 		return new TimeVariantLinkImpl(id, from, to, network, length, freespeed, capacity, lanes,
-				new FixedIntervalTimeVariantAttribute(interval, maxTime),
-				new FixedIntervalTimeVariantAttribute(interval, maxTime),
-				new FixedIntervalTimeVariantAttribute(interval, maxTime));
+				new FixedIntervalTimeVariantAttribute(interval, maxTime, pool),
+				new FixedIntervalTimeVariantAttribute(interval, maxTime, pool),
+				new FixedIntervalTimeVariantAttribute(interval, maxTime, pool));
+	}
+
+
+	private static TimeVariantProfilePool getProfilePool(final Network network) {
+		return network instanceof NetworkImpl ? ((NetworkImpl) network).getTimeVariantProfilePool() : null;
 	}
 
 
@@ -79,37 +82,23 @@ import org.matsim.api.core.v01.network.*;
 
 
 	/**
-	 * Applies a new change event to the link.
+	 * Applies a new change event to the link. The link only keeps the changes of the event, in profiles shared with
+	 * other links, not the event itself. An event replaces an earlier event with the same start time.
 	 *
 	 * @param event a network change event.
 	 */
 	protected synchronized void applyEvent(final NetworkChangeEvent event) {
-		if(this.changeEvents == null)
-			this.changeEvents = new TreeMap<>();
-
-		this.changeEvents.put(event.getStartTime(), event);
-
-		if (event.getFreespeedChange() != null) {
-			this.variableFreespeed.incChangeEvents();
-		}
-		if (event.getFlowCapacityChange() != null) {
-			this.variableFlowCapacity.incChangeEvents();
-		}
-		if (event.getLanesChange() != null) {
-			this.variableLanes.incChangeEvents();
-		}
+		double time = event.getStartTime();
+		this.variableFreespeed.applyChange(time, event.getFreespeedChange());
+		this.variableFlowCapacity.applyChange(time, event.getFlowCapacityChange());
+		this.variableLanes.applyChange(time, event.getLanesChange());
 	}
 
-
-
 	/**
 	 * Removes all NetworkChangeEvents so that the link's attributes will be
 	 * reset to their initial values.
 	 */
 	synchronized void clearEvents() {
-		if(this.changeEvents != null)
-			this.changeEvents.clear();
-
 		variableFreespeed.clearEvents();
 		variableFlowCapacity.clearEvents();
 		variableLanes.clearEvents();
@@ -121,24 +110,13 @@ import org.matsim.api.core.v01.network.*;
 	 * @return the freespeed at time <tt>time</tt>.
 	 */
 	@Override
-	public synchronized double getFreespeed(final double time) {
-
-		if (variableFreespeed.isRecalcRequired()) {
-			recalcFreespeed();
-		}
-
-		return variableFreespeed.getValue(time);
-	}
-
-	@Override
-	public void setFreespeed(double freespeed) {
-		super.setFreespeed(freespeed);
-		this.recalcFreespeed();
+	public double getFreespeed(final double time) {
+		return variableFreespeed.getValue(time, this.getFreespeed());
 	}
 
 	// ---
 	// The standard LinkImpl memorizes the raw capacity, and computes the capacity_per_sec when demanded.
-	// The TimeVariantLinkImpl memorizes the capacity_per_sec, and computes the raw capacity when demanded.
+	// The TimeVariantLinkImpl applies its changes to the capacity_per_sec, and computes the raw capacity when demanded.
 	// The reason presumably is that the setters are so, and you don't want to return slightly changed numbers
 	// because of rounding errors.  
 
@@ -147,22 +125,10 @@ import org.matsim.api.core.v01.network.*;
 	 * @return the flow capacity at time <tt>time</tt>.
 	 */
 	@Override
-	public synchronized double getFlowCapacityPerSec(final double time) {
-
-		if (variableFlowCapacity.isRecalcRequired()) {
-			recalcFlowCapacity();
-		}
-
-		return variableFlowCapacity.getValue(time);
+	public double getFlowCapacityPerSec(final double time) {
+		return variableFlowCapacity.getValue(time, this.getCapacity() / getCapacityPeriod());
 	}
 
-	@Override
-	public final void setCapacity(double capacityPerNetworkCapcityPeriod){
-		super.setCapacity(capacityPerNetworkCapcityPeriod);
-		this.recalcFlowCapacity();
-	}
-
-
 	/**
 	 * This method returns the capacity as set in the xml defining the network. Be aware
 	 * that this capacity is not normalized in time, it depends on the period set
@@ -171,15 +137,10 @@ import org.matsim.api.core.v01.network.*;
 	 * @return the capacity per network's capperiod timestep
 	 */
 	@Override
-	public synchronized double getCapacity(final double time) {
+	public double getCapacity(final double time) {
 		return getFlowCapacityPerSec(time) * getCapacityPeriod();
 	}
 
-	private synchronized void recalcFlowCapacity() {
-		double baseFlowCapacityPerSec = this.getCapacity() / getCapacityPeriod();
-		variableFlowCapacity.recalc(changeEvents, TimeVariantAttribute.FLOW_CAPACITY_GETTER, baseFlowCapacityPerSec);
-	}
-
 	// ---
 
 	/**
@@ -193,27 +154,16 @@ import org.matsim.api.core.v01.network.*;
 	 * encode the (min) width of the link to calculate the flow capacity - [GL] 13may08
 	 */
 	@Override
-	public synchronized double getNumberOfLanes(final double time) {
-		if (variableLanes.isRecalcRequired()) {
-			recalcLanes();
-		}
-
-		return variableLanes.getValue(time);
-	}
-
-	@Override
-	public void setNumberOfLanes(double lanes) {
-		super.setNumberOfLanes(lanes);
-		this.recalcLanes();
+	public double getNumberOfLanes(final double time) {
+		return variableLanes.getValue(time, this.getNumberOfLanes());
 	}
 
 
-	private synchronized void recalcFreespeed() {
-		variableFreespeed.recalc(changeEvents, TimeVariantAttribute.FREESPEED_GETTER, this.getFreespeed() );
+	/*package*/ TimeVariantAttribute getVariableFreespeed() {
+		return this.variableFreespeed;
 	}
 
-	private synchronized void recalcLanes() {
-		variableLanes.recalc(changeEvents, TimeVariantAttribute.LANES_GETTER, this.getNumberOfLanes() );
+	/*package*/ TimeVariantAttribute getVariableFlowCapacity() {
+		return this.variableFlowCapacity;
 	}
 }
-
@@ -0,0 +1,208 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TimeVariantProfile.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.network;
+
+import java.util.Arrays;
+
+import org.matsim.core.network.NetworkChangeEvent.ChangeType;
+import org.matsim.core.network.NetworkChangeEvent.ChangeValue;
+
+/**
+ * The changes of one attribute of a link over time, independent of the base value of the link. Every sequence of
+ * absolute, factor and offset changes turns the base value into <code>factor * base + offset</code>, so the profile
+ * keeps one factor and one offset per change, and the links keep only their base value in a primitive field.
+ * Links with the same change profile, e.g. the hourly capacity factors of a road type, thus share one profile
+ * even if their base values differ.
+ * <p></p>
+ * Profiles are immutable. {@link #withChange(double, ChangeValue)} returns a new profile, which links share with
+ * the {@link TimeVariantProfilePool} of their network.
+ */
+final class TimeVariantProfile {
+
+	static final TimeVariantProfile EMPTY = new TimeVariantProfile(new double[0], new ChangeType[0], new double[0]);
+
+	private static final ChangeType[] CHANGE_TYPES = ChangeType.values();
+
+	// the changes, sorted by time, at most one per time
+	private final double[] changeTimes;
+	private final byte[] changeTypes;
+	private final double[] changeValues;
+	// the value after the first i changes is factors[i] * base + offsets[i]
+	private final double[] factors;
+	private final double[] offsets;
+	private final int hash;
+
+	// the number of changes up to each time bin, for links with fixed intervals
+	private volatile Bins bins = null;
+
+	private TimeVariantProfile(final double[] changeTimes, final ChangeType[] changeTypes, final double[] changeValues) {
+		this.changeTimes = changeTimes;
+		this.changeTypes = new byte[changeTypes.length];
+		this.changeValues = changeValues;
+		this.factors = new double[changeTimes.length + 1];
+		this.offsets = new double[changeTimes.length + 1];
+		this.factors[0] = 1.0;
+		for (int i = 0; i < changeTimes.length; i++) {
+			this.changeTypes[i] = (byte) changeTypes[i].ordinal();
+			switch (changeTypes[i]) {
+			case ABSOLUTE_IN_SI_UNITS:
+				this.factors[i + 1] = 0.0;
+				this.offsets[i + 1] = changeValues[i];
+				break;
+			case FACTOR:
+				this.factors[i + 1] = this.factors[i] * changeValues[i];
+				this.offsets[i + 1] = this.offsets[i] * changeValues[i];
+				break;
+			case OFFSET_IN_SI_UNITS:
+				this.factors[i + 1] = this.factors[i];
+				this.offsets[i + 1] = this.offsets[i] + changeValues[i];
+				break;
+			default:
+				throw new RuntimeException( "unknown ChangeType" ) ;
+			}
+		}
+		int hash = Arrays.hashCode(changeTimes);
+		hash = 31 * hash + Arrays.hashCode(this.changeTypes);
+		this.hash = 31 * hash + Arrays.hashCode(changeValues);
+	}
+
+	/**
+	 * @param change the change from the given time on, or <code>null</code> to remove the change at that time
+	 * @return the profile with the change, this profile if it does not change
+	 */
+	TimeVariantProfile withChange(final double time, final ChangeValue change) {
+		int index = Arrays.binarySearch(this.changeTimes, time);
+		if (change == null && index < 0) {
+			return this;
+		}
+		if (change != null && index >= 0 && this.changeTypes[index] == change.getType().ordinal()
+				&& this.changeValues[index] == change.getValue()) {
+			return this;
+		}
+		int size = this.changeTimes.length;
+		if (change == null) {
+			size--;
+		} else if (index < 0) {
+			size++;
+		}
+		double[] times = new double[size];
+		ChangeType[] types = new ChangeType[size];
+		double[] values = new double[size];
+		int to = 0;
+		for (int from = 0; from <= this.changeTimes.length; from++) {
+			if (from == index || (index < 0 && from == -index - 1)) {
+				if (change != null) {
+					times[to] = time;
+					types[to] = change.getType();
+					values[to] = change.getValue();
+					to++;
+				}
+				if (index >= 0) {
+					// replaced or removed
+					continue;
+				}
+			}
+			if (from < this.changeTimes.length) {
+				times[to] = this.changeTimes[from];
+				types[to] = CHANGE_TYPES[this.changeTypes[from]];
+				values[to] = this.changeValues[from];
+				to++;
+			}
+		}
+		return new TimeVariantProfile(times, types, values);
+	}
+
+	/**
+	 * @return the number of changes up to the given time, including changes at that time
+	 */
+	int getStep(final double time) {
+		int index = Arrays.binarySearch(this.changeTimes, time);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/**
+	 * @return the value after the given number of changes
+	 */
+	double getValue(final int step, final double baseValue) {
+		double factor = this.factors[step];
+		// an absolute change also replaces an infinite base value
+		return factor == 0.0 ? this.offsets[step] : factor * baseValue + this.offsets[step];
+	}
+
+	double getValue(final double time, final double baseValue) {
+		return getValue(getStep(time), baseValue);
+	}
+
+	/**
+	 * A change in a time bin applies to the whole bin, the last one if there are several changes in the bin.
+	 *
+	 * @return the number of changes up to each time bin
+	 */
+	int[] getBinSteps(final int timeSlice, final int numSlots) {
+		Bins bins = this.bins;
+		if (bins == null || bins.timeSlice != timeSlice || bins.steps.length != numSlots) {
+			int[] steps = new int[numSlots];
+			int step = 0;
+			for (int bin = 0; bin < numSlots; bin++) {
+				while (step < this.changeTimes.length && (int) (this.changeTimes[step] / timeSlice) <= bin) {
+					step++;
+				}
+				steps[bin] = step;
+			}
+			bins = new Bins(timeSlice, steps);
+			this.bins = bins;
+		}
+		return bins.steps;
+	}
+
+	int getChangesCount() {
+		return this.changeTimes.length;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof TimeVariantProfile)) {
+			return false;
+		}
+		TimeVariantProfile other = (TimeVariantProfile) obj;
+		return this.hash == other.hash && Arrays.equals(this.changeTimes, other.changeTimes)
+				&& Arrays.equals(this.changeTypes, other.changeTypes) && Arrays.equals(this.changeValues, other.changeValues);
+	}
+
+	private static final class Bins {
+		final int timeSlice;
+		final int[] steps;
+
+		Bins(final int timeSlice, final int[] steps) {
+			this.timeSlice = timeSlice;
+			this.steps = steps;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TimeVariantProfilePool.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.network;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares equal {@link TimeVariantProfile}s between the time variant attributes of the links of a network.
+ * Change events are mostly given as profiles, e.g. the same hourly factors for all links of a road type, so
+ * many links end up with equal profiles, which are stored only once.
+ * <p></p>
+ * The profiles are only weakly referenced, so a profile is dropped from the pool as soon as no link uses it any
+ * more, e.g. the intermediate profiles while the change events are applied one after the other.
+ * <p></p>
+ * Thread-safe, as change events may be applied while the mobsim or routers read the links.
+ */
+final class TimeVariantProfilePool {
+
+	private final Map<PooledProfile, PooledProfile> profiles = new ConcurrentHashMap<>();
+	private final ReferenceQueue<TimeVariantProfile> collectedProfiles = new ReferenceQueue<>();
+
+	/**
+	 * @return a profile equal to the given one, the given one if no equal profile is pooled.
+	 */
+	TimeVariantProfile intern(final TimeVariantProfile profile) {
+		if (profile == TimeVariantProfile.EMPTY) {
+			return profile;
+		}
+		removeCollectedProfiles();
+		PooledProfile pooledProfile = new PooledProfile(profile, this.collectedProfiles);
+		while (true) {
+			PooledProfile pooled = this.profiles.putIfAbsent(pooledProfile, pooledProfile);
+			if (pooled == null) {
+				return profile;
+			}
+			TimeVariantProfile existing = pooled.get();
+			if (existing != null) {
+				return existing;
+			}
+			// collected in the meantime, but not yet removed
+			this.profiles.remove(pooled, pooled);
+		}
+	}
+
+	int size() {
+		removeCollectedProfiles();
+		return this.profiles.size();
+	}
+
+	void clear() {
+		this.profiles.clear();
+	}
+
+	private void removeCollectedProfiles() {
+		Object profile;
+		while ((profile = this.collectedProfiles.poll()) != null) {
+			this.profiles.remove(profile, profile);
+		}
+	}
+
+	/**
+	 * Equal to another pooled profile if both profiles are still there and equal. The hash code is kept, so a profile
+	 * can be removed from the pool after it was collected.
+	 */
+	private static final class PooledProfile extends WeakReference<TimeVariantProfile> {
+		private final int hash;
+
+		PooledProfile(final TimeVariantProfile profile, final ReferenceQueue<TimeVariantProfile> queue) {
+			super(profile, queue);
+			this.hash = profile.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof PooledProfile) || this.hash != ((PooledProfile) obj).hash) {
+				return false;
+			}
+			TimeVariantProfile profile = get();
+			return profile != null && profile.equals(((PooledProfile) obj).get());
+		}
+	}
+
+}
@@ -19,103 +19,62 @@
 
 package org.matsim.core.network;
 
-import java.util.*;
-
 import org.matsim.core.network.NetworkChangeEvent.ChangeValue;
 
 
 final class VariableIntervalTimeVariantAttribute
 implements TimeVariantAttribute
 {
-	private int aEvents = 1;
-	private double[] aValues;
-	private double[] aTimes;
+	private final TimeVariantProfilePool pool;
+	// replaced as a whole, so readers need no lock
+	private volatile TimeVariantProfile profile = TimeVariantProfile.EMPTY;
 
 
-	@Override
-	public boolean isRecalcRequired()
+	VariableIntervalTimeVariantAttribute()
 	{
-		return (this.aTimes == null) || (this.aTimes.length != this.aEvents);
-		// The first condition just says if there is no material, we don't need to do anything.
-		// yyyy The second condition is a bit weird.  It essentially checks if the cached data structure (aTimes) has
-		// as many entries as it should have (given by aEvents).  This does need, however, an honest calling of
-		// incChangeEvents().  Why not just compare aTimes.length to changeEvents.length?
-		// Counterargument might be that we may not have changeEvents.length available when we call isRecalcRequired().
-		// I do think, however, that this does not happen and also cannot happen, because we need the info anyway for recalculation.
-		// If going into this direction, then incChangeEvents(), isRecalcRequired(), recalc(...) might not be necessary
-		// as exposed interface methods any more; in contrast, getValue would need more arguments.
-		// kai, jul'17
+		this(null);
 	}
 
 
-	@Override
-	public void recalc(TreeMap<Double, NetworkChangeEvent> changeEvents,
-			ChangeValueGetter valueGetter, double baseValue)
+	/**
+	 * @param pool to share the profiles with other links, may be <code>null</code>
+	 */
+	VariableIntervalTimeVariantAttribute(TimeVariantProfilePool pool)
 	{
-		this.aTimes = new double[this.aEvents];
-		this.aValues = new double[this.aEvents];
-		this.aTimes[0] = Double.NEGATIVE_INFINITY;
-		this.aValues[0] = baseValue;
-
-		int numEvent = 0;
-		if (changeEvents != null) {
-			// go through all change events in chronological sequence:
-			for (NetworkChangeEvent event : changeEvents.values()) {
-				ChangeValue value = valueGetter.getChangeValue(event);
-				if (value != null) {
-					switch( value.getType() ) {
-					case ABSOLUTE_IN_SI_UNITS:
-						// here, we just need to replace the value:
-						this.aValues[++numEvent] = value.getValue();
-						this.aTimes[numEvent] = event.getStartTime();
-						break;
-					case FACTOR: {
-						// there, the change event multiplies what we have so far:
-						double currentValue = this.aValues[numEvent];
-						this.aValues[++numEvent] = currentValue * value.getValue();
-						this.aTimes[numEvent] = event.getStartTime();
-						break; }
-					case OFFSET_IN_SI_UNITS: {
-						double currentValue = this.aValues[numEvent];
-						this.aValues[++numEvent] = currentValue + value.getValue();
-						this.aTimes[numEvent] = event.getStartTime();
-						break; }
-					default:
-						throw new RuntimeException( "unknown ChangeType" ) ;
-					}
-				}
-			}
-		}
+		this.pool = pool;
+	}
 
-		if (numEvent != this.aEvents - 1) {
-			throw new RuntimeException("Expected number of change events (" + (this.aEvents - 1)
-					+ ") differs from the number of events found (" + numEvent + ")!");
+
+	@Override
+	public void applyChange(double time, ChangeValue change)
+	{
+		TimeVariantProfile changed = this.profile.withChange(time, change);
+		if (changed != this.profile) {
+			this.profile = this.pool == null ? changed : this.pool.intern(changed);
 		}
 	}
 
 
 	@Override
-	public double getValue(final double time)
+	public double getValue(final double time, final double baseValue)
 	{
-		// after we have put everything into an array by recalc, we just need a binary search:
-		int key = Arrays.binarySearch(this.aTimes, time);
-		key = key >= 0 ? key : -key - 2;
-		return this.aValues[key];
+		// a binary search in the change times of the shared profile
+		return this.profile.getValue(time, baseValue);
 	}
 
 
-	@Override
-	public void incChangeEvents()
+	/**
+	 * @return the profile of the changes, possibly shared with other links.
+	 */
+	/*package*/ TimeVariantProfile getProfile()
 	{
-		aEvents++;
+		return this.profile;
 	}
 
 
 	@Override
 	public void clearEvents()
 	{
-		aTimes = null;
-		aValues = null;
-		aEvents = 1;
+		this.profile = TimeVariantProfile.EMPTY;
 	}
 }
@@ -20,31 +20,44 @@
 
 package org.matsim.core.network.io;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.api.internal.MatsimReader;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.utils.objectattributes.AttributeConverter;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 
 /**
  * A reader for network-files of MATSim. This reader recognizes the format of the network-file and uses
- * the correct reader for the specific network-version, without manual setting.
+ * the correct reader for the specific network-version, without manual setting. Besides the xml formats,
+ * it also reads binary networks (see {@link NetworkWriter#writeFileBinary(String)}).
+ * <p></p>
+ * Local binary networks, given as filename or as <code>file:</code> URL, are memory-mapped. Other URLs
+ * and streams are read only once, as they may be downloads.
  *
  * @author mrieser
  */
-public final class MatsimNetworkReader extends MatsimXmlParser {
+public final class MatsimNetworkReader implements MatsimReader {
 
 	private final static Logger log = Logger.getLogger(MatsimNetworkReader.class);
 	private final static String NETWORK_V1 = "network_v1.dtd";
 	private final static String NETWORK_V2 = "network_v2.dtd";
 
-	private MatsimXmlParser delegate = null;
+	private final XmlReader xmlReader = new XmlReader();
 	private CoordinateTransformation transformation;
 
 	private final Network network;
@@ -70,35 +83,67 @@ public final class MatsimNetworkReader extends MatsimXmlParser {
 		this.network = network;
 	}
 
-	@Override
-	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
-		this.delegate.startTag(name, atts, context);
+	/**
+	 * @see MatsimXmlParser#setValidating(boolean)
+	 */
+	public void setValidating(final boolean validateXml) {
+		this.xmlReader.setValidating(validateXml);
 	}
 
 	@Override
-	public void endTag(final String name, final String content, final Stack<String> context) {
-		this.delegate.endTag(name, content, context);
+	public void readFile(final String filename) throws UncheckedIOException {
+		if (NetworkReaderBinary.isBinary(filename)) {
+			createBinaryReader().readFile(filename);
+		} else {
+			this.xmlReader.readFile(filename);
+		}
 	}
 
-	@Override
-	protected void setDoctype(final String doctype) {
-		super.setDoctype(doctype);
-
-		switch ( doctype ) {
-			case NETWORK_V1:
-				this.delegate = new NetworkReaderMatsimV1(transformation , this.network);
-				log.info("using network_v1-reader.");
-				break;
-			case NETWORK_V2:
-				this.delegate = new NetworkReaderMatsimV2(transformation , this.network);
-				((NetworkReaderMatsimV2) delegate).putAttributeConverters( converters );
-				log.info("using network_v2-reader.");
-				break;
-			default:
-				throw new IllegalArgumentException("Doctype \"" + doctype + "\" not known.");
+	public void parse(final URL url) throws UncheckedIOException {
+		Path path = IOUtils.getPath(url);
+		if (path != null) {
+			String filename = path.toString();
+			if (NetworkReaderBinary.isBinary(filename)) {
+				createBinaryReader().readFile(filename);
+			} else {
+				this.xmlReader.parse(url);
+			}
+			return;
+		}
+		log.info("starting to parse network from url " + url + " ...");
+		// open the url only once, it may be a download
+		try (InputStream in = new BufferedInputStream(IOUtils.getInputStream(url))) {
+			if (NetworkReaderBinary.isBinary(in)) {
+				createBinaryReader().parse(in);
+			} else {
+				InputSource source = new InputSource(in);
+				source.setSystemId(url.toExternalForm());
+				this.xmlReader.parse(source);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 
+	public void parse(final InputStream stream) throws UncheckedIOException {
+		InputStream in = stream.markSupported() ? stream : new BufferedInputStream(stream);
+		try {
+			if (NetworkReaderBinary.isBinary(in)) {
+				createBinaryReader().parse(in);
+				return;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.xmlReader.parse(in);
+	}
+
+	private NetworkReaderBinary createBinaryReader() {
+		NetworkReaderBinary reader = new NetworkReaderBinary(this.transformation, this.network);
+		reader.putAttributeConverters(this.converters);
+		return reader;
+	}
+
 	public void putAttributeConverter(Class<?> clazz, AttributeConverter<?> converter) {
 		this.converters.put( clazz, converter );
 	}
@@ -106,4 +151,41 @@ public final class MatsimNetworkReader extends MatsimXmlParser {
 	public void putAttributeConverters(Map<Class<?>, AttributeConverter<?>> attributeConverters) {
 		this.converters.putAll( attributeConverters );
 	}
+
+	/**
+	 * Reads the xml formats, by delegating to the reader of the specific network-version.
+	 */
+	private final class XmlReader extends MatsimXmlParser {
+
+		private MatsimXmlParser delegate = null;
+
+		@Override
+		public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+			this.delegate.startTag(name, atts, context);
+		}
+
+		@Override
+		public void endTag(final String name, final String content, final Stack<String> context) {
+			this.delegate.endTag(name, content, context);
+		}
+
+		@Override
+		protected void setDoctype(final String doctype) {
+			super.setDoctype(doctype);
+
+			switch ( doctype ) {
+				case NETWORK_V1:
+					this.delegate = new NetworkReaderMatsimV1(transformation , network);
+					log.info("using network_v1-reader.");
+					break;
+				case NETWORK_V2:
+					this.delegate = new NetworkReaderMatsimV2(transformation , network);
+					((NetworkReaderMatsimV2) delegate).putAttributeConverters( converters );
+					log.info("using network_v2-reader.");
+					break;
+				default:
+					throw new IllegalArgumentException("Doctype \"" + doctype + "\" not known.");
+			}
+		}
+	}
 }
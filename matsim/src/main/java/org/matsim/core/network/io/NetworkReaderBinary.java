@@ -0,0 +1,304 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * NetworkReaderBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.network.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Reads networks in the binary format written by {@link NetworkWriterBinary}. Uncompressed files are
+ * memory-mapped, so several processes loading the same network share the operating system's page cache.
+ * <p></p>
+ * The file is little-endian and consists of:
+ * <ul>
+ * <li>the magic bytes <code>MATSimNW</code> and the format version (int)</li>
+ * <li>the string dictionary: the number of strings, the total number of UTF-8 bytes, the end offset of every string,
+ * 	and the bytes. All strings below are referenced by their index in the dictionary, <code>-1</code> stands for <code>null</code></li>
+ * <li>the network: name, capacity period, effective cell size, effective lane width</li>
+ * <li>the nodes: their number, followed by the columns id, x, y, z (<code>NaN</code> if the node has none), type and origId</li>
+ * <li>the distinct sets of allowed modes: their number, the size of every set, and the modes of all sets</li>
+ * <li>the links: their number, followed by the columns id, from node, to node (both as index of the node),
+ * 	length, freespeed, capacity, number of lanes, and the index of the set of allowed modes</li>
+ * <li>the attributes of the network, of the nodes and of the links: their number, followed by the columns
+ * 	object index, name, class and value (as converted by the {@link AttributeConverter} of the class)</li>
+ * </ul>
+ */
+/*package*/ final class NetworkReaderBinary {
+
+	private final static Logger log = Logger.getLogger(NetworkReaderBinary.class);
+
+	/*package*/ static final String FILE_EXTENSION = ".mnet";
+	/*package*/ static final byte[] MAGIC = "MATSimNW".getBytes(StandardCharsets.US_ASCII);
+	/*package*/ static final int VERSION = 1;
+
+	private final CoordinateTransformation transformation;
+	private final Network network;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	NetworkReaderBinary(final CoordinateTransformation transformation, final Network network) {
+		this.transformation = transformation;
+		this.network = network;
+	}
+
+	void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	/**
+	 * @return <code>true</code> if the filename has the extension of binary networks, optionally followed by the
+	 * 		extension of a compression codec, e.g. <code>network.mnet.gz</code>
+	 */
+	/*package*/ static boolean hasBinaryExtension(final String filename) {
+		String name = filename;
+		if (IOUtils.getCompressionCodec(name) != null) {
+			name = name.substring(0, name.length() - IOUtils.getCompressionCodec(name).getFileExtension().length());
+		}
+		return name.endsWith(FILE_EXTENSION);
+	}
+
+	/**
+	 * @return <code>true</code> if the stream starts with the magic bytes of binary networks. The stream
+	 * 		must support mark and is reset to its current position.
+	 */
+	/*package*/ static boolean isBinary(final InputStream in) throws IOException {
+		return IOUtils.startsWith(in, MAGIC);
+	}
+
+	/*package*/ static boolean isBinary(final String filename) {
+		try (InputStream in = IOUtils.getInputStream(filename)) {
+			return isBinary(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void readFile(final String filename) {
+		log.info("starting to read binary network from file " + filename + " ...");
+		File file = new File(filename);
+		if (IOUtils.getCompressionCodec(filename) == null && file.isFile()) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE) {
+					throw new UncheckedIOException("Binary networks larger than 2 GB are not supported: " + filename);
+				}
+				read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			try (InputStream in = IOUtils.getInputStream(filename)) {
+				parse(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the stream into memory. Local files are better read with {@link #readFile(String)}, which maps them.
+	 */
+	void parse(final InputStream in) {
+		Buffer data = new Buffer();
+		try {
+			IOUtils.copyStream(in, data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		read(data.wrap());
+	}
+
+	private void read(final ByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new UncheckedIOException("Not a binary network.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new UncheckedIOException("Unsupported version of binary network: " + version);
+			}
+
+			String[] strings = readStrings(buffer);
+
+			this.network.setName(string(strings, buffer.getInt()));
+			this.network.setCapacityPeriod(buffer.getDouble());
+			this.network.setEffectiveCellSize(buffer.getDouble());
+			this.network.setEffectiveLaneWidth(buffer.getDouble());
+
+			NetworkFactory factory = this.network.getFactory();
+			int nodeCount = buffer.getInt();
+			int[] nodeIds = readInts(buffer, nodeCount);
+			double[] xs = readDoubles(buffer, nodeCount);
+			double[] ys = readDoubles(buffer, nodeCount);
+			double[] zs = readDoubles(buffer, nodeCount);
+			int[] nodeTypes = readInts(buffer, nodeCount);
+			int[] nodeOrigIds = readInts(buffer, nodeCount);
+			Node[] nodes = new Node[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				Coord coord = Double.isNaN(zs[i]) ? new Coord(xs[i], ys[i]) : new Coord(xs[i], ys[i], zs[i]);
+				Node node = factory.createNode(Id.create(strings[nodeIds[i]], Node.class), this.transformation.transform(coord));
+				this.network.addNode(node);
+				NetworkUtils.setType(node, string(strings, nodeTypes[i]));
+				if (nodeOrigIds[i] >= 0) {
+					NetworkUtils.setOrigId(node, strings[nodeOrigIds[i]]);
+				}
+				nodes[i] = node;
+			}
+
+			int modeSetCount = buffer.getInt();
+			int[] modeSetSizes = readInts(buffer, modeSetCount);
+			Set<?>[] modeSets = new Set<?>[modeSetCount];
+			for (int i = 0; i < modeSetCount; i++) {
+				Set<String> modes = new HashSet<>();
+				for (int mode : readInts(buffer, modeSetSizes[i])) {
+					modes.add(strings[mode].intern());
+				}
+				modeSets[i] = modes;
+			}
+
+			int linkCount = buffer.getInt();
+			int[] linkIds = readInts(buffer, linkCount);
+			int[] fromNodes = readInts(buffer, linkCount);
+			int[] toNodes = readInts(buffer, linkCount);
+			double[] lengths = readDoubles(buffer, linkCount);
+			double[] freespeeds = readDoubles(buffer, linkCount);
+			double[] capacities = readDoubles(buffer, linkCount);
+			double[] lanes = readDoubles(buffer, linkCount);
+			int[] linkModes = readInts(buffer, linkCount);
+			Link[] links = new Link[linkCount];
+			for (int i = 0; i < linkCount; i++) {
+				Link link = factory.createLink(Id.create(strings[linkIds[i]], Link.class), nodes[fromNodes[i]], nodes[toNodes[i]]);
+				link.setLength(lengths[i]);
+				link.setFreespeed(freespeeds[i]);
+				link.setCapacity(capacities[i]);
+				link.setNumberOfLanes(lanes[i]);
+				if (linkModes[i] >= 0) {
+					@SuppressWarnings("unchecked")
+					Set<String> modes = (Set<String>) modeSets[linkModes[i]];
+					link.setAllowedModes(modes);
+				}
+				this.network.addLink(link);
+				links[i] = link;
+			}
+
+			readAttributes(buffer, strings, new Attributes[] {this.network.getAttributes()});
+			Attributes[] nodeAttributes = new Attributes[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				nodeAttributes[i] = nodes[i].getAttributes();
+			}
+			readAttributes(buffer, strings, nodeAttributes);
+			Attributes[] linkAttributes = new Attributes[linkCount];
+			for (int i = 0; i < linkCount; i++) {
+				linkAttributes[i] = links[i].getAttributes();
+			}
+			readAttributes(buffer, strings, linkAttributes);
+
+			log.info("read " + nodeCount + " nodes and " + linkCount + " links.");
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new UncheckedIOException("Corrupt binary network.", e);
+		}
+	}
+
+	private void readAttributes(final ByteBuffer buffer, final String[] strings, final Attributes[] owners) {
+		int count = buffer.getInt();
+		int[] ownerIndices = readInts(buffer, count);
+		int[] names = readInts(buffer, count);
+		int[] classes = readInts(buffer, count);
+		int[] values = readInts(buffer, count);
+		for (int i = 0; i < count; i++) {
+			Object value = this.attributesConverter.convert(strings[classes[i]], strings[values[i]]);
+			if (value != null) {
+				owners[ownerIndices[i]].putAttribute(strings[names[i]], value);
+			}
+		}
+	}
+
+	private static String[] readStrings(final ByteBuffer buffer) {
+		int count = buffer.getInt();
+		int length = buffer.getInt();
+		int[] ends = readInts(buffer, count);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		String[] strings = new String[count];
+		int start = 0;
+		for (int i = 0; i < count; i++) {
+			strings[i] = new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+			start = ends[i];
+		}
+		return strings;
+	}
+
+	private static String string(final String[] strings, final int index) {
+		return index < 0 ? null : strings[index];
+	}
+
+	private static int[] readInts(final ByteBuffer buffer, final int count) {
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * count);
+		return values;
+	}
+
+	private static double[] readDoubles(final ByteBuffer buffer, final int count) {
+		double[] values = new double[count];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + 8 * count);
+		return values;
+	}
+
+	/**
+	 * Gives access to the buffer of the stream, so the data is not copied once more.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+		ByteBuffer wrap() {
+			return ByteBuffer.wrap(this.buf, 0, this.count);
+		}
+	}
+
+}
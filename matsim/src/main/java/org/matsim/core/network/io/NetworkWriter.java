@@ -63,11 +63,18 @@ public final class NetworkWriter extends MatsimXmlWriter implements MatsimWriter
 		this.converters.put(  clazz , converter );
 	}
 
+	/**
+	 * Writes the network in the newest xml format, currently v2, or in the binary format if the
+	 * filename ends with ".mnet", optionally followed by the extension of a compression, e.g. ".gz".
+	 */
 	@Override
 	public void write(final String filename) {
 		log.info("Writing network to file: " + filename  + "...");
-		// always write out in newest version, currently v2
-		writeFileV2(filename);
+		if (NetworkReaderBinary.hasBinaryExtension(filename)) {
+			writeFileBinary(filename);
+		} else {
+			writeFileV2(filename);
+		}
 		log.info("done.");
 	}
 
@@ -87,6 +94,17 @@ public final class NetworkWriter extends MatsimXmlWriter implements MatsimWriter
 		writeFile( dtd , handler , filename );
 	}
 
+	/**
+	 * Writes the network in a binary format, which is much faster to read than xml. If the file is not
+	 * compressed, it is memory-mapped when read, so several processes loading the same network share the
+	 * operating system's page cache. Binary networks are read by {@link MatsimNetworkReader}.
+	 */
+	public void writeFileBinary(final String filename) {
+		NetworkWriterBinary writer = new NetworkWriterBinary(transformation);
+		writer.putAttributeConverters( converters );
+		writer.write( network , filename );
+	}
+
 	private void writeFile(
 			final String dtd,
 			final NetworkWriterHandler handler,
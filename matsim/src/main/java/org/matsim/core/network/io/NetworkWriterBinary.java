@@ -0,0 +1,307 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * NetworkWriterBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.network.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Writes a network in the binary format read by {@link NetworkReaderBinary}. All strings (ids, modes,
+ * attribute names and values) are stored once in a dictionary, everything else in columns of ints and
+ * doubles referencing the dictionary. See {@link NetworkReaderBinary} for the layout.
+ */
+/*package*/ final class NetworkWriterBinary {
+
+	private final CoordinateTransformation transformation;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	private final Map<String, Integer> stringIndices = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+
+	NetworkWriterBinary(final CoordinateTransformation transformation) {
+		this.transformation = transformation;
+	}
+
+	void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	void write(final Network network, final String filename) {
+		Node[] nodes = NetworkUtils.getSortedNodes(network);
+		Link[] links = NetworkUtils.getSortedLinks(network);
+
+		int networkName = index(network.getName());
+		AttributeColumns networkAttributes = new AttributeColumns();
+		addAttributes(networkAttributes, 0, network.getAttributes());
+
+		Map<Id<Node>, Integer> nodeIndices = new HashMap<>();
+		int[] nodeIds = new int[nodes.length];
+		double[] xs = new double[nodes.length];
+		double[] ys = new double[nodes.length];
+		double[] zs = new double[nodes.length];
+		int[] nodeTypes = new int[nodes.length];
+		int[] nodeOrigIds = new int[nodes.length];
+		AttributeColumns nodeAttributes = new AttributeColumns();
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[i];
+			nodeIndices.put(node.getId(), i);
+			nodeIds[i] = index(node.getId().toString());
+			Coord coord = this.transformation.transform(node.getCoord());
+			xs[i] = coord.getX();
+			ys[i] = coord.getY();
+			zs[i] = coord.hasZ() ? coord.getZ() : Double.NaN;
+			nodeTypes[i] = index(NetworkUtils.getType(node));
+			nodeOrigIds[i] = index(NetworkUtils.getOrigId(node));
+			addAttributes(nodeAttributes, i, node.getAttributes());
+		}
+
+		Map<Set<String>, Integer> modeSetIndices = new HashMap<>();
+		List<int[]> modeSets = new ArrayList<>();
+		int[] linkIds = new int[links.length];
+		int[] fromNodes = new int[links.length];
+		int[] toNodes = new int[links.length];
+		double[] lengths = new double[links.length];
+		double[] freespeeds = new double[links.length];
+		double[] capacities = new double[links.length];
+		double[] lanes = new double[links.length];
+		int[] linkModes = new int[links.length];
+		AttributeColumns linkAttributes = new AttributeColumns();
+		for (int i = 0; i < links.length; i++) {
+			Link link = links[i];
+			linkIds[i] = index(link.getId().toString());
+			fromNodes[i] = nodeIndices.get(link.getFromNode().getId());
+			toNodes[i] = nodeIndices.get(link.getToNode().getId());
+			lengths[i] = link.getLength();
+			freespeeds[i] = link.getFreespeed();
+			capacities[i] = link.getCapacity();
+			lanes[i] = link.getNumberOfLanes();
+			Set<String> modes = link.getAllowedModes();
+			if (modes == null) {
+				linkModes[i] = -1;
+			} else {
+				Integer modeSet = modeSetIndices.get(modes);
+				if (modeSet == null) {
+					int[] modeIndices = new int[modes.size()];
+					int j = 0;
+					for (String mode : modes) {
+						modeIndices[j++] = index(mode);
+					}
+					modeSet = modeSets.size();
+					modeSets.add(modeIndices);
+					modeSetIndices.put(modes, modeSet);
+				}
+				linkModes[i] = modeSet;
+			}
+			addAttributes(linkAttributes, i, link.getAttributes());
+		}
+
+		try (LittleEndianOutput out = new LittleEndianOutput(IOUtils.getOutputStream(filename))) {
+			out.write(NetworkReaderBinary.MAGIC);
+			out.writeInt(NetworkReaderBinary.VERSION);
+
+			byte[][] encoded = new byte[this.strings.size()][];
+			int[] ends = new int[this.strings.size()];
+			int length = 0;
+			for (int i = 0; i < encoded.length; i++) {
+				encoded[i] = this.strings.get(i).getBytes(StandardCharsets.UTF_8);
+				length += encoded[i].length;
+				ends[i] = length;
+			}
+			out.writeInt(encoded.length);
+			out.writeInt(length);
+			out.writeInts(ends, ends.length);
+			for (byte[] string : encoded) {
+				out.write(string);
+			}
+
+			out.writeInt(networkName);
+			out.writeDouble(network.getCapacityPeriod());
+			out.writeDouble(network.getEffectiveCellSize());
+			out.writeDouble(network.getEffectiveLaneWidth());
+
+			out.writeInt(nodes.length);
+			out.writeInts(nodeIds, nodeIds.length);
+			out.writeDoubles(xs);
+			out.writeDoubles(ys);
+			out.writeDoubles(zs);
+			out.writeInts(nodeTypes, nodeTypes.length);
+			out.writeInts(nodeOrigIds, nodeOrigIds.length);
+
+			out.writeInt(modeSets.size());
+			for (int[] modeSet : modeSets) {
+				out.writeInt(modeSet.length);
+			}
+			for (int[] modeSet : modeSets) {
+				out.writeInts(modeSet, modeSet.length);
+			}
+
+			out.writeInt(links.length);
+			out.writeInts(linkIds, linkIds.length);
+			out.writeInts(fromNodes, fromNodes.length);
+			out.writeInts(toNodes, toNodes.length);
+			out.writeDoubles(lengths);
+			out.writeDoubles(freespeeds);
+			out.writeDoubles(capacities);
+			out.writeDoubles(lanes);
+			out.writeInts(linkModes, linkModes.length);
+
+			networkAttributes.write(out);
+			nodeAttributes.write(out);
+			linkAttributes.write(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int index(final String string) {
+		if (string == null) {
+			return -1;
+		}
+		Integer index = this.stringIndices.get(string);
+		if (index == null) {
+			index = this.strings.size();
+			this.strings.add(string);
+			this.stringIndices.put(string, index);
+		}
+		return index;
+	}
+
+	private void addAttributes(final AttributeColumns columns, final int owner, final Attributes attributes) {
+		for (Map.Entry<String, Object> attribute : attributes.getAsMap().entrySet()) {
+			String value = this.attributesConverter.convertToString(attribute.getValue());
+			if (value != null) {
+				columns.add(owner, index(attribute.getKey()), index(attribute.getValue().getClass().getCanonicalName()), index(value));
+			}
+		}
+	}
+
+	/**
+	 * The attributes of one kind of objects: the index of the object, and the dictionary indices of the
+	 * name, class and value of each attribute.
+	 */
+	private static final class AttributeColumns {
+		private int size = 0;
+		private int[] owners = new int[16];
+		private int[] names = new int[16];
+		private int[] classes = new int[16];
+		private int[] values = new int[16];
+
+		void add(final int owner, final int name, final int clazz, final int value) {
+			if (this.size == this.owners.length) {
+				this.owners = Arrays.copyOf(this.owners, 2 * this.size);
+				this.names = Arrays.copyOf(this.names, 2 * this.size);
+				this.classes = Arrays.copyOf(this.classes, 2 * this.size);
+				this.values = Arrays.copyOf(this.values, 2 * this.size);
+			}
+			this.owners[this.size] = owner;
+			this.names[this.size] = name;
+			this.classes[this.size] = clazz;
+			this.values[this.size] = value;
+			this.size++;
+		}
+
+		void write(final LittleEndianOutput out) throws IOException {
+			out.writeInt(this.size);
+			out.writeInts(this.owners, this.size);
+			out.writeInts(this.names, this.size);
+			out.writeInts(this.classes, this.size);
+			out.writeInts(this.values, this.size);
+		}
+	}
+
+	private static final class LittleEndianOutput implements AutoCloseable {
+		private final OutputStream out;
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		LittleEndianOutput(final OutputStream out) {
+			this.out = out;
+		}
+
+		void writeInt(final int value) throws IOException {
+			ensureRemaining(4);
+			this.buffer.putInt(value);
+		}
+
+		void writeDouble(final double value) throws IOException {
+			ensureRemaining(8);
+			this.buffer.putDouble(value);
+		}
+
+		void writeInts(final int[] values, final int length) throws IOException {
+			for (int i = 0; i < length; i++) {
+				writeInt(values[i]);
+			}
+		}
+
+		void writeDoubles(final double[] values) throws IOException {
+			for (double value : values) {
+				writeDouble(value);
+			}
+		}
+
+		void write(final byte[] bytes) throws IOException {
+			int offset = 0;
+			while (offset < bytes.length) {
+				ensureRemaining(1);
+				int n = Math.min(bytes.length - offset, this.buffer.remaining());
+				this.buffer.put(bytes, offset, n);
+				offset += n;
+			}
+		}
+
+		private void ensureRemaining(final int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				this.out.write(this.buffer.array(), 0, this.buffer.position());
+				this.buffer.clear();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.write(this.buffer.array(), 0, this.buffer.position());
+			this.buffer.clear();
+			this.out.close();
+		}
+	}
+
+}
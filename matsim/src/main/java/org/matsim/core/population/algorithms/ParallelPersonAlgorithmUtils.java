@@ -21,6 +21,7 @@
 package org.matsim.core.population.algorithms;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -72,6 +73,24 @@ public final class ParallelPersonAlgorithmUtils {
 	 * @param algoProvider
 	 */
 	public static void run(final Population population, final int numberOfThreads, final PersonAlgorithmProvider algoProvider) {
+		run(population.getPersons().values(), numberOfThreads, algoProvider, false);
+	}
+
+	/**
+	 * Handles the given <code>persons</code> with a PersonAlgorithm provided by <code>algoProvider</code> for each thread,
+	 * like {@link #run(Population, int, PersonAlgorithmProvider)}, but each thread handles a consecutive part of the
+	 * persons, in the given order. So persons which are next to each other in the list are handled by the same algorithm.
+	 *
+	 * @param persons
+	 * @param numberOfThreads
+	 * @param algoProvider
+	 */
+	public static void run(final List<? extends Person> persons, final int numberOfThreads, final PersonAlgorithmProvider algoProvider) {
+		run(persons, numberOfThreads, algoProvider, true);
+	}
+
+	private static void run(final Collection<? extends Person> persons, final int numberOfThreads, final PersonAlgorithmProvider algoProvider,
+			final boolean consecutive) {
 		int numOfThreads = Math.max(numberOfThreads, 1); // it should be at least 1 here; we allow 0 in other places for "no threads"
 		PersonAlgoThread[] algoThreads = new PersonAlgoThread[numOfThreads];
 		Thread[] threads = new Thread[numOfThreads];
@@ -97,8 +116,12 @@ public final class ParallelPersonAlgorithmUtils {
 
 		// distribute workload between threads, as long as threads are not yet started, so we don't need synchronized data structures
 		int i = 0;
-		for (Person person : population.getPersons().values()) {
-			algoThreads[i % numOfThreads].handlePerson(person);
+		for (Person person : persons) {
+			if (consecutive) {
+				algoThreads[(int) ((long) i * numOfThreads / persons.size())].handlePerson(person);
+			} else {
+				algoThreads[i % numOfThreads].handlePerson(person);
+			}
 			i++;
 		}
 
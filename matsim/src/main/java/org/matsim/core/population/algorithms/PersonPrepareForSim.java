@@ -20,7 +20,14 @@
 
 package org.matsim.core.population.algorithms;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
@@ -34,6 +41,9 @@ import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.PlanRouter;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.facilities.ActivityFacilities;
 
 /**
@@ -45,6 +55,9 @@ import org.matsim.facilities.ActivityFacilities;
  * and that all plans have valid routes, calculating missing links and
  * routes if required. Additionally, it will output a warning to the
  * log if a person has no plans at all.
+ * <br>
+ * Only activities without a link are linked. If the router is a {@link PlanRouter}, only
+ * the trips which need it are routed, otherwise the whole plan.
  *
  * @author mrieser
  */
@@ -92,25 +105,43 @@ public final class PersonPrepareForSim extends AbstractPersonAlgorithm {
 
 	@Override
 	public void run(final Person person) {
+		for (Map.Entry<Plan, List<Trip>> e : linkActivities(person).entrySet()) {
+			routeTrips(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Assigns links to the activities of the person's plans which have none, and calculates missing distances
+	 * of network routes. No plan is routed, so this is cheap and can be run for all persons before routing the
+	 * plans which need it, see {@link #routeTrips(Plan, List)}.
+	 *
+	 * @return for each plan which needs routing, the trips to route: trips with a leg without a route, or starting
+	 * or ending at an activity which got a link.
+	 */
+	public Map<Plan, List<Trip>> linkActivities(final Person person) {
 		// first make sure we have a selected plan
 		Plan selectedPlan = person.getSelectedPlan();
 		if (selectedPlan == null) {
 			// the only way no plan can be selected should be when the person has no plans at all
 			log.warn("Person " + person.getId() + " has no plans!");
-			return;
+			return Collections.emptyMap();
 		}
 
 		// make sure all the plans have valid act-locations and valid routes
+		Map<Plan, List<Trip>> tripsToRoute = new LinkedHashMap<>();
 		for (Plan plan : person.getPlans()) {
-			boolean needsXY2Links = false;
+			Set<Activity> linkedActivities = null;
 			boolean needsReRoute = false;
 			for (PlanElement pe : plan.getPlanElements()) {
 				if (pe instanceof Activity) {
 					Activity act = (Activity) pe;
 					if ( act.getLinkId() == null ) {
-					    	needsXY2Links = true;
-							needsReRoute = true;
-							break;
+						this.xy2links.processActivity(act, plan);
+						if (linkedActivities == null) {
+							linkedActivities = new HashSet<>();
+						}
+						linkedActivities.add(act);
+						needsReRoute = true;
 					}
 				} else if (pe instanceof Leg) {
 					Leg leg = (Leg) pe;
@@ -134,14 +165,53 @@ public final class PersonPrepareForSim extends AbstractPersonAlgorithm {
 					}
 				}
 			}
-			if (needsXY2Links) {
-				this.xy2links.run(plan);
+			if (!needsReRoute) {
+				continue;
+			}
+			if (!(this.router instanceof PlanRouter)) {
+				// only the plan router can route single trips
+				tripsToRoute.put(plan, null);
+				continue;
+			}
+			List<Trip> trips = new ArrayList<>();
+			for (Trip trip : TripStructureUtils.getTrips(plan, ((PlanRouter) this.router).getStageActivityTypes())) {
+				if (needsRoute(trip, linkedActivities)) {
+					trips.add(trip);
+				}
+			}
+			if (!trips.isEmpty()) {
+				tripsToRoute.put(plan, trips);
+			}
+		}
+		return tripsToRoute;
+	}
+
+	private static boolean needsRoute(final Trip trip, final Set<Activity> linkedActivities) {
+		if (linkedActivities != null && (linkedActivities.contains(trip.getOriginActivity()) || linkedActivities.contains(trip.getDestinationActivity()))) {
+			return true;
+		}
+		for (PlanElement pe : trip.getTripElements()) {
+			if (pe instanceof Leg && ((Leg) pe).getRoute() == null) {
+				return true;
 			}
-			if (needsReRoute) {
-				this.router.run(plan);
+			if (pe instanceof Activity && linkedActivities != null && linkedActivities.contains(pe)) {
+				return true;
 			}
 		}
+		return false;
+	}
 
+	/**
+	 * Routes the trips of the plan found by {@link #linkActivities(Person)}.
+	 *
+	 * @param trips the trips to route, or <code>null</code> to route the whole plan
+	 */
+	public void routeTrips(final Plan plan, final List<Trip> trips) {
+		if (trips == null) {
+			this.router.run(plan);
+		} else {
+			((PlanRouter) this.router).run(plan, trips);
+		}
 	}
 
 }
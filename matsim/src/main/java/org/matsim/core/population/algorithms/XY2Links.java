@@ -77,52 +77,55 @@ public final class XY2Links extends AbstractPersonAlgorithm implements PlanAlgor
 		List<PlanElement> planElements = plan.getPlanElements();
 		for (PlanElement planElement : planElements) {
 			if (planElement instanceof Activity) {
-				Activity act = (Activity) planElement;
-				
-				if ( facilities != null ) {
-					// since the facilities in Scenario are now permanently enabled, this can only happen when called through the
-					// more specific constructor. kai, feb'16
-					
-					if (act.getFacilityId() != null) {
-						ActivityFacility facility = facilities.getFacilities().get(act.getFacilityId());
+				processActivity((Activity) planElement, plan);
+			}
+		}
+	}
 
-						if (facility != null) {
-							act.setLinkId(facility.getLinkId());
-							// yy facility.getLinkId may be null, in particular since linkId is not even part of the facilities DTD. kai, feb'16
+	/** Assigns a link to the activity of the plan. */
+	/*package*/ void processActivity(final Activity act, final Plan plan) {
+		if ( facilities != null ) {
+			// since the facilities in Scenario are now permanently enabled, this can only happen when called through the
+			// more specific constructor. kai, feb'16
+			
+			if (act.getFacilityId() != null) {
+				ActivityFacility facility = facilities.getFacilities().get(act.getFacilityId());
 
-							if (act.getLinkId() == null && act.getCoord()==null){
-								// for FacilitiesSource.onePerActivityLocationInPlansFile, one can opt to keep coords in facility only. Amit Jan'18
-								act.setCoord(facility.getCoord());
-							}
-						}
-					}
-				}
-				
-				if ( act.getLinkId() != null ) {
-					// there may be activities in a plan that have a link and others that have a coordinate.  
-					// Those that have a link do not need a new link.  In addition, they may not even have a 
-					// coordinate.  kai/dominik, nov'11
-					continue ;
-				}
+				if (facility != null) {
+					act.setLinkId(facility.getLinkId());
+					// yy facility.getLinkId may be null, in particular since linkId is not even part of the facilities DTD. kai, feb'16
 
-				// If the linkId is still null get nearest link from the network
-//				Link link = this.network.getNearestLinkExactly(act.getCoord());
-				Link link = NetworkUtils.getNearestLink(this.network, act.getCoord());
-				// getNearestLinkExactly not necessarily better than getNearestLink.  E.g.
-				// n--n-----------------------------n
-				// A home location slightly to the right of the middle node will take:
-				// * the left link with getNearestLink
-				// * the right link with getNearestLinkExactly
-				// kai/dominik, jan'13
-				/* ownPrepareForSimExample in matsim tutorials gives an example how to use
-				 * getNearestLinkExactly anyway. tt feb'2016
-				 */
-				
-				if (null == link) {
-					throw new RuntimeException("For person id="+plan.getPerson().getId()+": getNearestLink returned Null! act="+act);
+					if (act.getLinkId() == null && act.getCoord()==null){
+						// for FacilitiesSource.onePerActivityLocationInPlansFile, one can opt to keep coords in facility only. Amit Jan'18
+						act.setCoord(facility.getCoord());
+					}
 				}
-				act.setLinkId(link.getId());				
 			}
 		}
+		
+		if ( act.getLinkId() != null ) {
+			// there may be activities in a plan that have a link and others that have a coordinate.  
+			// Those that have a link do not need a new link.  In addition, they may not even have a 
+			// coordinate.  kai/dominik, nov'11
+			return ;
+		}
+
+		// If the linkId is still null get nearest link from the network
+//		Link link = this.network.getNearestLinkExactly(act.getCoord());
+		Link link = NetworkUtils.getNearestLink(this.network, act.getCoord());
+		// getNearestLinkExactly not necessarily better than getNearestLink.  E.g.
+		// n--n-----------------------------n
+		// A home location slightly to the right of the middle node will take:
+		// * the left link with getNearestLink
+		// * the right link with getNearestLinkExactly
+		// kai/dominik, jan'13
+		/* ownPrepareForSimExample in matsim tutorials gives an example how to use
+		 * getNearestLinkExactly anyway. tt feb'2016
+		 */
+		
+		if (null == link) {
+			throw new RuntimeException("For person id="+plan.getPerson().getId()+": getNearestLink returned Null! act="+act);
+		}
+		act.setLinkId(link.getId());				
 	}
 }
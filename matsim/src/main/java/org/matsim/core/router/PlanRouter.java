@@ -78,10 +78,25 @@ public class PlanRouter implements PlanAlgorithm, PersonAlgorithm {
 		return routingHandler;
 	}
 
+	/**
+	 * @return the stage activity types of the {@link TripRouter}, which define the trips of a plan.
+	 */
+	public StageActivityTypes getStageActivityTypes() {
+		return routingHandler.getStageActivityTypes();
+	}
+
 	@Override
 	public void run(final Plan plan) {
-		final List<Trip> trips = TripStructureUtils.getTrips( plan , routingHandler.getStageActivityTypes() );
+		run( plan , TripStructureUtils.getTrips( plan , routingHandler.getStageActivityTypes() ) );
+	}
 
+	/**
+	 * Routes only the given trips of the plan, leaving the other trips as they are.
+	 *
+	 * @param trips trips of the plan, as returned by {@link TripStructureUtils#getTrips(Plan, StageActivityTypes)}
+	 * with the stage activity types of this router
+	 */
+	public void run(final Plan plan, final List<Trip> trips) {
 		for (Trip oldTrip : trips) {
 			final List<? extends PlanElement> newTrip =
 					routingHandler.calcRoute(
@@ -19,7 +19,9 @@
  * *********************************************************************** */
 package org.matsim.core.trafficmonitoring;
 
-import java.util.HashSet;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,7 +49,6 @@ import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
 import org.matsim.core.router.util.LinkToLinkTravelTime;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.collections.CollectionUtils;
-import org.matsim.core.utils.collections.Tuple;
 import org.matsim.vehicles.Vehicle;
 
 import com.google.inject.Inject;
@@ -63,6 +64,12 @@ import com.google.inject.Inject;
  * use {@link TravelTimeDataHashMap} (see {@link #setTravelTimeDataFactory(TravelTimeDataFactory)}
  * as that one does not use any memory to time bins where no traffic occurred. By default,
  * {@link TravelTimeDataArray} is used.
+ * <br>
+ * Links and vehicles are mapped to dense integer indices, so that the event handling part
+ * only works on primitive arrays: the enter time of each vehicle is kept in a <code>double[]</code>,
+ * and the data containers of links and turning moves are looked up by link index instead of
+ * by id or by (from, to)-tuples. Handling a link event thus neither allocates objects nor
+ * has to take any lock.
  * 
  * @author dgrether
  * @author mrieser
@@ -80,15 +87,30 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 
 	private static final Logger log = Logger.getLogger(TravelTimeCalculator.class);
 
-	private Map<Id<Link>, DataContainer> linkData;
+	private static final int NO_INDEX = -1;
 
-	private Map<Tuple<Id<Link>, Id<Link>>, DataContainer> linkToLinkData;
+	private Map<Id<Link>, DataContainer> linkData;
 
 	private final DataContainerProvider dataContainerProvider;
-	
-	private final Map<Id<Vehicle>, LinkEnterEvent> linkEnterEvents;
 
-	private final Set<Id<Vehicle>> vehiclesToIgnore;
+	/* Dense link indices. The map and the arrays indexed by it are filled from the network at construction
+	 * and never modified afterwards, so they can safely be read from other threads, e.g. routers requesting
+	 * link-to-link travel times. Events on links which are not part of the network have no index. */
+	private final TObjectIntHashMap<Id<Link>> linkIndices;
+	private final Link[] links;
+
+	/* data containers by link index, only used by the event handling part as a cache in front of the dataContainerProvider */
+	private final DataContainer[] linkDataByIndex;
+
+	/* turning move data containers by index of the from-link, one (initially empty) object per link */
+	private final LinkToLinkData[] linkToLinkData;
+
+	/* Dense vehicle indices, only accessed by the event handling part. */
+	private final TObjectIntHashMap<Id<Vehicle>> vehicleIndices = new TObjectIntHashMap<>(1024, 0.5f, NO_INDEX);
+	private double[] vehicleEnterTimes = new double[0];
+	private int[] vehicleEnterLinks = new int[0];
+	private boolean[] vehiclesToIgnore = new boolean[0];
+
 	private final Set<String> analyzedModes;
 
 	private final boolean filterAnalyzedModes;
@@ -104,6 +126,9 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 	public static TravelTimeCalculator create(Network network, TravelTimeCalculatorConfigGroup group) {
 		TravelTimeCalculator calculator = new TravelTimeCalculator(network, group);
 		configure(calculator, group, network);
+		if (group.getInputTravelTimesFile() != null && calculator.calculateLinkTravelTimes) {
+			calculator.setInitialTravelTimes(TravelTimeStore.read(group.getInputTravelTimesFileURL(null)), network);
+		}
 		return calculator;
 	}
 
@@ -156,6 +181,17 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		configure(this, ttconfigGroup, network);
 	}
 
+	/**
+	 * Starts from the travel times of an earlier run if an input travel times file is configured, see
+	 * {@link TravelTimeCalculatorModule}. The store is bound once, so other modules can share it.
+	 */
+	@Inject(optional = true)
+	/*package*/ void setInitialTravelTimes(final TravelTimeStore initialTravelTimes, final Network network) {
+		if (this.calculateLinkTravelTimes) {
+			setInitialTravelTimes((TravelTime) initialTravelTimes, network);
+		}
+	}
+
 	public TravelTimeCalculator(final Network network, TravelTimeCalculatorConfigGroup ttconfigGroup) {
 		this(network, ttconfigGroup.getTraveltimeBinSize(), ttconfigGroup.getMaxTime(), ttconfigGroup);
 	}
@@ -190,16 +226,24 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 			//		this.dataContainerProvider = new MapBasedDataContainerProvider(linkData, ttDataFactory);
 			this.dataContainerProvider = new ArrayBasedDataContainerProvider(linkData, ttDataFactory, network);
 		} else this.dataContainerProvider = null;
-		if (this.calculateLinkToLinkTravelTimes){
-			// assume that every link has 2 outgoing links as default
-			this.linkToLinkData = new ConcurrentHashMap<>((int) (network.getLinks().size() * 1.4 * 2));
+
+		int numLinks = network.getLinks().size();
+		this.linkIndices = new TObjectIntHashMap<>(Math.max(numLinks * 2, 16), 0.5f, NO_INDEX);
+		this.links = new Link[numLinks];
+		for (Link link : network.getLinks().values()) {
+			this.links[this.linkIndices.size()] = link;
+			this.linkIndices.put(link.getId(), this.linkIndices.size());
 		}
-		this.linkEnterEvents = new ConcurrentHashMap<>();
+		this.linkDataByIndex = new DataContainer[numLinks];
+		if (this.calculateLinkToLinkTravelTimes){
+			this.linkToLinkData = new LinkToLinkData[numLinks];
+			for (int i = 0; i < numLinks; i++) {
+				this.linkToLinkData[i] = new LinkToLinkData();
+			}
+		} else this.linkToLinkData = null;
 
 		// if we just look at one mode, we need to ignore all vehicles with a different mode. However, the info re the mode is only in
-		// the vehicleEntersTraffic event.  So we need to memorize the ignored vehicles from there ...
-		this.vehiclesToIgnore = new HashSet<>();
-
+		// the vehicleEntersTraffic event.  So we need to memorize the ignored vehicles from there (see vehiclesToIgnore) ...
 
 		this.reset(0);
 
@@ -207,27 +251,30 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 
 	@Override
 	public void handleEvent(final LinkEnterEvent e) {
+		int vehIndex = getVehicleIndex(e.getVehicleId());
 		/* if only some modes are analyzed, we check whether the vehicles
 		 * performs a trip with one of those modes. if not, we skip the event. */
-		if (filterAnalyzedModes && vehiclesToIgnore.contains(e.getVehicleId())) return;
-
-		LinkEnterEvent oldEvent = this.linkEnterEvents.remove(e.getVehicleId());
-		if ((oldEvent != null) && this.calculateLinkToLinkTravelTimes) {
-			Tuple<Id<Link>, Id<Link>> fromToLink = new Tuple<>(oldEvent.getLinkId(), e.getLinkId());
-			DataContainer data = getLinkToLinkTravelTimeData(fromToLink, true);
-			this.aggregator.addTravelTime(data.ttData, oldEvent.getTime(), e.getTime());
+		if (filterAnalyzedModes && this.vehiclesToIgnore[vehIndex]) return;
+
+		int linkIndex = this.linkIndices.get(e.getLinkId());
+		double oldEnterTime = this.vehicleEnterTimes[vehIndex];
+		int oldLinkIndex = this.vehicleEnterLinks[vehIndex];
+		if (!Double.isNaN(oldEnterTime) && this.calculateLinkToLinkTravelTimes && oldLinkIndex != NO_INDEX && linkIndex != NO_INDEX) {
+			DataContainer data = getOrCreateLinkToLinkTravelTimeData(oldLinkIndex, linkIndex);
+			this.aggregator.addTravelTime(data.ttData, oldEnterTime, e.getTime());
 			data.needsConsolidation = true;
 		}
-		this.linkEnterEvents.put(e.getVehicleId(), e);
+		this.vehicleEnterTimes[vehIndex] = e.getTime();
+		this.vehicleEnterLinks[vehIndex] = linkIndex;
 	}
 
 	@Override
 	public void handleEvent(final LinkLeaveEvent e) {
 		if (this.calculateLinkTravelTimes) {
-			LinkEnterEvent oldEvent = this.linkEnterEvents.get(e.getVehicleId());
-			if (oldEvent != null) {
-				DataContainer data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
-				this.aggregator.addTravelTime(data.ttData, oldEvent.getTime(), e.getTime());
+			int vehIndex = this.vehicleIndices.get(e.getVehicleId());
+			if (vehIndex != NO_INDEX && !Double.isNaN(this.vehicleEnterTimes[vehIndex])) {
+				DataContainer data = getLinkTravelTimeData(e.getLinkId());
+				this.aggregator.addTravelTime(data.ttData, this.vehicleEnterTimes[vehIndex], e.getTime());
 				data.needsConsolidation = true;
 			}
 		}
@@ -239,7 +286,8 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		 * starts a leg on a non analyzed transport mode, add the vehicle 
 		 * to the filtered vehicles set. */
 		if (filterAnalyzedModes && !analyzedModes.contains(event.getNetworkMode())) { 
-			this.vehiclesToIgnore.add(event.getVehicleId());
+			int vehIndex = getVehicleIndex(event.getVehicleId());
+			this.vehiclesToIgnore[vehIndex] = true;
 		}
 	}
 
@@ -248,10 +296,13 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		/* remove EnterEvents from list when a vehicle arrives.
 		 * otherwise, the activity duration would counted as travel time, when the
 		 * vehicle departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
+		int vehIndex = this.vehicleIndices.get(event.getVehicleId());
+		if (vehIndex != NO_INDEX) {
+			this.vehicleEnterTimes[vehIndex] = Double.NaN;
 
-		// try to remove vehicles from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+			// try to remove vehicles from set with filtered vehicles
+			this.vehiclesToIgnore[vehIndex] = false;
+		}
 	}
 
 	@Override
@@ -259,16 +310,25 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		/* remove EnterEvents from list when a bus stops on a link.
 		 * otherwise, the stop time would counted as travel time, when the
 		 * bus departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
+		int vehIndex = this.vehicleIndices.get(event.getVehicleId());
+		if (vehIndex != NO_INDEX) {
+			this.vehicleEnterTimes[vehIndex] = Double.NaN;
+		}
 	}
 
 	@Override
 	public void handleEvent(VehicleAbortsEvent event) {
-		LinkEnterEvent e = this.linkEnterEvents.remove(event.getVehicleId());
-		if (e != null) {
-			DataContainer data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
+		int vehIndex = this.vehicleIndices.get(event.getVehicleId());
+		if (vehIndex == NO_INDEX) {
+			return;
+		}
+		double enterTime = this.vehicleEnterTimes[vehIndex];
+		if (!Double.isNaN(enterTime)) {
+			this.vehicleEnterTimes[vehIndex] = Double.NaN;
+			int linkIndex = this.vehicleEnterLinks[vehIndex];
+			DataContainer data = linkIndex == NO_INDEX ? getLinkTravelTimeData(event.getLinkId()) : getLinkTravelTimeData(linkIndex);
 			data.needsConsolidation = true;
-			this.aggregator.addStuckEventTravelTime(data.ttData, e.getTime(), event.getTime());
+			this.aggregator.addStuckEventTravelTime(data.ttData, enterTime, event.getTime());
 			if (this.calculateLinkToLinkTravelTimes 
 					&& event.getTime() < qsimConfig.getEndTime() 
 					// (we think that this only makes problems when the abort is not just because of mobsim end time. kai & theresa, jan'17) 
@@ -279,14 +339,52 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		}
 
 		// try to remove vehicle from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+		this.vehiclesToIgnore[vehIndex] = false;
 	}
 
-	private DataContainer getLinkToLinkTravelTimeData(Tuple<Id<Link>, Id<Link>> fromLinkToLink, final boolean createIfMissing) {
-		DataContainer data = this.linkToLinkData.get(fromLinkToLink);
-		if ((null == data) && createIfMissing) {
-			data = new DataContainer(this.ttDataFactory.createTravelTimeData(fromLinkToLink.getFirst()));
-			this.linkToLinkData.put(fromLinkToLink, data);
+	private int getVehicleIndex(final Id<Vehicle> vehicleId) {
+		int index = this.vehicleIndices.get(vehicleId);
+		if (index == NO_INDEX) {
+			index = this.vehicleIndices.size();
+			this.vehicleIndices.put(vehicleId, index);
+			if (index == this.vehicleEnterTimes.length) {
+				int newLength = Math.max(16, index * 2);
+				this.vehicleEnterTimes = Arrays.copyOf(this.vehicleEnterTimes, newLength);
+				Arrays.fill(this.vehicleEnterTimes, index, newLength, Double.NaN);
+				this.vehicleEnterLinks = Arrays.copyOf(this.vehicleEnterLinks, newLength);
+				this.vehiclesToIgnore = Arrays.copyOf(this.vehiclesToIgnore, newLength);
+			}
+		}
+		return index;
+	}
+
+	private DataContainer getLinkTravelTimeData(final Id<Link> linkId) {
+		int linkIndex = this.linkIndices.get(linkId);
+		if (linkIndex == NO_INDEX) {
+			// not part of the network, so there is no index to cache the data container
+			return this.dataContainerProvider.getTravelTimeData(linkId, true);
+		}
+		return getLinkTravelTimeData(linkIndex);
+	}
+
+	private DataContainer getLinkTravelTimeData(final int linkIndex) {
+		DataContainer data = this.linkDataByIndex[linkIndex];
+		if (data == null) {
+			data = this.dataContainerProvider.getTravelTimeData(this.links[linkIndex].getId(), true);
+			this.linkDataByIndex[linkIndex] = data;
+		}
+		return data;
+	}
+
+	/*
+	 * Only called by the event handling part, which is thus the only one adding turning moves.
+	 */
+	private DataContainer getOrCreateLinkToLinkTravelTimeData(final int fromLinkIndex, final int toLinkIndex) {
+		LinkToLinkData turns = this.linkToLinkData[fromLinkIndex];
+		DataContainer data = turns.get(toLinkIndex);
+		if (data == null) {
+			data = new DataContainer(this.ttDataFactory.createTravelTimeData(this.links[fromLinkIndex].getId()));
+			turns.add(toLinkIndex, data);
 		}
 		return data;
 	}
@@ -343,7 +441,16 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 			throw new IllegalStateException("No link to link travel time is available " +
 					"if calculation is switched off by config option!");
 		}
-		DataContainer data = this.getLinkToLinkTravelTimeData(new Tuple<>(fromLinkId, toLinkId), true);
+		int fromLinkIndex = this.linkIndices.get(fromLinkId);
+		if (fromLinkIndex == NO_INDEX) {
+			throw new IllegalArgumentException("Link " + fromLinkId + " is not part of the network of this travel time calculator.");
+		}
+		DataContainer data = this.linkToLinkData[fromLinkIndex].get(this.linkIndices.get(toLinkId));
+		if (data == null) {
+			// no vehicle was observed on this turn, so it is passed with free speed, as on an empty link
+			Link fromLink = this.links[fromLinkIndex];
+			return fromLink.getLength() / fromLink.getFreespeed(time);
+		}
 		if (data.needsConsolidation) {
 			consolidateData(data);
 		}
@@ -359,13 +466,46 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 			}
 		}
 		if (this.calculateLinkToLinkTravelTimes){
-			for (DataContainer data : this.linkToLinkData.values()){
-				data.ttData.resetTravelTimes();
-				data.needsConsolidation = false;
+			for (LinkToLinkData turns : this.linkToLinkData) {
+				for (DataContainer data : turns.data) {
+					data.ttData.resetTravelTimes();
+					data.needsConsolidation = false;
+				}
+			}
+		}
+		Arrays.fill(this.vehicleEnterTimes, Double.NaN);
+		Arrays.fill(this.vehiclesToIgnore, false);
+	}
+
+	/**
+	 * Sets the travel times of all links in all time bins, e.g. to the travel times of an earlier run stored in a
+	 * {@link TravelTimeStore}, so routes are not computed with free speed travel times before the first mobsim.
+	 * The travel times are replaced by the measured ones as soon as the calculator is {@link #reset(int)}, i.e.
+	 * at the start of the first mobsim.
+	 */
+	public void setInitialTravelTimes(final TravelTime travelTimes, final Network network) {
+		if (!this.calculateLinkTravelTimes) {
+			throw new IllegalStateException("Initial link travel times can only be set if link travel times are calculated.");
+		}
+		for (Link link : network.getLinks().values()) {
+			DataContainer data = this.dataContainerProvider.getTravelTimeData(link, true);
+			for (int i = 0; i < this.numSlots; i++) {
+				data.ttData.setTravelTime(i, travelTimes.getLinkTravelTime(link, i * this.timeSlice, null, null));
 			}
+			data.needsConsolidation = false;
 		}
-		this.linkEnterEvents.clear();
-		this.vehiclesToIgnore.clear();
+	}
+
+	/**
+	 * @return the travel time of the link in the time bin, as stored in its {@link TravelTimeData}, without
+	 * 		interpolating between bins
+	 */
+	/*package*/ double getTimeBinTravelTime(final Link link, final int timeBin) {
+		DataContainer data = this.dataContainerProvider.getTravelTimeData(link, true);
+		if (data.needsConsolidation) {
+			consolidateData(data);
+		}
+		return data.ttData.getTravelTime(timeBin, timeBin * this.timeSlice);
 	}
 
 	public void setTravelTimeDataFactory(final TravelTimeDataFactory factory) {
@@ -440,6 +580,38 @@ public class TravelTimeCalculator implements LinkEnterEventHandler, LinkLeaveEve
 		return this.timeSlice;
 	}
 
+	/**
+	 * The turning move data of one from-link. Links typically only have a handful of outgoing
+	 * links, so a linear scan over the to-link indices is faster than any map lookup.
+	 * Turns are only added by the event handling part, and the arrays are replaced (never
+	 * modified in place) when a turn is added, so readers do not need to synchronize.
+	 */
+	private static final class LinkToLinkData {
+		private volatile int[] toLinks = new int[0];
+		private volatile DataContainer[] data = new DataContainer[0];
+
+		DataContainer get(final int toLinkIndex) {
+			DataContainer[] d = this.data;
+			int[] t = this.toLinks;
+			for (int i = 0, n = Math.min(t.length, d.length); i < n; i++) {
+				if (t[i] == toLinkIndex) {
+					return d[i];
+				}
+			}
+			return null;
+		}
+
+		void add(final int toLinkIndex, final DataContainer container) {
+			int n = this.toLinks.length;
+			int[] t = Arrays.copyOf(this.toLinks, n + 1);
+			t[n] = toLinkIndex;
+			DataContainer[] d = Arrays.copyOf(this.data, n + 1);
+			d[n] = container;
+			this.data = d;
+			this.toLinks = t;
+		}
+	}
+
 	/*package*/ static class DataContainer {
 		/*package*/ final TravelTimeData ttData;
 		/*package*/ volatile boolean needsConsolidation = false;
@@ -29,6 +29,7 @@ import com.google.inject.name.Names;
 
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.router.util.LinkToLinkTravelTime;
@@ -50,6 +51,14 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 
 	@Override
 	public void install() {
+		if (getConfig().travelTimeCalculator().getInputTravelTimesFile() != null) {
+			if (getConfig().travelTimeCalculator().getSeparateModes()) {
+				throw new RuntimeException("separate modes together with an input travel times file is not implemented, since the "
+						+ "travel times are only stored for all modes together.");
+			}
+			// read once, and shared with other modules using the same travel times, e.g. dvrp
+			bind(TravelTimeStore.class).toProvider(TravelTimeStoreProvider.class).in(Singleton.class);
+		}
 		if (getConfig().travelTimeCalculator().getSeparateModes()) {
 			if (getConfig().travelTimeCalculator().isCalculateLinkToLinkTravelTimes()) {
 				throw new RuntimeException("separate modes together with link2link routing currently not implemented. doesn't look difficult, "
@@ -84,6 +93,9 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 			if (getConfig().travelTimeCalculator().isCalculateLinkToLinkTravelTimes()) {
 				bind(LinkToLinkTravelTime.class).toProvider(ObservedLinkToLinkTravelTimes.class);
 			}
+			if (getConfig().travelTimeCalculator().isCalculateLinkTravelTimes() && getConfig().travelTimeCalculator().getWriteTravelTimesInterval() > 0) {
+				addControlerListenerBinding().to(TravelTimeStoreDumping.class);
+			}
 		}
 	}
 
@@ -108,4 +120,14 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 		}
 	}
 
+	private static class TravelTimeStoreProvider implements Provider<TravelTimeStore> {
+
+		@Inject Config config;
+
+		@Override
+		public TravelTimeStore get() {
+			return TravelTimeStore.read(config.travelTimeCalculator().getInputTravelTimesFileURL(config.getContext()));
+		}
+	}
+
 }
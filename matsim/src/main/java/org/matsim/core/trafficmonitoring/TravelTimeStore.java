@@ -0,0 +1,157 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TravelTimeStore.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Link travel times per time bin, stored in a compact binary file so a later run can start from the travel times
+ * of an earlier one instead of from free speed, see
+ * {@link org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup#setInputTravelTimesFile(String)}.
+ * <p></p>
+ * The file contains one float per link and time bin, and is gzip-compressed if the filename ends with ".gz".
+ * Links not contained in the file have their free speed travel time.
+ */
+public final class TravelTimeStore implements TravelTime {
+
+	private static final Logger log = Logger.getLogger(TravelTimeStore.class);
+
+	public static final String FILENAME = "linkTravelTimes.bin.gz";
+
+	private static final String MAGIC = "MATSimTT";
+	private static final int VERSION = 1;
+	private static final int NO_ROW = -1;
+
+	private final int binSize;
+	private final int binCount;
+	private final TObjectIntHashMap<Id<Link>> rows;
+	private final float[] travelTimes;
+
+	private TravelTimeStore(final int binSize, final int binCount, final TObjectIntHashMap<Id<Link>> rows, final float[] travelTimes) {
+		this.binSize = binSize;
+		this.binCount = binCount;
+		this.rows = rows;
+		this.travelTimes = travelTimes;
+	}
+
+	@Override
+	public double getLinkTravelTime(final Link link, final double time, final Person person, final Vehicle vehicle) {
+		int row = this.rows.get(link.getId());
+		if (row == NO_ROW) {
+			return link.getLength() / link.getFreespeed(time);
+		}
+		return this.travelTimes[row * this.binCount + TimeBinUtils.getTimeBinIndex(time, this.binSize, this.binCount)];
+	}
+
+	public int getTimeBinSize() {
+		return this.binSize;
+	}
+
+	public int getTimeBinCount() {
+		return this.binCount;
+	}
+
+	/**
+	 * Writes the travel times measured by the calculator, per time bin of the calculator.
+	 */
+	public static void write(final TravelTimeCalculator calculator, final Network network, final String filename) {
+		log.info("writing link travel times to " + filename);
+		int binCount = calculator.getNumSlots();
+		try (DataOutputStream out = new DataOutputStream(IOUtils.getOutputStream(filename))) {
+			out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+			out.writeInt(VERSION);
+			out.writeInt(calculator.getTimeSlice());
+			out.writeInt(binCount);
+			out.writeInt(network.getLinks().size());
+			for (Link link : network.getLinks().values()) {
+				out.writeUTF(link.getId().toString());
+				for (int bin = 0; bin < binCount; bin++) {
+					out.writeFloat((float) calculator.getTimeBinTravelTime(link, bin));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public static TravelTimeStore read(final String filename) {
+		log.info("reading link travel times from " + filename);
+		try (InputStream in = IOUtils.getInputStream(filename)) {
+			return read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public static TravelTimeStore read(final URL url) {
+		log.info("reading link travel times from " + url);
+		try (InputStream in = IOUtils.getInputStream(url)) {
+			return read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static TravelTimeStore read(final InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		byte[] magic = new byte[MAGIC.length()];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC.getBytes(StandardCharsets.US_ASCII))) {
+			throw new UncheckedIOException("Not a link travel times file.");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new UncheckedIOException("Unsupported version of link travel times file: " + version);
+		}
+		int binSize = in.readInt();
+		int binCount = in.readInt();
+		int linkCount = in.readInt();
+		TObjectIntHashMap<Id<Link>> rows = new TObjectIntHashMap<>(Math.max(linkCount * 2, 16), 0.5f, NO_ROW);
+		float[] travelTimes = new float[linkCount * binCount];
+		for (int row = 0; row < linkCount; row++) {
+			rows.put(Id.createLinkId(in.readUTF()), row);
+			for (int bin = 0; bin < binCount; bin++) {
+				travelTimes[row * binCount + bin] = in.readFloat();
+			}
+		}
+		return new TravelTimeStore(binSize, binCount, rows, travelTimes);
+	}
+
+}
@@ -0,0 +1,66 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TravelTimeStoreDumping.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+import com.google.inject.Inject;
+
+/**
+ * Writes the measured link travel times to a {@link TravelTimeStore} every
+ * {@link TravelTimeCalculatorConfigGroup#getWriteTravelTimesInterval()} iterations, and in the last iteration also to
+ * the output directory, from where the next run can be started.
+ */
+final class TravelTimeStoreDumping implements IterationEndsListener {
+
+	private final TravelTimeCalculator calculator;
+	private final Network network;
+	private final OutputDirectoryHierarchy controlerIO;
+	private final int interval;
+	private final int lastIteration;
+
+	@Inject
+	TravelTimeStoreDumping(TravelTimeCalculator calculator, Network network, OutputDirectoryHierarchy controlerIO,
+			TravelTimeCalculatorConfigGroup ttConfig, ControlerConfigGroup controlerConfig) {
+		this.calculator = calculator;
+		this.network = network;
+		this.controlerIO = controlerIO;
+		this.interval = ttConfig.getWriteTravelTimesInterval();
+		this.lastIteration = controlerConfig.getLastIteration();
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		int iteration = event.getIteration();
+		if (iteration % this.interval == 0 || iteration == this.lastIteration) {
+			TravelTimeStore.write(this.calculator, this.network, this.controlerIO.getIterationFilename(iteration, TravelTimeStore.FILENAME));
+		}
+		if (iteration == this.lastIteration) {
+			TravelTimeStore.write(this.calculator, this.network, this.controlerIO.getOutputFilename("output_" + TravelTimeStore.FILENAME));
+		}
+	}
+
+}
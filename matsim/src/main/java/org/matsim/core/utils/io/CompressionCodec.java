@@ -0,0 +1,46 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompressionCodec.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format used by {@link IOUtils} for all files whose name ends with the codec's file extension.
+ * gzip (".gz") and LZ4 (".lz4") are supported by default, additional codecs can be registered with
+ * {@link IOUtils#addCompressionCodec(CompressionCodec)}.
+ */
+public interface CompressionCodec {
+
+	/**
+	 * @return the file extension, including the leading dot, e.g. ".gz"
+	 */
+	String getFileExtension();
+
+	InputStream createInputStream(InputStream in) throws IOException;
+
+	/**
+	 * The returned stream must write all remaining data and close <code>out</code> when it is closed.
+	 */
+	OutputStream createOutputStream(OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,124 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * GzipCompressionCodec.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip compression. Files are compressed in parallel like <code>pigz</code> does it: every block is deflated on
+ * its own, with the end of the previous block as dictionary, and ends with a sync flush, so the blocks together
+ * form one regular deflate stream, readable by every gzip implementation.
+ */
+final class GzipCompressionCodec implements CompressionCodec {
+
+	static final String EXTENSION = ".gz";
+
+	private static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+	@Override
+	public String getFileExtension() {
+		return EXTENSION;
+	}
+
+	@Override
+	public InputStream createInputStream(final InputStream in) throws IOException {
+		return new GZIPInputStream(in, INPUT_BUFFER_SIZE);
+	}
+
+	@Override
+	public OutputStream createOutputStream(final OutputStream out) throws IOException {
+		return new ParallelGzipOutputStream(out);
+	}
+
+	static final class ParallelGzipOutputStream extends ParallelBlockOutputStream {
+
+		private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+		private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+		private final CRC32 crc = new CRC32();
+		private long uncompressedSize = 0;
+
+		ParallelGzipOutputStream(final OutputStream out) throws IOException {
+			super(out, BLOCK_SIZE);
+			out.write(HEADER);
+		}
+
+		@Override
+		byte[] compressBlock(final byte[] data, final int length, final byte[] previousData, final int previousLength, final boolean last) {
+			Deflater deflater = deflaters.get();
+			deflater.reset();
+			if (previousData != null) {
+				int dictionaryLength = Math.min(DICTIONARY_SIZE, previousLength);
+				deflater.setDictionary(previousData, previousLength - dictionaryLength, dictionaryLength);
+			}
+			deflater.setInput(data, 0, length);
+			byte[] buffer = new byte[length / 2 + 64];
+			int size = 0;
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					if (size == buffer.length) {
+						buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+					}
+					size += deflater.deflate(buffer, size, buffer.length - size);
+				}
+			} else {
+				do {
+					if (size == buffer.length) {
+						buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+					}
+					size += deflater.deflate(buffer, size, buffer.length - size, Deflater.SYNC_FLUSH);
+				} while (size == buffer.length);
+			}
+			return Arrays.copyOf(buffer, size);
+		}
+
+		@Override
+		void blockWritten(final byte[] data, final int length) {
+			this.crc.update(data, 0, length);
+			this.uncompressedSize += length;
+		}
+
+		@Override
+		void writeTrailer(final OutputStream out) throws IOException {
+			writeInt(out, (int) this.crc.getValue());
+			writeInt(out, (int) this.uncompressedSize);
+		}
+
+		private static void writeInt(final OutputStream out, final int value) throws IOException {
+			out.write(value);
+			out.write(value >>> 8);
+			out.write(value >>> 16);
+			out.write(value >>> 24);
+		}
+
+	}
+
+}
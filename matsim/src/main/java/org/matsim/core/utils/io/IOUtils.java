@@ -35,20 +35,28 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
 /** A class with some static utility functions for file-I/O. */
 public class IOUtils {
 
-	private static final String GZ = ".gz";
+	private static final String GZ = GzipCompressionCodec.EXTENSION;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final List<CompressionCodec> compressionCodecs = new CopyOnWriteArrayList<>(Arrays.asList(
+			new GzipCompressionCodec(), new Lz4CompressionCodec()));
 
 	public static final Charset CHARSET_UTF8 = Charset.forName("UTF8");
 	public static final Charset CHARSET_WINDOWS_ISO88591 = Charset.forName("ISO-8859-1");
@@ -57,6 +65,27 @@ public class IOUtils {
 
 	private final static Logger log = Logger.getLogger(IOUtils.class);
 
+	/**
+	 * Registers an additional compression codec, used for all files ending with its file extension. It takes
+	 * precedence over the already registered codecs for the same extension.
+	 */
+	public static void addCompressionCodec(final CompressionCodec codec) {
+		compressionCodecs.add(0, codec);
+	}
+
+	/**
+	 * @return the compression codec for the file, based on its file extension, or <code>null</code> if the file is not compressed
+	 */
+	public static CompressionCodec getCompressionCodec(final String filename) {
+		String lowerCaseFilename = filename.toLowerCase(Locale.ROOT);
+		for (CompressionCodec codec : compressionCodecs) {
+			if (lowerCaseFilename.endsWith(codec.getFileExtension())) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
 	public static URL getUrlFromFileOrResource(String filename) {
 		if (filename.startsWith("~" + File.separator)) {
 			filename = System.getProperty("user.home") + filename.substring(1);
@@ -80,9 +109,9 @@ public class IOUtils {
 
 	/**
 	 * Tries to open the specified file for reading and returns a BufferedReader for it.
-	 * Supports gzip-compressed files, such files are automatically decompressed.
-	 * If the file is not found, a gzip-compressed version of the file with the
-	 * added ending ".gz" will be searched for and used if found. Assumes that the text
+	 * Supports compressed files (see {@link CompressionCodec}), such files are automatically decompressed.
+	 * If the file is not found, a compressed version of the file with the
+	 * added ending, e.g. ".gz", will be searched for and used if found. Assumes that the text
 	 * in the file is stored in UTF-8 (without BOM).
 	 *
 	 * @param filename The file to read, may contain the ending ".gz" to force reading a compressed file.
@@ -97,9 +126,9 @@ public class IOUtils {
 
 	/**
 	 * Tries to open the specified file for reading and returns a BufferedReader for it.
-	 * Supports gzip-compressed files, such files are automatically decompressed.
-	 * If the file is not found, a gzip-compressed version of the file with the
-	 * added ending ".gz" will be searched for and used if found.
+	 * Supports compressed files (see {@link CompressionCodec}), such files are automatically decompressed.
+	 * If the file is not found, a compressed version of the file with the
+	 * added ending, e.g. ".gz", will be searched for and used if found.
 	 *
 	 * @param filename The file to read, may contain the ending ".gz" to force reading a compressed file.
 	 * @param charset the Charset of the file to read
@@ -109,46 +138,7 @@ public class IOUtils {
 	 * <br> author mrieser
 	 */
 	public static BufferedReader getBufferedReader(final String filename, final Charset charset) throws UncheckedIOException {
-		BufferedReader infile = null;
-		if (filename == null) {
-			throw new UncheckedIOException(new FileNotFoundException("No filename given (filename == null)"));
-		}
-		try {
-			if (new File(filename).exists()) {
-				if (filename.endsWith(GZ)) {
-					infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(new GZIPInputStream(new FileInputStream(filename))), charset));
-				} else {
-					infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(new FileInputStream(filename)), charset));
-				}
-			} else if (new File(filename + GZ).exists()) {
-				infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(new GZIPInputStream(new FileInputStream(filename  + GZ))), charset));
-			} else {
-				InputStream stream = IOUtils.class.getClassLoader().getResourceAsStream(filename);
-				if (stream != null) {
-					if (filename.endsWith(GZ)) {
-						infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(new GZIPInputStream(stream)), charset));
-						log.info("loading file from classpath: " + filename);
-					} else {
-						infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(stream), charset));
-						log.info("loading file from classpath: " + filename);
-					}
-				} else {
-					stream = IOUtils.class.getClassLoader().getResourceAsStream(filename + GZ);
-					if (stream != null) {
-						infile = new BufferedReader(new InputStreamReader(new UnicodeInputStream(new GZIPInputStream(stream)), charset));
-						log.info("loading file from classpath: " + filename + GZ);
-					}
-				}
-			}
-		} catch (IOException e) {
-			log.fatal("encountered IOException.  This will most probably be fatal.  Note that for relative path names, the root is no longer the Java root, but the directory where the config file resides.");
-			throw new UncheckedIOException(e);
-		}
-
-		if (infile == null) {
-			throw new UncheckedIOException(new FileNotFoundException(filename));
-		}
-		return infile;
+		return new BufferedReader(new InputStreamReader(getInputStream(filename), charset));
 	}
 
 
@@ -180,7 +170,9 @@ public class IOUtils {
 
 	/**
 	 * Tries to open the specified file for writing and returns a BufferedWriter for it.
-	 * If the filename ends with ".gz", data will be automatically gzip-compressed.
+	 * If the filename ends with ".gz", data will be automatically gzip-compressed,
+	 * in parallel if several processors are available. Other compression formats
+	 * are selected by their file extension as well, see {@link CompressionCodec}.
 	 * The data written will be encoded as UTF-8 (only relevant if you use Umlauts or
 	 * other characters not used in plain English).
 	 *
@@ -253,15 +245,16 @@ public class IOUtils {
 		if (filename == null) {
 			throw new UncheckedIOException(new FileNotFoundException("No filename given (filename == null)"));
 		}
+		CompressionCodec codec = getCompressionCodec(filename);
 		try {
-			if (filename.toLowerCase(Locale.ROOT).endsWith(GZ)) {
+			if (codec != null) {
 				File f = new File(filename);
 				if (append && f.exists() && (f.length() > 0)) {
-					throw new IllegalArgumentException("Appending to an existing gzip-compressed file is not supported.");
+					throw new IllegalArgumentException("Appending to an existing compressed file is not supported.");
 				}
-				return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(filename, append)), charset));
+				return new BufferedWriter(new OutputStreamWriter(codec.createOutputStream(new FileOutputStream(filename, append)), charset), BUFFER_SIZE);
 			}
-			return new BufferedWriter(new OutputStreamWriter(new FileOutputStream (filename, append), charset));
+			return new BufferedWriter(new OutputStreamWriter(new FileOutputStream (filename, append), charset), BUFFER_SIZE);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -284,6 +277,54 @@ public class IOUtils {
 		}
 	}
 
+	/**
+	 * Checks if the stream starts with the given bytes, e.g. the magic bytes of a binary file format.
+	 *
+	 * @param in a stream that supports mark, it is reset to its current position
+	 * @return <code>true</code> if the next bytes of the stream are the given prefix
+	 * @throws IOException
+	 */
+	public static boolean startsWith(final InputStream in, final byte[] prefix) throws IOException {
+		byte[] head = new byte[prefix.length];
+		in.mark(head.length);
+		int length = 0;
+		while (length < head.length) {
+			int n = in.read(head, length, head.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		in.reset();
+		return length == head.length && Arrays.equals(head, prefix);
+	}
+
+	/**
+	 * Returns the local file of a <code>file:</code> URL, so readers can access it directly instead of as a stream,
+	 * e.g. to memory-map it. Escaped characters are decoded. URLs with characters that are not escaped, like the
+	 * spaces left by {@link File#toURL()}, and relative URLs like <code>file:network.xml</code> are supported as well.
+	 *
+	 * @return the path of the file, or <code>null</code> if the URL does not point to a local file
+	 */
+	public static Path getPath(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			URI uri = url.toURI();
+			if (uri.isOpaque()) {
+				return Paths.get(uri.getSchemeSpecificPart());
+			}
+			return Paths.get(uri);
+		} catch (URISyntaxException e) {
+			// the URL is not escaped, so its path is the filename as it is
+			return new File(url.getPath()).toPath();
+		} catch (IllegalArgumentException | FileSystemNotFoundException e) {
+			// e.g. a file on another host
+			return null;
+		}
+	}
+
 	/**
 	 *
 	 * Deletes a directory tree recursively. Should behave like rm -rf, i.e. there should not be
@@ -313,9 +354,9 @@ public class IOUtils {
 
 	/**
 	 * Tries to open the specified file for reading and returns an InputStream for it.
-	 * Supports gzip-compressed files, such files are automatically decompressed.
-	 * If the file is not found, a gzip-compressed version of the file with the
-	 * added ending ".gz" will be searched for and used if found.
+	 * Supports compressed files (see {@link CompressionCodec}), such files are automatically decompressed.
+	 * If the file is not found, a compressed version of the file with the
+	 * added ending, e.g. ".gz", will be searched for and used if found.
 	 *
 	 * @param filename The file to read, may contain the ending ".gz" to force reading a compressed file.
 	 * @return InputStream for the specified file.
@@ -331,27 +372,27 @@ public class IOUtils {
 		try {
 			// search in file system
 			if (new File(filename).exists()) {
-				if (filename.endsWith(GZ)) {
-					inputStream = new GZIPInputStream(new FileInputStream(filename));
-				} else {
-					inputStream = new FileInputStream(filename);
-				}
-			} else if (new File(filename + GZ).exists()) {
-				inputStream = new GZIPInputStream(new FileInputStream(filename));
+				inputStream = decompress(filename, new FileInputStream(filename));
 			} else {
+				for (CompressionCodec codec : compressionCodecs) {
+					if (new File(filename + codec.getFileExtension()).exists()) {
+						inputStream = codec.createInputStream(new FileInputStream(filename + codec.getFileExtension()));
+						break;
+					}
+				}
+			}
+			if (inputStream == null) {
 				// search in classpath
 				InputStream stream = IOUtils.class.getClassLoader().getResourceAsStream(filename);
 				if (stream != null) {
-					if (filename.endsWith(GZ)) {
-						inputStream = new GZIPInputStream(stream);
-					}
-					else {
-						inputStream = stream;
-					}
+					inputStream = decompress(filename, stream);
 				} else {
-					stream = IOUtils.class.getClassLoader().getResourceAsStream(filename + GZ);
-					if (stream != null) {
-						inputStream = new GZIPInputStream(stream);
+					for (CompressionCodec codec : compressionCodecs) {
+						stream = IOUtils.class.getClassLoader().getResourceAsStream(filename + codec.getFileExtension());
+						if (stream != null) {
+							inputStream = codec.createInputStream(stream);
+							break;
+						}
 					}
 				}
 				if (inputStream != null) {
@@ -361,28 +402,29 @@ public class IOUtils {
 			if (inputStream == null) {
 				throw new FileNotFoundException(filename);
 			}
-			return new BufferedInputStream(new UnicodeInputStream(inputStream));
+			return new BufferedInputStream(new UnicodeInputStream(inputStream), BUFFER_SIZE);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
+	private static InputStream decompress(final String filename, final InputStream stream) throws IOException {
+		CompressionCodec codec = getCompressionCodec(filename);
+		return codec == null ? stream : codec.createInputStream(stream);
+	}
+
 	public static InputStream getInputStream(URL url) throws UncheckedIOException {
 		try {
-			if (url.getFile().endsWith(".gz")) {
-				return new GZIPInputStream(url.openStream());
-			} else {
-				return url.openStream();
-			}
+			return decompress(url.getFile(), url.openStream());
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
 	/**
-	 * Returns a buffered and optionally gzip-compressed output stream to the specified file.
-	 * If the given filename ends with ".gz", the written file content will be automatically 
-	 * compressed with the gzip-algorithm.
+	 * Returns a buffered and optionally compressed output stream to the specified file.
+	 * If the given filename ends with the extension of a {@link CompressionCodec}, e.g. ".gz",
+	 * the written file content will be automatically compressed.
 	 * 
 	 * @throws UncheckedIOException if the file cannot be created.
 	 * 
@@ -393,11 +435,7 @@ public class IOUtils {
 			throw new UncheckedIOException(new FileNotFoundException("No filename given (filename == null)"));
 		}
 		try {
-			if (filename.toLowerCase(Locale.ROOT).endsWith(GZ)) {
-				return new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(filename)));
-			} else {
-				return new BufferedOutputStream(new FileOutputStream (filename));
-			}
+			return new BufferedOutputStream(compress(filename, new FileOutputStream(filename)), BUFFER_SIZE);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -414,16 +452,17 @@ public class IOUtils {
 			throw new UncheckedIOException(new FileNotFoundException("No filename given (filename == null)"));
 		}
 		try {
-			if (filename.toLowerCase(Locale.ROOT).endsWith(GZ)) {
-				return new PrintStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(filename))));
-			} else {
-				return new PrintStream(new BufferedOutputStream(new FileOutputStream (filename))) ;
-			}
+			return new PrintStream(new BufferedOutputStream(compress(filename, new FileOutputStream(filename)), BUFFER_SIZE));
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
+	private static OutputStream compress(final String filename, final OutputStream stream) throws IOException {
+		CompressionCodec codec = getCompressionCodec(filename);
+		return codec == null ? stream : codec.createOutputStream(stream);
+	}
+
 	// Compares two InputStreams.
 	// Interestingly, StackOverflow claims that this naive way would be slow,
 	// but for me, it is OK and the fast alternative which is proposed there is 
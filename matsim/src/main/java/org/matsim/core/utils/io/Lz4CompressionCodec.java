@@ -0,0 +1,487 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * Lz4CompressionCodec.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * LZ4 compression in the LZ4 frame format, as written by the <code>lz4</code> command line tool. Compresses a lot
+ * faster than gzip, at the cost of larger files.
+ * <p></p>
+ * Files are written with independent blocks of 256 kB, which are compressed in parallel, without checksums.
+ * When reading, linked blocks, block and content checksums are supported, but the checksums are not verified.
+ * Dictionaries and the legacy format are not supported.
+ */
+final class Lz4CompressionCodec implements CompressionCodec {
+
+	static final String EXTENSION = ".lz4";
+
+	private static final int MAGIC = 0x184D2204;
+	private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+	private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+	private static final int FLAG_VERSION = 0x40;
+	private static final int FLAG_BLOCK_INDEPENDENCE = 0x20;
+	private static final int FLAG_BLOCK_CHECKSUM = 0x10;
+	private static final int FLAG_CONTENT_SIZE = 0x08;
+	private static final int FLAG_CONTENT_CHECKSUM = 0x04;
+	private static final int FLAG_DICTIONARY_ID = 0x01;
+	private static final int UNCOMPRESSED_BLOCK = 0x80000000;
+
+	private static final int BLOCK_SIZE_ID = 5; // 256 kB
+	private static final int BLOCK_SIZE = blockSize(BLOCK_SIZE_ID);
+
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int WINDOW_SIZE = 64 * 1024;
+	private static final int HASH_LOG = 14;
+
+	private static final ThreadLocal<int[]> hashTables = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+	@Override
+	public String getFileExtension() {
+		return EXTENSION;
+	}
+
+	@Override
+	public InputStream createInputStream(final InputStream in) throws IOException {
+		return new Lz4InputStream(in);
+	}
+
+	@Override
+	public OutputStream createOutputStream(final OutputStream out) throws IOException {
+		return new Lz4OutputStream(out);
+	}
+
+	private static int blockSize(final int blockSizeId) {
+		return 1 << (8 + 2 * blockSizeId);
+	}
+
+	/**
+	 * Compresses <code>src[0, srcLength)</code> as one LZ4 block into <code>dst</code>, starting at
+	 * <code>dstOffset</code>.
+	 *
+	 * @return the length of the compressed data, or -1 if it would be longer than <code>maxLength</code>
+	 */
+	static int compress(final byte[] src, final int srcLength, final byte[] dst, final int dstOffset, final int maxLength) {
+		int[] hashTable = hashTables.get();
+		Arrays.fill(hashTable, -1);
+		int dstLimit = dstOffset + maxLength;
+		int dp = dstOffset;
+		int anchor = 0;
+		if (srcLength > MF_LIMIT) {
+			int matchLimit = srcLength - LAST_LITERALS;
+			int ipLimit = srcLength - MF_LIMIT;
+			int ip = 0;
+			while (ip < ipLimit) {
+				int sequence = readInt(src, ip);
+				int hash = hash(sequence);
+				int ref = hashTable[hash];
+				hashTable[hash] = ip;
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+					ip++;
+					continue;
+				}
+				while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+				int literalLength = ip - anchor;
+				if (dp + literalLength + literalLength / 255 + matchLength / 255 + 5 > dstLimit) {
+					return -1;
+				}
+				int token = dp++;
+				dp = writeLength(dst, dp, literalLength);
+				System.arraycopy(src, anchor, dst, dp, literalLength);
+				dp += literalLength;
+				int offset = ip - ref;
+				dst[dp++] = (byte) offset;
+				dst[dp++] = (byte) (offset >>> 8);
+				dp = writeLength(dst, dp, matchLength - MIN_MATCH);
+				dst[token] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15));
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+		int literalLength = srcLength - anchor;
+		if (dp + literalLength + literalLength / 255 + 2 > dstLimit) {
+			return -1;
+		}
+		dst[dp++] = (byte) (Math.min(literalLength, 15) << 4);
+		dp = writeLength(dst, dp, literalLength);
+		System.arraycopy(src, anchor, dst, dp, literalLength);
+		dp += literalLength;
+		return dp - dstOffset;
+	}
+
+	/**
+	 * Decompresses one LZ4 block into <code>dst</code>, starting at <code>dstOffset</code>. Matches may refer to
+	 * data in <code>dst</code> before <code>dstOffset</code>, i.e. to the previous block of a frame with linked blocks.
+	 *
+	 * @return the end of the decompressed data in <code>dst</code>
+	 */
+	static int decompress(final byte[] src, final int srcLength, final byte[] dst, final int dstOffset) throws IOException {
+		int sp = 0;
+		int dp = dstOffset;
+		try {
+			while (true) {
+				int token = src[sp++] & 0xff;
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xff;
+						literalLength += b;
+					} while (b == 255);
+				}
+				if (sp + literalLength > srcLength) {
+					throw new IOException("corrupt LZ4 block: literals exceed the block");
+				}
+				System.arraycopy(src, sp, dst, dp, literalLength);
+				sp += literalLength;
+				dp += literalLength;
+				if (sp == srcLength) {
+					return dp;
+				}
+				int offset = (src[sp] & 0xff) | ((src[sp + 1] & 0xff) << 8);
+				sp += 2;
+				if (offset == 0 || offset > dp) {
+					throw new IOException("corrupt LZ4 block: invalid offset " + offset);
+				}
+				int matchLength = token & 0x0f;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xff;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = dp - offset;
+				if (offset >= matchLength) {
+					System.arraycopy(dst, ref, dst, dp, matchLength);
+					dp += matchLength;
+				} else {
+					for (int i = 0; i < matchLength; i++) {
+						dst[dp++] = dst[ref++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("corrupt LZ4 block", e);
+		}
+	}
+
+	private static int writeLength(final byte[] dst, int dp, final int length) {
+		if (length >= 15) {
+			int remaining = length - 15;
+			while (remaining >= 255) {
+				dst[dp++] = (byte) 255;
+				remaining -= 255;
+			}
+			dst[dp++] = (byte) remaining;
+		}
+		return dp;
+	}
+
+	private static int hash(final int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	private static int readInt(final byte[] b, final int i) {
+		return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+	}
+
+	private static void writeInt(final byte[] b, final int i, final int value) {
+		b[i] = (byte) value;
+		b[i + 1] = (byte) (value >>> 8);
+		b[i + 2] = (byte) (value >>> 16);
+		b[i + 3] = (byte) (value >>> 24);
+	}
+
+	private static final int PRIME1 = 0x9E3779B1;
+	private static final int PRIME2 = 0x85EBCA77;
+	private static final int PRIME3 = 0xC2B2AE3D;
+	private static final int PRIME4 = 0x27D4EB2F;
+	private static final int PRIME5 = 0x165667B1;
+
+	/**
+	 * xxHash32, which the frame format uses for the header checksum.
+	 */
+	static int xxHash32(final byte[] b, final int offset, final int length, final int seed) {
+		int end = offset + length;
+		int i = offset;
+		int h;
+		if (length >= 16) {
+			int v1 = seed + PRIME1 + PRIME2;
+			int v2 = seed + PRIME2;
+			int v3 = seed;
+			int v4 = seed - PRIME1;
+			for (; i <= end - 16; i += 16) {
+				v1 = Integer.rotateLeft(v1 + readInt(b, i) * PRIME2, 13) * PRIME1;
+				v2 = Integer.rotateLeft(v2 + readInt(b, i + 4) * PRIME2, 13) * PRIME1;
+				v3 = Integer.rotateLeft(v3 + readInt(b, i + 8) * PRIME2, 13) * PRIME1;
+				v4 = Integer.rotateLeft(v4 + readInt(b, i + 12) * PRIME2, 13) * PRIME1;
+			}
+			h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+		} else {
+			h = seed + PRIME5;
+		}
+		h += length;
+		for (; i <= end - 4; i += 4) {
+			h = Integer.rotateLeft(h + readInt(b, i) * PRIME3, 17) * PRIME4;
+		}
+		for (; i < end; i++) {
+			h = Integer.rotateLeft(h + (b[i] & 0xff) * PRIME5, 11) * PRIME1;
+		}
+		h ^= h >>> 15;
+		h *= PRIME2;
+		h ^= h >>> 13;
+		h *= PRIME3;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static byte headerChecksum(final byte[] descriptor, final int offset, final int length) {
+		return (byte) (xxHash32(descriptor, offset, length, 0) >>> 8);
+	}
+
+	static final class Lz4OutputStream extends ParallelBlockOutputStream {
+
+		Lz4OutputStream(final OutputStream out) throws IOException {
+			super(out, BLOCK_SIZE);
+			byte[] header = new byte[7];
+			writeInt(header, 0, MAGIC);
+			header[4] = (byte) (FLAG_VERSION | FLAG_BLOCK_INDEPENDENCE);
+			header[5] = (byte) (BLOCK_SIZE_ID << 4);
+			header[6] = headerChecksum(header, 4, 2);
+			out.write(header);
+		}
+
+		@Override
+		byte[] compressBlock(final byte[] data, final int length, final byte[] previousData, final int previousLength, final boolean last) {
+			if (length == 0) {
+				return new byte[0];
+			}
+			byte[] block = new byte[4 + length];
+			int compressedLength = compress(data, length, block, 4, length - 1);
+			if (compressedLength < 0) {
+				writeInt(block, 0, length | UNCOMPRESSED_BLOCK);
+				System.arraycopy(data, 0, block, 4, length);
+				return block;
+			}
+			writeInt(block, 0, compressedLength);
+			return Arrays.copyOf(block, 4 + compressedLength);
+		}
+
+		@Override
+		void writeTrailer(final OutputStream out) throws IOException {
+			out.write(new byte[4]); // end mark
+		}
+
+	}
+
+	static final class Lz4InputStream extends InputStream {
+
+		private final InputStream in;
+		private final byte[] intBuffer = new byte[4];
+		private byte[] compressed = new byte[0];
+		private byte[] buffer = new byte[0];
+		private int position = 0;
+		private int limit = 0;
+		private boolean inFrame = false;
+		private boolean independentBlocks;
+		private boolean blockChecksum;
+		private boolean contentChecksum;
+		private boolean finished = false;
+
+		Lz4InputStream(final InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.position == this.limit && !fill()) {
+				return -1;
+			}
+			return this.buffer[this.position++] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (this.position == this.limit && !fill()) {
+				return -1;
+			}
+			int n = Math.min(len, this.limit - this.position);
+			System.arraycopy(this.buffer, this.position, b, off, n);
+			this.position += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return this.limit - this.position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+		/**
+		 * Decompresses the next block into the buffer.
+		 *
+		 * @return <code>false</code> at the end of the stream
+		 */
+		private boolean fill() throws IOException {
+			while (!this.finished) {
+				if (!this.inFrame) {
+					readFrameHeader();
+					continue;
+				}
+				int blockLength = readIntFromStream();
+				if (blockLength == 0) {
+					if (this.contentChecksum) {
+						readFully(this.intBuffer, 4);
+					}
+					this.inFrame = false;
+					continue;
+				}
+				boolean uncompressed = (blockLength & UNCOMPRESSED_BLOCK) != 0;
+				blockLength &= ~UNCOMPRESSED_BLOCK;
+				if (blockLength > this.buffer.length - WINDOW_SIZE) {
+					throw new IOException("corrupt LZ4 frame: block larger than the maximum block size");
+				}
+				int start = 0;
+				if (!this.independentBlocks && this.limit > WINDOW_SIZE) {
+					System.arraycopy(this.buffer, this.limit - WINDOW_SIZE, this.buffer, 0, WINDOW_SIZE);
+					start = WINDOW_SIZE;
+				} else if (!this.independentBlocks) {
+					start = this.limit;
+				}
+				if (uncompressed) {
+					readFully(this.buffer, start, blockLength);
+					this.limit = start + blockLength;
+				} else {
+					readFully(this.compressed, 0, blockLength);
+					this.limit = decompress(this.compressed, blockLength, this.buffer, start);
+				}
+				if (this.blockChecksum) {
+					readFully(this.intBuffer, 4);
+				}
+				this.position = start;
+				if (this.limit > this.position) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void readFrameHeader() throws IOException {
+			int first = this.in.read();
+			if (first < 0) {
+				this.finished = true;
+				return;
+			}
+			this.intBuffer[0] = (byte) first;
+			readFully(this.intBuffer, 1, 3);
+			int magic = Lz4CompressionCodec.readInt(this.intBuffer, 0);
+			if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+				long toSkip = readIntFromStream() & 0xffffffffL;
+				while (toSkip > 0) {
+					long skipped = this.in.skip(toSkip);
+					if (skipped <= 0) {
+						throw new EOFException("unexpected end of LZ4 stream");
+					}
+					toSkip -= skipped;
+				}
+				return;
+			}
+			if (magic != MAGIC) {
+				throw new IOException("not an LZ4 frame, unsupported magic number " + Integer.toHexString(magic));
+			}
+			byte[] descriptor = new byte[15];
+			readFully(descriptor, 0, 2);
+			int flags = descriptor[0] & 0xff;
+			if ((flags & 0xc0) != FLAG_VERSION) {
+				throw new IOException("unsupported LZ4 frame version");
+			}
+			if ((flags & FLAG_DICTIONARY_ID) != 0) {
+				throw new IOException("LZ4 frames with dictionaries are not supported");
+			}
+			int descriptorLength = 2 + ((flags & FLAG_CONTENT_SIZE) != 0 ? 8 : 0);
+			readFully(descriptor, 2, descriptorLength - 2 + 1);
+			if (descriptor[descriptorLength] != headerChecksum(descriptor, 0, descriptorLength)) {
+				throw new IOException("corrupt LZ4 frame: wrong header checksum");
+			}
+			this.independentBlocks = (flags & FLAG_BLOCK_INDEPENDENCE) != 0;
+			this.blockChecksum = (flags & FLAG_BLOCK_CHECKSUM) != 0;
+			this.contentChecksum = (flags & FLAG_CONTENT_CHECKSUM) != 0;
+			int blockSizeId = (descriptor[1] >>> 4) & 0x07;
+			if (blockSizeId < 4) {
+				throw new IOException("corrupt LZ4 frame: invalid block size");
+			}
+			int maxBlockSize = blockSize(blockSizeId);
+			if (this.compressed.length != maxBlockSize) {
+				this.compressed = new byte[maxBlockSize];
+				this.buffer = new byte[WINDOW_SIZE + maxBlockSize];
+			}
+			this.position = 0;
+			this.limit = 0;
+			this.inFrame = true;
+		}
+
+		private int readIntFromStream() throws IOException {
+			readFully(this.intBuffer, 4);
+			return Lz4CompressionCodec.readInt(this.intBuffer, 0);
+		}
+
+		private void readFully(final byte[] b, final int length) throws IOException {
+			readFully(b, 0, length);
+		}
+
+		private void readFully(final byte[] b, int offset, int length) throws IOException {
+			while (length > 0) {
+				int n = this.in.read(b, offset, length);
+				if (n < 0) {
+					throw new EOFException("unexpected end of LZ4 stream");
+				}
+				offset += n;
+				length -= n;
+			}
+		}
+
+	}
+
+}
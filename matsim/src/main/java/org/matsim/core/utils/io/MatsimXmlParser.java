@@ -29,13 +29,19 @@ import org.xml.sax.helpers.DefaultHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An abstract XML-Parser which can be easily extended for reading custom XML-formats. This class handles all the low level
@@ -45,6 +51,8 @@ import java.util.zip.GZIPInputStream;
  * <p></p>
  * Notes:<ul>
  * <li> If implementing classes want to override the final methods, the will have to resort to delegation.   
+ * <li> SAX parsers are pooled per thread and reused for the next file, and DTDs and XSDs are only resolved once per
+ * JVM; reading many small files thus costs little more than reading their content.
  * </ul>
  *
  * @author mrieser
@@ -53,7 +61,28 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 
 	private static final Logger log = Logger.getLogger(MatsimXmlParser.class);
 
-	private final Stack<StringBuffer> buffers = new Stack<>();
+	/**
+	 * Idle parsers of the current thread, by {@link #parserConfiguration}. A parser is taken out while in use, so a
+	 * reader may start reading another file from within {@link #startTag} or {@link #endTag}.
+	 */
+	private static final ThreadLocal<List<ArrayDeque<SAXParser>>> idleParsers = ThreadLocal.withInitial(() -> {
+		List<ArrayDeque<SAXParser>> parsers = new ArrayList<>(4);
+		for (int i = 0; i < 4; i++) {
+			parsers.add(new ArrayDeque<>(1));
+		}
+		return parsers;
+	});
+
+	/**
+	 * The content of resolved DTDs and XSDs, so they are read (or even downloaded) only once.
+	 */
+	private static final Map<String, byte[]> resolvedEntities = new ConcurrentHashMap<>();
+
+	/**
+	 * The character content of the open tags, reused from tag to tag; only the first {@link #depth} are in use.
+	 */
+	private final List<StringBuilder> buffers = new ArrayList<>();
+	private int depth = 0;
 	private final Stack<String> theContext = new Stack<>();
 
 	private boolean isValidating = true;
@@ -154,12 +183,8 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 		this.theSource = url.toString();
 		log.info("starting to parse xml from url " + this.theSource + " ...");
 		System.out.flush();
-		if (url.getFile().endsWith(".gz")) {
-			try {
-				parse(new InputSource(new GZIPInputStream(url.openStream())));
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+		if (IOUtils.getCompressionCodec(url.getFile()) != null) {
+			parse(new InputSource(IOUtils.getInputStream(url)));
 		} else {
 			parse(new InputSource(url.toExternalForm()));
 		}
@@ -171,14 +196,14 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 	}
 
 	public final void parse(final InputSource input) throws UncheckedIOException {
+		ArrayDeque<SAXParser> idle = idleParsers.get().get(parserConfiguration());
+		SAXParser parser = idle.poll();
 		try {
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			factory.setValidating(this.isValidating);
-			factory.setNamespaceAware(this.isNamespaceAware);
+			if (parser == null) {
+				parser = createParser();
+			}
+			this.depth = 0;
 			if (this.isValidating) {
-				// enable optional support for XML Schemas
-				factory.setFeature("http://apache.org/xml/features/validation/schema", true);
-				SAXParser parser = factory.newSAXParser();
 				XMLReader reader = parser.getXMLReader();
 				reader.setContentHandler(this);
 //				reader.setErrorHandler(getErrorHandler());      // (**)
@@ -187,12 +212,34 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 				reader.setEntityResolver(this);
 				reader.parse(input);
 			} else {
-				SAXParser parser = factory.newSAXParser();
 				parser.parse(input, this);
 			}
 		} catch (SAXException | ParserConfigurationException | IOException e) {
+			// the parser may be in any state now, do not reuse it
+			parser = null;
 			throw new UncheckedIOException(e);
+		} finally {
+			if (parser != null) {
+				// reset() also drops the references to this handler
+				parser.reset();
+				idle.push(parser);
+			}
+		}
+	}
+
+	private int parserConfiguration() {
+		return (this.isValidating ? 2 : 0) + (this.isNamespaceAware ? 1 : 0);
+	}
+
+	private SAXParser createParser() throws SAXException, ParserConfigurationException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setValidating(this.isValidating);
+		factory.setNamespaceAware(this.isNamespaceAware);
+		if (this.isValidating) {
+			// enable optional support for XML Schemas
+			factory.setFeature("http://apache.org/xml/features/validation/schema", true);
 		}
+		return factory.newSAXParser();
 	}
 
 	// the following may be useful.  But it is nowhere used, so I am not sure if we fully understand its longterm maintenance implications, 
@@ -232,6 +279,14 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 			setDoctype(shortSystemId);
 		}
 
+		String key = systemId + '|' + this.preferLocalDtds + '|' + this.localDtdBase;
+		byte[] resolved = resolvedEntities.get(key);
+		if (resolved != null) {
+			InputSource source = new InputSource(new ByteArrayInputStream(resolved));
+			source.setSystemId(systemId);
+			return source;
+		}
+
 		InputSource source;
 		if (this.preferLocalDtds) {
 			source = findDtdInLocalFilesystem(shortSystemId);
@@ -261,10 +316,34 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 			// We could neither get the remote nor the local version of the dtd, show a warning
 			log.warn("Could neither get the DTD from the web nor a local one. " + systemId);
 		} else {
-            source.setSystemId(systemId);
-        }
+			source = cache(key, source);
+			source.setSystemId(systemId);
+		}
 		return source;
-    }
+	}
+
+	/**
+	 * Reads the entity into {@link #resolvedEntities}.
+	 *
+	 * @return a source for the cached content, or the given source if it could not be read
+	 */
+	private static InputSource cache(final String key, final InputSource source) {
+		// the system id is a URL, e.g. a file: URL of a local DTD
+		try (InputStream in = source.getByteStream() != null ? source.getByteStream() : new URL(source.getSystemId()).openStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+			byte[] content = out.toByteArray();
+			resolvedEntities.put(key, content);
+			return new InputSource(new ByteArrayInputStream(content));
+		} catch (IOException e) {
+			log.info("Could not cache " + key + ": " + e.toString());
+			return source;
+		}
+	}
 
 	private static InputSource findDtdInRemoteLocation(final String fullSystemId) {
 		log.info("Trying to load " + fullSystemId + ". In some cases (e.g. network interface up but no connection), this may take a bit.");
@@ -294,7 +373,7 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 //			log.debug("dtdfile: " + dtdFile.getAbsolutePath());
 			if (dtdFile.exists() && dtdFile.isFile() && dtdFile.canRead()) {
 				log.info("Using the local DTD " + localFileName + " with absolute path " + dtdFile.getAbsolutePath() );
-				return new InputSource(dtdFile.getAbsolutePath());
+				return new InputSource(dtdFile.toURI().toString());
 			}
 		}
 		return null;
@@ -315,7 +394,7 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 		File dtdFile = new File("./dtd/" + shortSystemId);
 		if (dtdFile.exists() && dtdFile.isFile() && dtdFile.canRead()) {
 			log.info("Using the local DTD " + dtdFile.getAbsolutePath());
-			return new InputSource(dtdFile.getAbsolutePath());
+			return new InputSource(dtdFile.toURI().toString());
 		}
 		return null;
 	}
@@ -326,9 +405,8 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 	public void characters(final char[] ch, final int start, final int length) throws SAXException {
 		// has to be non-final since otherwise the events parser does not work.  Probably ok (this here is just a default implementation). kai, jul'16
 		
-		StringBuffer buffer = this.buffers.peek();
-		if (buffer != null) {
-			buffer.append(ch, start, length);
+		if (this.depth > 0) {
+			this.buffers.get(this.depth - 1).append(ch, start, length);
 		}
 	}
 
@@ -337,7 +415,10 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 		// I have not good intuition if making this one non-final might be ok.  kai, jul'16
 
 		String tag = (uri.length() == 0) ? qName : localName;
-		this.buffers.push(new StringBuffer());
+		if (this.depth == this.buffers.size()) {
+			this.buffers.add(new StringBuilder());
+		}
+		this.buffers.get(this.depth++).setLength(0);
 		this.startTag(tag, atts, this.theContext);
 		this.theContext.push(tag);
 	}
@@ -348,8 +429,8 @@ public abstract class MatsimXmlParser extends DefaultHandler implements MatsimRe
 		
 		String tag = (uri.length() == 0) ? qName : localName;
 		this.theContext.pop();
-		StringBuffer buffer = this.buffers.pop();
-		this.endTag(tag, buffer.toString(), this.theContext);
+		StringBuilder buffer = this.buffers.get(--this.depth);
+		this.endTag(tag, buffer.length() == 0 ? "" : buffer.toString(), this.theContext);
 	}
 
 	/* implement ErrorHandler */
@@ -32,9 +32,11 @@ import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.misc.Counter;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -44,6 +46,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
@@ -75,6 +78,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * multiple overlapping areas can be specified, each with a different denseness, e.g. one only containing motorways,
  * a second one containing every link down to footways.
  *
+ * Both OSM XML (optionally compressed) and OSM PBF files are supported; the format is recognized from the content.
+ * The blocks of PBF files are decoded in parallel.
+ *
  * @author mrieser, aneumann
  */
 public class OsmNetworkReader implements MatsimSomeReader {
@@ -92,8 +98,11 @@ public class OsmNetworkReader implements MatsimSomeReader {
 	private static List<String> allTags = new LinkedList<>(Arrays.asList(TAG_LANES, TAG_LANES_FORWARD,
 			TAG_LANES_BACKWARD, TAG_HIGHWAY, TAG_MAXSPEED, TAG_JUNCTION, TAG_ONEWAY, TAG_ACCESS));
 
-	private final Map<Long, OsmNode> nodes = new HashMap<Long, OsmNode>();
+	private OsmNodeIndex nodes = new OsmNodeIndex();
+	private List<OsmWay> candidateWays = new ArrayList<OsmWay>();
 	private final Map<Long, OsmWay> ways = new HashMap<Long, OsmWay>();
+	private final Counter nodeCounter = new Counter("node ");
+	private final Counter wayCounter = new Counter("way ");
 	private final Set<String> unknownHighways = new HashSet<String>();
 	private final Set<String> unknownMaxspeedTags = new HashSet<String>();
 	private final Set<String> unknownLanesTags = new HashSet<String>();
@@ -229,37 +238,30 @@ public class OsmNetworkReader implements MatsimSomeReader {
 			log.warn("No hierarchy layer specified. Will convert every highway specified by setHighwayDefaults.");
 		}
 
-		OsmXmlParser parser = null;
-		if (this.slowButLowMemory) {
-			log.info("parsing osm file first time: identifying nodes used by ways");
-			parser = new OsmXmlParser(this.nodes, this.ways, this.transform);
-			parser.enableOptimization(1);
-			if (stream != null) {
-				parser.parse(new InputSource(stream));
-			} else {
-				parser.readFile(osmFilename);
-			}
-			log.info("parsing osm file second time: loading required nodes and ways");
-			parser.enableOptimization(2);
-			if (stream != null) {
-				parser.parse(new InputSource(stream));
-			} else {
-				parser.readFile(osmFilename);
+		if (this.slowButLowMemory && stream == null) {
+			log.info("parsing osm file first time: loading ways and identifying nodes used by them");
+			read(osmFilename, null, new WayCollector(true), false, true);
+			if (this.nodeIDsToKeep != null) {
+				for (Long nodeId : this.nodeIDsToKeep) {
+					this.nodes.add(nodeId);
+				}
 			}
-			log.info("done loading data");
+			this.nodes.sortIds();
+			log.info("parsing osm file second time: loading required nodes");
+			read(osmFilename, null, new RequiredNodesCollector(), true, false);
 		} else {
-			parser = new OsmXmlParser(this.nodes, this.ways, this.transform);
-			if (stream != null) {
-				parser.parse(new InputSource(stream));
-			} else {
-				parser.readFile(osmFilename);
+			if (this.slowButLowMemory) {
+				log.warn("The memory optimization reads the data twice, which is not possible with a stream. Reading all nodes instead.");
 			}
-			log.info("done loading data");
+			read(osmFilename, stream, new AllNodesCollector(), true, true);
+			this.nodes.sortIds();
 		}
+		log.info("done loading data");
+		selectWays();
 		convert();
 		log.info("= conversion statistics: ==========================");
-		log.info("osm: # nodes read:       " + parser.nodeCounter.getCounter());
-		log.info("osm: # ways read:        " + parser.wayCounter.getCounter());
+		log.info("osm: # nodes read:       " + this.nodeCounter.getCounter());
+		log.info("osm: # ways read:        " + this.wayCounter.getCounter());
 		log.info("MATSim: # nodes created: " + this.network.getNodes().size());
 		log.info("MATSim: # links created: " + this.network.getLinks().size());
 
@@ -272,6 +274,32 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		log.info("= end of conversion statistics ====================");
 	}
 
+	/**
+	 * Reads OSM XML or, if the data starts with a zero byte (the first byte of the length of the first block),
+	 * OSM PBF.
+	 */
+	private void read(final String osmFilename, final InputStream stream, final OsmHandler handler, final boolean readNodes, final boolean readWays) {
+		InputStream in = stream != null ? stream : IOUtils.getInputStream(osmFilename);
+		if (!in.markSupported()) {
+			in = new BufferedInputStream(in);
+		}
+		try {
+			in.mark(1);
+			int firstByte = in.read();
+			in.reset();
+			if (firstByte == 0) {
+				new OsmPbfParser(handler, readNodes, readWays, allTags).parse(in);
+			} else {
+				new OsmXmlParser(handler, readNodes, readWays).parse(in);
+			}
+			if (stream == null) {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Sets defaults for converting OSM highway paths into MATSim links, assuming it is no oneway road.
 	 *
@@ -357,9 +385,10 @@ public class OsmNetworkReader implements MatsimSomeReader {
 	}
 
 	/**
-	 * By default, this converter caches a lot of data internally to speed up the network generation.
-	 * This can lead to OutOfMemoryExceptions when converting huge osm files. By enabling this
-	 * memory optimization, the converter tries to reduce its memory usage, but will run slower.
+	 * By default, this converter reads the file once and keeps the coordinates of all nodes in memory.
+	 * By enabling this memory optimization, the file is read twice: first the ways, then only the
+	 * nodes used by the ways. This needs less memory for large files, but takes longer. It is not
+	 * possible when reading from a stream.
 	 *
 	 * @param memoryEnabled
 	 */
@@ -377,6 +406,34 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		allTags.addAll(wayTagsToAdd);
 	}
 	
+	/**
+	 * Keeps the ways which are in one of the hierarchy layers, in the order they were read.
+	 */
+	private void selectWays() {
+		for (OsmWay way : this.candidateWays) {
+			way.nodeIndices = new int[way.nodeIds.size()];
+			boolean used = this.hierarchyLayers.isEmpty();
+			for (int i = 0; i < way.nodeIndices.length; i++) {
+				int index = this.nodes.indexOf(way.nodeIds.getLong(i));
+				way.nodeIndices[i] = index;
+				if (!used && index >= 0) {
+					Coord coord = this.nodes.getCoord(index);
+					for (OsmFilter osmFilter : this.hierarchyLayers) {
+						if (osmFilter.coordInFilter(coord, way.hierarchy)) {
+							used = true;
+							break;
+						}
+					}
+				}
+			}
+			if (used) {
+				this.ways.put(way.id, way);
+				this.wayCounter.incCounter();
+			}
+		}
+		this.candidateWays = new ArrayList<OsmWay>();
+	}
+
 	private void convert() {
 		this.network.setCapacityPeriod(3600);
 
@@ -386,15 +443,19 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		int counter = 0;
 		while (it.hasNext()) {
 			Entry<Long, OsmWay> entry = it.next();
-			for (Long nodeId : entry.getValue().nodes) {
-				if (this.nodes.get(nodeId) == null) {
+			for (int index : entry.getValue().nodeIndices) {
+				if (index < 0) {
 					it.remove();
+					counter++;
 					break;
 				}
 			}
 		}
 		log.info("... done removing " + counter + "ways that have at least one node that was not read previously.");
 
+		int[] nodeWays = new int[this.nodes.size()];
+		boolean[] nodeUsed = new boolean[this.nodes.size()];
+
 		log.info("Mark OSM nodes that shoud be kept ...");
 		for (OsmWay way : this.ways.values()) {
 			String highway = way.tags.get(TAG_HIGHWAY);
@@ -403,19 +464,19 @@ public class OsmNetworkReader implements MatsimSomeReader {
 				way.hierarchy = this.highwayDefaults.get(highway).hierarchy;
 
 				// first and last are counted twice, so they are kept in all cases
-				this.nodes.get(way.nodes.get(0)).ways++;
-				this.nodes.get(way.nodes.get(way.nodes.size()-1)).ways++;
+				nodeWays[way.nodeIndices[0]]++;
+				nodeWays[way.nodeIndices[way.nodeIndices.length-1]]++;
 
-				for (Long nodeId : way.nodes) {
-					OsmNode node = this.nodes.get(nodeId);
+				for (int node : way.nodeIndices) {
 					if (this.hierarchyLayers.isEmpty()) {
-						node.used = true;
-						node.ways++;
+						nodeUsed[node] = true;
+						nodeWays[node]++;
 					} else {
+						Coord coord = this.nodes.getCoord(node);
 						for (OsmFilter osmFilter : this.hierarchyLayers) {
-							if(osmFilter.coordInFilter(node.coord, way.hierarchy)){
-								node.used = true;
-								node.ways++;
+							if(osmFilter.coordInFilter(coord, way.hierarchy)){
+								nodeUsed[node] = true;
+								nodeWays[node]++;
 								break;
 							}
 						}
@@ -428,9 +489,9 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		if (!this.keepPaths) {
 
 			log.info("Mark nodes as unused where only one way leads through ...") ;
-			for (OsmNode node : this.nodes.values()) {
-				if (node.ways == 1) {
-					node.used = false;
+			for (int node = 0; node < nodeWays.length; node++) {
+				if (nodeWays[node] == 1) {
+					nodeUsed[node] = false;
 				}
 			}
 			log.info("... done marking nodes as unused where only one way leads through.") ;
@@ -440,11 +501,11 @@ public class OsmNetworkReader implements MatsimSomeReader {
 				String highway = way.tags.get(TAG_HIGHWAY);
 				if ((highway != null) && (this.highwayDefaults.containsKey(highway))) {
 					int prevRealNodeIndex = 0;
-					OsmNode prevRealNode = this.nodes.get(way.nodes.get(prevRealNodeIndex));
+					int prevRealNode = way.nodeIndices[prevRealNodeIndex];
 
-					for (int i = 1; i < way.nodes.size(); i++) {
-						OsmNode node = this.nodes.get(way.nodes.get(i));
-						if (node.used) {
+					for (int i = 1; i < way.nodeIndices.length; i++) {
+						int node = way.nodeIndices[i];
+						if (nodeUsed[node]) {
 							if (prevRealNode == node) {
 								/* We detected a loop between two "real" nodes.
 								 * Set some nodes between the start/end-loop-node to "used" again.
@@ -455,8 +516,7 @@ public class OsmNetworkReader implements MatsimSomeReader {
 								double nextNodeToKeep = prevRealNodeIndex + increment;
 								for (double j = nextNodeToKeep; j < i; j += increment) {
 									int index = (int) Math.floor(j);
-									OsmNode intermediaryNode = this.nodes.get(way.nodes.get(index));
-									intermediaryNode.used = true;
+									nodeUsed[way.nodeIndices[index]] = true;
 								}
 							}
 							prevRealNodeIndex = i;
@@ -475,12 +535,12 @@ public class OsmNetworkReader implements MatsimSomeReader {
 			int cnt = 0;
 			log.info("...assure that all nodes that are definitely to be kept are marked as used");
 			for(Long nodeToBeKept : this.nodeIDsToKeep){
-				OsmNode node = this.nodes.get(nodeToBeKept);
-				if(node==null){
+				int node = this.nodes.indexOf(nodeToBeKept);
+				if(node < 0){
 					log.warn("cannot find node " + nodeToBeKept + ". maybe it was not read in or got deleted..");
 				}
 				else{
-					node.used = true;
+					nodeUsed[node] = true;
 					cnt ++;
 				}
 			}
@@ -488,10 +548,15 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		}
 		
 		log.info("Create the required nodes ...") ;
-		for (OsmNode node : this.nodes.values()) {
-			if (node.used) {
-				Node nn = this.network.getFactory().createNode(Id.create(node.id, Node.class), node.coord);
-				setOrModifyNodeAttributes(nn, node);
+		OsmNode[] osmNodes = new OsmNode[this.nodes.size()];
+		for (int node = 0; node < osmNodes.length; node++) {
+			if (nodeUsed[node]) {
+				OsmNode osmNode = new OsmNode(this.nodes.getId(node), this.nodes.getCoord(node));
+				osmNode.used = true;
+				osmNode.ways = nodeWays[node];
+				osmNodes[node] = osmNode;
+				Node nn = this.network.getFactory().createNode(Id.create(osmNode.id, Node.class), osmNode.coord);
+				setOrModifyNodeAttributes(nn, osmNode);
 				this.network.addNode(nn);
 			}
 		}
@@ -502,15 +567,16 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		for (OsmWay way : this.ways.values()) {
 			String highway = way.tags.get(TAG_HIGHWAY);
 			if (highway != null) {
-				OsmNode fromNode = this.nodes.get(way.nodes.get(0));
+				OsmNode fromNode = osmNodes[way.nodeIndices[0]];
 				double length = 0.0;
-				OsmNode lastToNode = fromNode;
-				if (fromNode.used) {
-					for (int i = 1, n = way.nodes.size(); i < n; i++) {
-						OsmNode toNode = this.nodes.get(way.nodes.get(i));
-						if (toNode != lastToNode) {
-							length += CoordUtils.calcEuclideanDistance(lastToNode.coord, toNode.coord);
-							if (toNode.used) {
+				int lastToNode = way.nodeIndices[0];
+				if (fromNode != null) {
+					for (int i = 1, n = way.nodeIndices.length; i < n; i++) {
+						int toNodeIndex = way.nodeIndices[i];
+						if (toNodeIndex != lastToNode) {
+							length += CoordUtils.calcEuclideanDistance(this.nodes.getCoord(lastToNode), this.nodes.getCoord(toNodeIndex));
+							OsmNode toNode = osmNodes[toNodeIndex];
+							if (toNode != null) {
 
 								if(this.hierarchyLayers.isEmpty()) {
 									createLink(this.network, way, fromNode, toNode, length);
@@ -529,7 +595,7 @@ public class OsmNetworkReader implements MatsimSomeReader {
 								fromNode = toNode;
 								length = 0.0;
 							}
-							lastToNode = toNode;
+							lastToNode = toNodeIndex;
 						}
 					}
 				}
@@ -538,7 +604,7 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		log.info("... done creating the links.");
 
 		// free up memory
-		this.nodes.clear();
+		this.nodes = new OsmNodeIndex();
 		this.ways.clear();
 	}
 
@@ -836,9 +902,11 @@ public class OsmNetworkReader implements MatsimSomeReader {
 
 	protected static class OsmWay {
 		public final long id;
-		public final List<Long> nodes = new ArrayList<Long>(4);
+		/*package*/ final LongList nodeIds = new LongList();
+		public final List<Long> nodes = this.nodeIds;
 		public final Map<String, String> tags = new HashMap<String, String>(4);
 		public int hierarchy = -1;
+		private int[] nodeIndices = null;
 
 		public OsmWay(final long id) {
 			this.id = id;
@@ -864,64 +932,109 @@ public class OsmNetworkReader implements MatsimSomeReader {
 		}
 	}
 
-	private class OsmXmlParser extends MatsimXmlParser {
-		private OsmWay currentWay = null;
-		private final Map<Long, OsmNode> nodes;
-		private final Map<Long, OsmWay> ways;
-		/*package*/ final Counter nodeCounter = new Counter("node ");
-		/*package*/ final Counter wayCounter = new Counter("way ");
-		private final CoordinateTransformation transform;
-		private boolean loadNodes = true;
-		private boolean loadWays = true;
-		private boolean mergeNodes = false;
-		private boolean collectNodes = false;
-
-		public OsmXmlParser(final Map<Long, OsmNode> nodes, final Map<Long, OsmWay> ways, final CoordinateTransformation transform) {
-			super();
-			this.nodes = nodes;
-			this.ways = ways;
-			this.transform = transform;
-			this.setValidating(false);
+	/**
+	 * Receives the nodes and ways read from OSM XML or PBF files, in the order of the file.
+	 */
+	/*package*/ interface OsmHandler {
+		void handleNode(long id, double lat, double lon);
+		void handleWay(OsmWay way);
+	}
+
+	/**
+	 * Keeps the ways of the highway types to be converted, and optionally the ids of their nodes.
+	 */
+	private class WayCollector implements OsmHandler {
+		private final boolean collectNodeIds;
+
+		WayCollector(final boolean collectNodeIds) {
+			this.collectNodeIds = collectNodeIds;
+		}
+
+		@Override
+		public void handleNode(final long id, final double lat, final double lon) {
+		}
+
+		@Override
+		public void handleWay(final OsmWay way) {
+			if (way.nodeIds.isEmpty()) {
+				return;
+			}
+			OsmHighwayDefaults osmHighwayDefaults = OsmNetworkReader.this.highwayDefaults.get(way.tags.get(TAG_HIGHWAY));
+			if (osmHighwayDefaults != null) {
+				way.hierarchy = osmHighwayDefaults.hierarchy;
+				OsmNetworkReader.this.candidateWays.add(way);
+				if (this.collectNodeIds) {
+					for (int i = 0, n = way.nodeIds.size(); i < n; i++) {
+						OsmNetworkReader.this.nodes.add(way.nodeIds.getLong(i));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps all nodes, and the ways of the highway types to be converted.
+	 */
+	private class AllNodesCollector extends WayCollector {
+		AllNodesCollector() {
+			super(false);
+		}
+
+		@Override
+		public void handleNode(final long id, final double lat, final double lon) {
+			OsmNetworkReader.this.nodes.add(id, OsmNetworkReader.this.transform.transform(new Coord(lon, lat)));
+			OsmNetworkReader.this.nodeCounter.incCounter();
 		}
+	}
 
-		public void enableOptimization(final int step) {
-			this.loadNodes = false;
-			this.loadWays = false;
-			this.collectNodes = false;
-			this.mergeNodes = false;
-			if (step == 1) {
-				this.collectNodes = true;
-			} else if (step == 2) {
-				this.mergeNodes = true;
-				this.loadWays = true;
+	/**
+	 * Sets the coordinates of the nodes whose ids were collected before.
+	 */
+	private class RequiredNodesCollector implements OsmHandler {
+		@Override
+		public void handleNode(final long id, final double lat, final double lon) {
+			int index = OsmNetworkReader.this.nodes.indexOfId(id);
+			if (index >= 0) {
+				OsmNetworkReader.this.nodes.setCoord(index, OsmNetworkReader.this.transform.transform(new Coord(lon, lat)));
+				OsmNetworkReader.this.nodeCounter.incCounter();
 			}
 		}
 
+		@Override
+		public void handleWay(final OsmWay way) {
+		}
+	}
+
+	private static class OsmXmlParser extends MatsimXmlParser {
+		private final OsmHandler handler;
+		private final boolean readNodes;
+		private final boolean readWays;
+		private OsmWay currentWay = null;
+
+		public OsmXmlParser(final OsmHandler handler, final boolean readNodes, final boolean readWays) {
+			super();
+			this.handler = handler;
+			this.readNodes = readNodes;
+			this.readWays = readWays;
+			this.setValidating(false);
+		}
+
 		@Override
 		public void startTag(final String name, final Attributes atts, final Stack<String> context) {
 			if ("node".equals(name)) {
-				if (this.loadNodes) {
-					Long id = Long.valueOf(atts.getValue("id"));
+				if (this.readNodes) {
+					long id = Long.parseLong(atts.getValue("id"));
 					double lat = Double.parseDouble(atts.getValue("lat"));
 					double lon = Double.parseDouble(atts.getValue("lon"));
-					this.nodes.put(id, new OsmNode(id, this.transform.transform(new Coord(lon, lat))));
-					this.nodeCounter.incCounter();
-				} else if (this.mergeNodes) {
-					OsmNode node = this.nodes.get(Long.valueOf(atts.getValue("id")));
-					if (node != null) {
-						double lat = Double.parseDouble(atts.getValue("lat"));
-						double lon = Double.parseDouble(atts.getValue("lon"));
-						Coord c = this.transform.transform(new Coord(lon, lat));
-//						node.coord.setXY(c.getX(), c.getY());
-						node.coord = c ;
-						this.nodeCounter.incCounter();
-					}
+					this.handler.handleNode(id, lat, lon);
 				}
 			} else if ("way".equals(name)) {
-				this.currentWay = new OsmWay(Long.parseLong(atts.getValue("id")));
+				if (this.readWays) {
+					this.currentWay = new OsmWay(Long.parseLong(atts.getValue("id")));
+				}
 			} else if ("nd".equals(name)) {
 				if (this.currentWay != null) {
-					this.currentWay.nodes.add(Long.parseLong(atts.getValue("ref")));
+					this.currentWay.nodeIds.add(Long.parseLong(atts.getValue("ref")));
 				}
 			} else if ("tag".equals(name)) {
 				if (this.currentWay != null) {
@@ -938,51 +1051,175 @@ public class OsmNetworkReader implements MatsimSomeReader {
 
 		@Override
 		public void endTag(final String name, final String content, final Stack<String> context) {
-			if ("way".equals(name)) {
-				if (!this.currentWay.nodes.isEmpty()) {
-					boolean used = false;
-					OsmHighwayDefaults osmHighwayDefaults = OsmNetworkReader.this.highwayDefaults.get(this.currentWay.tags.get(TAG_HIGHWAY));
-					if (osmHighwayDefaults != null) {
-						int hierarchy = osmHighwayDefaults.hierarchy;
-						this.currentWay.hierarchy = hierarchy;
-						if (OsmNetworkReader.this.hierarchyLayers.isEmpty()) {
-							used = true;
-						}
-						if (this.collectNodes) {
-							used = true;
-						} else {
-							for (OsmFilter osmFilter : OsmNetworkReader.this.hierarchyLayers) {
-								for (Long nodeId : this.currentWay.nodes) {
-									OsmNode node = this.nodes.get(nodeId);
-									if(node != null && osmFilter.coordInFilter(node.coord, this.currentWay.hierarchy)){
-										used = true;
-										break;
-									}
-								}
-								if (used) {
-									break;
-								}
-							}
-						}
-					}
-					if (used) {
-						if (this.collectNodes) {
-							for (long id : this.currentWay.nodes) {
-								this.nodes.put(id, new OsmNode(id, new Coord(0, 0)));
-							}
-						} else if (this.loadWays) {
-							this.ways.put(this.currentWay.id, this.currentWay);
-							this.wayCounter.incCounter();
-						}
-					}
-				}
+			if ("way".equals(name) && this.currentWay != null) {
+				this.handler.handleWay(this.currentWay);
 				this.currentWay = null;
 			}
 		}
 
 	}
 
-	private static class StringCache {
+	/**
+	 * The coordinates of OSM nodes in primitive arrays sorted by node id. Uses about 24 bytes per node, a fraction of
+	 * a map of node objects. Nodes without coordinates, i.e. nodes which were referenced but not read, have
+	 * <code>NaN</code> coordinates.
+	 */
+	private static class OsmNodeIndex {
+		private long[] ids = new long[1024];
+		private double[] xs = null;
+		private double[] ys = null;
+		private int size = 0;
+		private boolean sorted = true;
+
+		/** Adds the id of a node whose coordinate will be set later. */
+		void add(final long id) {
+			ensureCapacity();
+			append(id);
+		}
+
+		/** Adds a node with its coordinate. If there are several nodes with the same id, the last one wins. */
+		void add(final long id, final Coord coord) {
+			if (this.xs == null) {
+				this.xs = new double[this.ids.length];
+				this.ys = new double[this.ids.length];
+			}
+			ensureCapacity();
+			this.xs[this.size] = coord.getX();
+			this.ys[this.size] = coord.getY();
+			append(id);
+		}
+
+		private void append(final long id) {
+			if (this.size > 0 && id <= this.ids[this.size - 1]) {
+				this.sorted = false;
+			}
+			this.ids[this.size++] = id;
+		}
+
+		private void ensureCapacity() {
+			if (this.size == this.ids.length) {
+				int capacity = this.ids.length + (this.ids.length >> 1);
+				this.ids = Arrays.copyOf(this.ids, capacity);
+				if (this.xs != null) {
+					this.xs = Arrays.copyOf(this.xs, capacity);
+					this.ys = Arrays.copyOf(this.ys, capacity);
+				}
+			}
+		}
+
+		/** Sorts the ids and removes duplicates, must be called after adding all ids or nodes. */
+		void sortIds() {
+			if (this.sorted) {
+				this.ids = Arrays.copyOf(this.ids, this.size);
+				if (this.xs == null) {
+					this.xs = new double[this.size];
+					this.ys = new double[this.size];
+					Arrays.fill(this.xs, Double.NaN);
+					Arrays.fill(this.ys, Double.NaN);
+				} else {
+					this.xs = Arrays.copyOf(this.xs, this.size);
+					this.ys = Arrays.copyOf(this.ys, this.size);
+				}
+				return;
+			}
+			long[] sortedIds = Arrays.copyOf(this.ids, this.size);
+			Arrays.sort(sortedIds);
+			int count = 0;
+			for (int i = 0; i < sortedIds.length; i++) {
+				if (count == 0 || sortedIds[i] != sortedIds[count - 1]) {
+					sortedIds[count++] = sortedIds[i];
+				}
+			}
+			sortedIds = Arrays.copyOf(sortedIds, count);
+			double[] sortedXs = new double[count];
+			double[] sortedYs = new double[count];
+			Arrays.fill(sortedXs, Double.NaN);
+			Arrays.fill(sortedYs, Double.NaN);
+			if (this.xs != null) {
+				for (int i = 0; i < this.size; i++) {
+					int index = Arrays.binarySearch(sortedIds, this.ids[i]);
+					sortedXs[index] = this.xs[i];
+					sortedYs[index] = this.ys[i];
+				}
+			}
+			this.ids = sortedIds;
+			this.xs = sortedXs;
+			this.ys = sortedYs;
+			this.size = count;
+			this.sorted = true;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		/** @return the index of the node, or a negative number if the node is unknown or was not read */
+		int indexOf(final long id) {
+			int index = Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (index >= 0 && Double.isNaN(this.xs[index])) {
+				return -1;
+			}
+			return index;
+		}
+
+		/** Like {@link #indexOf(long)}, but also returns the index of nodes which were not read yet. */
+		int indexOfId(final long id) {
+			return Arrays.binarySearch(this.ids, 0, this.size, id);
+		}
+
+		void setCoord(final int index, final Coord coord) {
+			this.xs[index] = coord.getX();
+			this.ys[index] = coord.getY();
+		}
+
+		long getId(final int index) {
+			return this.ids[index];
+		}
+
+		Coord getCoord(final int index) {
+			return new Coord(this.xs[index], this.ys[index]);
+		}
+	}
+
+	/**
+	 * A list of primitive longs, to store the node ids of ways without boxing them.
+	 */
+	/*package*/ static final class LongList extends AbstractList<Long> implements RandomAccess {
+		private long[] values = new long[4];
+		private int size = 0;
+
+		@Override
+		public boolean add(final Long value) {
+			add(value.longValue());
+			return true;
+		}
+
+		void add(final long value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, 2 * this.values.length);
+			}
+			this.values[this.size++] = value;
+		}
+
+		@Override
+		public Long get(final int index) {
+			return getLong(index);
+		}
+
+		long getLong(final int index) {
+			if (index >= this.size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+			}
+			return this.values[index];
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+	}
+
+	/*package*/ static class StringCache {
 		private static ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<String, String>(10000);
 		
 		/**
@@ -0,0 +1,525 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * OsmPbfParser.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.matsim.core.utils.io.OsmNetworkReader.OsmHandler;
+import org.matsim.core.utils.io.OsmNetworkReader.OsmWay;
+import org.matsim.core.utils.io.OsmNetworkReader.StringCache;
+
+/**
+ * Reads the nodes and ways of an <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">OSM PBF</a> file.
+ * The blocks of the file are read sequentially, but decompressed and decoded in parallel; the decoded nodes and
+ * ways are passed to the handler in the order of the file, in the calling thread. Relations and metadata are
+ * ignored, as are all tags of nodes and all tags of ways not in the given list.
+ */
+/*package*/ final class OsmPbfParser {
+
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+	private static final Set<String> SUPPORTED_FEATURES = new HashSet<>(Arrays.asList("OsmSchema-V0.6", "DenseNodes"));
+
+	private final OsmHandler handler;
+	private final boolean readNodes;
+	private final boolean readWays;
+	private final Set<String> wayTags;
+	private final int numberOfThreads;
+
+	OsmPbfParser(final OsmHandler handler, final boolean readNodes, final boolean readWays, final Collection<String> wayTags) {
+		this(handler, readNodes, readWays, wayTags, Runtime.getRuntime().availableProcessors());
+	}
+
+	OsmPbfParser(final OsmHandler handler, final boolean readNodes, final boolean readWays, final Collection<String> wayTags, final int numberOfThreads) {
+		this.handler = handler;
+		this.readNodes = readNodes;
+		this.readWays = readWays;
+		this.wayTags = new HashSet<>(wayTags);
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	void parse(final InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		ExecutorService executor = null;
+		if (this.numberOfThreads > 1) {
+			executor = Executors.newFixedThreadPool(this.numberOfThreads, runnable -> {
+				Thread thread = new Thread(runnable, "OsmPbfParser");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		Deque<Future<Block>> pendingBlocks = new ArrayDeque<>();
+		try {
+			while (true) {
+				int headerSize;
+				try {
+					headerSize = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+					throw new IOException("invalid size of PBF block header: " + headerSize);
+				}
+				byte[] header = new byte[headerSize];
+				in.readFully(header);
+				ProtobufInput headerInput = new ProtobufInput(header, 0, headerSize);
+				String type = null;
+				int blobSize = -1;
+				while (headerInput.hasMore()) {
+					int tag = headerInput.readTag();
+					switch (tag >>> 3) {
+						case 1: type = headerInput.readString(); break;
+						case 3: blobSize = headerInput.readInt32(); break;
+						default: headerInput.skip(tag);
+					}
+				}
+				if (blobSize < 0 || blobSize > MAX_BLOB_SIZE) {
+					throw new IOException("invalid size of PBF block: " + blobSize);
+				}
+				final byte[] blob = new byte[blobSize];
+				in.readFully(blob);
+				if ("OSMHeader".equals(type)) {
+					checkHeader(decompress(blob));
+				} else if ("OSMData".equals(type)) {
+					Callable<Block> task = () -> decodeBlock(decompress(blob));
+					if (executor == null) {
+						handleBlock(call(task));
+					} else {
+						pendingBlocks.add(executor.submit(task));
+						while (pendingBlocks.size() >= 2 * this.numberOfThreads) {
+							handleBlock(get(pendingBlocks.poll()));
+						}
+					}
+				}
+				// unknown block types must be skipped according to the specification
+			}
+			while (!pendingBlocks.isEmpty()) {
+				handleBlock(get(pendingBlocks.poll()));
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private void handleBlock(final Block block) {
+		for (int i = 0; i < block.numberOfNodes; i++) {
+			this.handler.handleNode(block.nodeIds[i], block.lats[i], block.lons[i]);
+		}
+		for (OsmWay way : block.ways) {
+			this.handler.handleWay(way);
+		}
+	}
+
+	private static Block call(final Callable<Block> task) throws IOException {
+		try {
+			return task.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static Block get(final Future<Block> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while decoding PBF blocks");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static ProtobufInput decompress(final byte[] blob) throws IOException {
+		ProtobufInput input = new ProtobufInput(blob, 0, blob.length);
+		int rawSize = -1;
+		ProtobufInput raw = null;
+		ProtobufInput zlibData = null;
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			switch (tag >>> 3) {
+				case 1: raw = input.readMessage(); break;
+				case 2: rawSize = input.readInt32(); break;
+				case 3: zlibData = input.readMessage(); break;
+				case 4: case 5: case 6: case 7: throw new IOException("unsupported compression of PBF block, only zlib is supported");
+				default: input.skip(tag);
+			}
+		}
+		if (raw != null) {
+			return raw;
+		}
+		if (zlibData == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+			throw new IOException("invalid PBF block");
+		}
+		byte[] data = new byte[rawSize];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(zlibData.buffer, zlibData.position, zlibData.limit - zlibData.position);
+			int size = 0;
+			while (size < rawSize && !inflater.finished()) {
+				int n = inflater.inflate(data, size, rawSize - size);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				size += n;
+			}
+			if (size != rawSize) {
+				throw new IOException("invalid PBF block, expected " + rawSize + " bytes, but got " + size);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		return new ProtobufInput(data, 0, rawSize);
+	}
+
+	private static void checkHeader(final ProtobufInput input) throws IOException {
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			if ((tag >>> 3) == 4) {
+				String feature = input.readString();
+				if (!SUPPORTED_FEATURES.contains(feature)) {
+					throw new IOException("unsupported required feature in PBF file: " + feature);
+				}
+			} else {
+				input.skip(tag);
+			}
+		}
+	}
+
+	private Block decodeBlock(final ProtobufInput input) throws IOException {
+		StringTable strings = null;
+		List<ProtobufInput> groups = new ArrayList<>();
+		int granularity = 100;
+		long latOffset = 0;
+		long lonOffset = 0;
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			switch (tag >>> 3) {
+				case 1: strings = new StringTable(input.readMessage()); break;
+				case 2: groups.add(input.readMessage()); break;
+				case 17: granularity = input.readInt32(); break;
+				case 19: latOffset = input.readInt64(); break;
+				case 20: lonOffset = input.readInt64(); break;
+				default: input.skip(tag);
+			}
+		}
+		Block block = new Block();
+		for (ProtobufInput group : groups) {
+			while (group.hasMore()) {
+				int tag = group.readTag();
+				int field = tag >>> 3;
+				if (field == 1 && this.readNodes) {
+					decodeNode(group.readMessage(), block, granularity, latOffset, lonOffset);
+				} else if (field == 2 && this.readNodes) {
+					decodeDenseNodes(group.readMessage(), block, granularity, latOffset, lonOffset);
+				} else if (field == 3 && this.readWays) {
+					block.ways.add(decodeWay(group.readMessage(), strings));
+				} else {
+					group.skip(tag);
+				}
+			}
+		}
+		return block;
+	}
+
+	private static void decodeNode(final ProtobufInput input, final Block block, final int granularity, final long latOffset, final long lonOffset) throws IOException {
+		long id = 0;
+		long lat = 0;
+		long lon = 0;
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			switch (tag >>> 3) {
+				case 1: id = input.readSInt64(); break;
+				case 8: lat = input.readSInt64(); break;
+				case 9: lon = input.readSInt64(); break;
+				default: input.skip(tag);
+			}
+		}
+		block.addNode(id, toDegrees(lat, granularity, latOffset), toDegrees(lon, granularity, lonOffset));
+	}
+
+	private static void decodeDenseNodes(final ProtobufInput input, final Block block, final int granularity, final long latOffset, final long lonOffset) throws IOException {
+		long[] ids = new long[0];
+		long[] lats = new long[0];
+		long[] lons = new long[0];
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			switch (tag >>> 3) {
+				case 1: ids = input.readPackedSInt64Delta(tag); break;
+				case 8: lats = input.readPackedSInt64Delta(tag); break;
+				case 9: lons = input.readPackedSInt64Delta(tag); break;
+				default: input.skip(tag);
+			}
+		}
+		if (ids.length != lats.length || ids.length != lons.length) {
+			throw new IOException("invalid dense nodes in PBF block");
+		}
+		for (int i = 0; i < ids.length; i++) {
+			block.addNode(ids[i], toDegrees(lats[i], granularity, latOffset), toDegrees(lons[i], granularity, lonOffset));
+		}
+	}
+
+	/**
+	 * Divides the exact number of nanodegrees instead of multiplying with 1e-9, so the result is the double closest
+	 * to the decimal value, the same value as parsed from an XML file.
+	 */
+	private static double toDegrees(final long value, final int granularity, final long offset) {
+		return (offset + granularity * value) / 1e9;
+	}
+
+	private OsmWay decodeWay(final ProtobufInput input, final StringTable strings) throws IOException {
+		long id = 0;
+		long[] keys = new long[0];
+		long[] values = new long[0];
+		long[] refs = new long[0];
+		while (input.hasMore()) {
+			int tag = input.readTag();
+			switch (tag >>> 3) {
+				case 1: id = input.readInt64(); break;
+				case 2: keys = input.readPackedVarints(tag); break;
+				case 3: values = input.readPackedVarints(tag); break;
+				case 8: refs = input.readPackedSInt64Delta(tag); break;
+				default: input.skip(tag);
+			}
+		}
+		if (keys.length != values.length) {
+			throw new IOException("invalid way " + id + " in PBF block");
+		}
+		OsmWay way = new OsmWay(id);
+		for (long ref : refs) {
+			way.nodeIds.add(ref);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			String key = strings.get((int) keys[i]);
+			if (this.wayTags.contains(key)) {
+				way.tags.put(StringCache.get(key), StringCache.get(strings.get((int) values[i])));
+			}
+		}
+		return way;
+	}
+
+	private static final class Block {
+		private long[] nodeIds = new long[0];
+		private double[] lats = new double[0];
+		private double[] lons = new double[0];
+		private int numberOfNodes = 0;
+		private final List<OsmWay> ways = new ArrayList<>();
+
+		void addNode(final long id, final double lat, final double lon) {
+			if (this.numberOfNodes == this.nodeIds.length) {
+				int capacity = Math.max(64, 2 * this.nodeIds.length);
+				this.nodeIds = Arrays.copyOf(this.nodeIds, capacity);
+				this.lats = Arrays.copyOf(this.lats, capacity);
+				this.lons = Arrays.copyOf(this.lons, capacity);
+			}
+			this.nodeIds[this.numberOfNodes] = id;
+			this.lats[this.numberOfNodes] = lat;
+			this.lons[this.numberOfNodes] = lon;
+			this.numberOfNodes++;
+		}
+	}
+
+	/**
+	 * The string table of a block, decoding the strings only when they are needed.
+	 */
+	private static final class StringTable {
+		private final byte[] buffer;
+		private final int[] offsets;
+		private final int[] lengths;
+		private final String[] strings;
+
+		StringTable(final ProtobufInput input) throws IOException {
+			this.buffer = input.buffer;
+			List<ProtobufInput> entries = new ArrayList<>();
+			while (input.hasMore()) {
+				int tag = input.readTag();
+				if ((tag >>> 3) == 1) {
+					entries.add(input.readMessage());
+				} else {
+					input.skip(tag);
+				}
+			}
+			this.offsets = new int[entries.size()];
+			this.lengths = new int[entries.size()];
+			for (int i = 0; i < this.offsets.length; i++) {
+				this.offsets[i] = entries.get(i).position;
+				this.lengths[i] = entries.get(i).limit - entries.get(i).position;
+			}
+			this.strings = new String[entries.size()];
+		}
+
+		String get(final int index) throws IOException {
+			if (index < 0 || index >= this.strings.length) {
+				throw new IOException("invalid string index in PBF block: " + index);
+			}
+			String string = this.strings[index];
+			if (string == null) {
+				string = new String(this.buffer, this.offsets[index], this.lengths[index], StandardCharsets.UTF_8);
+				this.strings[index] = string;
+			}
+			return string;
+		}
+	}
+
+	/**
+	 * Reads the protocol buffer wire format, as far as needed for OSM PBF files.
+	 */
+	private static final class ProtobufInput {
+		private static final int WIRETYPE_VARINT = 0;
+		private static final int WIRETYPE_FIXED64 = 1;
+		private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+		private static final int WIRETYPE_FIXED32 = 5;
+
+		private final byte[] buffer;
+		private int position;
+		private final int limit;
+
+		ProtobufInput(final byte[] buffer, final int position, final int limit) {
+			this.buffer = buffer;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		boolean hasMore() {
+			return this.position < this.limit;
+		}
+
+		int readTag() throws IOException {
+			return (int) readVarint();
+		}
+
+		long readVarint() throws IOException {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (this.position >= this.limit) {
+					throw new IOException("truncated PBF data");
+				}
+				byte b = this.buffer[this.position++];
+				result |= (long) (b & 0x7f) << shift;
+				if (b >= 0) {
+					return result;
+				}
+			}
+			throw new IOException("malformed varint in PBF data");
+		}
+
+		int readInt32() throws IOException {
+			return (int) readVarint();
+		}
+
+		long readInt64() throws IOException {
+			return readVarint();
+		}
+
+		long readSInt64() throws IOException {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		ProtobufInput readMessage() throws IOException {
+			int length = readInt32();
+			if (length < 0 || length > this.limit - this.position) {
+				throw new IOException("truncated PBF data");
+			}
+			ProtobufInput message = new ProtobufInput(this.buffer, this.position, this.position + length);
+			this.position += length;
+			return message;
+		}
+
+		String readString() throws IOException {
+			ProtobufInput message = readMessage();
+			return new String(this.buffer, message.position, message.limit - message.position, StandardCharsets.UTF_8);
+		}
+
+		long[] readPackedVarints(final int tag) throws IOException {
+			if ((tag & 7) != WIRETYPE_LENGTH_DELIMITED) {
+				throw new IOException("expected packed field in PBF data");
+			}
+			ProtobufInput message = readMessage();
+			int count = 0;
+			for (int i = message.position; i < message.limit; i++) {
+				if (this.buffer[i] >= 0) {
+					count++;
+				}
+			}
+			long[] values = new long[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = message.readVarint();
+			}
+			return values;
+		}
+
+		/**
+		 * Reads packed, zigzag- and delta-encoded values.
+		 */
+		long[] readPackedSInt64Delta(final int tag) throws IOException {
+			long[] values = readPackedVarints(tag);
+			long value = 0;
+			for (int i = 0; i < values.length; i++) {
+				value += (values[i] >>> 1) ^ -(values[i] & 1);
+				values[i] = value;
+			}
+			return values;
+		}
+
+		void skip(final int tag) throws IOException {
+			switch (tag & 7) {
+				case WIRETYPE_VARINT: readVarint(); return;
+				case WIRETYPE_FIXED64: this.position += 8; break;
+				case WIRETYPE_LENGTH_DELIMITED: readMessage(); return;
+				case WIRETYPE_FIXED32: this.position += 4; break;
+				default: throw new IOException("unsupported wire type " + (tag & 7) + " in PBF data");
+			}
+			if (this.position > this.limit) {
+				throw new IOException("truncated PBF data");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelBlockOutputStream.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the written data into blocks of fixed size and compresses the blocks in parallel, the way <code>pigz</code>
+ * does it. The compressed blocks are written in their original order.
+ * <p></p>
+ * The blocks are compressed by a thread pool shared by all streams. Its size can be set with the system property
+ * <code>matsim.compressionThreads</code> and defaults to the number of available processors; with a size of 1,
+ * all blocks are compressed in the writing thread. The last block is always compressed in the writing thread,
+ * so small files do not pay for the hand-over to another thread.
+ */
+abstract class ParallelBlockOutputStream extends OutputStream {
+
+	static final int NUMBER_OF_THREADS = Math.max(1, Integer.getInteger("matsim.compressionThreads", Runtime.getRuntime().availableProcessors()));
+
+	private static ExecutorService executor = null;
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int maxPendingBlocks = 2 * NUMBER_OF_THREADS;
+	private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+	private byte[] block;
+	private int length = 0;
+	private byte[] previousBlock = null;
+	private int previousLength = 0;
+	private boolean closed = false;
+
+	ParallelBlockOutputStream(final OutputStream out, final int blockSize) {
+		this.out = out;
+		this.blockSize = blockSize;
+		this.block = new byte[blockSize];
+	}
+
+	/**
+	 * Compresses one block. Called concurrently for different blocks, so implementations must not use any mutable
+	 * state of the stream.
+	 *
+	 * @param previousData the data of the previous block, or <code>null</code> for the first block, e.g. to be used as dictionary
+	 * @param last <code>true</code> for the last block of the stream, which may be empty
+	 */
+	abstract byte[] compressBlock(byte[] data, int length, byte[] previousData, int previousLength, boolean last) throws IOException;
+
+	/**
+	 * Called in the writing thread with the uncompressed data of every block, in order, e.g. to calculate a checksum.
+	 */
+	void blockWritten(final byte[] data, final int length) {
+	}
+
+	/**
+	 * Called in the writing thread after all blocks are written.
+	 */
+	abstract void writeTrailer(OutputStream out) throws IOException;
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensureOpen();
+		this.block[this.length++] = (byte) b;
+		if (this.length == this.blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, this.blockSize - this.length);
+			System.arraycopy(b, off, this.block, this.length, n);
+			this.length += n;
+			off += n;
+			len -= n;
+			if (this.length == this.blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes the blocks which are already compressed. Data of the current, incomplete block is not written, as
+	 * flushing single lines would otherwise destroy the compression ratio.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		while (!this.pendingBlocks.isEmpty() && this.pendingBlocks.peek().isDone()) {
+			writePendingBlock();
+		}
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			blockWritten(this.block, this.length);
+			byte[] lastBlock = compressBlock(this.block, this.length, this.previousBlock, this.previousLength, true);
+			while (!this.pendingBlocks.isEmpty()) {
+				writePendingBlock();
+			}
+			this.out.write(lastBlock);
+			writeTrailer(this.out);
+		} finally {
+			for (Future<byte[]> pending : this.pendingBlocks) {
+				pending.cancel(false);
+			}
+			this.pendingBlocks.clear();
+			this.out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] data = this.block;
+		final int dataLength = this.length;
+		final byte[] previousData = this.previousBlock;
+		final int previousDataLength = this.previousLength;
+		blockWritten(data, dataLength);
+		if (NUMBER_OF_THREADS > 1) {
+			this.pendingBlocks.add(getExecutor().submit(() -> compressBlock(data, dataLength, previousData, previousDataLength, false)));
+		} else {
+			this.pendingBlocks.add(CompletableFuture.completedFuture(compressBlock(data, dataLength, previousData, previousDataLength, false)));
+		}
+		this.previousBlock = data;
+		this.previousLength = dataLength;
+		this.block = new byte[this.blockSize];
+		this.length = 0;
+		while (this.pendingBlocks.size() >= this.maxPendingBlocks) {
+			writePendingBlock();
+		}
+	}
+
+	private void writePendingBlock() throws IOException {
+		Future<byte[]> pending = this.pendingBlocks.poll();
+		try {
+			this.out.write(pending.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for compressed data");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			final AtomicInteger threadNumber = new AtomicInteger(0);
+			executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS, runnable -> {
+				Thread thread = new Thread(runnable, "compression-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+}
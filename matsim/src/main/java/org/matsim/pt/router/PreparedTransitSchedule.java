@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.matsim.pt.transitSchedule.TransitRouteImpl;
 import org.matsim.pt.transitSchedule.api.Departure;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitRouteStop;
@@ -80,7 +81,7 @@ public class PreparedTransitSchedule {
 		}
 	
 		// this will search for the terminus departure that corresponds to my departure at the stop:
-		double[] cache = sortedDepartureCache.get(route);
+		double[] cache = route instanceof TransitRouteImpl ? ((TransitRouteImpl) route).getSortedDepartureTimes() : sortedDepartureCache.get(route);
 		if (cache == null) {
 			cache = new double[route.getDepartures().size()];
 			int i = 0;
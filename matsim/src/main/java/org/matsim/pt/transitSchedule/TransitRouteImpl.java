@@ -20,11 +20,19 @@
 
 package org.matsim.pt.transitSchedule;
 
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.population.routes.NetworkRoute;
@@ -37,6 +45,14 @@ import org.matsim.utils.objectattributes.attributable.Attributes;
 
 /**
  * Describes a route of a transit line, including its stops and the departures along this route.
+ * <p></p>
+ * The departures are stored in arrays sorted by id, together with their departure times, instead of
+ * a tree map, as large schedules have millions of departures.
+ * <p></p>
+ * This is not a fully columnar store: the {@link Departure} objects are kept as they are, with their
+ * vehicle ids and attributes, because callers create them, modify them after adding them (e.g.
+ * {@link Departure#setVehicleId(Id)}) and compare them by identity.  Only the lookup structure and the
+ * departure times are columns.
  *
  * @author mrieser
  */
@@ -46,7 +62,13 @@ public class TransitRouteImpl implements TransitRoute {
 	private NetworkRoute route;
 	private final List<TransitRouteStop> stops = new ArrayList<>(8);
 	private String description = null;
-	private final Map<Id<Departure>, Departure> departures = new TreeMap<>();
+	private Departure[] departures = new Departure[0];
+	private double[] departureTimes = new double[0];
+	private int departureCount = 0;
+	// counts the changes of the departures, so the iterators of the view can fail fast
+	private int modCount = 0;
+	private volatile double[] sortedDepartureTimes = null;
+	private final Map<Id<Departure>, Departure> departuresView = new DeparturesMap();
 	private String transportMode;
 	private String direction;
 	private final Attributes attributes = new Attributes();
@@ -92,20 +114,119 @@ public class TransitRouteImpl implements TransitRoute {
 	@Override
 	public void addDeparture(final Departure departure) {
 		final Id<Departure> id = departure.getId();
-		if (this.departures.containsKey(id)) {
+		int index = indexOf(id);
+		if (index >= 0) {
 			throw new IllegalArgumentException("There is already a departure with id " + id.toString() + " in transit route " + this.routeId);
 		}
-		this.departures.put(id, departure);
+		ensureCapacity(this.departureCount + 1);
+		index = -(index + 1);
+		System.arraycopy(this.departures, index, this.departures, index + 1, this.departureCount - index);
+		System.arraycopy(this.departureTimes, index, this.departureTimes, index + 1, this.departureCount - index);
+		this.departures[index] = departure;
+		this.departureTimes[index] = departure.getDepartureTime();
+		this.departureCount++;
+		this.modCount++;
+		this.sortedDepartureTimes = null;
+	}
+
+	/**
+	 * Adds all the departures at once, sorting them only once instead of for every departure.
+	 */
+	/*package*/ void addDepartures(final Collection<Departure> departures) {
+		ensureCapacity(this.departureCount + departures.size());
+		for (Departure departure : departures) {
+			this.departures[this.departureCount++] = departure;
+		}
+		Arrays.sort(this.departures, 0, this.departureCount, (d1, d2) -> d1.getId().compareTo(d2.getId()));
+		for (int i = 0; i < this.departureCount; i++) {
+			this.departureTimes[i] = this.departures[i].getDepartureTime();
+		}
+		this.modCount++;
+		this.sortedDepartureTimes = null;
+		for (int i = 1; i < this.departureCount; i++) {
+			if (this.departures[i - 1].getId().equals(this.departures[i].getId())) {
+				Id<Departure> id = this.departures[i].getId();
+				// keep the departures as they were before
+				removeAll(departures);
+				throw new IllegalArgumentException("There is already a departure with id " + id.toString() + " in transit route " + this.routeId);
+			}
+		}
+	}
+
+	private void removeAll(final Collection<Departure> departures) {
+		for (Departure departure : departures) {
+			for (int i = this.departureCount - 1; i >= 0; i--) {
+				if (this.departures[i] == departure) {
+					removeAt(i);
+					break;
+				}
+			}
+		}
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > this.departures.length) {
+			int length = Math.max(capacity, this.departures.length + (this.departures.length >> 1) + 4);
+			this.departures = Arrays.copyOf(this.departures, length);
+			this.departureTimes = Arrays.copyOf(this.departureTimes, length);
+		}
+	}
+
+	/**
+	 * @return the index of the departure with the id, or <code>(-(insertion point) - 1)</code> like {@link Arrays#binarySearch(Object[], Object)}
+	 */
+	private int indexOf(final Id<Departure> id) {
+		int low = 0;
+		int high = this.departureCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = this.departures[mid].getId().compareTo(id);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void removeAt(final int index) {
+		int moved = this.departureCount - index - 1;
+		System.arraycopy(this.departures, index + 1, this.departures, index, moved);
+		System.arraycopy(this.departureTimes, index + 1, this.departureTimes, index, moved);
+		this.departures[--this.departureCount] = null;
+		this.modCount++;
+		this.sortedDepartureTimes = null;
 	}
 
 	@Override
 	public boolean removeDeparture(final Departure departure) {
-		return null != this.departures.remove(departure.getId());
+		int index = indexOf(departure.getId());
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
 	}
 
 	@Override
 	public Map<Id<Departure>, Departure> getDepartures() {
-		return Collections.unmodifiableMap(this.departures);
+		return this.departuresView;
+	}
+
+	/**
+	 * @return the departure times of all departures, in ascending order. The array is cached and must not be modified.
+	 */
+	public double[] getSortedDepartureTimes() {
+		double[] times = this.sortedDepartureTimes;
+		if (times == null) {
+			times = Arrays.copyOf(this.departureTimes, this.departureCount);
+			Arrays.sort(times);
+			this.sortedDepartureTimes = times;
+		}
+		return times;
 	}
 
 	@Override
@@ -148,7 +269,100 @@ public class TransitRouteImpl implements TransitRoute {
 
 	@Override
 	public String toString() {
-		return "[TransitRouteImpl: route=" + this.routeId.toString() + ", #departures=" + this.departures.size() + "]";
+		return "[TransitRouteImpl: route=" + this.routeId.toString() + ", #departures=" + this.departureCount + "]";
+	}
+
+	/**
+	 * Unmodifiable map view of the departures, ordered by id.
+	 */
+	private final class DeparturesMap extends AbstractMap<Id<Departure>, Departure> {
+
+		private final Set<Map.Entry<Id<Departure>, Departure>> entries = new AbstractSet<Map.Entry<Id<Departure>, Departure>>() {
+			@Override
+			public Iterator<Map.Entry<Id<Departure>, Departure>> iterator() {
+				return new DeparturesIterator<Map.Entry<Id<Departure>, Departure>>() {
+					@Override
+					Map.Entry<Id<Departure>, Departure> get(final Departure departure) {
+						return new AbstractMap.SimpleImmutableEntry<>(departure.getId(), departure);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return departureCount;
+			}
+		};
+
+		private final Collection<Departure> values = new AbstractCollection<Departure>() {
+			@Override
+			public Iterator<Departure> iterator() {
+				return new DeparturesIterator<Departure>() {
+					@Override
+					Departure get(final Departure departure) {
+						return departure;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return departureCount;
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<Id<Departure>, Departure>> entrySet() {
+			return this.entries;
+		}
+
+		@Override
+		public Collection<Departure> values() {
+			return this.values;
+		}
+
+		@Override
+		public int size() {
+			return departureCount;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Departure get(final Object key) {
+			if (!(key instanceof Id)) {
+				return null;
+			}
+			int index = indexOf((Id<Departure>) key);
+			return index < 0 ? null : departures[index];
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return get(key) != null;
+		}
+	}
+
+	private abstract class DeparturesIterator<T> implements Iterator<T> {
+		private int next = 0;
+		private final int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return this.next < departureCount;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (this.next >= departureCount) {
+				throw new NoSuchElementException();
+			}
+			return get(departures[this.next++]);
+		}
+
+		abstract T get(Departure departure);
 	}
 	
 }
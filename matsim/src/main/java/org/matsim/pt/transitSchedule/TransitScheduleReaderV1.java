@@ -187,8 +187,12 @@ public class TransitScheduleReaderV1 extends MatsimXmlParser {
 			}
 			TransitRoute transitRoute = this.schedule.getFactory().createTransitRoute(this.currentTransitRoute.id, route, stops, this.currentTransitRoute.mode);
 			transitRoute.setDescription(this.currentTransitRoute.description);
-			for (Departure departure : this.currentTransitRoute.departures.values()) {
-				transitRoute.addDeparture(departure);
+			if (transitRoute instanceof TransitRouteImpl) {
+				((TransitRouteImpl) transitRoute).addDepartures(this.currentTransitRoute.departures.values());
+			} else {
+				for (Departure departure : this.currentTransitRoute.departures.values()) {
+					transitRoute.addDeparture(departure);
+				}
 			}
 			this.currentTransitLine.addRoute(transitRoute);
 		}
@@ -32,7 +32,7 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.ExternalMobimConfigGroup;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
-import org.matsim.core.events.algorithms.SnapshotGenerator;
+import org.matsim.core.events.algorithms.ParallelSnapshotGenerator;
 import org.matsim.core.gbl.MatsimRandom;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.scenario.ScenarioUtils;
@@ -53,7 +53,7 @@ public class Events2Snapshot {
 	private Config config = null;
 	private Network network = null;
 	private EventsManager events = null;
-	private SnapshotGenerator visualizer = null;
+	private ParallelSnapshotGenerator visualizer = null;
 	private String configfile = null;
 	private String eventsfile;
 	private SnapshotWriter writer = null;
@@ -190,8 +190,8 @@ public class Events2Snapshot {
 		this.events = EventsUtils.createEventsManager();
 
 		// create SnapshotGenerator
-		this.visualizer = new SnapshotGenerator(this.network, this.config.qsim().getSnapshotPeriod(), 
-				this.config.qsim());
+		this.visualizer = new ParallelSnapshotGenerator(this.network, this.config.qsim().getSnapshotPeriod(), 
+				this.config.qsim(), Math.max(1, this.config.global().getNumberOfThreads()));
 		this.events.addHandler(this.visualizer);
 	}
 
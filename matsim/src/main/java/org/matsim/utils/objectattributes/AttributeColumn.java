@@ -0,0 +1,285 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AttributeColumn.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.utils.objectattributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of one attribute for all objects of an {@link ObjectAttributes}, indexed by the row of the object.
+ * Values of the common types are stored in primitive arrays (booleans in a bit set, strings as index into a
+ * dictionary of distinct values); a column changes to an {@link ObjectColumn} when a value of another type is
+ * stored in it.
+ * <p></p>
+ * Reading from a column from several threads is safe, as long as no thread writes to it.
+ */
+/*package*/ abstract class AttributeColumn {
+
+	/*package*/ static final byte TYPE_OBJECT = 0;
+	/*package*/ static final byte TYPE_DOUBLE = 1;
+	/*package*/ static final byte TYPE_INTEGER = 2;
+	/*package*/ static final byte TYPE_BOOLEAN = 3;
+	/*package*/ static final byte TYPE_STRING = 4;
+
+	/**
+	 * The rows which have a value in this column.
+	 */
+	/*package*/ final BitSet present = new BitSet();
+
+	/*package*/ static AttributeColumn create(final Object value) {
+		if (value instanceof Double) {
+			return new DoubleColumn();
+		}
+		if (value instanceof Integer) {
+			return new IntegerColumn();
+		}
+		if (value instanceof Boolean) {
+			return new BooleanColumn();
+		}
+		if (value instanceof String) {
+			return new StringColumn();
+		}
+		return new ObjectColumn();
+	}
+
+	abstract byte getType();
+
+	/**
+	 * @return <code>true</code> if the value can be stored in this column
+	 */
+	abstract boolean accepts(Object value);
+
+	/**
+	 * @return the value of the row, or <code>null</code> if it has none
+	 */
+	final Object get(final int row) {
+		return this.present.get(row) ? getValue(row) : null;
+	}
+
+	/**
+	 * Stores the value, which must be accepted by this column.
+	 *
+	 * @return the previous value of the row, or <code>null</code> if it had none
+	 */
+	final Object put(final int row, final Object value) {
+		Object previous = get(row);
+		setValue(row, value);
+		this.present.set(row);
+		return previous;
+	}
+
+	final Object remove(final int row) {
+		Object previous = get(row);
+		if (previous != null) {
+			this.present.clear(row);
+			clearValue(row);
+		}
+		return previous;
+	}
+
+	final boolean isEmpty() {
+		return this.present.isEmpty();
+	}
+
+	/**
+	 * @return a column of generic objects with the same values as this column
+	 */
+	final ObjectColumn toObjectColumn() {
+		ObjectColumn column = new ObjectColumn();
+		for (int row = this.present.nextSetBit(0); row >= 0; row = this.present.nextSetBit(row + 1)) {
+			column.put(row, getValue(row));
+		}
+		return column;
+	}
+
+	abstract Object getValue(int row);
+
+	abstract void setValue(int row, Object value);
+
+	void clearValue(final int row) {
+	}
+
+	static int grow(final int length, final int row) {
+		return Math.max(row + 1, Math.max(16, length + (length >> 1)));
+	}
+
+	static final class DoubleColumn extends AttributeColumn {
+		double[] values = new double[0];
+
+		@Override
+		byte getType() {
+			return TYPE_DOUBLE;
+		}
+
+		@Override
+		boolean accepts(final Object value) {
+			return value instanceof Double;
+		}
+
+		@Override
+		Object getValue(final int row) {
+			return this.values[row];
+		}
+
+		@Override
+		void setValue(final int row, final Object value) {
+			if (row >= this.values.length) {
+				this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+			}
+			this.values[row] = (Double) value;
+		}
+	}
+
+	static final class IntegerColumn extends AttributeColumn {
+		int[] values = new int[0];
+
+		@Override
+		byte getType() {
+			return TYPE_INTEGER;
+		}
+
+		@Override
+		boolean accepts(final Object value) {
+			return value instanceof Integer;
+		}
+
+		@Override
+		Object getValue(final int row) {
+			return this.values[row];
+		}
+
+		@Override
+		void setValue(final int row, final Object value) {
+			if (row >= this.values.length) {
+				this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+			}
+			this.values[row] = (Integer) value;
+		}
+	}
+
+	static final class BooleanColumn extends AttributeColumn {
+		final BitSet values = new BitSet();
+
+		@Override
+		byte getType() {
+			return TYPE_BOOLEAN;
+		}
+
+		@Override
+		boolean accepts(final Object value) {
+			return value instanceof Boolean;
+		}
+
+		@Override
+		Object getValue(final int row) {
+			return this.values.get(row);
+		}
+
+		@Override
+		void setValue(final int row, final Object value) {
+			this.values.set(row, (Boolean) value);
+		}
+
+		@Override
+		void clearValue(final int row) {
+			this.values.clear(row);
+		}
+	}
+
+	/**
+	 * Stores every distinct string once, so e.g. the subpopulation of millions of persons needs one int per person.
+	 */
+	static final class StringColumn extends AttributeColumn {
+		int[] indices = new int[0];
+		final List<String> dictionary = new ArrayList<>();
+		private final Map<String, Integer> dictionaryIndices = new HashMap<>();
+
+		@Override
+		byte getType() {
+			return TYPE_STRING;
+		}
+
+		@Override
+		boolean accepts(final Object value) {
+			return value instanceof String;
+		}
+
+		@Override
+		Object getValue(final int row) {
+			return this.dictionary.get(this.indices[row]);
+		}
+
+		@Override
+		void setValue(final int row, final Object value) {
+			if (row >= this.indices.length) {
+				this.indices = Arrays.copyOf(this.indices, grow(this.indices.length, row));
+			}
+			this.indices[row] = index((String) value);
+		}
+
+		int index(final String value) {
+			Integer index = this.dictionaryIndices.get(value);
+			if (index == null) {
+				index = this.dictionary.size();
+				this.dictionary.add(value);
+				this.dictionaryIndices.put(value, index);
+			}
+			return index;
+		}
+	}
+
+	static final class ObjectColumn extends AttributeColumn {
+		Object[] values = new Object[0];
+
+		@Override
+		byte getType() {
+			return TYPE_OBJECT;
+		}
+
+		@Override
+		boolean accepts(final Object value) {
+			return true;
+		}
+
+		@Override
+		Object getValue(final int row) {
+			return this.values[row];
+		}
+
+		@Override
+		void setValue(final int row, final Object value) {
+			if (row >= this.values.length) {
+				this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+			}
+			this.values[row] = value;
+		}
+
+		@Override
+		void clearValue(final int row) {
+			this.values[row] = null;
+		}
+	}
+
+}
@@ -19,8 +19,11 @@
 
 package org.matsim.utils.objectattributes;
 
-import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,11 +31,17 @@ import org.matsim.core.api.internal.MatsimExtensionPoint;
 
 /**
  * A simple helper class to store arbitrary attributes (identified by Strings) for
- * arbitrary objects (identified by String-Ids). Note that this implementation uses
- * large amounts of memory for storing many attributes for many objects, it is not
- * heavily optimized.
+ * arbitrary objects (identified by String-Ids).
  * <p></p>
- * <em>This class is not thread-safe.</em>
+ * The attributes are stored in columns, one per attribute name, indexed by the row
+ * of the object. Values of type {@link Double}, {@link Integer}, {@link Boolean} and
+ * {@link String} are stored without boxing, strings only once per distinct value,
+ * so storing e.g. the subpopulation of millions of persons needs little memory.
+ * Values are returned as new boxed objects, so they must be compared with
+ * <code>equals()</code>, not with <code>==</code>.
+ * <p></p>
+ * <em>This class is not thread-safe.</em> Reading from several threads is safe as long
+ * as no thread modifies the attributes.
  * <p></p>
  * More information can be found in the package's Javadoc.
  * <p></p>
@@ -43,16 +52,20 @@ import org.matsim.core.api.internal.MatsimExtensionPoint;
  */
 public class ObjectAttributes implements MatsimExtensionPoint {
 
-	/*package*/ Map<String, Map<String, Object>> attributes = new LinkedHashMap<String, Map<String, Object>>(1000);
-	
+	private final Map<String, Integer> rows = new HashMap<>(1000);
+	/** the object id of each row; <code>null</code> for rows of removed objects, which are reused for new objects */
+	private String[] objectIds = new String[16];
+	private int rowCount = 0;
+	private int[] freeRows = new int[0];
+	private int freeRowCount = 0;
+	/*package*/ final Map<String, AttributeColumn> columns = new LinkedHashMap<>();
+
 	@Override
 	public String toString() {
 		StringBuilder stb = new StringBuilder() ;
-		for ( Entry<String, Map<String,Object>> entry : attributes.entrySet() ) {
-			String key = entry.getKey() ;
+		for (String key : getObjectIds()) {
 			stb.append("key=").append(key);
-			Map<String,Object> map = entry.getValue() ;
-			for ( Entry<String,Object> ee : map.entrySet() ) {
+			for ( Entry<String,Object> ee : getAttributes(key).entrySet() ) {
 				String subkey = ee.getKey();
 				stb.append("; subkey=").append(subkey);
 				stb.append("; object=").append(ee.getValue().toString());
@@ -63,39 +76,134 @@ public class ObjectAttributes implements MatsimExtensionPoint {
 	}
 
 	public Object putAttribute(final String objectId, final String attribute, final Object value) {
-		Map<String, Object> attMap = this.attributes.get(objectId);
-		if (attMap == null) {
-			attMap = new IdentityHashMap<String, Object>(5);
-			this.attributes.put(objectId, attMap);
+		if (value == null) {
+			return removeAttribute(objectId, attribute);
+		}
+		int row = getOrAddRow(objectId);
+		AttributeColumn column = this.columns.get(attribute);
+		if (column == null) {
+			column = AttributeColumn.create(value);
+			this.columns.put(attribute, column);
+		} else if (!column.accepts(value)) {
+			column = column.toObjectColumn();
+			this.columns.put(attribute, column);
 		}
-		return attMap.put(attribute.intern(), value);
+		return column.put(row, value);
 	}
 
 	public Object getAttribute(final String objectId, final String attribute) {
-		Map<String, Object> attMap = this.attributes.get(objectId);
-		if (attMap == null) {
+		Integer row = this.rows.get(objectId);
+		if (row == null) {
+			return null;
+		}
+		AttributeColumn column = this.columns.get(attribute);
+		if (column == null) {
 			return null;
 		}
-		return attMap.get(attribute.intern());
+		return column.get(row);
 	}
 
 	public Object removeAttribute(final String objectId, final String attribute) {
-		Map<String, Object> attMap = this.attributes.get(objectId);
-		if (attMap == null) {
+		Integer row = this.rows.get(objectId);
+		if (row == null) {
 			return null;
 		}
-		return attMap.remove(attribute.intern());
+		AttributeColumn column = this.columns.get(attribute);
+		if (column == null) {
+			return null;
+		}
+		return column.remove(row);
 	}
 
 	public void removeAllAttributes(final String objectId) {
-		this.attributes.remove(objectId);
+		Integer row = this.rows.remove(objectId);
+		if (row != null) {
+			for (AttributeColumn column : this.columns.values()) {
+				column.remove(row);
+			}
+			this.objectIds[row] = null;
+			if (this.freeRowCount == this.freeRows.length) {
+				this.freeRows = Arrays.copyOf(this.freeRows, AttributeColumn.grow(this.freeRowCount, this.freeRowCount));
+			}
+			this.freeRows[this.freeRowCount++] = row;
+		}
 	}
 
 	/**
 	 * Deletes all attributes of all objects, and all objects-ids.
 	 */
 	public void clear() {
-		this.attributes.clear();
+		this.rows.clear();
+		this.objectIds = new String[16];
+		this.rowCount = 0;
+		this.freeRows = new int[0];
+		this.freeRowCount = 0;
+		this.columns.clear();
+	}
+
+	/*package*/ int getOrAddRow(final String objectId) {
+		Integer existing = this.rows.get(objectId);
+		if (existing != null) {
+			return existing;
+		}
+		int row;
+		if (this.freeRowCount > 0) {
+			row = this.freeRows[--this.freeRowCount];
+		} else {
+			row = this.rowCount++;
+			if (row == this.objectIds.length) {
+				this.objectIds = Arrays.copyOf(this.objectIds, AttributeColumn.grow(row, row));
+			}
+		}
+		this.objectIds[row] = objectId;
+		this.rows.put(objectId, row);
+		return row;
+	}
+
+	/*package*/ int getRowCount() {
+		return this.rowCount;
+	}
+
+	/**
+	 * @return the object id of the row, or <code>null</code> if the object was removed
+	 */
+	/*package*/ String getObjectId(final int row) {
+		return this.objectIds[row];
+	}
+
+	/**
+	 * @return the ids of all objects, in the order of their rows. This is the order they were added in, unless
+	 * objects were removed, as their rows are reused.
+	 */
+	/*package*/ List<String> getObjectIds() {
+		List<String> ids = new ArrayList<>(this.rows.size());
+		for (int row = 0; row < this.rowCount; row++) {
+			if (this.objectIds[row] != null) {
+				ids.add(this.objectIds[row]);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return a copy of all attributes of the object, or an empty map if it has none
+	 */
+	/*package*/ Map<String, Object> getAttributes(final String objectId) {
+		Map<String, Object> attributes = new LinkedHashMap<>();
+		Integer row = this.rows.get(objectId);
+		if (row != null) {
+			for (Map.Entry<String, AttributeColumn> e : this.columns.entrySet()) {
+				Object value = e.getValue().get(row);
+				if (value != null) {
+					attributes.put(e.getKey(), value);
+				}
+			}
+		}
+		return attributes;
+	}
+
+	/*package*/ boolean hasObject(final String objectId) {
+		return this.rows.containsKey(objectId);
 	}
 
 }
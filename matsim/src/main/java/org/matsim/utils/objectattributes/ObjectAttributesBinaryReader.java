@@ -0,0 +1,209 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ObjectAttributesBinaryReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.utils.objectattributes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.utils.objectattributes.AttributeColumn.BooleanColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.DoubleColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.IntegerColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.StringColumn;
+
+/**
+ * Reads object attributes written by {@link ObjectAttributesBinaryWriter}. Attributes of type {@link Double},
+ * {@link Integer}, {@link Boolean} and {@link String} are read directly into their columns; other types need
+ * an {@link AttributeConverter}, like with {@link ObjectAttributesXmlReader}.
+ */
+public class ObjectAttributesBinaryReader {
+
+	private final static Logger log = Logger.getLogger(ObjectAttributesBinaryReader.class);
+
+	/*package*/ static final byte[] MAGIC = "MATSimOA".getBytes(StandardCharsets.US_ASCII);
+	/*package*/ static final int VERSION = 1;
+
+	private final ObjectAttributes attributes;
+	private final ObjectAttributesConverter converter;
+
+	public ObjectAttributesBinaryReader(final ObjectAttributes attributes) {
+		this(attributes, new ObjectAttributesConverter());
+	}
+
+	/*package*/ ObjectAttributesBinaryReader(final ObjectAttributes attributes, final ObjectAttributesConverter converter) {
+		this.attributes = attributes;
+		this.converter = converter;
+	}
+
+	public void readFile(final String filename) throws UncheckedIOException {
+		log.info("reading object attributes from " + filename);
+		try (InputStream in = IOUtils.getInputStream(filename)) {
+			parse(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void parse(final InputStream stream) throws UncheckedIOException {
+		try {
+			DataInputStream in = new DataInputStream(stream instanceof BufferedInputStream ? stream : new BufferedInputStream(stream));
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new UncheckedIOException("Not a binary object attributes file.");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new UncheckedIOException("Unsupported version of binary object attributes: " + version);
+			}
+
+			int[] rows = new int[in.readInt()];
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = this.attributes.getOrAddRow(in.readUTF());
+			}
+
+			int columnCount = in.readInt();
+			for (int i = 0; i < columnCount; i++) {
+				readColumn(in, rows);
+			}
+			log.info("read attributes of " + rows.length + " objects.");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void readColumn(final DataInputStream in, final int[] objectRows) throws IOException {
+		String name = in.readUTF();
+		byte type = in.readByte();
+		int[] rows = new int[in.readInt()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = objectRows[in.readInt()];
+		}
+		Object[] values = null;
+		AttributeColumn column = null;
+		switch (type) {
+			case AttributeColumn.TYPE_DOUBLE: {
+				DoubleColumn doubles = new DoubleColumn();
+				doubles.values = new double[this.attributes.getRowCount()];
+				for (int row : rows) {
+					doubles.values[row] = in.readDouble();
+					doubles.present.set(row);
+				}
+				column = doubles;
+				break;
+			}
+			case AttributeColumn.TYPE_INTEGER: {
+				IntegerColumn ints = new IntegerColumn();
+				ints.values = new int[this.attributes.getRowCount()];
+				for (int row : rows) {
+					ints.values[row] = in.readInt();
+					ints.present.set(row);
+				}
+				column = ints;
+				break;
+			}
+			case AttributeColumn.TYPE_BOOLEAN: {
+				BooleanColumn booleans = new BooleanColumn();
+				for (int row : rows) {
+					booleans.values.set(row, in.readBoolean());
+					booleans.present.set(row);
+				}
+				column = booleans;
+				break;
+			}
+			case AttributeColumn.TYPE_STRING: {
+				StringColumn strings = new StringColumn();
+				int[] dictionary = new int[in.readInt()];
+				for (int i = 0; i < dictionary.length; i++) {
+					dictionary[i] = strings.index(readString(in));
+				}
+				strings.indices = new int[this.attributes.getRowCount()];
+				for (int row : rows) {
+					strings.indices[row] = dictionary[in.readInt()];
+					strings.present.set(row);
+				}
+				column = strings;
+				break;
+			}
+			case AttributeColumn.TYPE_OBJECT:
+				values = new Object[rows.length];
+				for (int i = 0; i < rows.length; i++) {
+					String className = in.readUTF();
+					values[i] = this.converter.convert(className, readString(in));
+				}
+				break;
+			default:
+				throw new UncheckedIOException("Unknown type of attribute column: " + type);
+		}
+
+		if (column != null && !this.attributes.columns.containsKey(name)) {
+			this.attributes.columns.put(name, column);
+			return;
+		}
+		// the attribute exists already, or its values are no primitives: add value by value
+		for (int i = 0; i < rows.length; i++) {
+			Object value = column != null ? column.get(rows[i]) : values[i];
+			if (value != null) {
+				this.attributes.putAttribute(this.attributes.getObjectId(rows[i]), name, value);
+			}
+		}
+	}
+
+	/**
+	 * @see ObjectAttributesBinaryWriter#writeString
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return <code>true</code> if the stream starts like a binary object attributes file. The stream must support
+	 * 		mark and is reset to its current position.
+	 */
+	/*package*/ static boolean isBinary(final InputStream in) throws IOException {
+		return IOUtils.startsWith(in, MAGIC);
+	}
+
+	/**
+	 * Sets the converter for reading attributes of the specified class.
+	 *
+	 * @param clazz
+	 * @param converter
+	 * @return the previously registered converter for this class, or <code>null</code> if none was set before.
+	 */
+	public AttributeConverter<?> putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		return this.converter.putAttributeConverter(clazz, converter);
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.converter.putAttributeConverters(converters);
+	}
+
+}
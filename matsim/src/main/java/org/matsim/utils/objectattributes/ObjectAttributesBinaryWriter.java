@@ -0,0 +1,181 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ObjectAttributesBinaryWriter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.utils.objectattributes;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.utils.objectattributes.AttributeColumn.BooleanColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.DoubleColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.IntegerColumn;
+import org.matsim.utils.objectattributes.AttributeColumn.StringColumn;
+
+/**
+ * Writes object attributes to a binary file, which is much faster to read than xml. The file is read
+ * by {@link ObjectAttributesBinaryReader}, or by {@link ObjectAttributesXmlReader}, which recognizes
+ * binary files.
+ * <p></p>
+ * The attributes are written column by column: for each attribute, the rows of the objects having it
+ * and all their values, stored by type like in memory.
+ */
+public class ObjectAttributesBinaryWriter {
+
+	private final static Logger log = Logger.getLogger(ObjectAttributesBinaryWriter.class);
+
+	private final ObjectAttributes attributes;
+	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
+
+	public ObjectAttributesBinaryWriter(final ObjectAttributes attributes) {
+		this.attributes = attributes;
+	}
+
+	public void writeFile(final String filename) throws UncheckedIOException {
+		log.info("writing object attributes to " + filename);
+		try (DataOutputStream out = new DataOutputStream(IOUtils.getOutputStream(filename))) {
+			out.write(ObjectAttributesBinaryReader.MAGIC);
+			out.writeInt(ObjectAttributesBinaryReader.VERSION);
+
+			// rows of removed objects are left out
+			int[] newRows = new int[this.attributes.getRowCount()];
+			List<String> objectIds = new ArrayList<>();
+			for (int row = 0; row < newRows.length; row++) {
+				String objectId = this.attributes.getObjectId(row);
+				newRows[row] = objectId == null ? -1 : objectIds.size();
+				if (objectId != null) {
+					objectIds.add(objectId);
+				}
+			}
+			out.writeInt(objectIds.size());
+			for (String objectId : objectIds) {
+				out.writeUTF(objectId);
+			}
+
+			out.writeInt(this.attributes.columns.size());
+			for (Map.Entry<String, AttributeColumn> e : this.attributes.columns.entrySet()) {
+				writeColumn(out, e.getKey(), e.getValue(), newRows);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeColumn(final DataOutputStream out, final String name, final AttributeColumn column, final int[] newRows) throws IOException {
+		int[] rows = new int[column.present.cardinality()];
+		int count = 0;
+		for (int row = column.present.nextSetBit(0); row >= 0; row = column.present.nextSetBit(row + 1)) {
+			rows[count++] = row;
+		}
+
+		String[] objectClasses = null;
+		String[] objectValues = null;
+		if (column.getType() == AttributeColumn.TYPE_OBJECT) {
+			// values which cannot be converted are left out, like in xml
+			objectClasses = new String[rows.length];
+			objectValues = new String[rows.length];
+			int converted = 0;
+			for (int row : rows) {
+				Object value = column.get(row);
+				String string = this.converter.convertToString(value);
+				if (string != null) {
+					rows[converted] = row;
+					objectClasses[converted] = value.getClass().getCanonicalName();
+					objectValues[converted] = string;
+					converted++;
+				}
+			}
+			rows = Arrays.copyOf(rows, converted);
+		}
+
+		out.writeUTF(name);
+		out.writeByte(column.getType());
+		out.writeInt(rows.length);
+		for (int row : rows) {
+			out.writeInt(newRows[row]);
+		}
+		switch (column.getType()) {
+			case AttributeColumn.TYPE_DOUBLE:
+				double[] doubles = ((DoubleColumn) column).values;
+				for (int row : rows) {
+					out.writeDouble(doubles[row]);
+				}
+				break;
+			case AttributeColumn.TYPE_INTEGER:
+				int[] ints = ((IntegerColumn) column).values;
+				for (int row : rows) {
+					out.writeInt(ints[row]);
+				}
+				break;
+			case AttributeColumn.TYPE_BOOLEAN:
+				BooleanColumn booleans = (BooleanColumn) column;
+				for (int row : rows) {
+					out.writeBoolean(booleans.values.get(row));
+				}
+				break;
+			case AttributeColumn.TYPE_STRING:
+				StringColumn strings = (StringColumn) column;
+				out.writeInt(strings.dictionary.size());
+				for (String string : strings.dictionary) {
+					writeString(out, string);
+				}
+				for (int row : rows) {
+					out.writeInt(strings.indices[row]);
+				}
+				break;
+			default:
+				for (int i = 0; i < rows.length; i++) {
+					out.writeUTF(objectClasses[i]);
+					writeString(out, objectValues[i]);
+				}
+		}
+	}
+
+	/**
+	 * Writes strings of any length, unlike {@link DataOutputStream#writeUTF(String)}.
+	 */
+	/*package*/ static void writeString(final DataOutputStream out, final String string) throws IOException {
+		byte[] bytes = string.getBytes(IOUtils.CHARSET_UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Sets the converter for writing attributes of the specified class.
+	 *
+	 * @param clazz
+	 * @param converter
+	 * @return the previously registered converter for this class, or <code>null</code> if none was set before.
+	 */
+	public AttributeConverter<?> putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		return this.converter.putAttributeConverter(clazz, converter);
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.converter.putAttributeConverters(converters);
+	}
+
+}
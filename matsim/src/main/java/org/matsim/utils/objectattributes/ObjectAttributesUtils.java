@@ -21,7 +21,6 @@ package org.matsim.utils.objectattributes;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -34,23 +33,16 @@ public final class ObjectAttributesUtils {
 	}
 	
 	public static void copyAllAttributes(ObjectAttributes source, ObjectAttributes destination, String objectId) {
-		Map<String, Object> sAttrs = source.attributes.get(objectId);
-		if (sAttrs != null) {
-			Map<String, Object> dAttrs = destination.attributes.get(objectId);
-			if (dAttrs == null) {
-				dAttrs = new IdentityHashMap<String, Object>();
-				destination.attributes.put(objectId, dAttrs);
+		if (source.hasObject(objectId)) {
+			destination.getOrAddRow(objectId);
+			for (Map.Entry<String, Object> e : source.getAttributes(objectId).entrySet()) {
+				destination.putAttribute(objectId, e.getKey(), e.getValue());
 			}
-			dAttrs.putAll(sAttrs);
 		}
 	}
 	
 	public static Collection<String> getAllAttributeNames(ObjectAttributes attributes, final String objectId) {
-		Map<String, Object> map = attributes.attributes.get(objectId);
-		if (map == null) {
-			return Collections.emptyList();
-		}
-		return Collections.unmodifiableCollection(map.keySet());
+		return Collections.unmodifiableCollection(attributes.getAttributes(objectId).keySet());
 	}
 	
 }
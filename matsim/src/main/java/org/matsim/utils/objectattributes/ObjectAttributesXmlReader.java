@@ -25,6 +25,10 @@ import static org.matsim.utils.objectattributes.ObjectAttributesXmlWriter.ATTR_O
 import static org.matsim.utils.objectattributes.ObjectAttributesXmlWriter.TAG_ATTRIBUTE;
 import static org.matsim.utils.objectattributes.ObjectAttributesXmlWriter.TAG_OBJECT;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,7 +37,10 @@ import java.util.Stack;
 
 import com.google.inject.Inject;
 import org.apache.log4j.Logger;
+import org.matsim.core.api.internal.MatsimReader;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.utils.objectattributes.attributeconverters.BooleanConverter;
 import org.matsim.utils.objectattributes.attributeconverters.DoubleConverter;
 import org.matsim.utils.objectattributes.attributeconverters.FloatConverter;
@@ -41,6 +48,7 @@ import org.matsim.utils.objectattributes.attributeconverters.IntegerConverter;
 import org.matsim.utils.objectattributes.attributeconverters.LongConverter;
 import org.matsim.utils.objectattributes.attributeconverters.StringConverter;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -48,63 +56,64 @@ import org.xml.sax.SAXException;
  * {@link Integer}, {@link Double} and {@link Boolean} out of the box. Other types must be manually
  * supported by implementing {@link AttributeConverter} and adding it to the reader with
  * {@link #putAttributeConverter(Class, AttributeConverter)}.
+ * <p></p>
+ * Files written by {@link ObjectAttributesBinaryWriter} are recognized and read with the
+ * {@link ObjectAttributesBinaryReader}.
  *
  * @author mrieser
  */
-public class ObjectAttributesXmlReader extends MatsimXmlParser {
+public class ObjectAttributesXmlReader implements MatsimReader {
 	private final static Logger log = Logger.getLogger(ObjectAttributesXmlReader.class);
 	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
 	private final ObjectAttributes attributes;
-	private boolean readCharacters = false;
-	private String currentObject = null;
-	private String currentAttribute = null;
-	private String currentAttributeClass = null;
-	private long count = 0;
+	private final XmlReader xmlReader = new XmlReader();
 
 
 	public ObjectAttributesXmlReader(final ObjectAttributes attributes) {
 		this.attributes = attributes;
-		super.setValidating(false);
+		this.xmlReader.setValidating(false);
 	}
 
 	@Override
-	public void startTag(String name, Attributes atts, Stack<String> context) {
-		if (TAG_ATTRIBUTE.equals(name)) {
-			this.currentAttribute = atts.getValue(ATTR_ATTRIBUTENAME);
-			this.currentAttributeClass = atts.getValue(ATTR_ATTRIBUTECLASS);
-			this.readCharacters = true;
-		} else if (TAG_OBJECT.equals(name)) {
-			this.currentObject = atts.getValue(ATTR_OBJECTID);
+	public void readFile(final String filename) throws UncheckedIOException {
+		log.info("reading object attributes from " + filename);
+		try (InputStream in = new BufferedInputStream(IOUtils.getInputStream(filename))) {
+			read(in, null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 
-	@Override
-	public void endTag(String name, String content, Stack<String> context) {
-		if (TAG_ATTRIBUTE.equals(name)) {
-			this.readCharacters = false;
-
-			Object o = converter.convert(this.currentAttributeClass, content);
-			this.attributes.putAttribute(this.currentObject, this.currentAttribute, o);
-		} else if (TAG_OBJECT.equals(name)) {
-			if (this.count % 100000 == 0) {
-				log.info("reading object #" + this.count);
-			}
-			this.count++;
-			this.currentObject = null;
+	public void parse(final URL url) throws UncheckedIOException {
+		log.info("reading object attributes from " + url);
+		try (InputStream in = new BufferedInputStream(IOUtils.getInputStream(url))) {
+			read(in, url.toExternalForm());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 
-	@Override
-	public void characters(char[] ch, int start, int length) throws SAXException {
-		if (this.readCharacters) {
-			super.characters(ch, start, length);
+	public void parse(final InputStream stream) throws UncheckedIOException {
+		try {
+			read(stream.markSupported() ? stream : new BufferedInputStream(stream), null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		// ignore characters to prevent OutOfMemoryExceptions
-		/* non-validating files contain empty tags with attributes,
-		 * but without the dtd or schema, all whitespace between tags is handled
-		 * by characters and added up by super.characters, consuming huge
-		 * amount of memory when large files are read in.
-		 */
+	}
+
+	/**
+	 * Reads binary or xml attributes from the stream, which is opened only once for both.
+	 *
+	 * @param systemId to resolve relative references of the xml file, may be <code>null</code>
+	 */
+	private void read(final InputStream in, final String systemId) throws IOException {
+		if (ObjectAttributesBinaryReader.isBinary(in)) {
+			new ObjectAttributesBinaryReader(this.attributes, this.converter).parse(in);
+			return;
+		}
+		InputSource source = new InputSource(in);
+		source.setSystemId(systemId);
+		this.xmlReader.parse(source);
 	}
 
 	/**
@@ -133,4 +142,52 @@ public class ObjectAttributesXmlReader extends MatsimXmlParser {
 		return this.converter.removeAttributeConverter(clazz);
 	}
 
+	private final class XmlReader extends MatsimXmlParser {
+		private boolean readCharacters = false;
+		private String currentObject = null;
+		private String currentAttribute = null;
+		private String currentAttributeClass = null;
+		private long count = 0;
+
+		@Override
+		public void startTag(String name, Attributes atts, Stack<String> context) {
+			if (TAG_ATTRIBUTE.equals(name)) {
+				this.currentAttribute = atts.getValue(ATTR_ATTRIBUTENAME);
+				this.currentAttributeClass = atts.getValue(ATTR_ATTRIBUTECLASS);
+				this.readCharacters = true;
+			} else if (TAG_OBJECT.equals(name)) {
+				this.currentObject = atts.getValue(ATTR_OBJECTID);
+			}
+		}
+
+		@Override
+		public void endTag(String name, String content, Stack<String> context) {
+			if (TAG_ATTRIBUTE.equals(name)) {
+				this.readCharacters = false;
+
+				Object o = converter.convert(this.currentAttributeClass, content);
+				attributes.putAttribute(this.currentObject, this.currentAttribute, o);
+			} else if (TAG_OBJECT.equals(name)) {
+				if (this.count % 100000 == 0) {
+					log.info("reading object #" + this.count);
+				}
+				this.count++;
+				this.currentObject = null;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (this.readCharacters) {
+				super.characters(ch, start, length);
+			}
+			// ignore characters to prevent OutOfMemoryExceptions
+			/* non-validating files contain empty tags with attributes,
+			 * but without the dtd or schema, all whitespace between tags is handled
+			 * by characters and added up by super.characters, consuming huge
+			 * amount of memory when large files are read in.
+			 */
+		}
+	}
+
 }
@@ -1,6 +1,9 @@
 package org.matsim.utils.objectattributes.attributable;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is optimized for memory footprint and query time, at the expense of insertion time.
@@ -17,8 +20,17 @@ public final class Attributes {
 	// In addition, as lots of classes implement Attributable, there might be a large number of empty attributes,
 	// which would result in unnecessary memory overhead if each attribute would use new instances of empty arrays
 	// (Which are essentially immutable objects), hence the two "empty" constants (idea from Marcel Rieser, see MATSIM-811)
+	//
+	// Typically, many objects have the same attribute names, e.g. all persons of a population. Those objects share
+	// one array of keys, so only the values take memory per object. Key arrays are therefore never modified, but
+	// replaced. The shared arrays are only weakly referenced, so they are dropped together with the last objects
+	// using them, e.g. when a scenario is discarded. The number of shared arrays is limited, in case every object
+	// has different attribute names.
 	private static final String[] EMPTY_KEYS = new String[0];
 	private static final Object[] EMPTY_VALUES = new Object[0];
+	private static final int MAX_SHARED_KEYS = 10000;
+	private static final Map<List<String>, SharedKeys> sharedKeys = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<String[]> unusedKeys = new ReferenceQueue<>();
 
 	private String[] keys = EMPTY_KEYS;
 	private Object[] values = EMPTY_VALUES;
@@ -46,16 +58,17 @@ public final class Attributes {
 
 		final int newIndex = -insertion - 1;
 
-		keys = Arrays.copyOf( keys , keys.length + 1 );
-		values = Arrays.copyOf( values , values.length + 1 );
-
-		for ( int i=keys.length - 2; i >= newIndex; i-- ) {
-			keys[ i + 1 ] = keys[ i ];
-			values[ i + 1 ] = values[ i ];
-		}
+		final String[] newKeys = new String[ keys.length + 1 ];
+		final Object[] newValues = new Object[ values.length + 1 ];
+		System.arraycopy( keys , 0 , newKeys , 0 , newIndex );
+		System.arraycopy( values , 0 , newValues , 0 , newIndex );
+		newKeys[ newIndex ] = attribute;
+		newValues[ newIndex ] = value;
+		System.arraycopy( keys , newIndex , newKeys , newIndex + 1 , keys.length - newIndex );
+		System.arraycopy( values , newIndex , newValues , newIndex + 1 , values.length - newIndex );
 
-		keys[newIndex] = attribute;
-		values[newIndex] = value;
+		keys = share( newKeys );
+		values = newValues;
 
 		return null;
 	}
@@ -75,13 +88,15 @@ public final class Attributes {
 
 		final Object prev = values[ insertion ];
 
-		for ( int i=insertion; i < keys.length - 1; i++ ) {
-			keys[ i ] = keys[ i + 1 ];
-			values[ i ] = values[ i + 1 ];
-		}
+		final String[] newKeys = new String[ keys.length - 1 ];
+		final Object[] newValues = new Object[ values.length - 1 ];
+		System.arraycopy( keys , 0 , newKeys , 0 , insertion );
+		System.arraycopy( values , 0 , newValues , 0 , insertion );
+		System.arraycopy( keys , insertion + 1 , newKeys , insertion , newKeys.length - insertion );
+		System.arraycopy( values , insertion + 1 , newValues , insertion , newValues.length - insertion );
 
-		keys = Arrays.copyOf( keys , keys.length - 1 );
-		values = Arrays.copyOf( values , values.length - 1 );
+		keys = newKeys.length == 0 ? EMPTY_KEYS : share( newKeys );
+		values = newValues.length == 0 ? EMPTY_VALUES : newValues;
 
 		return prev;
 	}
@@ -91,6 +106,44 @@ public final class Attributes {
 		values = EMPTY_VALUES;
 	}
 
+	private static String[] share( final String[] keys ) {
+		removeUnusedKeys();
+		final List<String> list = Arrays.asList( keys );
+		while ( true ) {
+			final SharedKeys existing = sharedKeys.get( list );
+			if ( existing != null ) {
+				final String[] shared = existing.get();
+				if ( shared != null ) return shared;
+				// no longer used, but not yet removed
+				if ( sharedKeys.replace( existing.list , existing , new SharedKeys( keys ) ) ) return keys;
+			}
+			else {
+				if ( sharedKeys.size() >= MAX_SHARED_KEYS ) return keys;
+				final SharedKeys added = new SharedKeys( keys );
+				if ( sharedKeys.putIfAbsent( added.list , added ) == null ) return keys;
+			}
+		}
+	}
+
+	private static void removeUnusedKeys() {
+		SharedKeys unused;
+		while ( ( unused = (SharedKeys) unusedKeys.poll() ) != null ) {
+			sharedKeys.remove( unused.list , unused );
+		}
+	}
+
+	/**
+	 * A shared array of keys. The map key is a copy of the keys, as the array itself must only be weakly referenced.
+	 */
+	private static final class SharedKeys extends WeakReference<String[]> {
+		final List<String> list;
+
+		SharedKeys( final String[] keys ) {
+			super( keys , unusedKeys );
+			this.list = Arrays.asList( keys.clone() );
+		}
+	}
+
 	/**
 	 * Returns a view of the mappings stored by this object as an immutable Map. Behavior is undefined if the mappings
 	 * are modified after this method was called.
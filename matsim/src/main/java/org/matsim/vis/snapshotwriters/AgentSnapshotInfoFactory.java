@@ -20,11 +20,14 @@
 
 package org.matsim.vis.snapshotwriters;
 
+import java.util.Collection;
+
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.gbl.Gbl;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo.AgentState;
 
 /**
  * translation of physical position (e.g. odometer distance on link, lane) into visualization position
@@ -47,6 +50,10 @@ public class AgentSnapshotInfoFactory {
 	 */
 	@SuppressWarnings("static-method")
 	public AgentSnapshotInfo createAgentSnapshotInfo(Id<Person> agentId, double easting, double northing, double elevation, double azimuth) {
+		return createPositionInfo( agentId, easting, northing, azimuth ) ;
+	}
+
+	/*package*/ static AgentSnapshotInfo createPositionInfo(Id<Person> agentId, double easting, double northing, double azimuth) {
 		PositionInfo info = new PositionInfo() ;
 		info.setId( agentId ) ;
 		info.setEasting( easting ) ;
@@ -87,6 +94,34 @@ public class AgentSnapshotInfoFactory {
 		calculateAndSetPosition(info, startCoord, endCoord, distanceOnLink, curveLength, lanePosition) ;
 		return info;
 	}
+
+	/*package*/ static AgentSnapshotInfo createPositionInfo(Id<Person> agentId, Coord startCoord, Coord endCoord, double distanceOnLink,
+			double curveLength, double lanePosition) {
+		PositionInfo info = new PositionInfo() ;
+		info.setId(agentId) ;
+		calculateAndSetPosition(info, startCoord, endCoord, distanceOnLink, curveLength, lanePosition) ;
+		return info;
+	}
+
+	/**
+	 * Adds the position of an agent on a link to the positions.  If the positions are collected by the {@link SnapshotWriterManager},
+	 * only the values are stored, and the {@link AgentSnapshotInfo} is created later on the writer thread.
+	 */
+	public void addAgentSnapshotInfo(Collection<AgentSnapshotInfo> positions, Id<Person> agentId, Coord startCoord, Coord endCoord,
+			double distanceOnLink, Integer lane, double curveLength, double colorValue, AgentState agentState) {
+		if (positions instanceof SnapshotPositionBuffer) {
+			Gbl.assertNotNull( startCoord );
+			Gbl.assertNotNull( endCoord );
+			double lanePosition = this.linkWidthCalculator.calculateLanePosition(lane);
+			((SnapshotPositionBuffer) positions).add(agentId, startCoord, endCoord, distanceOnLink, curveLength, lanePosition,
+					colorValue, agentState);
+		} else {
+			AgentSnapshotInfo info = createAgentSnapshotInfo(agentId, startCoord, endCoord, distanceOnLink, lane, curveLength);
+			info.setColorValueBetweenZeroAndOne(colorValue);
+			info.setAgentState(agentState);
+			positions.add(info);
+		}
+	}
 	
 	
 	/**
@@ -0,0 +1,198 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SnapshotPositionBuffer.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.vis.snapshotwriters;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo.AgentState;
+
+/**
+ * The positions of the agents in one snapshot, stored in primitive arrays. The
+ * links add their positions on the mobsim thread through
+ * {@link AgentSnapshotInfoFactory#addAgentSnapshotInfo}, which only stores the
+ * agent id, the link geometry, the distance on the link and the lane position.
+ * The {@link AgentSnapshotInfo}s are created by {@link #get(int)} on the writer
+ * thread. Infos added directly with {@link #add(AgentSnapshotInfo)} keep their
+ * easting and northing. Buffers are reused from snapshot to snapshot.
+ */
+final class SnapshotPositionBuffer extends AbstractCollection<AgentSnapshotInfo> {
+
+	private static final AgentState[] AGENT_STATES = AgentState.values();
+
+	private double time = Double.NaN;
+	private int size = 0;
+	private Id<Person>[] ids;
+	// the coordinates of the link, or null if the position is given by easting and northing
+	private Coord[] startCoords;
+	private Coord[] endCoords;
+	private double[] distancesOnLink;
+	private double[] curveLengths;
+	private double[] lanePositions;
+	private double[] eastings;
+	private double[] northings;
+	private double[] azimuths;
+	private double[] colorValues;
+	// the ordinal of the agent state, or -1
+	private byte[] agentStates;
+	private int[] userDefined;
+
+	@SuppressWarnings("unchecked")
+	SnapshotPositionBuffer() {
+		int capacity = 1024;
+		this.ids = new Id[capacity];
+		this.startCoords = new Coord[capacity];
+		this.endCoords = new Coord[capacity];
+		this.distancesOnLink = new double[capacity];
+		this.curveLengths = new double[capacity];
+		this.lanePositions = new double[capacity];
+		this.eastings = new double[capacity];
+		this.northings = new double[capacity];
+		this.azimuths = new double[capacity];
+		this.colorValues = new double[capacity];
+		this.agentStates = new byte[capacity];
+		this.userDefined = new int[capacity];
+	}
+
+	double getTime() {
+		return this.time;
+	}
+
+	void setTime(double time) {
+		this.time = time;
+	}
+
+	void add(Id<Person> agentId, Coord startCoord, Coord endCoord, double distanceOnLink, double curveLength,
+			double lanePosition, double colorValue, AgentState agentState) {
+		int index = nextIndex();
+		this.ids[index] = agentId;
+		this.startCoords[index] = startCoord;
+		this.endCoords[index] = endCoord;
+		this.distancesOnLink[index] = distanceOnLink;
+		this.curveLengths[index] = curveLength;
+		this.lanePositions[index] = lanePosition;
+		this.colorValues[index] = colorValue;
+		this.agentStates[index] = agentState == null ? -1 : (byte) agentState.ordinal();
+		this.userDefined[index] = 0;
+	}
+
+	@Override
+	public boolean add(AgentSnapshotInfo info) {
+		int index = nextIndex();
+		this.ids[index] = info.getId();
+		this.startCoords[index] = null;
+		this.endCoords[index] = null;
+		this.eastings[index] = info.getEasting();
+		this.northings[index] = info.getNorthing();
+		this.azimuths[index] = info.getAzimuth();
+		this.colorValues[index] = info.getColorValueBetweenZeroAndOne();
+		this.agentStates[index] = info.getAgentState() == null ? -1 : (byte) info.getAgentState().ordinal();
+		this.userDefined[index] = info.getUserDefined();
+		return true;
+	}
+
+	private int nextIndex() {
+		if (this.size == this.ids.length) {
+			int capacity = 2 * this.size;
+			this.ids = Arrays.copyOf(this.ids, capacity);
+			this.startCoords = Arrays.copyOf(this.startCoords, capacity);
+			this.endCoords = Arrays.copyOf(this.endCoords, capacity);
+			this.distancesOnLink = Arrays.copyOf(this.distancesOnLink, capacity);
+			this.curveLengths = Arrays.copyOf(this.curveLengths, capacity);
+			this.lanePositions = Arrays.copyOf(this.lanePositions, capacity);
+			this.eastings = Arrays.copyOf(this.eastings, capacity);
+			this.northings = Arrays.copyOf(this.northings, capacity);
+			this.azimuths = Arrays.copyOf(this.azimuths, capacity);
+			this.colorValues = Arrays.copyOf(this.colorValues, capacity);
+			this.agentStates = Arrays.copyOf(this.agentStates, capacity);
+			this.userDefined = Arrays.copyOf(this.userDefined, capacity);
+		}
+		return this.size++;
+	}
+
+	/**
+	 * Creates a new {@link AgentSnapshotInfo} for the position at the given index.
+	 */
+	AgentSnapshotInfo get(int index) {
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException(index + " >= " + this.size);
+		}
+		AgentSnapshotInfo info;
+		if (this.startCoords[index] != null) {
+			info = AgentSnapshotInfoFactory.createPositionInfo(this.ids[index], this.startCoords[index], this.endCoords[index],
+					this.distancesOnLink[index], this.curveLengths[index], this.lanePositions[index]);
+		} else {
+			info = AgentSnapshotInfoFactory.createPositionInfo(this.ids[index], this.eastings[index], this.northings[index],
+					this.azimuths[index]);
+		}
+		info.setColorValueBetweenZeroAndOne(this.colorValues[index]);
+		if (this.agentStates[index] >= 0) {
+			info.setAgentState(AGENT_STATES[this.agentStates[index]]);
+		}
+		info.setUserDefined(this.userDefined[index]);
+		return info;
+	}
+
+	@Override
+	public Iterator<AgentSnapshotInfo> iterator() {
+		return new Iterator<AgentSnapshotInfo>() {
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.index < size;
+			}
+
+			@Override
+			public AgentSnapshotInfo next() {
+				if (this.index >= size) {
+					throw new NoSuchElementException();
+				}
+				return get(this.index++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.ids, 0, this.size, null);
+		Arrays.fill(this.startCoords, 0, this.size, null);
+		Arrays.fill(this.endCoords, 0, this.size, null);
+		this.size = 0;
+		this.time = Double.NaN;
+	}
+
+}
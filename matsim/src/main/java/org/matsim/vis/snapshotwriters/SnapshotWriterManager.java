@@ -20,9 +20,9 @@
 
 package org.matsim.vis.snapshotwriters;
 
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.config.Config;
-import org.matsim.core.config.groups.ExternalMobimConfigGroup;
-import org.matsim.core.mobsim.framework.ObservableMobsim;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
@@ -32,11 +32,22 @@ import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
 import org.matsim.core.mobsim.qsim.interfaces.Netsim;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * Collects the positions of the agents on the links at every snapshot period
+ * and passes them on to the snapshot writers. The positions are collected on
+ * the mobsim thread into a {@link SnapshotPositionBuffer}, the writers run on
+ * a background thread, which also creates the {@link AgentSnapshotInfo}s. The
+ * mobsim only waits for the writers if they fall behind by more than
+ * {@link #NUMBER_OF_BUFFERS} snapshots.
+ */
 public class SnapshotWriterManager implements MobsimBeforeCleanupListener, MobsimAfterSimStepListener, MobsimInitializedListener {
 	
+	private static final int NUMBER_OF_BUFFERS = 4;
+
 	private final List<SnapshotWriter> snapshotWriters = new ArrayList<SnapshotWriter>();
 	
 	/** time since last snapshot */
@@ -44,8 +55,22 @@ public class SnapshotWriterManager implements MobsimBeforeCleanupListener, Mobsi
 
 	final private int snapshotPeriod;
 
+	// minX, minY, maxX, maxY, or null for all links
+	private final double[] boundingBox;
+
+	// the links with a node inside the bounding box, found at the first snapshot
+	private List<VisLink> visLinks = null;
+
+	private final BlockingQueue<SnapshotPositionBuffer> emptyBuffers = new ArrayBlockingQueue<>(NUMBER_OF_BUFFERS);
+	private final BlockingQueue<SnapshotPositionBuffer> filledBuffers = new ArrayBlockingQueue<>(NUMBER_OF_BUFFERS + 1);
+	// tells the writer thread to stop
+	private final SnapshotPositionBuffer lastBuffer = new SnapshotPositionBuffer();
+	private Thread writerThread = null;
+	private volatile RuntimeException writerException = null;
+
 	public SnapshotWriterManager(Config config) {
 		snapshotPeriod = findSnapshotPeriod(config);
+		boundingBox = config.qsim() != null ? config.qsim().getSnapshotBoundingBox() : null;
 	}
 
 	// yuck
@@ -76,8 +101,30 @@ public class SnapshotWriterManager implements MobsimBeforeCleanupListener, Mobsi
 	}
 
 	private void closeSnapshotWriters() {
-		for (SnapshotWriter writer : this.snapshotWriters) {
-			writer.finish();
+		try {
+			if (this.writerThread != null) {
+				stopWriterThread();
+				checkWriterException();
+			}
+		} finally {
+			for (SnapshotWriter writer : this.snapshotWriters) {
+				writer.finish();
+			}
+		}
+	}
+
+	private void stopWriterThread() {
+		try {
+			// the queue has room for one more than all buffers, so this never blocks
+			this.filledBuffers.put(this.lastBuffer);
+			this.writerThread.join();
+		} catch (InterruptedException e) {
+			// do not leave the writer thread behind if we cannot wait for it
+			this.writerThread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			this.writerThread = null;
 		}
 	}
 
@@ -92,21 +139,102 @@ public class SnapshotWriterManager implements MobsimBeforeCleanupListener, Mobsi
 	
 	private void doSnapshot(final double time, VisMobsim visMobsim) {
 		if (!this.snapshotWriters.isEmpty()) {
-			Collection<AgentSnapshotInfo> positions = new ArrayList<AgentSnapshotInfo>();
-			for (VisLink link : visMobsim.getVisNetwork().getVisLinks().values()) {
+			if (this.writerThread == null) {
+				startWriterThread(visMobsim);
+			}
+			checkWriterException();
+			SnapshotPositionBuffer positions;
+			try {
+				positions = this.emptyBuffers.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			positions.setTime(time);
+			for (VisLink link : this.visLinks) {
 				link.getVisData().addAgentSnapshotInfo(positions);
 			}
 			
 			// We do not put non-network agents in movies.
 			// Otherwise, we would add snapshots from visMobsim.getNonNetworkAgentSnapshots() here.
 			
-			for (SnapshotWriter writer : this.snapshotWriters) {
-				writer.beginSnapshot(time);
-				for (AgentSnapshotInfo position : positions) {
-					writer.addAgent(position);
+			this.filledBuffers.add(positions);
+		}
+	}
+
+	private void startWriterThread(VisMobsim visMobsim) {
+		if (this.visLinks == null) {
+			this.visLinks = new ArrayList<>();
+			for (VisLink link : visMobsim.getVisNetwork().getVisLinks().values()) {
+				if (isInBoundingBox(link.getLink())) {
+					this.visLinks.add(link);
+				}
+			}
+		}
+		this.emptyBuffers.clear();
+		this.filledBuffers.clear();
+		for (int i = 0; i < NUMBER_OF_BUFFERS; i++) {
+			this.emptyBuffers.add(new SnapshotPositionBuffer());
+		}
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeSnapshots();
+			}
+		}, "SnapshotWriterManager");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	private boolean isInBoundingBox(Link link) {
+		return this.boundingBox == null
+				|| isInBoundingBox(link.getFromNode().getCoord())
+				|| isInBoundingBox(link.getToNode().getCoord());
+	}
+
+	private boolean isInBoundingBox(Coord coord) {
+		return coord.getX() >= this.boundingBox[0] && coord.getY() >= this.boundingBox[1]
+				&& coord.getX() <= this.boundingBox[2] && coord.getY() <= this.boundingBox[3];
+	}
+
+	private void writeSnapshots() {
+		try {
+			while (true) {
+				SnapshotPositionBuffer positions = this.filledBuffers.take();
+				if (positions == this.lastBuffer) {
+					return;
 				}
-				writer.endSnapshot();
+				if (this.writerException == null) {
+					try {
+						for (SnapshotWriter writer : this.snapshotWriters) {
+							writer.beginSnapshot(positions.getTime());
+						}
+						for (int i = 0, n = positions.size(); i < n; i++) {
+							// one info per position, shared by all writers
+							AgentSnapshotInfo info = positions.get(i);
+							for (SnapshotWriter writer : this.snapshotWriters) {
+								writer.addAgent(info);
+							}
+						}
+						for (SnapshotWriter writer : this.snapshotWriters) {
+							writer.endSnapshot();
+						}
+					} catch (RuntimeException e) {
+						// keep taking the buffers, so the mobsim does not wait forever
+						this.writerException = e;
+					}
+				}
+				positions.clear();
+				this.emptyBuffers.add(positions);
 			}
+		} catch (InterruptedException e) {
+			this.writerException = new RuntimeException(e);
+		}
+	}
+
+	private void checkWriterException() {
+		if (this.writerException != null) {
+			throw new RuntimeException("writing a snapshot failed", this.writerException);
 		}
 	}
 
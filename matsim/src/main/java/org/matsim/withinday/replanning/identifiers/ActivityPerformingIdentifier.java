@@ -20,6 +20,7 @@
 
 package org.matsim.withinday.replanning.identifiers;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -28,6 +29,8 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.withinday.mobsim.MobsimDataProvider;
+import org.matsim.withinday.replanning.identifiers.filter.ActivityTypeFilter;
+import org.matsim.withinday.replanning.identifiers.interfaces.AgentFilter;
 import org.matsim.withinday.replanning.identifiers.interfaces.DuringActivityAgentSelector;
 import org.matsim.withinday.replanning.identifiers.tools.ActivityReplanningMap;
 
@@ -51,11 +54,24 @@ public class ActivityPerformingIdentifier extends DuringActivityAgentSelector {
 		 * Identify those activity performing agents that should be replanned.
 		 * Add them to a set of MobsimAgents.
 		 */
-		for (Id<Person> agentId : this.activityReplanningMap.getActivityPerformingAgents()) {
+		for (Id<Person> agentId : this.getActivityPerformingAgents()) {
 			if (this.applyFilters(agentId, time)) agentsToReplan.add(mapping.get(agentId));
 		}
 				
 		return agentsToReplan;
 	}
+	
+	/*
+	 * If only agents performing some activity types are replanned, only the agents
+	 * performing these activities are looked at instead of all activity performing agents. 
+	 */
+	private Collection<Id<Person>> getActivityPerformingAgents() {
+		for (AgentFilter agentFilter : this.getAgentFilters()) {
+			if (agentFilter instanceof ActivityTypeFilter) {
+				return this.activityReplanningMap.getActivityPerformingAgents(((ActivityTypeFilter) agentFilter).getActivityTypes());
+			}
+		}
+		return this.activityReplanningMap.getActivityPerformingAgents();
+	}
 
 }
\ No newline at end of file
@@ -20,6 +20,7 @@
 
 package org.matsim.withinday.replanning.identifiers;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -28,6 +29,8 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.withinday.mobsim.MobsimDataProvider;
+import org.matsim.withinday.replanning.identifiers.filter.LinkFilter;
+import org.matsim.withinday.replanning.identifiers.interfaces.AgentFilter;
 import org.matsim.withinday.replanning.identifiers.interfaces.DuringLegAgentSelector;
 import org.matsim.withinday.replanning.identifiers.tools.LinkReplanningMap;
 
@@ -51,11 +54,24 @@ public class LegPerformingIdentifier extends DuringLegAgentSelector {
 		 * Identify those leg performing agents that should be replanned.
 		 * Add them to a set of MobsimAgents.
 		 */
-		for (Id<Person> agentId : this.linkReplanningMap.getLegPerformingAgents()) {
+		for (Id<Person> agentId : this.getLegPerformingAgents()) {
 			if (this.applyFilters(agentId, time)) agentsToReplan.add(mapping.get(agentId));
 		}
 		
 		return agentsToReplan;
 	}
+	
+	/*
+	 * If only agents on some links are replanned, only the agents on these links
+	 * are looked at instead of all leg performing agents. 
+	 */
+	private Collection<Id<Person>> getLegPerformingAgents() {
+		for (AgentFilter agentFilter : this.getAgentFilters()) {
+			if (agentFilter instanceof LinkFilter) {
+				return this.linkReplanningMap.getLegPerformingAgents(((LinkFilter) agentFilter).getLinks());
+			}
+		}
+		return this.linkReplanningMap.getLegPerformingAgents();
+	}
 
 }
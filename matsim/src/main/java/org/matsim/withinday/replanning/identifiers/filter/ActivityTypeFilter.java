@@ -0,0 +1,74 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ActivityTypeFilter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.withinday.replanning.identifiers.filter;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.PlanAgent;
+import org.matsim.withinday.replanning.identifiers.interfaces.AgentFilter;
+
+/**
+ * Filter that removes agents which are not performing an activity of a type
+ * included in a predefined set.
+ */
+public class ActivityTypeFilter implements AgentFilter {
+
+	private final Map<Id<Person>, MobsimAgent> agents;
+	private final Set<String> activityTypes;
+	
+	// use the factory
+	/*package*/ ActivityTypeFilter(Map<Id<Person>, MobsimAgent> agents, Set<String> activityTypes) {
+		this.agents = agents;
+		this.activityTypes = activityTypes;
+	}
+	
+	@Override
+	public void applyAgentFilter(Set<Id<Person>> set, double time) {
+		Iterator<Id<Person>> iter = set.iterator();
+		
+		while (iter.hasNext()) {
+			Id<Person> id = iter.next();
+			if (!this.applyAgentFilter(id, time)) iter.remove();
+		}
+	}
+
+	@Override
+	public boolean applyAgentFilter(Id<Person> id, double time) {
+		MobsimAgent agent = this.agents.get(id);
+		
+		if (!(agent instanceof PlanAgent)) return false;
+		PlanElement planElement = ((PlanAgent) agent).getCurrentPlanElement();
+		if (!(planElement instanceof Activity)) return false;
+		else return this.activityTypes.contains(((Activity) planElement).getType());
+	}
+
+	public Set<String> getActivityTypes() {
+		return Collections.unmodifiableSet(this.activityTypes);
+	}
+}
@@ -0,0 +1,43 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ActivityTypeFilterFactory.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.withinday.replanning.identifiers.filter;
+
+import java.util.Set;
+
+import org.matsim.withinday.mobsim.MobsimDataProvider;
+import org.matsim.withinday.replanning.identifiers.interfaces.AgentFilterFactory;
+
+public class ActivityTypeFilterFactory implements AgentFilterFactory {
+
+	private final Set<String> activityTypes;
+	private final MobsimDataProvider mobsimDataProvider;
+	
+	public ActivityTypeFilterFactory(Set<String> activityTypes, MobsimDataProvider mobsimDataProvider) {
+		this.activityTypes = activityTypes;
+		this.mobsimDataProvider = mobsimDataProvider;
+	}
+	
+	@Override
+	public ActivityTypeFilter createAgentFilter() {
+		return new ActivityTypeFilter(this.mobsimDataProvider.getAgents(), this.activityTypes);
+	}
+
+}
@@ -20,6 +20,7 @@
 
 package org.matsim.withinday.replanning.identifiers.filter;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -64,4 +65,8 @@ public class LinkFilter implements AgentFilter {
 		if (!(links.contains(agent.getCurrentLinkId()))) return false;
 		else return true;
 	}
+
+	public Set<Id<Link>> getLinks() {
+		return Collections.unmodifiableSet(this.links);
+	}
 }
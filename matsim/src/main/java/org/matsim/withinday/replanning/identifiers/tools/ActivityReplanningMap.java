@@ -28,9 +28,12 @@ import org.matsim.api.core.v01.events.PersonStuckEvent;
 import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
+import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.PlanAgent;
 import org.matsim.core.mobsim.framework.MobsimTimer;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
@@ -84,6 +87,13 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 	 */
 	private final Map<Integer, Map<Id<Person>, MobsimAgent>> activityPerformingAgents;
 	
+	/*
+	 * The agents currently performing an activity by the type of the activity, and
+	 * the types of their activities to be able to remove them again.
+	 */
+	private final Map<String, Set<Id<Person>>> activityPerformingAgentsByType;
+	private final Map<Id<Person>, String> activityTypes;
+	
 	// package protected to be accessible for test case
 	/*package*/ double simStartTime = Time.UNDEFINED_TIME;
 	/*package*/ double timeStepSize = Time.UNDEFINED_TIME;
@@ -99,6 +109,8 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 		this.activityEndTimes = new HashMap<>();
 		
 		this.activityPerformingAgents = new ConcurrentHashMap<Integer, Map<Id<Person>, MobsimAgent>>();
+		this.activityPerformingAgentsByType = new HashMap<>();
+		this.activityTypes = new HashMap<>();
 	}
 
 	/*
@@ -121,6 +133,7 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 			
 			// add the agent to the collections
 			this.activityEndTimes.put(mobsimAgent.getId(), activityEndTime);
+			this.addActivityType(mobsimAgent);
 			
 			int bin = this.getTimeBin(activityEndTime);
 			Map<Id<Person>, MobsimAgent> map = getMapForTimeBin(bin);
@@ -149,6 +162,7 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 			 */
 			if (departureTime >= now) {
 				this.activityEndTimes.put(mobsimAgent.getId(), departureTime);
+				this.addActivityType(mobsimAgent);
 				int bin = this.getTimeBin(mobsimAgent.getActivityEndTime());
 				Map<Id<Person>, MobsimAgent> map = getMapForTimeBin(bin);
 				map.put(mobsimAgent.getId(), mobsimAgent);
@@ -192,6 +206,25 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 		return bin;
 	}
 	
+	private void addActivityType(MobsimAgent mobsimAgent) {
+		if (!(mobsimAgent instanceof PlanAgent)) return;
+		PlanElement planElement = ((PlanAgent) mobsimAgent).getCurrentPlanElement();
+		if (!(planElement instanceof Activity)) return;
+		
+		String activityType = ((Activity) planElement).getType();
+		this.activityTypes.put(mobsimAgent.getId(), activityType);
+		this.activityPerformingAgentsByType.computeIfAbsent(activityType, k -> new HashSet<>()).add(mobsimAgent.getId());
+	}
+	
+	private void removeActivityType(Id<Person> agentId) {
+		String activityType = this.activityTypes.remove(agentId);
+		if (activityType != null) {
+			Set<Id<Person>> agents = this.activityPerformingAgentsByType.get(activityType);
+			agents.remove(agentId);
+			if (agents.isEmpty()) this.activityPerformingAgentsByType.remove(activityType);
+		}
+	}
+	
 	private Map<Id<Person>, MobsimAgent> getMapForTimeBin(int bin) {
 		Map<Id<Person>, MobsimAgent> map = this.activityPerformingAgents.get(bin);
 		if (map == null) {
@@ -222,6 +255,7 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 		
 		Double activityEndTime = this.activityEndTimes.remove(agentId);
 		if (activityEndTime != null) {
+			this.removeActivityType(agentId);
 			Map<Id<Person>, MobsimAgent> map;
 			// remove
 			map = this.getMapForTimeBin(this.getTimeBin(activityEndTime));
@@ -270,6 +304,19 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 		return Collections.unmodifiableSet(this.activityEndTimes.keySet());
 	}
 	
+	/**
+	 * Returns a set containing the Ids of all agents that are currently performing an activity
+	 * of one of the given types. Only the agents performing these activities are looked at.
+	 */
+	public Set<Id<Person>> getActivityPerformingAgents(final Collection<String> activityTypes) {
+		Set<Id<Person>> set = new HashSet<>();
+		for (String activityType : activityTypes) {
+			Set<Id<Person>> agents = this.activityPerformingAgentsByType.get(activityType);
+			if (agents != null) set.addAll(agents);
+		}
+		return set;
+	}
+	
 	/**
 	 * Returns a Collection containing all agents that are going to end their activity in the 
 	 * time step belongs to the given time. Typically, this is the current simulation time. 
@@ -285,5 +332,7 @@ public class ActivityReplanningMap implements PersonStuckEventHandler,
 	public void reset(int iteration) {
 		this.startingAgents.clear();
 		this.activityEndTimes.clear();
+		this.activityPerformingAgentsByType.clear();
+		this.activityTypes.clear();
 	}
 }
\ No newline at end of file
@@ -20,9 +20,9 @@
 
 package org.matsim.withinday.replanning.identifiers.tools;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -33,6 +33,7 @@ import org.matsim.api.core.v01.events.PersonStuckEvent;
 import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
@@ -160,22 +161,25 @@ public class LinkReplanningMap implements PersonStuckEventHandler, ActivityStart
 		
 		Set<Id<Person>> set = new HashSet<>();
 		
-		Set<Entry<Double, Set<Id<Person>>>> entries = this.earliestLinkExitTimeProvider.getEarliestLinkExitTimesPerTimeStep().entrySet();
+		/*
+		 * The earliest link exit times are sorted, therefore only the time steps
+		 * matching the filter are looked at.
+		 */
+		Collection<Set<Id<Person>>> agentsPerTimeStep;
+		if (timeMode == TimeFilterMode.RESTRICTED) {
+			// time > earliestLinkExitTime
+			agentsPerTimeStep = this.earliestLinkExitTimeProvider.getEarliestLinkExitTimesPerTimeStep(
+					Double.NEGATIVE_INFINITY, true, time, false).values();
+		} else if (timeMode == TimeFilterMode.UNRESTRICTED) {
+			// time <= earliestLinkExitTime
+			agentsPerTimeStep = this.earliestLinkExitTimeProvider.getEarliestLinkExitTimesPerTimeStep(
+					time, true, Double.POSITIVE_INFINITY, true).values();
+		} else {
+			throw new RuntimeException("Unexpected TimeFilterMode was found: " + timeMode.toString());
+		}
 		
-		for (Entry<Double, Set<Id<Person>>> entry : entries) {
-			double earliestLinkExitTime = entry.getKey();
-			
-			// check time
-			if (timeMode == TimeFilterMode.RESTRICTED) {
-				if (time <= earliestLinkExitTime) continue;
-			} else if (timeMode == TimeFilterMode.UNRESTRICTED) {
-				if (time > earliestLinkExitTime) continue;
-			} else {
-				throw new RuntimeException("Unexpected TimeFilterMode was found: " + timeMode.toString());
-			}
-			
-			// non of the checks fails therefore add agents to the set
-			set.addAll(entry.getValue());
+		for (Set<Id<Person>> agents : agentsPerTimeStep) {
+			set.addAll(agents);
 		}
 
 		return set;
@@ -189,6 +193,18 @@ public class LinkReplanningMap implements PersonStuckEventHandler, ActivityStart
 		return Collections.unmodifiableSet(this.earliestLinkExitTimeProvider.getEarliestLinkExitTimes().keySet());
 	}
 
+	/**
+	 * @return A list of all agents that are currently performing a leg on one of the given links.
+	 * Only the agents on these links are looked at. 
+	 */
+	public Set<Id<Person>> getLegPerformingAgents(final Collection<Id<Link>> linkIds) {
+		Set<Id<Person>> set = new HashSet<>();
+		for (Id<Link> linkId : linkIds) {
+			set.addAll(this.earliestLinkExitTimeProvider.getAgentsOnLink(linkId));
+		}
+		return set;
+	}
+
 	/**
 	 * @return A list of all agents that have just started a leg. Note that
 	 * they cannot end their leg on their current link!
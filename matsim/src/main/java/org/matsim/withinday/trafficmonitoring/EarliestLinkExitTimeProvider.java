@@ -24,7 +24,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
@@ -79,7 +81,12 @@ public class EarliestLinkExitTimeProvider implements LinkEnterEventHandler, Link
 	private final TravelTime freeSpeedTravelTime;
 
 	private final Map<Id<Person>, Double> earliestLinkExitTimes = new ConcurrentHashMap<>();
-	private final Map<Double, Set<Id<Person>>> earliestLinkExitTimesPerTimeStep = new ConcurrentHashMap<>();
+	// sorted by time, so agents within a time window can be found without looking at all others
+	private final NavigableMap<Double, Set<Id<Person>>> earliestLinkExitTimesPerTimeStep = new ConcurrentSkipListMap<>();
+
+	// the links the agents performing a leg are currently on, and the agents by link
+	private final Map<Id<Person>, Id<Link>> currentLinks = new ConcurrentHashMap<>();
+	private final Map<Id<Link>, Set<Id<Person>>> agentsOnLinks = new ConcurrentHashMap<>();
 
 	private Vehicle2DriverEventHandler delegate = new Vehicle2DriverEventHandler();
 
@@ -122,12 +129,32 @@ public class EarliestLinkExitTimeProvider implements LinkEnterEventHandler, Link
 		return Collections.unmodifiableMap(this.earliestLinkExitTimesPerTimeStep);
 	}
 
+	/**
+	 * @return the earliest link exit times in the given time window, in ascending order
+	 */
+	public NavigableMap<Double, Set<Id<Person>>> getEarliestLinkExitTimesPerTimeStep(double fromTime, boolean fromInclusive,
+			double toTime, boolean toInclusive) {
+		return Collections.unmodifiableNavigableMap(
+				this.earliestLinkExitTimesPerTimeStep.subMap(fromTime, fromInclusive, toTime, toInclusive));
+	}
+
+	/**
+	 * @return the agents performing a leg which are currently on the given link
+	 */
+	public Set<Id<Person>> getAgentsOnLink(Id<Link> linkId) {
+		Set<Id<Person>> set = this.agentsOnLinks.get(linkId);
+		if (set != null) return Collections.unmodifiableSet(set);
+		else return Collections.emptySet();
+	}
+
 	@Override
 	public void reset(int iteration) {
 		this.transportModeProvider.reset(iteration);
 
 		this.earliestLinkExitTimes.clear();
 		this.earliestLinkExitTimesPerTimeStep.clear();
+		this.currentLinks.clear();
+		this.agentsOnLinks.clear();
 	}
 
 	@Override
@@ -161,6 +188,7 @@ public class EarliestLinkExitTimeProvider implements LinkEnterEventHandler, Link
 			earliestExitTime = Math.floor(now + this.freeSpeedTravelTime.getLinkTravelTime(link, now, person, null));
 		}
 		this.handleAddEarliestLinkExitTime(driverId, earliestExitTime);
+		this.setCurrentLink(driverId, event.getLinkId());
 	}
 
 	@Override
@@ -172,6 +200,7 @@ public class EarliestLinkExitTimeProvider implements LinkEnterEventHandler, Link
 	public void handleEvent(PersonDepartureEvent event) {
 		this.transportModeProvider.handleEvent(event);
 		this.handleAddEarliestLinkExitTime(event.getPersonId(), event.getTime());
+		this.setCurrentLink(event.getPersonId(), event.getLinkId());
 	}
 
 	@Override
@@ -192,8 +221,27 @@ public class EarliestLinkExitTimeProvider implements LinkEnterEventHandler, Link
 		earliestLinkExitTimesAtTime.add(agentId);
 	}
 
+	private void setCurrentLink(Id<Person> agentId, Id<Link> linkId) {
+		Id<Link> previousLinkId = this.currentLinks.put(agentId, linkId);
+		if (previousLinkId != null) this.removeFromLink(agentId, previousLinkId);
+		this.agentsOnLinks.computeIfAbsent(linkId, k -> new HashSet<>()).add(agentId);
+	}
+
+	private void removeFromLink(Id<Person> agentId, Id<Link> linkId) {
+		Set<Id<Person>> agentsOnLink = this.agentsOnLinks.get(linkId);
+		if (agentsOnLink != null) {
+			agentsOnLink.remove(agentId);
+			if (agentsOnLink.isEmpty()) {
+				this.agentsOnLinks.remove(linkId);
+			}
+		}
+	}
+
 	private void removeEarliestLinkExitTimesAtTime(Id<Person> agentId) {
 
+		Id<Link> linkId = this.currentLinks.remove(agentId);
+		if (linkId != null) this.removeFromLink(agentId, linkId);
+
 		Double earliestExitTime = this.earliestLinkExitTimes.remove(agentId);
 
 		if (earliestExitTime != null) {
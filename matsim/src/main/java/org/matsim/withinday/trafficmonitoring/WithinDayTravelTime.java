@@ -20,6 +20,7 @@
 
 package org.matsim.withinday.trafficmonitoring;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
@@ -71,17 +72,26 @@ public class WithinDayTravelTime implements TravelTime,
 
 	private static final Logger log = Logger.getLogger(WithinDayTravelTime.class);
 
+	private static final int NO_INDEX = -1;
+
 	private Network network;
 
-	// Trips with no Activity on the current Link
-	private Map<Id<Vehicle>, TripBin> regularActiveTrips; // VehicleId
+	/*
+	 * Vehicles and links get dense indices, so the event handlers work on arrays
+	 * and do not allocate objects per event.
+	 */
+	private TObjectIntHashMap<Id<Vehicle>> vehicleIndices;
+	// Trips with no Activity on the current Link: the time the vehicle entered its current link, NaN if none
+	private double[] linkEnterTimes; // by vehicle index
+	private TObjectIntHashMap<Id<Link>> linkIndices;
+	private TravelTimeInfo[] travelTimeInfoArray; // by link index
 	private Map<Id<Link>, TravelTimeInfo> travelTimeInfos; // LinkId
 	
 	private TravelTimeInfoProvider travelTimeInfoProvider;
 
-	// Links that are changed by network change events
-	private TreeMap<Double, Map<Link,Double>> changedLinksByTime;
-	// yy better a priority queue.  kai, dec'17
+	// Links that are changed by network change events, ordered by time and then by the order they were added
+	private PriorityQueue<LinkSpeedChange> linkSpeedChanges;
+	private long linkSpeedChangesAdded = 0;
 	
 	/*
 	 * For parallel Execution
@@ -93,8 +103,9 @@ public class WithinDayTravelTime implements TravelTime,
 
 	private final int infoTimeStep = 3600;
 	private int nextInfoTime = 0;
+	private double simStartTime = 0.0;
 	
-	private Set<Id<Vehicle>> vehiclesToFilter;
+	private BitSet vehiclesToFilter; // by vehicle index
 	private final Set<String> analyzedModes;
 	private final boolean filterModes;
 
@@ -130,14 +141,21 @@ public class WithinDayTravelTime implements TravelTime,
 	}
 
 	private void init() {
-		this.regularActiveTrips = new HashMap<>();
+		this.vehicleIndices = new TObjectIntHashMap<>(1024, 0.5f, NO_INDEX);
+		this.linkEnterTimes = new double[1024];
+		Arrays.fill(this.linkEnterTimes, Double.NaN);
 		this.travelTimeInfos = new ConcurrentHashMap<>();
-		this.changedLinksByTime = new TreeMap<>();
-		this.vehiclesToFilter = new HashSet<>();
+		this.linkSpeedChanges = new PriorityQueue<>();
+		this.vehiclesToFilter = new BitSet();
 		
 		// one TravelTimeInfo per link:
+		int linkCount = this.network.getLinks().size();
+		this.linkIndices = new TObjectIntHashMap<>(Math.max(linkCount * 2, 16), 0.5f, NO_INDEX);
+		this.travelTimeInfoArray = new TravelTimeInfo[linkCount];
 		for (Link link : this.network.getLinks().values()) {
 			TravelTimeInfo travelTimeInfo = new TravelTimeInfo();
+			this.linkIndices.put(link.getId(), this.travelTimeInfos.size());
+			this.travelTimeInfoArray[this.travelTimeInfos.size()] = travelTimeInfo;
 			this.travelTimeInfos.put(link.getId(), travelTimeInfo);
 		}
 		
@@ -178,7 +196,6 @@ public class WithinDayTravelTime implements TravelTime,
 		ChangeValue freespeedChange = networkChangeEvent.getFreespeedChange();
 		if (freespeedChange != null) {
 			double startTime = networkChangeEvent.getStartTime();
-			Map<Link,Double> newLinkSpeedsAtThisTime = changedLinksByTime.computeIfAbsent(startTime, k -> new HashMap<>());
 			for ( Link link : networkChangeEvent.getLinks() ) {
 				// yy seems that the following should be available centrally. kai, dec'17
 				double newSpeed ;
@@ -199,7 +216,7 @@ public class WithinDayTravelTime implements TravelTime,
 					log.debug( "registering a change event for time=" + startTime
 					+ "; linkId=" + link.getId() ) ;
 				}
-				newLinkSpeedsAtThisTime.put( link, newSpeed ) ;
+				this.linkSpeedChanges.add( new LinkSpeedChange( startTime, this.linkSpeedChangesAdded++, link, newSpeed ) ) ;
 			}
 		}
 	}
@@ -232,33 +249,31 @@ public class WithinDayTravelTime implements TravelTime,
 		 * If only some modes are analyzed, we check whether the vehicle
 		 * performs a trip with one of those modes. if not, we skip the event.
 		 */
-		if (filterModes && vehiclesToFilter.contains(event.getVehicleId())) return;
-		
-		Id<Vehicle> vehicleId = event.getVehicleId();
-		double time = event.getTime();
+		int vehicleIndex = getOrCreateVehicleIndex(event.getVehicleId());
+		if (filterModes && vehiclesToFilter.get(vehicleIndex)) return;
 
-		TripBin tripBin = new TripBin();
-		tripBin.enterTime = time;
-
-		this.regularActiveTrips.put(vehicleId, tripBin);
+		this.linkEnterTimes[vehicleIndex] = event.getTime();
 	}
 
 	@Override
 	public void handleEvent(LinkLeaveEvent event) {
-		Id<Link> linkId = event.getLinkId();
-		Id<Vehicle> vehicleId = event.getVehicleId();
-		double time = event.getTime();
+		int vehicleIndex = this.vehicleIndices.get(event.getVehicleId());
+		if (vehicleIndex == NO_INDEX) return;
 
-		TripBin tripBin = this.regularActiveTrips.remove(vehicleId);
-		if (tripBin != null) {
-			tripBin.leaveTime = time;
+		double enterTime = this.linkEnterTimes[vehicleIndex];
+		if (!Double.isNaN(enterTime)) {
+			this.linkEnterTimes[vehicleIndex] = Double.NaN;
 
-			double tripTime = tripBin.leaveTime - tripBin.enterTime;
+			double time = event.getTime();
+			double tripTime = time - enterTime;
 
-			TravelTimeInfo travelTimeInfo = this.travelTimeInfoProvider.getTravelTimeInfo(linkId);
-			travelTimeInfo.tripBins.add(tripBin);
-			travelTimeInfo.addedTravelTimes += tripTime;
-			travelTimeInfo.addedTrips++;
+			int linkIndex = this.linkIndices.get(event.getLinkId());
+			if (linkIndex == NO_INDEX) {
+				// the link is not part of the network this travel time was created for, so there is nothing to update
+				return;
+			}
+			TravelTimeInfo travelTimeInfo = this.travelTimeInfoArray[linkIndex];
+			travelTimeInfo.addTrip(time, tripTime);
 
 			travelTimeInfo.checkActiveState();
 			travelTimeInfo.checkBinSize(tripTime);
@@ -281,12 +296,13 @@ public class WithinDayTravelTime implements TravelTime,
 	 */
 	@Override
 	public void handleEvent(VehicleLeavesTrafficEvent event) {
-		Id<Vehicle> vehicleId = event.getVehicleId();
+		int vehicleIndex = this.vehicleIndices.get(event.getVehicleId());
+		if (vehicleIndex == NO_INDEX) return;
 
-		this.regularActiveTrips.remove(vehicleId);
+		this.linkEnterTimes[vehicleIndex] = Double.NaN;
 		
 		// try to remove vehicle from set with filtered vehicles
-		if (filterModes) this.vehiclesToFilter.remove(event.getVehicleId());
+		if (filterModes) this.vehiclesToFilter.clear(vehicleIndex);
 	}
 
 	@Override
@@ -296,7 +312,20 @@ public class WithinDayTravelTime implements TravelTime,
 		 * starts a leg on a non analyzed transport mode, add the vehicle
 		 * to the filtered vehicles set.
 		 */
-		if (filterModes && !analyzedModes.contains(event.getNetworkMode())) this.vehiclesToFilter.add(event.getVehicleId());
+		if (filterModes && !analyzedModes.contains(event.getNetworkMode())) this.vehiclesToFilter.set(getOrCreateVehicleIndex(event.getVehicleId()));
+	}
+
+	private int getOrCreateVehicleIndex(Id<Vehicle> vehicleId) {
+		int index = this.vehicleIndices.get(vehicleId);
+		if (index == NO_INDEX) {
+			index = this.vehicleIndices.size();
+			this.vehicleIndices.put(vehicleId, index);
+			if (index == this.linkEnterTimes.length) {
+				this.linkEnterTimes = Arrays.copyOf(this.linkEnterTimes, index * 2);
+				Arrays.fill(this.linkEnterTimes, index, this.linkEnterTimes.length, Double.NaN);
+			}
+		}
+		return index;
 	}
 	
 	/*
@@ -307,13 +336,13 @@ public class WithinDayTravelTime implements TravelTime,
 		problem = false ;
 
 		if (e.getQueueSimulation() instanceof QSim) {
-			double simStartTime = ((QSim) e.getQueueSimulation()).getSimTimer().getSimStartTime();
+			this.simStartTime = ((QSim) e.getQueueSimulation()).getSimTimer().getSimStartTime();
 
 			/*
 			 * infoTime may be < simStartTime, this ensures to print 
 			 * out the info at the very first timestep already			
 			 */
-			this.nextInfoTime = (int)(Math.floor(simStartTime / this.infoTimeStep) * this.infoTimeStep);
+			this.nextInfoTime = (int)(Math.floor(this.simStartTime / this.infoTimeStep) * this.infoTimeStep);
 		}
 		
 		
@@ -342,21 +371,19 @@ public class WithinDayTravelTime implements TravelTime,
 		// if someone adds a link change event in between two integer
 		// time steps?  kai, dec'17
 		
-		while( !changedLinksByTime.isEmpty() && changedLinksByTime.firstKey() <= e.getSimulationTime() ) {
-			Map<Link, Double> map = changedLinksByTime.pollFirstEntry().getValue();
-			for ( Map.Entry<Link,Double> link2speed : map.entrySet() ) {
-				Link link = link2speed.getKey() ;
-				double freeSpeedTravelTime = link.getLength() / link2speed.getValue() ;
-				if ( e.getSimulationTime() > ((QSim)e.getQueueSimulation()).getSimTimer().getSimStartTime() ) {
-					// (otherwise, in some simulations one gets a lot of change events at time 0. kai, dec'17)
-					log.debug("time=" + e.getSimulationTime() +
-									  "; network change event for link=" + link.getId() +
-									  "; new ttime="+ freeSpeedTravelTime );
-				}
-				TravelTimeInfo travelTimeInfo = this.travelTimeInfoProvider.getTravelTimeInfo(link);
-				travelTimeInfo.init(freeSpeedTravelTime);
-				travelTimeInfo.checkActiveState();	// ensure that the estimated link travel time is updated
+		while( !linkSpeedChanges.isEmpty() && linkSpeedChanges.peek().time <= e.getSimulationTime() ) {
+			LinkSpeedChange change = linkSpeedChanges.poll();
+			Link link = change.link ;
+			double freeSpeedTravelTime = link.getLength() / change.speed ;
+			if ( e.getSimulationTime() > this.simStartTime ) {
+				// (otherwise, in some simulations one gets a lot of change events at time 0. kai, dec'17)
+				log.debug("time=" + e.getSimulationTime() +
+								  "; network change event for link=" + link.getId() +
+								  "; new ttime="+ freeSpeedTravelTime );
 			}
+			TravelTimeInfo travelTimeInfo = this.travelTimeInfoProvider.getTravelTimeInfo(link);
+			travelTimeInfo.init(freeSpeedTravelTime);
+			travelTimeInfo.checkActiveState();	// ensure that the estimated link travel time is updated
 		}
 		
 //		if (links != null) {
@@ -425,15 +452,39 @@ public class WithinDayTravelTime implements TravelTime,
 		}
 	}
 
-	private static class TripBin {
-		double enterTime;
-		double leaveTime;
+	private static class LinkSpeedChange implements Comparable<LinkSpeedChange> {
+		final double time;
+		final long order;
+		final Link link;
+		final double speed;
+
+		LinkSpeedChange(double time, long order, Link link, double speed) {
+			this.time = time;
+			this.order = order;
+			this.link = link;
+			this.speed = speed;
+		}
+
+		@Override
+		public int compareTo(LinkSpeedChange o) {
+			int cmp = Double.compare(this.time, o.time);
+			// changes at the same time are applied in the order they were added, so the last one wins
+			return cmp != 0 ? cmp : Long.compare(this.order, o.order);
+		}
 	}
 
 	/*package*/ static class TravelTimeInfo {
 
 		UpdateMeanTravelTimesRunnable runnable;
-		List<TripBin> tripBins = new ArrayList<>();
+
+		/*
+		 * The trips in the current time window, as ring buffer ordered by leave time.
+		 * Allocated with the first trip, as most links never see one.
+		 */
+		double[] tripLeaveTimes = null;
+		double[] tripTravelTimes = null;
+		int firstTrip = 0;
+		int tripCount = 0;
 
 		boolean isActive = false;
 		// int numActiveTrips = 0;
@@ -454,6 +505,33 @@ public class WithinDayTravelTime implements TravelTime,
 			this.dynamicBinSize = freeSpeedTravelTime * 2.5;
 		}
 
+		/*package*/ void addTrip(double leaveTime, double tripTime) {
+			if (this.tripLeaveTimes == null) {
+				this.tripLeaveTimes = new double[4];
+				this.tripTravelTimes = new double[4];
+			} else if (this.tripCount == this.tripLeaveTimes.length) {
+				// unroll the ring buffer into larger arrays
+				int length = this.tripCount * 2;
+				double[] leaveTimes = new double[length];
+				double[] travelTimes = new double[length];
+				int tail = this.tripCount - this.firstTrip;
+				System.arraycopy(this.tripLeaveTimes, this.firstTrip, leaveTimes, 0, tail);
+				System.arraycopy(this.tripLeaveTimes, 0, leaveTimes, tail, this.firstTrip);
+				System.arraycopy(this.tripTravelTimes, this.firstTrip, travelTimes, 0, tail);
+				System.arraycopy(this.tripTravelTimes, 0, travelTimes, tail, this.firstTrip);
+				this.tripLeaveTimes = leaveTimes;
+				this.tripTravelTimes = travelTimes;
+				this.firstTrip = 0;
+			}
+			int index = (this.firstTrip + this.tripCount) % this.tripLeaveTimes.length;
+			this.tripLeaveTimes[index] = leaveTime;
+			this.tripTravelTimes[index] = tripTime;
+			this.tripCount++;
+
+			this.addedTravelTimes += tripTime;
+			this.addedTrips++;
+		}
+
 		/*package*/ void checkActiveState() {
 			if (!isActive) {
 				this.isActive = true;
@@ -526,12 +604,11 @@ public class WithinDayTravelTime implements TravelTime,
 		}
 
 		/*
-		 * Assign the TravelTimeInfos to the Threads
+		 * Partition the links between the Threads. Each Thread only updates
+		 * the active TravelTimeInfos of its own links.
 		 */
-		int roundRobin = 0;
-		for (TravelTimeInfo travelTimeInfo : this.travelTimeInfos.values()) {
-			travelTimeInfo.runnable = updateMeanTravelTimesRunnables[roundRobin % numOfThreads];
-			roundRobin++;
+		for (int linkIndex = 0; linkIndex < this.travelTimeInfoArray.length; linkIndex++) {
+			this.travelTimeInfoArray[linkIndex].runnable = updateMeanTravelTimesRunnables[linkIndex % numOfThreads];
 		}
 
 		/*
@@ -549,7 +626,7 @@ public class WithinDayTravelTime implements TravelTime,
 	/*
 	 * The thread class that updates the mean travel times.
 	 */
-	private static class UpdateMeanTravelTimesRunnable implements Runnable {
+	/*package*/ static class UpdateMeanTravelTimesRunnable implements Runnable {
 
 		private volatile boolean simulationRunning = true;
 		
@@ -557,10 +634,10 @@ public class WithinDayTravelTime implements TravelTime,
 		private CyclicBarrier endBarrier = null;
 		
 		private double time = Time.UNDEFINED_TIME;
-		private Collection<TravelTimeInfo> activeTravelTimeInfos;
+		private TravelTimeInfo[] activeTravelTimeInfos = new TravelTimeInfo[16];
+		private int activeCount = 0;
 
 		public UpdateMeanTravelTimesRunnable() {
-			activeTravelTimeInfos = new ArrayList<>();
 		}
 
 		public void setStartBarrier(CyclicBarrier cyclicBarrier) {
@@ -576,11 +653,14 @@ public class WithinDayTravelTime implements TravelTime,
 		}
 
 		public void addTravelTimeInfo(TravelTimeInfo travelTimeInfo) {
-			this.activeTravelTimeInfos.add(travelTimeInfo);
+			if (this.activeCount == this.activeTravelTimeInfos.length) {
+				this.activeTravelTimeInfos = Arrays.copyOf(this.activeTravelTimeInfos, this.activeCount * 2);
+			}
+			this.activeTravelTimeInfos[this.activeCount++] = travelTimeInfo;
 		}
 
 		public int getActiveLinksCount() {
-			return this.activeTravelTimeInfos.size();
+			return this.activeCount;
 		}
 
 		public void afterSim() {
@@ -614,22 +694,7 @@ public class WithinDayTravelTime implements TravelTime,
 						return;
 					}
 					
-					Iterator<TravelTimeInfo> iter = activeTravelTimeInfos.iterator();
-					while (iter.hasNext()) {
-						TravelTimeInfo travelTimeInfo = iter.next();
-						calcBinTravelTime(this.time, travelTimeInfo);
-
-						/*
-						 * If no further trips are stored in the TravelTimeInfo,
-						 * we deactivate the link and ensure that its expected
-						 * travel time is its free speed travel time.
-						 */
-						if (travelTimeInfo.tripBins.size() == 0) {
-							travelTimeInfo.isActive = false;
-							travelTimeInfo.travelTime = travelTimeInfo.freeSpeedTravelTime;
-							iter.remove();
-						}
-					}
+					updateTravelTimes();
 
 				} catch (InterruptedException | BrokenBarrierException e) {
 					throw new RuntimeException(e);
@@ -637,19 +702,39 @@ public class WithinDayTravelTime implements TravelTime,
 			}
 		} // run()
 
+		/*package*/ void updateTravelTimes() {
+			int i = 0;
+			while (i < this.activeCount) {
+				TravelTimeInfo travelTimeInfo = this.activeTravelTimeInfos[i];
+				calcBinTravelTime(this.time, travelTimeInfo);
+
+				/*
+				 * If no further trips are stored in the TravelTimeInfo,
+				 * we deactivate the link and ensure that its expected
+				 * travel time is its free speed travel time. The last
+				 * active TravelTimeInfo takes its place.
+				 */
+				if (travelTimeInfo.tripCount == 0) {
+					travelTimeInfo.isActive = false;
+					travelTimeInfo.travelTime = travelTimeInfo.freeSpeedTravelTime;
+					this.activeTravelTimeInfos[i] = this.activeTravelTimeInfos[--this.activeCount];
+					this.activeTravelTimeInfos[this.activeCount] = null;
+				} else {
+					i++;
+				}
+			}
+		}
+
 		private void calcBinTravelTime(double time, TravelTimeInfo travelTimeInfo) {
 			double removedTravelTimes = 0.0;
 
-			List<TripBin> tripBins = travelTimeInfo.tripBins;
-
 			// first remove old TravelTimes
-			Iterator<TripBin> iter = tripBins.iterator();
-			while (iter.hasNext()) {
-				TripBin tripBin = iter.next();
-				if (tripBin.leaveTime + travelTimeInfo.dynamicBinSize < time) {
-					double travelTime = tripBin.leaveTime - tripBin.enterTime;
-					removedTravelTimes += travelTime;
-					iter.remove();
+			while (travelTimeInfo.tripCount > 0) {
+				int first = travelTimeInfo.firstTrip;
+				if (travelTimeInfo.tripLeaveTimes[first] + travelTimeInfo.dynamicBinSize < time) {
+					removedTravelTimes += travelTimeInfo.tripTravelTimes[first];
+					travelTimeInfo.firstTrip = (first + 1) % travelTimeInfo.tripLeaveTimes.length;
+					travelTimeInfo.tripCount--;
 				} else break;
 			}
 
@@ -670,7 +755,7 @@ public class WithinDayTravelTime implements TravelTime,
 			 * Ensure that we don't allow TravelTimes shorter than the FreeSpeedTravelTime.
 			 */
 			double meanTravelTime = travelTimeInfo.freeSpeedTravelTime;
-			if (!tripBins.isEmpty()) meanTravelTime = travelTimeInfo.sumTravelTimes / tripBins.size();
+			if (travelTimeInfo.tripCount > 0) meanTravelTime = travelTimeInfo.sumTravelTimes / travelTimeInfo.tripCount;
 
 			if (meanTravelTime < travelTimeInfo.freeSpeedTravelTime) {
 //				log.warn("Mean TravelTime too short?");
@@ -0,0 +1,102 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AnalysisOutputWriterTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.core.controler.events.ShutdownEvent;
+
+public class AnalysisOutputWriterTest {
+
+	@Test
+	public void testTasksAreExecutedInOrder() {
+		AnalysisOutputWriter writer = new AnalysisOutputWriter();
+		final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 10; i++) {
+			final int taskId = i;
+			writer.submit(new Runnable() {
+				@Override
+				public void run() {
+					executed.add(taskId);
+				}
+			});
+		}
+		writer.awaitCompletion();
+		Assert.assertEquals(10, executed.size());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(i, executed.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testExceptionIsPropagated() {
+		AnalysisOutputWriter writer = new AnalysisOutputWriter();
+		final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+		writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("expected");
+			}
+		});
+		writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				executed.add(1);
+			}
+		});
+		try {
+			writer.awaitCompletion();
+			Assert.fail("expected exception");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		Assert.assertEquals("tasks after a failing one must still be executed", 1, executed.size());
+
+		// the failure must only be reported once
+		writer.awaitCompletion();
+	}
+
+	@Test
+	public void testShutdownWaitsForTasks() {
+		AnalysisOutputWriter writer = new AnalysisOutputWriter();
+		final List<String> executedBy = Collections.synchronizedList(new ArrayList<String>());
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				executedBy.add(Thread.currentThread().getName());
+			}
+		};
+		writer.submit(task);
+		writer.notifyShutdown(new ShutdownEvent(null, false));
+		Assert.assertEquals("the pending task must be finished at shutdown", 1, executedBy.size());
+		Assert.assertEquals(AnalysisOutputWriter.class.getSimpleName(), executedBy.get(0));
+
+		// after shutdown, tasks are executed right away
+		writer.submit(task);
+		Assert.assertEquals(2, executedBy.size());
+		Assert.assertEquals(Thread.currentThread().getName(), executedBy.get(1));
+	}
+
+}
@@ -0,0 +1,105 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IterationStopWatchComparisonTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.analysis.IterationStopWatchComparison.Regression;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class IterationStopWatchComparisonTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testWriteOperationsFile() throws IOException {
+		IterationStopWatch stopWatch = new IterationStopWatch();
+		for (int iteration = 0; iteration < 2; iteration++) {
+			stopWatch.beginIteration(iteration);
+			stopWatch.beginOperation("replanning");
+			stopWatch.endOperation("replanning");
+			stopWatch.endIteration();
+		}
+		String filename = this.utils.getOutputDirectory() + "stopwatch";
+		stopWatch.writeOperationsFile(filename);
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename + "_operations.txt")) {
+			String[] header = reader.readLine().split("\t");
+			Assert.assertEquals(3 + IterationStopWatch.RESOURCE_NAMES.length, header.length);
+			Assert.assertEquals("wallclock_ms", header[2]);
+			int lines = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				Assert.assertEquals(header.length, parts.length);
+				Assert.assertTrue(Long.parseLong(parts[2]) >= 0);
+				lines++;
+			}
+			Assert.assertEquals("expected two operations in two iterations.", 4, lines);
+		}
+
+		List<Regression> regressions = new IterationStopWatchComparison(filename + "_operations.txt").findRegressions(null, 1000.0);
+		Assert.assertNotNull(regressions);
+	}
+
+	@Test
+	public void testFindRegressions() throws IOException {
+		String filename = this.utils.getOutputDirectory() + "stopwatch_operations.txt";
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("iteration\toperation\twallclock_ms\theap_after_gc_bytes\n");
+			writer.write("0\titeration\t1000\t100\n");
+			writer.write("1\titeration\t1100\t150\n");
+			writer.write("1\treplanning\t500\t\n");
+			writer.write("2\titeration\t1300\t200\n");
+			writer.write("2\treplanning\t700\t\n");
+		}
+		IterationStopWatchComparison comparison = new IterationStopWatchComparison(filename);
+
+		List<Regression> regressions = comparison.findRegressions(null, 0.2);
+		Assert.assertEquals(4, regressions.size());
+		assertRegression(regressions.get(0), 1, "iteration", "heap_after_gc_bytes", 150);
+		assertRegression(regressions.get(1), 2, "iteration", "wallclock_ms", 1300);
+		assertRegression(regressions.get(2), 2, "iteration", "heap_after_gc_bytes", 200);
+		assertRegression(regressions.get(3), 2, "replanning", "wallclock_ms", 700);
+		Assert.assertEquals(1, regressions.get(3).baselineIteration);
+
+		regressions = comparison.findRegressions(1, 0.2);
+		Assert.assertEquals(2, regressions.size());
+		assertRegression(regressions.get(0), 2, "iteration", "heap_after_gc_bytes", 200);
+		assertRegression(regressions.get(1), 2, "replanning", "wallclock_ms", 700);
+	}
+
+	private static void assertRegression(Regression regression, int iteration, String operation, String value, long iterationValue) {
+		Assert.assertEquals(iteration, regression.iteration);
+		Assert.assertEquals(operation, regression.operation);
+		Assert.assertEquals(value, regression.value);
+		Assert.assertEquals(iterationValue, regression.iterationValue);
+	}
+
+}
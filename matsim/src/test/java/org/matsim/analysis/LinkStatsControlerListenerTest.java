@@ -71,6 +71,7 @@ public class LinkStatsControlerListenerTest {
 				install(new ScenarioByInstanceModule(scenario));
 				bind(OutputDirectoryHierarchy.class).asEagerSingleton();
 				bind(IterationStopWatch.class).asEagerSingleton();
+				bind(AnalysisOutputWriter.class);
 			}
 		});
 		LinkStatsControlerListener lscl = injector.getInstance(LinkStatsControlerListener.class);
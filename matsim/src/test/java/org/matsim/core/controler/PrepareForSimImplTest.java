@@ -0,0 +1,131 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PrepareForSimImplTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.controler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsManagerModule;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripRouterModule;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.scenario.ScenarioByInstanceModule;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.trafficmonitoring.TravelTimeCalculatorModule;
+
+public class PrepareForSimImplTest {
+
+	/**
+	 * With randomized routing, the routes depend on the order in which the routers get the persons. This
+	 * order must not depend on the scheduling of the threads.
+	 */
+	@Test
+	public void testRoutesAreReproducible() {
+		List<String> routes = routeScenario();
+		Set<String> differentRoutes = new HashSet<>();
+		for (String route : routes) {
+			differentRoutes.add(route.substring(route.indexOf(':')));
+		}
+		Assert.assertTrue("the routing should be randomized", differentRoutes.size() > 1);
+
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(routes, routeScenario());
+		}
+	}
+
+	private static List<String> routeScenario() {
+		final Config config = ConfigUtils.createConfig();
+		config.global().setNumberOfThreads(4);
+		// the randomness only changes the weight of the distance against the time
+		config.planCalcScore().getOrCreateModeParams(TransportMode.car).setMonetaryDistanceRate(-0.05);
+		MatsimRandom.reset(config.global().getRandomSeed());
+		final Scenario scenario = ScenarioUtils.createScenario(config);
+
+		// a short, slow road and a long, fast one from the home link to the work link
+		Network network = scenario.getNetwork();
+		Node node1 = NetworkUtils.createAndAddNode(network, Id.create("1", Node.class), new Coord(0, 0));
+		Node node2 = NetworkUtils.createAndAddNode(network, Id.create("2", Node.class), new Coord(100, 0));
+		Node node3 = NetworkUtils.createAndAddNode(network, Id.create("3", Node.class), new Coord(1100, 0));
+		Node node4 = NetworkUtils.createAndAddNode(network, Id.create("4", Node.class), new Coord(600, 800));
+		Node node5 = NetworkUtils.createAndAddNode(network, Id.create("5", Node.class), new Coord(1200, 0));
+		Id<Link> homeLinkId = NetworkUtils.createAndAddLink(network, Id.create("h", Link.class), node1, node2, 100, 10, 1000, 1).getId();
+		NetworkUtils.createAndAddLink(network, Id.create("short", Link.class), node2, node3, 1000, 5, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.create("long1", Link.class), node2, node4, 1000, 40, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.create("long2", Link.class), node4, node3, 1000, 40, 1000, 1);
+		Id<Link> workLinkId = NetworkUtils.createAndAddLink(network, Id.create("w", Link.class), node3, node5, 100, 10, 1000, 1).getId();
+
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 2000; i++) {
+			Person person = factory.createPerson(Id.create(i, Person.class));
+			Plan plan = factory.createPlan();
+			Activity home = factory.createActivityFromLinkId("h", homeLinkId);
+			home.setEndTime(7 * 3600);
+			plan.addActivity(home);
+			plan.addLeg(factory.createLeg(TransportMode.car));
+			plan.addActivity(factory.createActivityFromLinkId("w", workLinkId));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		// as PrepareForSimUtils.createDefaultPrepareForSim, but with randomized routing
+		com.google.inject.Injector injector = Injector.createInjector(config, new AbstractModule() {
+			@Override
+			public void install() {
+				install(new ScenarioByInstanceModule(scenario));
+				install(new EventsManagerModule());
+				install(new TripRouterModule());
+				addTravelDisutilityFactoryBinding(TransportMode.car).toInstance(
+						new RandomizingTimeDistanceTravelDisutilityFactory(TransportMode.car, config.planCalcScore()).setSigma(3.));
+				install(new TravelTimeCalculatorModule());
+				install(new DefaultPrepareForSimModule());
+			}
+		});
+		injector.getInstance(PrepareForSim.class).run();
+
+		List<String> routes = new ArrayList<>();
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			Leg leg = (Leg) person.getSelectedPlan().getPlanElements().get(1);
+			routes.add(person.getId() + ":" + ((NetworkRoute) leg.getRoute()).getLinkIds());
+		}
+		return routes;
+	}
+
+}
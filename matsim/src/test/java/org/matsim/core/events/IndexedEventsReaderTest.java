@@ -0,0 +1,175 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IndexedEventsReaderTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.algorithms.EventWriterIndexed;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+public class IndexedEventsReaderTest {
+
+	@Rule public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testReadAll() {
+		String filename = writeEvents();
+		List<Event> events = collect(filename, null);
+		Assert.assertEquals(3 * 24, events.size());
+		for (int i = 1; i < events.size(); i++) {
+			Assert.assertTrue("events must be in the order they were written", events.get(i - 1).getTime() <= events.get(i).getTime());
+		}
+
+		// MatsimEventsReader recognizes the file by its extension
+		EventsManager manager = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		manager.addHandler(collector);
+		new MatsimEventsReader(manager).readFile(filename);
+		Assert.assertEquals(3 * 24, collector.getEvents().size());
+		Assert.assertTrue(IndexedEventsReader.isIndexedEventsFile(filename));
+	}
+
+	@Test
+	public void testQueries() {
+		String filename = writeEvents();
+
+		List<Event> morning = collect(filename, new IndexedEventsReader.Query().setTimeWindow(7 * 3600, 9 * 3600));
+		Assert.assertEquals(3 * 2, morning.size());
+		for (Event event : morning) {
+			Assert.assertTrue(event.getTime() >= 7 * 3600 && event.getTime() < 9 * 3600);
+		}
+
+		List<Event> person = collect(filename, new IndexedEventsReader.Query().setPersons(Collections.singleton(Id.create("5", Person.class))));
+		Assert.assertEquals(2, person.size());
+		Assert.assertEquals(5 * 3600, person.get(0).getTime(), 0);
+		Assert.assertTrue(person.get(0) instanceof ActivityEndEvent);
+		Assert.assertTrue(person.get(1) instanceof PersonDepartureEvent);
+
+		List<Event> link = collect(filename, new IndexedEventsReader.Query()
+				.setLinks(Collections.singleton(Id.create("even", Link.class))).setTimeWindow(0, 6 * 3600));
+		// link "even" is entered at 0, 2 and 4 o'clock
+		Assert.assertEquals(3, link.size());
+		for (Event event : link) {
+			Assert.assertEquals("even", ((LinkEnterEvent) event).getLinkId().toString());
+		}
+
+		List<Event> unknown = collect(filename, new IndexedEventsReader.Query().setPersons(Collections.singleton(Id.create("unknown", Person.class))));
+		Assert.assertTrue(unknown.isEmpty());
+	}
+
+	@Test
+	public void testAllIdsAreFound() {
+		String filename = writeEvents(true, true);
+		for (int hour = 0; hour < 24; hour++) {
+			List<Event> person = collect(filename, new IndexedEventsReader.Query().setPersons(Collections.singleton(Id.create(hour, Person.class))));
+			Assert.assertEquals(2, person.size());
+			Assert.assertEquals(hour * 3600, person.get(0).getTime(), 0);
+		}
+		List<Event> links = collect(filename, new IndexedEventsReader.Query().setLinks(Arrays.asList(Id.create("odd", Link.class), Id.create("even", Link.class))));
+		Assert.assertEquals(24, links.size());
+	}
+
+	@Test
+	public void testWithoutPersonIndex() {
+		String filename = writeEvents(false, true);
+		List<Event> person = collect(filename, new IndexedEventsReader.Query().setPersons(Collections.singleton(Id.create("5", Person.class))));
+		Assert.assertEquals(2, person.size());
+		Assert.assertEquals(5 * 3600, person.get(0).getTime(), 0);
+
+		List<Event> personOrLink = collect(filename, new IndexedEventsReader.Query()
+				.setPersons(Collections.singleton(Id.create("5", Person.class)))
+				.setLinks(Collections.singleton(Id.create("even", Link.class))).setTimeWindow(0, 6 * 3600));
+		// person 5 at 5 o'clock, link "even" at 0, 2 and 4 o'clock
+		Assert.assertEquals(2 + 3, personOrLink.size());
+
+		List<Event> link = collect(filename, new IndexedEventsReader.Query().setLinks(Collections.singleton(Id.create("odd", Link.class))));
+		Assert.assertEquals(12, link.size());
+	}
+
+	@Test
+	public void testWithoutIndices() {
+		String filename = writeEvents(false, false);
+		Assert.assertEquals(3 * 24, collect(filename, null).size());
+		List<Event> link = collect(filename, new IndexedEventsReader.Query().setLinks(Collections.singleton(Id.create("odd", Link.class))));
+		Assert.assertEquals(12, link.size());
+	}
+
+	@Test
+	public void testBlocks() {
+		String filename = writeEvents();
+		try (IndexedEventsReader reader = new IndexedEventsReader(filename)) {
+			// one block per 15 minutes with events
+			Assert.assertEquals(24, reader.getNumberOfBlocks());
+		}
+	}
+
+	/**
+	 * Writes events of three types every hour: person i ends its activity and departs at i o'clock, and a vehicle
+	 * enters link "even" or "odd".
+	 */
+	private String writeEvents() {
+		return writeEvents(true, true);
+	}
+
+	private String writeEvents(boolean indexPersons, boolean indexLinks) {
+		String filename = this.utils.getOutputDirectory() + "events" + IndexedEventsReader.FILE_EXTENSION;
+		EventWriterIndexed writer = new EventWriterIndexed(filename, EventWriterIndexed.DEFAULT_BLOCK_DURATION, indexPersons, indexLinks);
+		for (int hour = 0; hour < 24; hour++) {
+			double time = hour * 3600;
+			Id<Person> personId = Id.create(Integer.toString(hour), Person.class);
+			Id<Link> linkId = Id.create(hour % 2 == 0 ? "even" : "odd", Link.class);
+			writer.handleEvent(new ActivityEndEvent(time, personId, linkId, null, "home"));
+			writer.handleEvent(new PersonDepartureEvent(time, personId, linkId, "car"));
+			writer.handleEvent(new LinkEnterEvent(time + 60, Id.create(hour, Vehicle.class), linkId));
+		}
+		writer.closeFile();
+		return filename;
+	}
+
+	private static List<Event> collect(String filename, IndexedEventsReader.Query query) {
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		try (IndexedEventsReader reader = new IndexedEventsReader(filename)) {
+			if (query == null) {
+				reader.readAll(events);
+			} else {
+				reader.read(events, query);
+			}
+		}
+		return collector.getEvents();
+	}
+}
@@ -20,7 +20,9 @@
 
 package org.matsim.core.events;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
 import java.util.Map;
 
 import junit.framework.TestCase;
@@ -49,6 +51,9 @@ public abstract class XmlEventsTester extends TestCase {
 	 * @return the read-in event
 	 */
 	public static <T extends Event> T testWriteReadXml(final String eventsFile, final T event) {
+		assertEquals("writing the event directly must give the same result as writing its attributes.",
+				toXmlUsingAttributes(event), toXml(event));
+
 		EventWriterXML writer = new EventWriterXML(eventsFile);
 		writer.handleEvent(event);
 		writer.closeFile();
@@ -73,4 +78,24 @@ public abstract class XmlEventsTester extends TestCase {
 		return (T) readEvent;
 	}
 
+	private static String toXml(final Event event) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		EventWriterXML writer = new EventWriterXML(new PrintStream(bytes));
+		writer.handleEvent(event);
+		writer.closeFile();
+		String xml = new String(bytes.toByteArray());
+		return xml.substring("<events>\n".length(), xml.length() - "</events>".length());
+	}
+
+	private static String toXmlUsingAttributes(final Event event) {
+		StringBuilder xml = new StringBuilder("\t<event ");
+		for (Map.Entry<String, String> attribute : event.getAttributes().entrySet()) {
+			xml.append(attribute.getKey()).append("=\"");
+			xml.append(attribute.getValue().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;"));
+			xml.append("\" ");
+		}
+		xml.append(" />\n");
+		return xml.toString();
+	}
+
 }
@@ -19,18 +19,24 @@
 
 package org.matsim.core.events.algorithms;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.GenericEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.testcases.MatsimTestUtils;
 import org.matsim.testcases.utils.EventsCollector;
 import org.matsim.vehicles.Vehicle;
@@ -92,4 +98,57 @@ public class EventWriterXMLTest {
 		
 		Assert.assertEquals("there must be 1 event.", 1, collector.getEvents().size());
 	}
+
+	/**
+	 * Events which only override getAttributes(), e.g. subclasses of core events adding attributes,
+	 * must still be written with all their attributes.
+	 */
+	@Test
+	public void testSubclassOverridingOnlyGetAttributes() throws IOException {
+		String filename = this.utils.getOutputDirectory() + "testEvents.xml";
+		EventWriterXML writer = new EventWriterXML(filename);
+		writer.handleEvent(new LinkLeaveEvent(3600.0, Id.create("1", Vehicle.class), Id.create("2", Link.class)) {
+			@Override
+			public Map<String, String> getAttributes() {
+				Map<String, String> attributes = super.getAttributes();
+				attributes.put("extra", "value");
+				return attributes;
+			}
+		});
+		writer.closeFile();
+
+		String xml;
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			xml = reader.lines().collect(Collectors.joining("\n"));
+		}
+		Assert.assertTrue(xml, xml.contains(" extra=\"value\""));
+		Assert.assertTrue(xml, xml.contains(" link=\"2\""));
+	}
+
+	/**
+	 * Writes more events than fit into one chunk of the writer thread, and makes sure all are written in the right order.
+	 */
+	@Test
+	public void testManyEvents() {
+		String filename = this.utils.getOutputDirectory() + "testEvents.xml.gz";
+		EventWriterXML writer = new EventWriterXML(filename);
+		int numberOfEvents = 100000;
+		for (int i = 0; i < numberOfEvents; i++) {
+			writer.handleEvent(new LinkLeaveEvent(i, Id.create(i, Vehicle.class), Id.create(i % 100, Link.class)));
+		}
+		writer.closeFile();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		new MatsimEventsReader(events).readFile(filename);
+
+		Assert.assertEquals(numberOfEvents, collector.getEvents().size());
+		int i = 0;
+		for (Event event : collector.getEvents()) {
+			Assert.assertEquals(i, event.getTime(), 0.0);
+			Assert.assertEquals(Id.create(i, Vehicle.class), ((LinkLeaveEvent) event).getVehicleId());
+			i++;
+		}
+	}
 }
@@ -0,0 +1,227 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelSnapshotGeneratorTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.config.groups.QSimConfigGroup.SnapshotStyle;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.IndexedEventsReader;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo;
+import org.matsim.vis.snapshotwriters.SnapshotWriter;
+
+public class ParallelSnapshotGeneratorTest {
+
+	@Rule public MatsimTestUtils utils = new MatsimTestUtils();
+
+	private static final double SNAPSHOT_PERIOD = 10.;
+
+	@Test
+	public void testSameSnapshotsAsSnapshotGenerator_queue() {
+		assertSameSnapshots(SnapshotStyle.queue);
+	}
+
+	@Test
+	public void testSameSnapshotsAsSnapshotGenerator_equiDist() {
+		assertSameSnapshots(SnapshotStyle.equiDist);
+	}
+
+	private void assertSameSnapshots(SnapshotStyle snapshotStyle) {
+		Network network = createNetwork();
+		List<Event> events = createEvents(network);
+		QSimConfigGroup config = ConfigUtils.createConfig().qsim();
+		config.setSnapshotStyle(snapshotStyle);
+
+		SnapshotGenerator generator = new SnapshotGenerator(network, SNAPSHOT_PERIOD, config);
+		RecordingSnapshotWriter expected = new RecordingSnapshotWriter();
+		generator.addSnapshotWriter(expected);
+		processEvents(generator, events);
+		generator.finish();
+
+		ParallelSnapshotGenerator parallelGenerator = new ParallelSnapshotGenerator(network, SNAPSHOT_PERIOD, config, 3);
+		RecordingSnapshotWriter actual = new RecordingSnapshotWriter();
+		RecordingSnapshotWriter actual2 = new RecordingSnapshotWriter();
+		parallelGenerator.addSnapshotWriter(actual);
+		parallelGenerator.addSnapshotWriter(actual2);
+		processEvents(parallelGenerator, events);
+		parallelGenerator.finish();
+
+		Assert.assertTrue(expected.snapshots.size() > 100);
+		Assert.assertTrue(expected.finished);
+		Assert.assertEquals(expected.snapshots, actual.snapshots);
+		Assert.assertEquals(expected.snapshots, actual2.snapshots);
+		Assert.assertTrue(actual.finished);
+		Assert.assertTrue(actual2.finished);
+	}
+
+	@Test
+	public void testTimeWindowOfIndexedEventsFile() {
+		Network network = createNetwork();
+		List<Event> events = createEvents(network);
+		QSimConfigGroup config = ConfigUtils.createConfig().qsim();
+
+		SnapshotGenerator generator = new SnapshotGenerator(network, SNAPSHOT_PERIOD, config);
+		RecordingSnapshotWriter expected = new RecordingSnapshotWriter();
+		generator.addSnapshotWriter(expected);
+		processEvents(generator, events);
+		generator.finish();
+
+		String filename = this.utils.getOutputDirectory() + "events" + IndexedEventsReader.FILE_EXTENSION;
+		EventWriterIndexed writer = new EventWriterIndexed(filename, 60.);
+		for (Event event : events) {
+			writer.handleEvent(event);
+		}
+		writer.closeFile();
+
+		double fromTime = 8 * 3600 + 120.;
+		double toTime = 8 * 3600 + 300.;
+		ParallelSnapshotGenerator parallelGenerator = new ParallelSnapshotGenerator(network, SNAPSHOT_PERIOD, config, 2);
+		RecordingSnapshotWriter actual = new RecordingSnapshotWriter();
+		parallelGenerator.addSnapshotWriter(actual);
+		parallelGenerator.setTimeWindow(fromTime, toTime);
+		parallelGenerator.run(filename);
+
+		List<String> expectedSnapshots = new ArrayList<>();
+		for (int i = 0; i < expected.times.size(); i++) {
+			if (expected.times.get(i) >= fromTime && expected.times.get(i) <= toTime) {
+				expectedSnapshots.add(expected.snapshots.get(i));
+			}
+		}
+		Assert.assertEquals(19, expectedSnapshots.size());
+		Assert.assertTrue("there should be agents in the snapshots", expectedSnapshots.get(0).contains("@"));
+		Assert.assertEquals(expectedSnapshots, actual.snapshots);
+		Assert.assertEquals(fromTime, actual.times.get(0), 0.);
+		Assert.assertEquals(toTime, actual.times.get(actual.times.size() - 1), 0.);
+		Assert.assertTrue(actual.finished);
+	}
+
+	private static void processEvents(EventHandler generator, List<Event> events) {
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(generator);
+		for (Event event : events) {
+			manager.processEvent(event);
+		}
+	}
+
+	private static Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+		Node[] nodes = new Node[11];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = NetworkUtils.createAndAddNode(network, Id.create(i, Node.class), new Coord(i * 1000, 0));
+		}
+		for (int i = 0; i < nodes.length - 1; i++) {
+			NetworkUtils.createAndAddLink(network, Id.create(i, Link.class), nodes[i], nodes[i + 1], 1000, 10, 1800, 1);
+		}
+		return network;
+	}
+
+	/**
+	 * Agents driving from the first link to the last one, with more agents than the links can take, so there are jams.
+	 */
+	private static List<Event> createEvents(Network network) {
+		int numberOfLinks = network.getLinks().size();
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			Id<Person> personId = Id.create(i, Person.class);
+			Id<Vehicle> vehicleId = Id.create(i, Vehicle.class);
+			Id<Link> firstLinkId = Id.create(0, Link.class);
+			double time = 8 * 3600 + 2 * i;
+			events.add(new PersonDepartureEvent(time, personId, firstLinkId, TransportMode.car));
+			events.add(new VehicleEntersTrafficEvent(time, personId, firstLinkId, vehicleId, TransportMode.car, 1.0));
+			for (int l = 1; l < numberOfLinks; l++) {
+				time += 100 + (i * 7 + l * 13) % 60;
+				events.add(new LinkLeaveEvent(time, vehicleId, Id.create(l - 1, Link.class)));
+				events.add(new LinkEnterEvent(time, vehicleId, Id.create(l, Link.class)));
+			}
+			time += 100;
+			Id<Link> lastLinkId = Id.create(numberOfLinks - 1, Link.class);
+			events.add(new VehicleLeavesTrafficEvent(time, personId, lastLinkId, vehicleId, TransportMode.car, 1.0));
+			events.add(new PersonArrivalEvent(time, personId, lastLinkId, TransportMode.car));
+		}
+		// stable, so the events of an agent stay in order
+		Collections.sort(events, new Comparator<Event>() {
+			@Override
+			public int compare(Event e1, Event e2) {
+				return Double.compare(e1.getTime(), e2.getTime());
+			}
+		});
+		return events;
+	}
+
+	private static final class RecordingSnapshotWriter implements SnapshotWriter {
+		final List<Double> times = new ArrayList<>();
+		final List<String> snapshots = new ArrayList<>();
+		private StringBuilder snapshot = null;
+		boolean finished = false;
+
+		@Override
+		public void beginSnapshot(double time) {
+			this.times.add(time);
+			this.snapshot = new StringBuilder().append(time).append(':');
+		}
+
+		@Override
+		public void endSnapshot() {
+			this.snapshots.add(this.snapshot.toString());
+			this.snapshot = null;
+		}
+
+		@Override
+		public void addAgent(AgentSnapshotInfo position) {
+			this.snapshot.append(' ').append(position.getId()).append('@').append(position.getEasting())
+					.append(',').append(position.getNorthing()).append(',').append(position.getAgentState())
+					.append(',').append(position.getColorValueBetweenZeroAndOne());
+		}
+
+		@Override
+		public void finish() {
+			this.finished = true;
+		}
+	}
+
+}
@@ -1,10 +1,24 @@
 package org.matsim.core.mobsim.jdeqsim;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.population.routes.RouteUtils;
 import org.matsim.core.scenario.ScenarioUtils;
 
 import static org.junit.Assert.assertEquals;
@@ -24,6 +38,124 @@ public class TestDESStarter_equilPlans100 extends AbstractJDEQSimTest {
 		super.checkAscendingTimeStamps();
 		super.checkEventsCorrespondToPlans(scenario.getPopulation());
 	}
+
+	@Test
+	public void test_equilPlans100_parallel() {
+		Scenario scenario = loadScenario();
+		
+		Map<Id<Person>, List<Event>> serialEventsByPerson = runSerialAndParallel(scenario);
+		
+		// the same events per agent as with the serial scheduler; the times could only differ in jams,
+		// and there are none with 100 agents on equil
+		assertSameEvents(serialEventsByPerson, 0.0);
+	}
+
+	@Test
+	public void test_equilPlans100_parallelTeleported() {
+		Scenario scenario = loadScenario();
+		// every second agent walks to work, arriving in another partition before the end of the time window
+		int i = 0;
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			if (i++ % 2 == 0) {
+				List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
+				Leg leg = (Leg) planElements.get(1);
+				leg.setMode(TransportMode.walk);
+				leg.setRoute(RouteUtils.createGenericRouteImpl(((Activity) planElements.get(0)).getLinkId(),
+						((Activity) planElements.get(2)).getLinkId()));
+				leg.setTravelTime(60.0);
+			}
+		}
+		
+		Map<Id<Person>, List<Event>> serialEventsByPerson = runSerialAndParallel(scenario);
+		
+		// the walks arrive at the same time as with the serial scheduler, the cars leaving work may queue
+		// in a different order
+		assertSameEvents(serialEventsByPerson, 60.0);
+		int walks = 0;
+		for (Map.Entry<Id<Person>, List<Event>> entry : serialEventsByPerson.entrySet()) {
+			List<Event> parallelEvents = super.eventsByPerson.get(entry.getKey());
+			for (int j = 0; j < parallelEvents.size(); j++) {
+				Event event = parallelEvents.get(j);
+				if (event instanceof PersonArrivalEvent && ((PersonArrivalEvent) event).getLegMode().equals(TransportMode.walk)) {
+					assertEquals(entry.getValue().get(j).getTime(), event.getTime(), 0.0);
+					assertEquals(parallelEvents.get(j - 1).getTime() + 60.0, event.getTime(), 0.0);
+					walks++;
+				}
+			}
+		}
+		assertEquals(50, walks);
+	}
+
+	@Test
+	public void test_equilPlans100_parallelCongested() {
+		Scenario scenario = loadScenario();
+		JDEQSimConfigGroup jdeqSimConfig = ConfigUtils.addOrGetModule(scenario.getConfig(), JDEQSimConfigGroup.NAME, JDEQSimConfigGroup.class);
+		jdeqSimConfig.setFlowCapacityFactor(0.05);
+		jdeqSimConfig.setStorageCapacityFactor(0.05);
+		
+		Map<Id<Person>, List<Event>> serialEventsByPerson = runSerialAndParallel(scenario);
+		
+		// in the jams, the space of a vehicle leaving a road is available later than with the serial scheduler,
+		// so the vehicles may leave the jams in a different order, but the total travel time hardly changes
+		assertSameEvents(serialEventsByPerson, 600.0);
+		double serialTravelTime = getTotalTravelTime(serialEventsByPerson);
+		assertEquals(serialTravelTime, getTotalTravelTime(super.eventsByPerson), 0.01 * serialTravelTime);
+	}
+
+	private Scenario loadScenario() {
+		Config config = ConfigUtils.loadConfig("test/scenarios/equil/config.xml");
+		MatsimRandom.reset(config.global().getRandomSeed());
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		ScenarioUtils.loadScenario(scenario);
+		return scenario;
+	}
+
+	/**
+	 * Runs the scenario with the serial and then with the parallel scheduler, and checks the events of
+	 * the parallel run.
+	 *
+	 * @return the events of the serial run
+	 */
+	private Map<Id<Person>, List<Event>> runSerialAndParallel(Scenario scenario) {
+		this.runJDEQSim(scenario);
+		Map<Id<Person>, List<Event>> serialEventsByPerson = super.eventsByPerson;
+		super.eventsByPerson = new HashMap<>();
+		
+		ConfigUtils.addOrGetModule(scenario.getConfig(), JDEQSimConfigGroup.NAME, JDEQSimConfigGroup.class).setNumberOfThreads(2);
+		this.runJDEQSim(scenario);
+		
+		assertEquals(scenario.getPopulation().getPersons().size(), super.eventsByPerson.size());
+		super.checkAscendingTimeStamps();
+		super.checkEventsCorrespondToPlans(scenario.getPopulation());
+		return serialEventsByPerson;
+	}
+
+	private void assertSameEvents(Map<Id<Person>, List<Event>> serialEventsByPerson, double timeTolerance) {
+		assertEquals(serialEventsByPerson.keySet(), super.eventsByPerson.keySet());
+		for (Map.Entry<Id<Person>, List<Event>> entry : serialEventsByPerson.entrySet()) {
+			List<Event> serialEvents = entry.getValue();
+			List<Event> parallelEvents = super.eventsByPerson.get(entry.getKey());
+			assertEquals(serialEvents.size(), parallelEvents.size());
+			for (int i = 0; i < serialEvents.size(); i++) {
+				assertEquals(serialEvents.get(i).getEventType(), parallelEvents.get(i).getEventType());
+				assertEquals(serialEvents.get(i).getTime(), parallelEvents.get(i).getTime(), timeTolerance);
+			}
+		}
+	}
+
+	private static double getTotalTravelTime(Map<Id<Person>, List<Event>> eventsByPerson) {
+		double travelTime = 0;
+		for (List<Event> events : eventsByPerson.values()) {
+			for (Event event : events) {
+				if (event instanceof PersonDepartureEvent) {
+					travelTime -= event.getTime();
+				} else if (event instanceof PersonArrivalEvent) {
+					travelTime += event.getTime();
+				}
+			}
+		}
+		return travelTime;
+	}
 	
 	/* 
 	 * This test is turned off, because it cannot pass.
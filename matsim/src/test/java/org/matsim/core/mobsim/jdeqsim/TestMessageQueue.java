@@ -1,5 +1,10 @@
 package org.matsim.core.mobsim.jdeqsim;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
 import org.matsim.core.mobsim.jdeqsim.util.DummyMessage;
 import org.matsim.testcases.MatsimTestCase;
 
@@ -130,4 +135,81 @@ public class TestMessageQueue extends MatsimTestCase {
 	
 	
 	
+	// messages far in the future and in the past of the current bucket
+	public void testFutureAndPastMessages(){
+		MessageQueue mq=new MessageQueue();
+		Message m1=new DummyMessage();
+		m1.setMessageArrivalTime(30 * 3600);
+		Message m2=new DummyMessage();
+		m2.setMessageArrivalTime(7 * 3600 + 0.5);
+		Message m3=new DummyMessage();
+		m3.setMessageArrivalTime(Double.MAX_VALUE);
+		
+		mq.putMessage(m1);
+		mq.putMessage(m2);
+		mq.putMessage(m3);
+		assertEquals(true, mq.getNextMessage()==m2);
+		
+		Message m4=new DummyMessage();
+		m4.setMessageArrivalTime(7 * 3600 + 0.2);
+		mq.putMessage(m4);
+		assertEquals(true, mq.peekNextMessage()==m4);
+		assertEquals(true, mq.getNextMessage()==m4);
+		assertEquals(true, mq.getNextMessage()==m1);
+		assertEquals(true, mq.getNextMessage()==m3);
+		assertEquals(true, mq.getNextMessage()==null);
+		assertEquals(0, mq.getQueueSize());
+		assertEquals(true, mq.isEmpty());
+	}
+	
+	// a trace like in the simulation, compared to a plain priority queue
+	public void testMessageTrace(){
+		Random random=new Random(4711);
+		MessageQueue mq=new MessageQueue();
+		PriorityQueue<Message> expected=new PriorityQueue<Message>();
+		List<Message> alive=new ArrayList<Message>();
+		
+		for (int i=0;i<1000;i++){
+			Message m=new DummyMessage();
+			m.setMessageArrivalTime(6 * 3600 + random.nextInt(4 * 3600));
+			mq.putMessage(m);
+			expected.add(m);
+		}
+		
+		int processed=0;
+		while (!expected.isEmpty()){
+			Message m=mq.getNextMessage();
+			Message e;
+			while (!(e=expected.poll()).isAlive()) {
+			}
+			assertEquals(e.getMessageArrivalTime(), m.getMessageArrivalTime(), 0.0);
+			assertEquals(e.getPriority(), m.getPriority());
+			processed++;
+			
+			if (processed < 20000) {
+				int n=random.nextInt(3);
+				for (int i=0;i<n;i++){
+					Message next=new DummyMessage();
+					double delay=random.nextDouble() < 0.05 ? random.nextInt(8 * 3600) : random.nextDouble() * 60;
+					next.setMessageArrivalTime(m.getMessageArrivalTime() + (random.nextBoolean() ? Math.floor(delay) : delay));
+					next.setPriority(random.nextInt(3) * 50);
+					mq.putMessage(next);
+					expected.add(next);
+					alive.add(next);
+				}
+				if (random.nextDouble() < 0.1 && !alive.isEmpty()){
+					Message killed=alive.remove(random.nextInt(alive.size()));
+					if (killed.isAlive() && killed.getMessageArrivalTime() > m.getMessageArrivalTime()) {
+						mq.removeMessage(killed);
+					}
+				}
+			}
+			while (!expected.isEmpty() && !expected.peek().isAlive()) {
+				expected.poll();
+			}
+		}
+		assertEquals(null, mq.getNextMessage());
+		assertEquals(0, mq.getQueueSize());
+	}
+	
 }
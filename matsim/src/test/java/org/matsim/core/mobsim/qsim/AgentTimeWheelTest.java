@@ -0,0 +1,180 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AgentTimeWheelTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+
+public class AgentTimeWheelTest {
+
+	private static MobsimAgent createAgent(final String id) {
+		return (MobsimAgent) Proxy.newProxyInstance(MobsimAgent.class.getClassLoader(), new Class<?>[] { MobsimAgent.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				switch (method.getName()) {
+					case "getId":
+						return Id.createPersonId(id);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testOrder() {
+		AgentTimeWheel wheel = new AgentTimeWheel();
+		MobsimAgent a1 = createAgent("1");
+		MobsimAgent a2 = createAgent("2");
+		MobsimAgent a3 = createAgent("3");
+		MobsimAgent a4 = createAgent("4");
+		wheel.add(a1, 7 * 3600.0);
+		wheel.add(a2, 6 * 3600.0 + 0.5);
+		wheel.add(a3, 7 * 3600.0);
+		wheel.add(a4, 6 * 3600.0);
+
+		List<MobsimAgent> agents = new ArrayList<>();
+		Assert.assertEquals(0, wheel.pollDue(5 * 3600.0, agents));
+		Assert.assertEquals(1, wheel.pollDue(6 * 3600.0, agents));
+		Assert.assertEquals(1, wheel.pollDue(6 * 3600.0 + 1, agents));
+		// same time: the agent with the larger id first
+		Assert.assertEquals(2, wheel.pollDue(8 * 3600.0, agents));
+		Assert.assertEquals(Arrays.asList(a4, a2, a3, a1), agents);
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testOrderWithinBucket() {
+		AgentTimeWheel wheel = new AgentTimeWheel();
+		List<MobsimAgent> expected = new ArrayList<>();
+		// all in the same second, added in reverse order
+		for (int i = 0; i < 1000; i++) {
+			MobsimAgent agent = createAgent(Integer.toString(i));
+			wheel.add(agent, 3600.0 + (999 - i) / 1000.0);
+			expected.add(0, agent);
+		}
+		List<MobsimAgent> agents = new ArrayList<>();
+		wheel.getAgents(agents);
+		Assert.assertEquals(expected, agents);
+		agents.clear();
+
+		Assert.assertEquals(500, wheel.pollDue(3600.4995, agents));
+		Assert.assertEquals(expected.subList(0, 500), agents);
+		// added to the current bucket after it was sorted
+		MobsimAgent late = createAgent("late");
+		wheel.add(late, 3600.6005);
+		MobsimAgent past = createAgent("past");
+		wheel.add(past, 3000.0);
+		Assert.assertEquals(502, wheel.pollDue(3601.0, agents));
+		Assert.assertEquals(past, agents.get(500));
+		Assert.assertEquals(expected.subList(500, 601), agents.subList(501, 602));
+		Assert.assertEquals(late, agents.get(602));
+		Assert.assertEquals(expected.subList(601, 1000), agents.subList(603, 1002));
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testRemoveAndPast() {
+		AgentTimeWheel wheel = new AgentTimeWheel();
+		MobsimAgent a1 = createAgent("1");
+		MobsimAgent a2 = createAgent("2");
+		wheel.add(a1, 100.0);
+		wheel.add(a2, 200.0);
+
+		List<MobsimAgent> agents = new ArrayList<>();
+		Assert.assertEquals(0, wheel.pollDue(50.0, agents));
+		Assert.assertTrue(wheel.remove(a1));
+		Assert.assertFalse(wheel.remove(a1));
+		// rescheduled into the past of the wheel
+		wheel.add(a1, 10.0);
+		Assert.assertEquals(10.0, wheel.getTime(a1), 0.0);
+		Assert.assertEquals(2, wheel.pollDue(200.0, agents));
+		Assert.assertEquals(Arrays.asList(a1, a2), agents);
+		Assert.assertTrue(Double.isNaN(wheel.getTime(a1)));
+	}
+
+	@Test
+	public void testFarFuture() {
+		AgentTimeWheel wheel = new AgentTimeWheel();
+		MobsimAgent a1 = createAgent("1");
+		MobsimAgent a2 = createAgent("2");
+		MobsimAgent a3 = createAgent("3");
+		wheel.add(a1, 1e7);
+		wheel.add(a2, 1e7 - 1);
+		wheel.add(a3, 5e6);
+
+		List<MobsimAgent> agents = new ArrayList<>();
+		wheel.getAgents(agents);
+		Assert.assertEquals(Arrays.asList(a3, a2, a1), agents);
+		agents.clear();
+
+		Assert.assertEquals(0, wheel.pollDue(3600.0, agents));
+		Assert.assertTrue(wheel.remove(a3));
+		Assert.assertEquals(1, wheel.pollDue(1e7 - 1, agents));
+		Assert.assertEquals(1, wheel.pollDue(1e7, agents));
+		Assert.assertEquals(Arrays.asList(a2, a1), agents);
+
+		// removed from the overflow and added again with the same time
+		wheel.add(a3, 2e7);
+		Assert.assertTrue(wheel.remove(a3));
+		wheel.add(a3, 2e7);
+		wheel.add(a1, 2e7);
+		Assert.assertEquals(2, wheel.pollDue(2e7, agents));
+		Assert.assertEquals(Arrays.asList(a2, a1, a3, a1), agents);
+		Assert.assertEquals(0, wheel.size());
+
+		wheel.add(a1, 3e7);
+		wheel.clear();
+		Assert.assertEquals(0, wheel.size());
+		Assert.assertEquals(0, wheel.pollDue(4e7, agents));
+	}
+
+	@Test
+	public void testOverflowIsMovedGradually() {
+		AgentTimeWheel wheel = new AgentTimeWheel();
+		List<MobsimAgent> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			MobsimAgent agent = createAgent(Integer.toString(i));
+			wheel.add(agent, 1e6 + 1000.0 * i);
+			expected.add(agent);
+		}
+		List<MobsimAgent> agents = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(1, wheel.pollDue(1e6 + 1000.0 * i, agents));
+		}
+		Assert.assertEquals(expected, agents);
+		Assert.assertEquals(0, wheel.size());
+	}
+
+}
@@ -0,0 +1,108 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QSimStepStatisticsTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class QSimStepStatisticsTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testWriteFile() throws IOException {
+		QSimStepStatistics statistics = new QSimStepStatistics(100);
+		QSimStepStatistics.Column column = statistics.createColumn("test");
+		statistics.add(column, 10.0, 5);
+		statistics.add(column, 10.5, 2);
+		statistics.add(column, 12.0, 3);
+		statistics.add(column, -1.0, 3); // before the start of the simulation, ignored
+		statistics.handleEvent(new PersonDepartureEvent(11.0, Id.createPersonId(1), Id.createLinkId(1), "car"));
+
+		String filename = this.utils.getOutputDirectory() + "stats.txt";
+		statistics.writeFile(filename);
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			Assert.assertEquals("time\tevents\ttest", reader.readLine());
+			Assert.assertEquals("10\t0\t7", reader.readLine());
+			Assert.assertEquals("11\t1\t0", reader.readLine());
+			Assert.assertEquals("12\t0\t3", reader.readLine());
+			Assert.assertNull(reader.readLine());
+		}
+	}
+
+	@Test
+	public void testColumnsGrowBeyondInitialTimeSteps() throws IOException {
+		QSimStepStatistics statistics = new QSimStepStatistics(10);
+		QSimStepStatistics.Column column = statistics.createColumn("test");
+		statistics.add(column, 9.0, 1);
+		statistics.add(column, 25 * 3600.0, 2);
+		statistics.handleEvent(new PersonDepartureEvent(12.0, Id.createPersonId(1), Id.createLinkId(1), "car"));
+		statistics.handleEvent(new PersonDepartureEvent(25 * 3600.0, Id.createPersonId(1), Id.createLinkId(1), "car"));
+		Assert.assertEquals(3, column.getTotal());
+
+		String filename = this.utils.getOutputDirectory() + "stats.txt";
+		statistics.writeFile(filename);
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			Assert.assertEquals("time\tevents\ttest", reader.readLine());
+			Assert.assertEquals("9\t0\t1", reader.readLine());
+			String line = null;
+			String lastLine = null;
+			while ((line = reader.readLine()) != null) {
+				lastLine = line;
+			}
+			Assert.assertEquals((25 * 3600) + "\t1\t2", lastLine);
+		}
+	}
+
+	@Test
+	public void testStatisticsAreWrittenToIterationDirectory() {
+		Config config = this.utils.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(0);
+		config.controler().setOverwriteFileSetting(OverwriteFileSetting.deleteDirectoryIfExists);
+
+		boolean analyzeRunTimes = QSim.analyzeRunTimes;
+		QSim.analyzeRunTimes = true;
+		try {
+			new Controler(config).run();
+		} finally {
+			QSim.analyzeRunTimes = analyzeRunTimes;
+		}
+
+		File file = new File(config.controler().getOutputDirectory() + "/ITERS/it.0/0.qsimStepStatistics.txt.gz");
+		Assert.assertTrue(file.exists());
+	}
+
+}
@@ -809,6 +809,65 @@ public class QSimTest {
 
 	}
 
+	/**
+	 * Tests that departures and arrivals, which are handled by the runners of the
+	 * QNetsimEngine if the QSim uses more than one thread, result in the same
+	 * events for every agent as with one thread. The agents end an activity of
+	 * zero duration on link 2, thus depart again right after their arrival.
+	 */
+	@Test
+	public void testParallelDeparturesAndArrivals() {
+		Map<String, List<String>> sequentialEvents = runDeparturesAndArrivals(1);
+		Map<String, List<String>> parallelEvents = runDeparturesAndArrivals(2);
+		Assert.assertEquals(3000, sequentialEvents.size());
+		Assert.assertEquals(sequentialEvents, parallelEvents);
+	}
+
+	private Map<String, List<String>> runDeparturesAndArrivals(int numberOfThreads) {
+		Fixture f = new Fixture(isUsingFastCapacityUpdate);
+		f.config.qsim().setNumberOfThreads(numberOfThreads);
+
+		for (int i = 1; i <= 3000; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+			a1.setEndTime(6*3600 + i % 600);
+			Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(f.link1.getId(), f.link2.getId());
+			leg.setRoute(route);
+			Activity a2 = PopulationUtils.createAndAddActivityFromLinkId(plan, "s", f.link2.getId());
+			a2.setEndTime(0);
+			leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			route = RouteUtils.createLinkNetworkRouteImpl(f.link2.getId(), f.link3.getId());
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+			f.plans.addPerson(person);
+		}
+
+		final Map<String, List<String>> agentEvents = new HashMap<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(new BasicEventHandler() {
+			@Override
+			public void handleEvent(Event event) {
+				Map<String, String> attributes = event.getAttributes();
+				String agent = attributes.containsKey("person") ? attributes.get("person") : attributes.get("vehicle");
+				List<String> list = agentEvents.get(agent);
+				if (list == null) {
+					list = new ArrayList<>();
+					agentEvents.put(agent, list);
+				}
+				list.add(event.getEventType() + " " + attributes.get("link") + " " + event.getTime());
+			}
+
+			@Override
+			public void reset(int iteration) {
+			}
+		});
+
+		createQSim(f, events).run();
+		return agentEvents;
+	}
+
 	/**
 	 * Tests that vehicles are teleported if needed so that agents can use the car wherever they want.
 	 *
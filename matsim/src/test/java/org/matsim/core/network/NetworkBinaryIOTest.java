@@ -0,0 +1,236 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * NetworkBinaryIOTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.NetworkWriter;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.examples.ExamplesUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class NetworkBinaryIOTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testRoundTrip() {
+		Network network = createTestNetwork();
+		String filename = utils.getOutputDirectory() + "network.mnet";
+		new NetworkWriter(network).write(filename);
+
+		Network read = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(read).readFile(filename);
+		assertEqualNetworks(network, read);
+
+		Node zurich = read.getNodes().get(Id.createNodeId("Zurich"));
+		Assert.assertEquals(400, zurich.getCoord().getZ(), 0.0);
+		Assert.assertFalse(read.getNodes().get(Id.createNodeId("Teltow")).getCoord().hasZ());
+		Assert.assertEquals("city", NetworkUtils.getType(zurich));
+		Assert.assertEquals("ZH", NetworkUtils.getOrigId(zurich));
+		Assert.assertEquals(2016, read.getAttributes().getAttribute("year"));
+		Assert.assertEquals(false, zurich.getAttributes().getAttribute("Developper Meeting"));
+		Link trip = read.getLinks().get(Id.createLinkId("trip"));
+		Assert.assertEquals(3, trip.getAttributes().getAttribute("number of modes"));
+		Assert.assertEquals("motorway", NetworkUtils.getType(trip));
+	}
+
+	@Test
+	public void testCompressedStreamAndUrl() throws IOException {
+		Network network = createTestNetwork();
+		String filename = utils.getOutputDirectory() + "network.mnet";
+		new NetworkWriter(network).writeBinary(filename);
+		new NetworkWriter(network).write(filename + ".gz");
+
+		Network compressed = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(compressed).readFile(filename + ".gz");
+		assertEqualNetworks(network, compressed);
+
+		Network streamed = NetworkUtils.createNetwork();
+		try (InputStream in = new FileInputStream(filename)) {
+			new MatsimNetworkReader(streamed).parse(in);
+		}
+		assertEqualNetworks(network, streamed);
+
+		Network fromUrl = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(fromUrl).parse(new File(filename).toURI().toURL());
+		assertEqualNetworks(network, fromUrl);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testUnescapedFileUrl() throws IOException {
+		URL url = IOUtils.newUrl(ExamplesUtils.getTestScenarioURL("berlin"), "network.xml.gz");
+		Network network = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(network).parse(url);
+
+		File directory = new File(utils.getOutputDirectory() + "with space");
+		Assert.assertTrue(directory.mkdirs());
+		String xmlFilename = new File(directory, "network.xml").getPath();
+		new NetworkWriter(network).write(xmlFilename);
+		String binaryFilename = new File(directory, "network.mnet").getPath();
+		new NetworkWriter(network).writeBinary(binaryFilename);
+
+		// File.toURL() does not escape the space
+		Network xml = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(xml).parse(new File(xmlFilename).toURL());
+		assertEqualNetworks(network, xml);
+
+		Network binary = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(binary).parse(new File(binaryFilename).toURL());
+		assertEqualNetworks(network, binary);
+	}
+
+	@Test
+	public void testJarUrl() throws IOException {
+		Network network = createTestNetwork();
+		String binaryFilename = utils.getOutputDirectory() + "network.mnet";
+		new NetworkWriter(network).writeBinary(binaryFilename);
+		String xmlFilename = utils.getOutputDirectory() + "network.xml";
+		new NetworkWriter(network).write(xmlFilename);
+		File zip = new File(utils.getOutputDirectory() + "networks.zip");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+			for (String filename : Arrays.asList(binaryFilename, xmlFilename)) {
+				out.putNextEntry(new ZipEntry(new File(filename).getName()));
+				Files.copy(Paths.get(filename), out);
+				out.closeEntry();
+			}
+		}
+
+		// not a file, so the entries are read as streams
+		Network binary = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(binary).parse(new URL("jar:" + zip.toURI() + "!/network.mnet"));
+		assertEqualNetworks(network, binary);
+
+		Network xml = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(xml).parse(new URL("jar:" + zip.toURI() + "!/network.xml"));
+		assertEqualNetworks(network, xml);
+	}
+
+	@Test
+	public void testSameAsXml() {
+		URL url = IOUtils.newUrl(ExamplesUtils.getTestScenarioURL("berlin"), "network.xml.gz");
+		Network xml = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(xml).parse(url);
+
+		String filename = utils.getOutputDirectory() + "network.mnet";
+		new NetworkWriter(xml).writeBinary(filename);
+		Network binary = NetworkUtils.createNetwork();
+		new MatsimNetworkReader(binary).readFile(filename);
+
+		assertEqualNetworks(xml, binary);
+	}
+
+	private static void assertEqualNetworks(Network expected, Network actual) {
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertEquals(expected.getCapacityPeriod(), actual.getCapacityPeriod(), 0.0);
+		Assert.assertEquals(expected.getEffectiveCellSize(), actual.getEffectiveCellSize(), 0.0);
+		Assert.assertEquals(expected.getEffectiveLaneWidth(), actual.getEffectiveLaneWidth(), 0.0);
+		Assert.assertEquals(expected.getAttributes().toString(), actual.getAttributes().toString());
+		Assert.assertEquals(expected.getNodes().size(), actual.getNodes().size());
+		for (Node node : expected.getNodes().values()) {
+			Node other = actual.getNodes().get(node.getId());
+			Assert.assertNotNull(other);
+			Assert.assertEquals(node.getCoord(), other.getCoord());
+			Assert.assertEquals(NetworkUtils.getType(node), NetworkUtils.getType(other));
+			Assert.assertEquals(NetworkUtils.getOrigId(node), NetworkUtils.getOrigId(other));
+			Assert.assertEquals(node.getAttributes().toString(), other.getAttributes().toString());
+		}
+		Assert.assertEquals(expected.getLinks().size(), actual.getLinks().size());
+		Iterator<Id<Link>> actualIds = actual.getLinks().keySet().iterator();
+		for (Link link : NetworkUtils.getSortedLinks(expected)) {
+			Link other = actual.getLinks().get(link.getId());
+			Assert.assertEquals("links should be read in sorted order", link.getId(), actualIds.next());
+			Assert.assertEquals(link.getFromNode().getId(), other.getFromNode().getId());
+			Assert.assertEquals(link.getToNode().getId(), other.getToNode().getId());
+			Assert.assertEquals(link.getLength(), other.getLength(), 0.0);
+			Assert.assertEquals(link.getFreespeed(), other.getFreespeed(), 0.0);
+			Assert.assertEquals(link.getCapacity(), other.getCapacity(), 0.0);
+			Assert.assertEquals(link.getNumberOfLanes(), other.getNumberOfLanes(), 0.0);
+			Assert.assertEquals(link.getAllowedModes(), other.getAllowedModes());
+			Assert.assertEquals(link.getAttributes().toString(), other.getAttributes().toString());
+		}
+	}
+
+	private static Network createTestNetwork() {
+		Network network = NetworkUtils.createNetwork();
+		NetworkFactory factory = network.getFactory();
+		network.setName("test network");
+		network.setCapacityPeriod(7200);
+		network.getAttributes().putAttribute("year", 2016);
+
+		Node zurich = factory.createNode(Id.createNodeId("Zurich"), new Coord(0, 0, 400));
+		Node teltow = factory.createNode(Id.createNodeId("Teltow"), new Coord(1, 1));
+		Node bern = factory.createNode(Id.createNodeId("Bern"), new Coord(-1.5, 2.25));
+		NetworkUtils.setType(zurich, "city");
+		NetworkUtils.setOrigId(zurich, "ZH");
+		zurich.getAttributes().putAttribute("Internet", "good");
+		zurich.getAttributes().putAttribute("Developper Meeting", false);
+		teltow.getAttributes().putAttribute("Internet", "not so good");
+		network.addNode(zurich);
+		network.addNode(teltow);
+		network.addNode(bern);
+
+		Link trip = factory.createLink(Id.createLinkId("trip"), zurich, teltow);
+		trip.setLength(5000);
+		trip.setFreespeed(33.3);
+		trip.setCapacity(1800);
+		trip.setNumberOfLanes(2);
+		trip.setAllowedModes(new HashSet<>(Arrays.asList("car", "bike", "walk")));
+		trip.getAttributes().putAttribute("number of modes", 3);
+		NetworkUtils.setType(trip, "motorway");
+		network.addLink(trip);
+
+		Link back = factory.createLink(Id.createLinkId("back"), teltow, zurich);
+		back.setLength(5100);
+		back.setAllowedModes(new HashSet<>(Arrays.asList("car", "bike", "walk")));
+		network.addLink(back);
+
+		Link noModes = factory.createLink(Id.createLinkId("über"), zurich, bern);
+		noModes.setAllowedModes(new HashSet<>());
+		network.addLink(noModes);
+
+		return network;
+	}
+}
@@ -352,6 +352,67 @@ public class TimeVariantLinkImplTest extends MatsimTestCase {
 	}
 
 
+	/**
+	 * Tests that links with the same change events share their profiles, also if their base values differ, and that
+	 * clearing the events of one link does not change the other.
+	 */
+	public void testSharedProfiles() {
+		for (LinkFactory lf : linkFactories(15 * 60, 30 * 3600)) {
+			final Network network = NetworkUtils.createNetwork();
+			NetworkFactory nf = network.getFactory();
+			nf.setLinkFactory(lf);
+			((NetworkImpl)network).setFactory(nf);
+
+			Node node1 = NetworkUtils.createAndAddNode(network, Id.create("1", Node.class), new Coord((double) 0, (double) 0));
+			Node node2 = NetworkUtils.createAndAddNode(network, Id.create("2", Node.class), new Coord((double) 100, (double) 0));
+			TimeVariantLinkImpl link1 = (TimeVariantLinkImpl)NetworkUtils.createAndAddLink(network,Id.create("1", Link.class), node1, node2, (double) 100, (double) 10, (double) 3600, (double) 1 );
+			TimeVariantLinkImpl link2 = (TimeVariantLinkImpl)NetworkUtils.createAndAddLink(network,Id.create("2", Link.class), node2, node1, (double) 100, (double) 20, (double) 1800, (double) 1 );
+
+			// applied out of order, as by the change events engine for events added during the simulation
+			for (double startTime : new double[] {9*3600.0, 7*3600.0}) {
+				NetworkChangeEvent change = new NetworkChangeEvent(startTime);
+				change.addLink(link1);
+				change.addLink(link2);
+				change.setFreespeedChange(new ChangeValue(ChangeType.FACTOR, 0.8));
+				change.setFlowCapacityChange(new ChangeValue(ChangeType.FACTOR, 0.5));
+				link1.applyEvent(change);
+				link2.applyEvent(change);
+			}
+
+			assertEquals(10.0, link1.getFreespeed(7*3600.0 - 1.0), EPSILON);
+			assertEquals(8.0, link1.getFreespeed(7*3600.0), EPSILON);
+			assertEquals(6.4, link1.getFreespeed(9*3600.0), EPSILON);
+			assertEquals(12.8, link2.getFreespeed(9*3600.0), EPSILON);
+			assertEquals(900.0, link1.getCapacity(9*3600.0), EPSILON);
+			assertEquals(450.0, link2.getCapacity(9*3600.0), EPSILON);
+			assertTrue(((NetworkImpl)network).getTimeVariantProfilePool().size() > 0);
+			assertEquals(2, getProfile(link1.getVariableFreespeed()).getChangesCount());
+			assertSame(getProfile(link1.getVariableFreespeed()), getProfile(link2.getVariableFreespeed()));
+			assertSame(getProfile(link1.getVariableFlowCapacity()), getProfile(link2.getVariableFlowCapacity()));
+
+			// replaces the event at 9:00, so there is no more freespeed change then
+			NetworkChangeEvent replacement = new NetworkChangeEvent(9*3600.0);
+			replacement.addLink(link2);
+			replacement.setFlowCapacityChange(new ChangeValue(ChangeType.ABSOLUTE_IN_SI_UNITS, 0.1));
+			link2.applyEvent(replacement);
+			assertEquals(16.0, link2.getFreespeed(9*3600.0), EPSILON);
+			assertEquals(360.0, link2.getCapacity(9*3600.0), EPSILON);
+			assertEquals(6.4, link1.getFreespeed(9*3600.0), EPSILON);
+
+			link1.clearEvents();
+			assertEquals(0, getProfile(link1.getVariableFreespeed()).getChangesCount());
+			assertEquals(10.0, link1.getFreespeed(9*3600.0), EPSILON);
+			assertEquals(16.0, link2.getFreespeed(9*3600.0), EPSILON);
+		}
+	}
+
+	private static TimeVariantProfile getProfile(TimeVariantAttribute attribute) {
+		if (attribute instanceof FixedIntervalTimeVariantAttribute) {
+			return ((FixedIntervalTimeVariantAttribute) attribute).getProfile();
+		}
+		return ((VariableIntervalTimeVariantAttribute) attribute).getProfile();
+	}
+
     static LinkFactory[] linkFactories(int interval, int maxTime)
     {
         return new LinkFactory[] {
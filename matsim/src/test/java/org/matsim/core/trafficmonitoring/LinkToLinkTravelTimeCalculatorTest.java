@@ -103,4 +103,36 @@ public class LinkToLinkTravelTimeCalculatorTest extends MatsimTestCase {
 		assertEquals( 1 * 60, ttcalc.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link1, link3, 7.0 * 3600 + 5 * 60 + 4*timeBinSize), EPSILON);  // linkTravelTime3 - 1*timeBinSize
 		assertEquals(10     , ttcalc.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link1, link3, 7.0 * 3600 + 5 * 60 + 5*timeBinSize), EPSILON);  // freespeedTravelTime > linkTravelTime2b - 2*timeBinSize
 	}
+
+	public void testUnobservedTurnsAndUnknownLinks() {
+		MutableScenario scenario = (MutableScenario) ScenarioUtils.createScenario(loadConfig(null));
+		scenario.getConfig().travelTimeCalculator().setCalculateLinkToLinkTravelTimes(true);
+		Network network = scenario.getNetwork();
+		Node node1 = NetworkUtils.createAndAddNode(network, Id.create(1, Node.class), new Coord((double) 0, (double) 0));
+		Node node2 = NetworkUtils.createAndAddNode(network, Id.create(2, Node.class), new Coord((double) 1000, (double) 0));
+		Node node3 = NetworkUtils.createAndAddNode(network, Id.create(3, Node.class), new Coord((double) 2000, (double) 0));
+		Link link1 = NetworkUtils.createAndAddLink(network,Id.create(1, Link.class), node1, node2, 1000.0, 100.0, 3600.0, 1.0 );
+		Link link2 = NetworkUtils.createAndAddLink(network,Id.create(2, Link.class), node2, node3, 500.0, 10.0, 3600.0, 1.0 );
+		Id<Link> unknownLinkId = Id.create(99, Link.class);
+
+		TravelTimeCalculator ttcalc = new TravelTimeCalculator(network, 15*60, 12*3600, scenario.getConfig().travelTimeCalculator());
+
+		// events on links which are not part of the network must not break the calculator
+		Id<Vehicle> vehId = Id.create(11, Vehicle.class);
+		ttcalc.handleEvent(new LinkEnterEvent(7.0 * 3600, vehId, link1.getId()));
+		ttcalc.handleEvent(new LinkLeaveEvent(7.0 * 3600 + 100, vehId, link1.getId()));
+		ttcalc.handleEvent(new LinkEnterEvent(7.0 * 3600 + 100, vehId, unknownLinkId));
+		ttcalc.handleEvent(new LinkLeaveEvent(7.0 * 3600 + 200, vehId, unknownLinkId));
+		ttcalc.handleEvent(new LinkEnterEvent(7.0 * 3600 + 200, vehId, link2.getId()));
+
+		// turns which were not observed are passed with the free speed travel time of the from-link
+		assertEquals(50, ttcalc.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link2, link1, 7.0 * 3600), EPSILON);
+		assertEquals(10, ttcalc.getLinkToLinkTravelTime(link1.getId(), link2.getId(), 7.0 * 3600), EPSILON);
+		assertEquals(10, ttcalc.getLinkToLinkTravelTime(link1.getId(), unknownLinkId, 7.0 * 3600), EPSILON);
+		try {
+			ttcalc.getLinkToLinkTravelTime(unknownLinkId, link2.getId(), 7.0 * 3600);
+			fail("expected exception for a from-link which is not part of the network");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
 }
@@ -37,6 +37,7 @@ import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
@@ -579,4 +580,81 @@ public class TravelTimeCalculatorTest extends MatsimTestCase {
 		Assert.assertEquals("Filtering analyzed transport modes is enabled, but no modes set. Therefore, use default (=car)", 100.0, 
 				ttc.getLinkTravelTimes().getLinkTravelTime(link2, 200, null, null), 1e-8);
 	}
+
+	/**
+	 * Vehicles are stored internally by a dense index. Make sure that many vehicles
+	 * are handled correctly and that arriving vehicles do not count their activity
+	 * time as link travel time when they depart again.
+	 */
+	public void testGetLinkTravelTime_ManyVehicles() {
+		Network network = NetworkUtils.createNetwork();
+		TravelTimeCalculatorConfigGroup config = new TravelTimeCalculatorConfigGroup();
+		config.setTraveltimeBinSize(900);
+
+		Node n1 = network.getFactory().createNode(Id.create(1, Node.class), new Coord(0, 0));
+		Node n2 = network.getFactory().createNode(Id.create(2, Node.class), new Coord(1000, 0));
+		Node n3 = network.getFactory().createNode(Id.create(3, Node.class), new Coord(2000, 0));
+		network.addNode(n1);
+		network.addNode(n2);
+		network.addNode(n3);
+		Link link1 = network.getFactory().createLink(Id.create(1, Link.class), n1, n2);
+		Link link2 = network.getFactory().createLink(Id.create(2, Link.class), n2, n3);
+		network.addLink(link1);
+		network.addLink(link2);
+
+		TravelTimeCalculator ttc = new TravelTimeCalculator(network, config);
+
+		for (int i = 0; i < 100; i++) {
+			Id<Vehicle> vehId = Id.create(i, Vehicle.class);
+			ttc.handleEvent(new LinkEnterEvent(100 + i, vehId, link2.getId()));
+			ttc.handleEvent(new LinkLeaveEvent(100 + i + 50 + (i % 2) * 20, vehId, link2.getId()));
+		}
+		Assert.assertEquals(60.0, ttc.getLinkTravelTimes().getLinkTravelTime(link2, 200, null, null), 1e-8);
+
+		// vehicle 0 arrives on link1, performs an activity and departs again
+		Id<Person> agId = Id.create(0, Person.class);
+		Id<Vehicle> vehId = Id.create(0, Vehicle.class);
+		ttc.handleEvent(new LinkEnterEvent(1000, vehId, link1.getId()));
+		ttc.handleEvent(new VehicleLeavesTrafficEvent(1100, agId, link1.getId(), vehId, TransportMode.car, 1.0));
+		ttc.handleEvent(new VehicleEntersTrafficEvent(1700, agId, link1.getId(), vehId, TransportMode.car, 1.0));
+		ttc.handleEvent(new LinkLeaveEvent(1710, vehId, link1.getId()));
+
+		Assert.assertEquals("no travel time must be recorded for a vehicle that departed from the link", 
+				link1.getLength() / link1.getFreespeed(), ttc.getLinkTravelTimes().getLinkTravelTime(link1, 1000, null, null), 1e-8);
+	}
+
+	/**
+	 * Tests that stored travel times are read back per time bin and can be used as initial travel times,
+	 * until the calculator is reset.
+	 */
+	public void testTravelTimeStore() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		final Node fromNode = NetworkUtils.createAndAddNode(network, Id.create("1", Node.class), new Coord(0, 0));
+		final Node toNode = NetworkUtils.createAndAddNode(network, Id.create("2", Node.class), new Coord(1000, 0));
+		Link link1 = NetworkUtils.createAndAddLink(network, Id.create("1", Link.class), fromNode, toNode, 1000.0, 10.0, 3600.0, 1.0 );
+		Link link2 = NetworkUtils.createAndAddLink(network, Id.create("2", Link.class), toNode, fromNode, 1000.0, 10.0, 3600.0, 1.0 );
+		Id<Vehicle> vehId = Id.create("1", Vehicle.class);
+
+		int timeBinSize = 15*60;
+		TravelTimeCalculator ttcalc = new TravelTimeCalculator(network, timeBinSize, 12*3600, scenario.getConfig().travelTimeCalculator());
+		ttcalc.handleEvent(new LinkEnterEvent(7 * 3600, vehId, link1.getId()));
+		ttcalc.handleEvent(new LinkLeaveEvent(7 * 3600 + 250, vehId, link1.getId()));
+
+		String filename = getOutputDirectory() + TravelTimeStore.FILENAME;
+		TravelTimeStore.write(ttcalc, network, filename);
+		TravelTimeStore store = TravelTimeStore.read(filename);
+		assertEquals(timeBinSize, store.getTimeBinSize());
+		assertEquals(ttcalc.getNumSlots(), store.getTimeBinCount());
+		assertEquals(250.0, store.getLinkTravelTime(link1, 7 * 3600 + 100, null, null), EPSILON);
+		assertEquals(100.0, store.getLinkTravelTime(link1, 8 * 3600, null, null), EPSILON);
+		assertEquals(100.0, store.getLinkTravelTime(link2, 7 * 3600, null, null), EPSILON);
+
+		TravelTimeCalculator warmStarted = new TravelTimeCalculator(network, timeBinSize, 12*3600, scenario.getConfig().travelTimeCalculator());
+		warmStarted.setInitialTravelTimes(store, network);
+		assertEquals(250.0, warmStarted.getLinkTravelTimes().getLinkTravelTime(link1, 7 * 3600 + 100, null, null), EPSILON);
+		assertEquals(100.0, warmStarted.getLinkTravelTimes().getLinkTravelTime(link2, 7 * 3600 + 100, null, null), EPSILON);
+		warmStarted.reset(0);
+		assertEquals(100.0, warmStarted.getLinkTravelTimes().getLinkTravelTime(link1, 7 * 3600 + 100, null, null), EPSILON);
+	}
 }
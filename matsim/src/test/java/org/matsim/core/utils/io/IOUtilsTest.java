@@ -19,17 +19,25 @@
  * *********************************************************************** */
 package org.matsim.core.utils.io;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.log4j.Logger;
 import org.junit.Assert;
@@ -218,6 +226,91 @@ public class IOUtilsTest {
 		Assert.assertTrue("compressed file should be less than 50 bytes, but is " + file.length(), file.length() < 50);
 	}
 
+	/**
+	 * Writes enough data to be compressed in several blocks in parallel, and makes sure the result is a
+	 * regular gzip file.
+	 */
+	@Test
+	public void testGetBufferedWriter_gzipped_largeFile() throws IOException {
+		String filename = this.utils.getOutputDirectory() + "test.txt.gz";
+		String content = createContent(100000);
+		BufferedWriter writer = IOUtils.getBufferedWriter(filename);
+		writer.write(content);
+		writer.close();
+
+		try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(filename)), IOUtils.CHARSET_UTF8)) {
+			Assert.assertEquals(content, readFully(reader));
+		}
+		Assert.assertTrue(new File(filename).length() < content.length() / 3);
+	}
+
+	@Test
+	public void testGetBufferedWriter_lz4() throws IOException {
+		String filename = this.utils.getOutputDirectory() + "test.txt.lz4";
+		String content = createContent(100000);
+		BufferedWriter writer = IOUtils.getBufferedWriter(filename);
+		writer.write(content);
+		writer.close();
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			Assert.assertEquals(content, readFully(reader));
+		}
+		Assert.assertTrue(new File(filename).length() < content.length() / 2);
+		// the compressed file should also be found without its ending
+		try (BufferedReader reader = IOUtils.getBufferedReader(this.utils.getOutputDirectory() + "test.txt")) {
+			Assert.assertEquals(content, readFully(reader));
+		}
+	}
+
+	@Test
+	public void testGetOutputStream_compressed_randomData() throws IOException {
+		byte[] data = new byte[1000000];
+		new Random(4711).nextBytes(data);
+		for (String extension : new String[] {".gz", ".lz4"}) {
+			String filename = this.utils.getOutputDirectory() + "test.bin" + extension;
+			try (OutputStream out = IOUtils.getOutputStream(filename)) {
+				out.write(data, 0, 10);
+				out.write(data[10]);
+				out.write(data, 11, data.length - 11);
+			}
+			ByteArrayOutputStream read = new ByteArrayOutputStream();
+			try (InputStream in = IOUtils.getInputStream(filename)) {
+				IOUtils.copyStream(in, read);
+			}
+			Assert.assertArrayEquals(extension, data, read.toByteArray());
+		}
+	}
+
+	@Test
+	public void testGetOutputStream_compressed_empty() throws IOException {
+		for (String extension : new String[] {".gz", ".lz4"}) {
+			String filename = this.utils.getOutputDirectory() + "test.txt" + extension;
+			IOUtils.getOutputStream(filename).close();
+			try (InputStream in = IOUtils.getInputStream(filename)) {
+				Assert.assertEquals(extension, -1, in.read());
+			}
+		}
+	}
+
+	private static String createContent(final int numberOfLines) {
+		StringBuilder content = new StringBuilder();
+		Random random = new Random(4711);
+		for (int i = 0; i < numberOfLines; i++) {
+			content.append("line ").append(i).append('\t').append(random.nextInt(1000)).append(" \u00e4\u00f6\u00fc\n");
+		}
+		return content.toString();
+	}
+
+	private static String readFully(final Reader reader) throws IOException {
+		StringBuilder content = new StringBuilder();
+		char[] buffer = new char[8192];
+		int n;
+		while ((n = reader.read(buffer)) >= 0) {
+			content.append(buffer, 0, n);
+		}
+		return content.toString();
+	}
+
 	@Test
 	public void testGetInputStream_UTFwithoutBOM() throws IOException {
 		String filename = utils.getOutputDirectory() + "test.txt";
@@ -361,4 +454,24 @@ public class IOUtilsTest {
 		System.out.println(url.toString());
 	}
 
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testGetPath() throws MalformedURLException {
+		File file = new File(this.utils.getOutputDirectory() + "with space+plus.xml").getAbsoluteFile();
+		Assert.assertEquals(file.toPath(), IOUtils.getPath(file.toURI().toURL()));
+		// File.toURL() does not escape the space
+		Assert.assertEquals(file.toPath(), IOUtils.getPath(file.toURL()));
+		Assert.assertEquals(Paths.get("network.xml"), IOUtils.getPath(new URL("file:network.xml")));
+		Assert.assertNull(IOUtils.getPath(new URL("http://www.matsim.org/files/dtd/network_v2.dtd")));
+	}
+
+	@Test
+	public void testStartsWith() throws IOException {
+		InputStream in = new BufferedInputStream(new ByteArrayInputStream("MATSim".getBytes("UTF-8")));
+		Assert.assertTrue(IOUtils.startsWith(in, "MAT".getBytes("UTF-8")));
+		Assert.assertFalse(IOUtils.startsWith(in, "MATSim!".getBytes("UTF-8")));
+		Assert.assertFalse(IOUtils.startsWith(in, "XML".getBytes("UTF-8")));
+		Assert.assertEquals('M', in.read());
+	}
+
 }
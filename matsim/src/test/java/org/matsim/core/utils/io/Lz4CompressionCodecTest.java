@@ -0,0 +1,103 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * Lz4CompressionCodecTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Lz4CompressionCodecTest {
+
+	@Test
+	public void testXxHash32() {
+		Assert.assertEquals(0x02CC5D05, Lz4CompressionCodec.xxHash32(new byte[0], 0, 0, 0));
+		// the header checksum of the frames written by the lz4 command line tool with default settings
+		Assert.assertEquals((byte) 0xA7, (byte) (Lz4CompressionCodec.xxHash32(new byte[] {0x64, 0x40}, 0, 2, 0) >>> 8));
+	}
+
+	/**
+	 * Reads a frame with content checksum, as written by the lz4 command line tool, whose block contains
+	 * a match overlapping with its own output.
+	 */
+	@Test
+	public void testReadFrame() throws IOException {
+		byte[] frame = {
+				0x04, 0x22, 0x4D, 0x18, 0x64, 0x40, (byte) 0xA7, // magic, descriptor, header checksum
+				0x0D, 0x00, 0x00, 0x00, // block size
+				0x44, 'a', 'b', 'c', 'd', 0x04, 0x00, // 4 literals, match of length 8 at offset 4
+				0x50, 'e', 'f', 'g', 'h', 'i', // 5 literals
+				0x00, 0x00, 0x00, 0x00, // end mark
+				0x00, 0x00, 0x00, 0x00}; // content checksum, not verified
+		InputStream in = new Lz4CompressionCodec().createInputStream(new ByteArrayInputStream(frame));
+		Assert.assertEquals("abcdabcdabcdefghi", new String(readFully(in), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(4711);
+		byte[] data = new byte[2000000];
+		for (int i = 0; i < data.length; i++) {
+			// compressible, but with matches of varying lengths and offsets
+			data[i] = (byte) (random.nextInt(100) < 90 && i > 70000 ? data[i - 1 - random.nextInt(70000)] : random.nextInt(16));
+		}
+		for (int length : new int[] {0, 1, 12, 13, 100, 70000, data.length}) {
+			byte[] original = Arrays.copyOf(data, length);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = new Lz4CompressionCodec().createOutputStream(compressed)) {
+				out.write(original);
+			}
+			byte[] decompressed = readFully(new Lz4CompressionCodec().createInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+			Assert.assertArrayEquals("length " + length, original, decompressed);
+		}
+	}
+
+	@Test
+	public void testCorruptBlock() {
+		byte[] frame = {
+				0x04, 0x22, 0x4D, 0x18, 0x60, 0x40, 0, // magic, descriptor
+				0x03, 0x00, 0x00, 0x00, // block size
+				0x10, 'a', 0x05, // invalid offset
+				0x00, 0x00, 0x00, 0x00}; // end mark
+		frame[6] = (byte) (Lz4CompressionCodec.xxHash32(frame, 4, 2, 0) >>> 8);
+		try {
+			readFully(new Lz4CompressionCodec().createInputStream(new ByteArrayInputStream(frame)));
+			Assert.fail("expected exception");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IOUtils.copyStream(in, out);
+		in.close();
+		return out.toByteArray();
+	}
+
+}
@@ -20,11 +20,16 @@
 package org.matsim.core.utils.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Stack;
 
 import org.junit.Assert;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
 import org.xml.sax.Attributes;
 
 /**
@@ -32,6 +37,9 @@ import org.xml.sax.Attributes;
  */
 public class MatsimXmlParserTest {
 
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
 	@Test
 	public void testParsingReservedEntities_AttributeValue() {
 		String str = "<?xml version='1.0' encoding='UTF-8'?>\n" +
@@ -92,6 +100,30 @@ public class MatsimXmlParserTest {
 		Assert.assertEquals("value2", parser.lastAttributes.getValue("someAttribute2"));
 	}
 	
+	/**
+	 * Tests that a DTD found in the local dtd directory is read through its URL, also if the path must be escaped.
+	 */
+	@Test
+	public void testLocalDtdIsUsed() throws IOException {
+		File dtdDirectory = new File(this.utils.getOutputDirectory() + "local dtds");
+		Assert.assertTrue(dtdDirectory.mkdirs());
+		try (Writer writer = IOUtils.getBufferedWriter(new File(dtdDirectory, "matsimXmlParserTest_v1.dtd").getPath())) {
+			writer.write("<!ELEMENT dummy (#PCDATA)>\n<!ATTLIST dummy someAttribute CDATA \"fromDtd\">\n");
+		}
+		String str = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+				"<!DOCTYPE dummy SYSTEM \"http://localhost:1/matsimXmlParserTest_v1.dtd\">\n" +
+				"<dummy>content</dummy>";
+
+		for (int i = 0; i < 2; i++) {
+			// the second time, the DTD comes from the cache
+			TestParser parser = new TestParser();
+			parser.setLocalDtdDirectory(dtdDirectory.getPath());
+			parser.parse(new ByteArrayInputStream(str.getBytes()));
+			Assert.assertEquals("content", parser.lastContent);
+			Assert.assertEquals("fromDtd", parser.lastAttributes.getValue("someAttribute"));
+		}
+	}
+
 	private static class TestParser extends MatsimXmlParser {
 
 		public String lastStartTag = null;
@@ -131,4 +163,43 @@ public class MatsimXmlParserTest {
 		Assert.assertEquals("value+value", parser.lastAttributes.getValue("someAttribute"));
 	}
 
+	@Test
+	public void testParsing_NestedContentAndReuse() {
+		String str = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+				"<root>before<dummy someAttribute=\"value\">content</dummy><empty/>after</root>";
+
+		TestParser parser = new TestParser();
+		parser.setValidating(false);
+		for (int i = 0; i < 2; i++) {
+			parser.parse(new ByteArrayInputStream(str.getBytes()));
+			Assert.assertEquals("root", parser.lastEndTag);
+			Assert.assertEquals("beforeafter", parser.lastContent);
+		}
+	}
+
+	@Test
+	public void testParsing_WhileParsing() {
+		String inner = "<?xml version='1.0' encoding='UTF-8'?>\n<inner>inner content</inner>";
+		String outer = "<?xml version='1.0' encoding='UTF-8'?>\n<outer><dummy>content</dummy></outer>";
+
+		TestParser innerParser = new TestParser();
+		innerParser.setValidating(false);
+		TestParser outerParser = new TestParser() {
+			@Override
+			public void endTag(String name, String content, Stack<String> context) {
+				super.endTag(name, content, context);
+				if (name.equals("dummy")) {
+					innerParser.parse(new ByteArrayInputStream(inner.getBytes()));
+				}
+			}
+		};
+		outerParser.setValidating(false);
+
+		outerParser.parse(new ByteArrayInputStream(outer.getBytes()));
+		Assert.assertEquals("outer", outerParser.lastEndTag);
+		Assert.assertEquals("", outerParser.lastContent);
+		Assert.assertEquals("inner", innerParser.lastEndTag);
+		Assert.assertEquals("inner content", innerParser.lastContent);
+	}
+
 }
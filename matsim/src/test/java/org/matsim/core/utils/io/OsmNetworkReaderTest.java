@@ -20,15 +20,22 @@
 package org.matsim.core.utils.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.DeflaterOutputStream;
 
 import org.junit.Assert;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.algorithms.NetworkCleaner;
 import org.matsim.core.scenario.ScenarioUtils;
@@ -306,4 +313,201 @@ public class OsmNetworkReaderTest {
 		Assert.assertNotNull("Could not find converted link 3", link3);
 		Assert.assertNull(net.getLinks().get(Id.create("5", Link.class)));
 	}
+
+	@Test
+	public void testConversion_pbf() throws IOException {
+		Scenario sc = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network net = sc.getNetwork();
+		CoordinateTransformation ct = new IdentityTransformation();
+
+		OsmNetworkReader reader = new OsmNetworkReader(net, ct);
+		reader.setKeepPaths(true);
+		reader.setHighwayDefaults(1, "motorway", 1, 50.0/3.6, 1.0, 2000.0);
+
+		// the same network as in testConversion_maxspeeds(), with the nodes and the ways in separate blocks
+		byte[] pbf = createPbf(createNodesBlock(), createWaysBlock());
+		reader.parse(new ByteArrayInputStream(pbf));
+
+		Assert.assertEquals(4, net.getNodes().size());
+		Assert.assertEquals(6, net.getLinks().size());
+		Node node3 = net.getNodes().get(Id.create("3", Node.class));
+		Assert.assertEquals(new Coord(120.0, 20.0), node3.getCoord());
+		Link link1 = net.getLinks().get(Id.create("1", Link.class));
+		Link link3 = net.getLinks().get(Id.create("3", Link.class));
+		Link link5 = net.getLinks().get(Id.create("5", Link.class));
+		Assert.assertEquals("1", link1.getFromNode().getId().toString());
+		Assert.assertEquals("2", link1.getToNode().getId().toString());
+		Assert.assertEquals(50.0/3.6, link1.getFreespeed(), 1e-8);
+		Assert.assertEquals(40.0/3.6, link3.getFreespeed(), 1e-8);
+		Assert.assertEquals(60.0/3.6, link5.getFreespeed(), 1e-8);
+	}
+
+	/**
+	 * Tests that blocks decoded in parallel are still handled in the order of the file.
+	 */
+	@Test
+	public void testPbfParser_parallel() throws IOException {
+		byte[][] blocks = new byte[20][];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = createNodesBlock(10 * i + 1, 10);
+		}
+		final StringBuilder ids = new StringBuilder();
+		OsmNetworkReader.OsmHandler handler = new OsmNetworkReader.OsmHandler() {
+			@Override
+			public void handleNode(long id, double lat, double lon) {
+				ids.append(id).append(',');
+			}
+			@Override
+			public void handleWay(OsmNetworkReader.OsmWay way) {
+				Assert.fail("no ways expected");
+			}
+		};
+		new OsmPbfParser(handler, true, true, Collections.<String>emptyList(), 4).parse(new ByteArrayInputStream(createPbf(blocks)));
+
+		StringBuilder expected = new StringBuilder();
+		for (int id = 1; id <= 200; id++) {
+			expected.append(id).append(',');
+		}
+		Assert.assertEquals(expected.toString(), ids.toString());
+	}
+
+	private static byte[] createNodesBlock() {
+		// in nanodegrees
+		long[] lats = {10000000000L, 15000000000L, 20000000000L, 25000000000L, 30000000000L};
+		long[] lons = {60000000000L, 90000000000L, 120000000000L, 90000000000L, 60000000000L};
+		ByteArrayOutputStream denseNodes = new ByteArrayOutputStream();
+		writeField(denseNodes, 1, packedDeltas(new long[] {1, 2, 3, 4, 5}));
+		// with the default granularity of 100 nanodegrees
+		writeField(denseNodes, 8, packedDeltas(divide(lats, 100)));
+		writeField(denseNodes, 9, packedDeltas(divide(lons, 100)));
+		ByteArrayOutputStream group = new ByteArrayOutputStream();
+		writeField(group, 2, denseNodes.toByteArray());
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		writeField(block, 1, new byte[0]);
+		writeField(block, 2, group.toByteArray());
+		return block.toByteArray();
+	}
+
+	private static byte[] createNodesBlock(long firstId, int count) {
+		long[] ids = new long[count];
+		long[] coords = new long[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = firstId + i;
+			coords[i] = 10 * i;
+		}
+		ByteArrayOutputStream denseNodes = new ByteArrayOutputStream();
+		writeField(denseNodes, 1, packedDeltas(ids));
+		writeField(denseNodes, 8, packedDeltas(coords));
+		writeField(denseNodes, 9, packedDeltas(coords));
+		ByteArrayOutputStream group = new ByteArrayOutputStream();
+		writeField(group, 2, denseNodes.toByteArray());
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		writeField(block, 1, new byte[0]);
+		writeField(block, 2, group.toByteArray());
+		writeVarintField(block, 17, 1000);
+		return block.toByteArray();
+	}
+
+	private static byte[] createWaysBlock() {
+		String[] strings = {"", "highway", "motorway", "maxspeed", "40", "60", "name", "A1"};
+		ByteArrayOutputStream stringTable = new ByteArrayOutputStream();
+		for (String string : strings) {
+			writeField(stringTable, 1, string.getBytes(StandardCharsets.UTF_8));
+		}
+		ByteArrayOutputStream group = new ByteArrayOutputStream();
+		writeField(group, 3, createWay(1, new long[] {1, 2}, new long[] {1, 6}, new long[] {2, 7}));
+		writeField(group, 3, createWay(2, new long[] {2, 3}, new long[] {1, 3}, new long[] {2, 4}));
+		writeField(group, 3, createWay(3, new long[] {3, 4}, new long[] {1, 3}, new long[] {2, 5}));
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		writeField(block, 1, stringTable.toByteArray());
+		writeField(block, 2, group.toByteArray());
+		return block.toByteArray();
+	}
+
+	private static byte[] createWay(long id, long[] refs, long[] keys, long[] values) {
+		ByteArrayOutputStream way = new ByteArrayOutputStream();
+		writeVarintField(way, 1, id);
+		writeField(way, 2, packed(keys));
+		writeField(way, 3, packed(values));
+		writeField(way, 8, packedDeltas(refs));
+		return way.toByteArray();
+	}
+
+	/**
+	 * Creates a PBF file with a header block and the given primitive blocks, all compressed with zlib.
+	 */
+	private static byte[] createPbf(byte[]... primitiveBlocks) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeField(header, 4, "OsmSchema-V0.6".getBytes(StandardCharsets.UTF_8));
+		writeField(header, 4, "DenseNodes".getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		writeBlob(file, "OSMHeader", header.toByteArray());
+		for (byte[] primitiveBlock : primitiveBlocks) {
+			writeBlob(file, "OSMData", primitiveBlock);
+		}
+		return file.toByteArray();
+	}
+
+	private static void writeBlob(ByteArrayOutputStream file, String type, byte[] data) throws IOException {
+		ByteArrayOutputStream zlibData = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(zlibData)) {
+			deflater.write(data);
+		}
+		ByteArrayOutputStream blob = new ByteArrayOutputStream();
+		writeVarintField(blob, 2, data.length);
+		writeField(blob, 3, zlibData.toByteArray());
+		ByteArrayOutputStream blobHeader = new ByteArrayOutputStream();
+		writeField(blobHeader, 1, type.getBytes(StandardCharsets.UTF_8));
+		writeVarintField(blobHeader, 3, blob.size());
+		int size = blobHeader.size();
+		file.write(new byte[] {(byte) (size >>> 24), (byte) (size >>> 16), (byte) (size >>> 8), (byte) size});
+		blobHeader.writeTo(file);
+		blob.writeTo(file);
+	}
+
+	private static long[] divide(long[] values, long divisor) {
+		long[] result = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[i] / divisor;
+		}
+		return result;
+	}
+
+	private static byte[] packed(long[] values) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (long value : values) {
+			writeVarint(out, value);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] packedDeltas(long[] values) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long previous = 0;
+		for (long value : values) {
+			long delta = value - previous;
+			writeVarint(out, (delta << 1) ^ (delta >> 63));
+			previous = value;
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeField(ByteArrayOutputStream out, int field, byte[] data) {
+		writeVarint(out, (field << 3) | 2);
+		writeVarint(out, data.length);
+		out.write(data, 0, data.length);
+	}
+
+	private static void writeVarintField(ByteArrayOutputStream out, int field, long value) {
+		writeVarint(out, field << 3);
+		writeVarint(out, value);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
 }
@@ -19,7 +19,9 @@
 
 package org.matsim.population.algorithms;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -36,12 +38,21 @@ import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.PersonPrepareForSim;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.EmptyStageActivityTypes;
+import org.matsim.core.router.PlanRouter;
+import org.matsim.core.router.RoutingModule;
+import org.matsim.core.router.StageActivityTypes;
+import org.matsim.core.router.TripRouter;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.Facility;
 
 /**
  * @author mrieser / senozon
@@ -152,6 +163,84 @@ public class PersonPrepareForSimTest {
 		Assert.assertEquals(l1.getId(), a2.getLinkId()); // must also be linked to l1, as l2 has no car mode
 	}
 
+	@Test
+	public void testRun_routesOnlyTripsWhichNeedIt() {
+		Scenario sc = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+
+		Network net = sc.getNetwork();
+		Link l1;
+		{
+			NetworkFactory nf = net.getFactory();
+			Node n1 = nf.createNode(Id.create("1", Node.class), new Coord((double) 0, (double) 0));
+			Node n2 = nf.createNode(Id.create("2", Node.class), new Coord((double) 1000, (double) 0));
+			net.addNode(n1);
+			net.addNode(n2);
+			l1 = nf.createLink(Id.create("1", Link.class), n1, n2);
+			net.addLink(l1);
+		}
+
+		Person person;
+		Activity a3;
+		Leg leg1;
+		{
+			PopulationFactory pf = sc.getPopulation().getFactory();
+			person = pf.createPerson(Id.create("1", Person.class));
+			Plan p = pf.createPlan();
+			Activity a1 = pf.createActivityFromLinkId("h", l1.getId());
+			a1.setEndTime(8 * 3600);
+			leg1 = pf.createLeg(TransportMode.walk);
+			leg1.setRoute(RouteUtils.createGenericRouteImpl(l1.getId(), l1.getId()));
+			Activity a2 = pf.createActivityFromLinkId("w", l1.getId());
+			a2.setEndTime(12 * 3600);
+			Leg leg2 = pf.createLeg(TransportMode.walk);
+			a3 = pf.createActivityFromCoord("s", new Coord((double) 500, (double) 10));
+			a3.setEndTime(13 * 3600);
+			Leg leg3 = pf.createLeg(TransportMode.walk);
+			leg3.setRoute(RouteUtils.createGenericRouteImpl(l1.getId(), l1.getId()));
+			Activity a4 = pf.createActivityFromLinkId("h", l1.getId());
+			p.addActivity(a1);
+			p.addLeg(leg1);
+			p.addActivity(a2);
+			p.addLeg(leg2);
+			p.addActivity(a3);
+			p.addLeg(leg3);
+			p.addActivity(a4);
+			person.addPlan(p);
+			sc.getPopulation().addPerson(person);
+		}
+
+		CountingRoutingModule routingModule = new CountingRoutingModule();
+		TripRouter tripRouter = new TripRouter();
+		tripRouter.setRoutingModule(TransportMode.walk, routingModule);
+		new PersonPrepareForSim(new PlanRouter(tripRouter), sc).run(person);
+
+		Assert.assertEquals(l1.getId(), a3.getLinkId());
+		Assert.assertEquals("only the trips to and from the linked activity should be routed.", 2, routingModule.calls);
+		Assert.assertSame(leg1, person.getSelectedPlan().getPlanElements().get(1));
+		for (PlanElement pe : person.getSelectedPlan().getPlanElements()) {
+			if (pe instanceof Leg) {
+				Assert.assertNotNull(((Leg) pe).getRoute());
+			}
+		}
+	}
+
+	private static class CountingRoutingModule implements RoutingModule {
+		int calls = 0;
+
+		@Override
+		public List<? extends PlanElement> calcRoute(Facility<?> fromFacility, Facility<?> toFacility, double departureTime, Person person) {
+			this.calls++;
+			Leg leg = PopulationUtils.createLeg(TransportMode.walk);
+			leg.setRoute(RouteUtils.createGenericRouteImpl(fromFacility.getLinkId(), toFacility.getLinkId()));
+			return Collections.singletonList(leg);
+		}
+
+		@Override
+		public StageActivityTypes getStageActivityTypes() {
+			return EmptyStageActivityTypes.INSTANCE;
+		}
+	}
+
 	private static class DummyRouter implements PlanAlgorithm {
 		@Override
 		public void run(final Plan plan) {
@@ -21,7 +21,11 @@
 package org.matsim.pt.transitSchedule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
@@ -170,6 +174,93 @@ public class TransitRouteTest extends MatsimTestCase {
 		}
 	}
 
+	public void testDeparturesOrder() {
+		TransitRouteImpl tRoute = (TransitRouteImpl) new Fixture().tRoute;
+		Departure dep1 = new DepartureImpl(Id.create("a", Departure.class), 9.0*3600);
+		Departure dep2 = new DepartureImpl(Id.create("b", Departure.class), 7.0*3600);
+		Departure dep3 = new DepartureImpl(Id.create("c", Departure.class), 8.0*3600);
+		tRoute.addDeparture(dep3);
+		tRoute.addDeparture(dep1);
+		tRoute.addDeparture(dep2);
+
+		// departures are ordered by id, like before in a tree map
+		List<Departure> departures = new ArrayList<>(tRoute.getDepartures().values());
+		assertEquals(3, departures.size());
+		assertSame(dep1, departures.get(0));
+		assertSame(dep2, departures.get(1));
+		assertSame(dep3, departures.get(2));
+		assertEquals(dep2.getId(), tRoute.getDepartures().keySet().toArray()[1]);
+
+		double[] times = tRoute.getSortedDepartureTimes();
+		assertEquals(7.0*3600, times[0], 0.0);
+		assertEquals(8.0*3600, times[1], 0.0);
+		assertEquals(9.0*3600, times[2], 0.0);
+
+		tRoute.removeDeparture(dep2);
+		assertEquals(2, tRoute.getSortedDepartureTimes().length);
+		assertEquals(8.0*3600, tRoute.getSortedDepartureTimes()[0], 0.0);
+	}
+
+	public void testAddDeparturesBulk() {
+		TransitRouteImpl tRoute = (TransitRouteImpl) new Fixture().tRoute;
+		Departure dep1 = new DepartureImpl(Id.create("1", Departure.class), 7.0*3600);
+		Departure dep2 = new DepartureImpl(Id.create("2", Departure.class), 8.0*3600);
+		Departure dep3 = new DepartureImpl(Id.create("3", Departure.class), 9.0*3600);
+		tRoute.addDeparture(dep2);
+		tRoute.addDepartures(Arrays.asList(dep3, dep1));
+		assertEquals(3, tRoute.getDepartures().size());
+		assertSame(dep1, tRoute.getDepartures().values().iterator().next());
+		assertSame(dep3, tRoute.getDepartures().get(dep3.getId()));
+
+		Departure dep1b = new DepartureImpl(Id.create("1", Departure.class), 10.0*3600);
+		Departure dep4 = new DepartureImpl(Id.create("4", Departure.class), 11.0*3600);
+		try {
+			tRoute.addDepartures(Arrays.asList(dep4, dep1b));
+			fail("missing exception");
+		} catch (IllegalArgumentException e) {
+			log.info("catched expected exception.", e);
+		}
+		assertEquals(3, tRoute.getDepartures().size());
+		assertSame(dep1, tRoute.getDepartures().get(dep1.getId()));
+		assertNull(tRoute.getDepartures().get(dep4.getId()));
+	}
+
+	public void testDeparturesIteratorFailFast() {
+		Fixture f = new Fixture();
+		Departure dep1 = new DepartureImpl(Id.create("1", Departure.class), 7.0*3600);
+		Departure dep2 = new DepartureImpl(Id.create("2", Departure.class), 8.0*3600);
+		Departure dep3 = new DepartureImpl(Id.create("3", Departure.class), 9.0*3600);
+		f.tRoute.addDeparture(dep1);
+		f.tRoute.addDeparture(dep2);
+
+		Iterator<Departure> values = f.tRoute.getDepartures().values().iterator();
+		assertSame(dep1, values.next());
+		f.tRoute.addDeparture(dep3);
+		try {
+			values.next();
+			fail("missing exception");
+		} catch (ConcurrentModificationException e) {
+			log.info("catched expected exception.", e);
+		}
+
+		Iterator<Map.Entry<Id<Departure>, Departure>> entries = f.tRoute.getDepartures().entrySet().iterator();
+		assertEquals(dep1.getId(), entries.next().getKey());
+		f.tRoute.removeDeparture(dep1);
+		try {
+			entries.next();
+			fail("missing exception");
+		} catch (ConcurrentModificationException e) {
+			log.info("catched expected exception.", e);
+		}
+
+		// removing an unknown departure does not change anything
+		Iterator<Id<Departure>> keys = f.tRoute.getDepartures().keySet().iterator();
+		assertFalse(f.tRoute.removeDeparture(dep1));
+		assertEquals(dep2.getId(), keys.next());
+		assertEquals(dep3.getId(), keys.next());
+		assertFalse(keys.hasNext());
+	}
+
 	public void testRoute() {
 		Fixture f = new Fixture();
 		Link link1 = new FakeLink(Id.create(1, Link.class), null, null);
@@ -0,0 +1,128 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ObjectAttributesBinaryIOTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.utils.objectattributes;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.utils.objectattributes.ObjectAttributesXmlIOTest.MyTuple;
+import org.matsim.utils.objectattributes.ObjectAttributesXmlIOTest.MyTupleConverter;
+
+public class ObjectAttributesBinaryIOTest {
+
+	@Rule public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testReadWrite() {
+		ObjectAttributes oa1 = createAttributes();
+		String filename = this.utils.getOutputDirectory() + "oa.bin";
+		ObjectAttributesBinaryWriter writer = new ObjectAttributesBinaryWriter(oa1);
+		writer.putAttributeConverter(MyTuple.class, new MyTupleConverter());
+		writer.writeFile(filename);
+
+		ObjectAttributes oa2 = new ObjectAttributes();
+		ObjectAttributesBinaryReader reader = new ObjectAttributesBinaryReader(oa2);
+		reader.putAttributeConverter(MyTuple.class, new MyTupleConverter());
+		reader.readFile(filename);
+		assertAttributes(oa2);
+	}
+
+	@Test
+	public void testXmlReaderRecognizesBinary() throws IOException {
+		ObjectAttributes oa1 = createAttributes();
+		String filename = this.utils.getOutputDirectory() + "oa.bin.gz";
+		ObjectAttributesBinaryWriter writer = new ObjectAttributesBinaryWriter(oa1);
+		writer.putAttributeConverter(MyTuple.class, new MyTupleConverter());
+		writer.writeFile(filename);
+
+		ObjectAttributes oa2 = new ObjectAttributes();
+		ObjectAttributesXmlReader reader = new ObjectAttributesXmlReader(oa2);
+		reader.putAttributeConverter(MyTuple.class, new MyTupleConverter());
+		reader.readFile(filename);
+		assertAttributes(oa2);
+
+		new ObjectAttributesBinaryWriter(oa1).writeFile(this.utils.getOutputDirectory() + "oa.bin");
+		ObjectAttributes oa3 = new ObjectAttributes();
+		try (InputStream in = new FileInputStream(this.utils.getOutputDirectory() + "oa.bin")) {
+			new ObjectAttributesXmlReader(oa3).parse(in);
+		}
+		Assert.assertEquals("A", oa3.getAttribute("one", "a"));
+		Assert.assertNull("no converter for the tuple", oa3.getAttribute("two", "tuple"));
+	}
+
+	@Test
+	public void testReadIntoExistingAttributes() {
+		String filename = this.utils.getOutputDirectory() + "oa.bin";
+		new ObjectAttributesBinaryWriter(createAttributes()).writeFile(filename);
+
+		ObjectAttributes oa = new ObjectAttributes();
+		oa.putAttribute("three", "b", "not an int");
+		oa.putAttribute("one", "x", 2.5);
+		new ObjectAttributesBinaryReader(oa).readFile(filename);
+
+		Assert.assertEquals(Integer.valueOf(1), oa.getAttribute("one", "b"));
+		Assert.assertEquals("not an int", oa.getAttribute("three", "b"));
+		Assert.assertEquals(Double.valueOf(2.5), oa.getAttribute("one", "x"));
+		Assert.assertEquals("A", oa.getAttribute("one", "a"));
+		Assert.assertEquals(Boolean.FALSE, oa.getAttribute("two", "d"));
+	}
+
+	private static ObjectAttributes createAttributes() {
+		ObjectAttributes oa = new ObjectAttributes();
+		oa.putAttribute("one", "a", "A");
+		oa.putAttribute("one", "b", Integer.valueOf(1));
+		oa.putAttribute("two", "a", "A");
+		oa.putAttribute("two", "c", Double.valueOf(1.5));
+		oa.putAttribute("two", "d", Boolean.FALSE);
+		oa.putAttribute("one", "d", Boolean.TRUE);
+		oa.putAttribute("two", "tuple", new MyTuple(3, 4));
+		oa.putAttribute("removed", "a", "gone");
+		oa.removeAllAttributes("removed");
+		// "e" changes from integer to generic column
+		oa.putAttribute("one", "e", Integer.valueOf(7));
+		oa.putAttribute("two", "e", "seven");
+		oa.putAttribute("three", "a", "B");
+		return oa;
+	}
+
+	private static void assertAttributes(ObjectAttributes oa) {
+		Assert.assertEquals("A", oa.getAttribute("one", "a"));
+		Assert.assertEquals("A", oa.getAttribute("two", "a"));
+		Assert.assertEquals("B", oa.getAttribute("three", "a"));
+		Assert.assertEquals(Integer.valueOf(1), oa.getAttribute("one", "b"));
+		Assert.assertNull(oa.getAttribute("two", "b"));
+		Assert.assertEquals(Double.valueOf(1.5), oa.getAttribute("two", "c"));
+		Assert.assertEquals(Boolean.TRUE, oa.getAttribute("one", "d"));
+		Assert.assertEquals(Boolean.FALSE, oa.getAttribute("two", "d"));
+		Assert.assertEquals(Integer.valueOf(7), oa.getAttribute("one", "e"));
+		Assert.assertEquals("seven", oa.getAttribute("two", "e"));
+		MyTuple t = (MyTuple) oa.getAttribute("two", "tuple");
+		Assert.assertEquals(3, t.a);
+		Assert.assertEquals(4, t.b);
+		Assert.assertNull(oa.getAttribute("removed", "a"));
+		Assert.assertEquals(3, oa.getObjectIds().size());
+	}
+}
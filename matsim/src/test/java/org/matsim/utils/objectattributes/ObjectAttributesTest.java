@@ -36,4 +36,56 @@ public class ObjectAttributesTest {
 		Assert.assertEquals("trunk", linkAttributes.putAttribute("1", "osm:roadtype", "motorway"));
 		Assert.assertEquals("motorway", linkAttributes.getAttribute("1", "osm:roadtype"));
 	}
+
+	@Test
+	public void testPutGet_changingType() {
+		ObjectAttributes attributes = new ObjectAttributes();
+		attributes.putAttribute("1", "lanes", 2);
+		attributes.putAttribute("2", "lanes", 3);
+		Assert.assertEquals(Integer.valueOf(3), attributes.putAttribute("2", "lanes", 2.5));
+		Assert.assertEquals(Integer.valueOf(2), attributes.getAttribute("1", "lanes"));
+		Assert.assertEquals(Double.valueOf(2.5), attributes.getAttribute("2", "lanes"));
+	}
+
+	@Test
+	public void testRemove() {
+		ObjectAttributes attributes = new ObjectAttributes();
+		attributes.putAttribute("1", "osm:roadtype", "trunk");
+		attributes.putAttribute("1", "lanes", 2);
+		attributes.putAttribute("2", "osm:roadtype", "trunk");
+		Assert.assertEquals(Integer.valueOf(2), attributes.removeAttribute("1", "lanes"));
+		Assert.assertNull(attributes.getAttribute("1", "lanes"));
+		attributes.removeAllAttributes("1");
+		Assert.assertNull(attributes.getAttribute("1", "osm:roadtype"));
+		Assert.assertEquals("trunk", attributes.getAttribute("2", "osm:roadtype"));
+		Assert.assertNull(attributes.putAttribute("1", "osm:roadtype", "primary"));
+		Assert.assertEquals("primary", attributes.getAttribute("1", "osm:roadtype"));
+	}
+
+	@Test
+	public void testRemovedRowsAreReused() {
+		ObjectAttributes attributes = new ObjectAttributes();
+		attributes.putAttribute("1", "lanes", 2);
+		attributes.putAttribute("2", "lanes", 3);
+		attributes.removeAllAttributes("1");
+		Assert.assertFalse(attributes.hasObject("1"));
+		attributes.putAttribute("3", "osm:roadtype", "trunk");
+		Assert.assertEquals(2, attributes.getRowCount());
+		Assert.assertNull(attributes.getAttribute("3", "lanes"));
+		Assert.assertEquals("trunk", attributes.getAttribute("3", "osm:roadtype"));
+		Assert.assertEquals(Integer.valueOf(3), attributes.getAttribute("2", "lanes"));
+		Assert.assertEquals(2, attributes.getObjectIds().size());
+	}
+
+	@Test
+	public void testPutNull() {
+		ObjectAttributes attributes = new ObjectAttributes();
+		Assert.assertNull(attributes.putAttribute("1", "lanes", null));
+		Assert.assertFalse(attributes.hasObject("1"));
+		Assert.assertEquals(0, attributes.getRowCount());
+		attributes.putAttribute("1", "lanes", 2);
+		Assert.assertEquals(Integer.valueOf(2), attributes.putAttribute("1", "lanes", null));
+		Assert.assertNull(attributes.getAttribute("1", "lanes"));
+	}
+
 }
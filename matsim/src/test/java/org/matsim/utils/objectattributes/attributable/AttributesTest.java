@@ -80,4 +80,32 @@ public class AttributesTest {
 		Assert.assertNull( "unexpected mapping " ,
 				attributes.getAttribute( "rain is nice" ) );
 	}
+
+	@Test
+	public void testSharedKeys() {
+		final Attributes first = new Attributes();
+		final Attributes second = new Attributes();
+
+		first.putAttribute( "sun" , "nice" );
+		first.putAttribute( "rain is nice" , false );
+		second.putAttribute( "sun" , "too hot" );
+		second.putAttribute( "rain is nice" , true );
+
+		// both use the same keys now, changing one must not change the other
+		second.removeAttribute( "sun" );
+		first.putAttribute( "the answer" , 42 );
+
+		Assert.assertEquals( "unexpected number of elements in "+first ,
+				3 , first.size() );
+		Assert.assertEquals( "unexpected number of elements in "+second ,
+				1 , second.size() );
+		Assert.assertEquals( "unexpected value " ,
+				"nice" ,
+				first.getAttribute( "sun" ) );
+		Assert.assertNull( "unexpected mapping " ,
+				second.getAttribute( "sun" ) );
+		Assert.assertEquals( "unexpected value " ,
+				true ,
+				second.getAttribute( "rain is nice" ) );
+	}
 }
@@ -0,0 +1,252 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SnapshotWriterManagerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.vis.snapshotwriters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.mobsim.qsim.QSimUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo.AgentState;
+
+public class SnapshotWriterManagerTest {
+
+	@Test
+	public void testSnapshotsAreWrittenInOrderOnAnotherThread() {
+		Scenario scenario = createScenario();
+		RecordingSnapshotWriter writer = runQSim(scenario);
+
+		Assert.assertFalse(writer.times.isEmpty());
+		for (int i = 1; i < writer.times.size(); i++) {
+			Assert.assertEquals(writer.times.get(i - 1) + 10., writer.times.get(i), 1e-10);
+		}
+		Assert.assertEquals(writer.times.size(), writer.ends);
+		Assert.assertTrue(writer.finished);
+		Assert.assertFalse(writer.threads.isEmpty());
+		Assert.assertFalse(writer.threads.contains(Thread.currentThread()));
+		Assert.assertTrue("there should be agents on the first link", writer.minEasting < 990.);
+		Assert.assertTrue("there should be agents on the last link", writer.maxEasting > 2000.);
+	}
+
+	@Test
+	public void testBoundingBox() {
+		Scenario scenario = createScenario();
+		scenario.getConfig().qsim().addParam("snapshotBoundingBox", "1500,-100,2500,100");
+		Assert.assertArrayEquals(new double[] {1500., -100., 2500., 100.},
+				scenario.getConfig().qsim().getSnapshotBoundingBox(), 1e-10);
+		RecordingSnapshotWriter writer = runQSim(scenario);
+
+		Assert.assertFalse(writer.times.isEmpty());
+		Assert.assertTrue("there should be no agents on the first link", writer.minEasting > 990.);
+		Assert.assertTrue("there should be agents on the last link", writer.maxEasting > 2000.);
+	}
+
+	@Test
+	public void testWritersShareThePositions() {
+		Scenario scenario = createScenario();
+		RecordingSnapshotWriter writer1 = new RecordingSnapshotWriter();
+		RecordingSnapshotWriter writer2 = new RecordingSnapshotWriter();
+		runQSim(scenario, writer1, writer2);
+
+		Assert.assertFalse(writer1.positions.isEmpty());
+		Assert.assertEquals(writer1.positions.size(), writer2.positions.size());
+		for (int i = 0; i < writer1.positions.size(); i++) {
+			Assert.assertSame(writer1.positions.get(i), writer2.positions.get(i));
+		}
+	}
+
+	@Test
+	public void testBufferCreatesThePositionsOfTheFactory() {
+		AgentSnapshotInfoFactory factory = new AgentSnapshotInfoFactory(new SnapshotLinkWidthCalculator());
+		Coord start = new Coord(100, 200);
+		Coord end = new Coord(400, 600);
+		Id<Person> id = Id.create("1", Person.class);
+		SnapshotPositionBuffer buffer = new SnapshotPositionBuffer();
+		factory.addAgentSnapshotInfo(buffer, id, start, end, 120., 2, 600., 0.5, AgentState.PERSON_DRIVING_CAR);
+		buffer.add(factory.createAgentSnapshotInfo(id, 10., 20., 0., 90.));
+
+		Assert.assertEquals(2, buffer.size());
+		AgentSnapshotInfo expected = factory.createAgentSnapshotInfo(id, start, end, 120., 2, 600.);
+		AgentSnapshotInfo info = buffer.get(0);
+		Assert.assertEquals(id, info.getId());
+		Assert.assertEquals(expected.getEasting(), info.getEasting(), 1e-10);
+		Assert.assertEquals(expected.getNorthing(), info.getNorthing(), 1e-10);
+		Assert.assertEquals(expected.getAzimuth(), info.getAzimuth(), 1e-10);
+		Assert.assertEquals(0.5, info.getColorValueBetweenZeroAndOne(), 1e-10);
+		Assert.assertEquals(AgentState.PERSON_DRIVING_CAR, info.getAgentState());
+		info = buffer.get(1);
+		Assert.assertEquals(10., info.getEasting(), 1e-10);
+		Assert.assertEquals(20., info.getNorthing(), 1e-10);
+		Assert.assertEquals(90., info.getAzimuth(), 1e-10);
+		Assert.assertNull(info.getAgentState());
+
+		buffer.clear();
+		Assert.assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void testWriterThreadStopsWhenMobsimAborts() {
+		Scenario scenario = createScenario();
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		QSim qsim = QSimUtils.createDefaultQSim(scenario, EventsUtils.createEventsManager());
+		// fails before the manager is cleaned up
+		qsim.addQueueSimulationListeners(new MobsimBeforeCleanupListener() {
+			@Override
+			public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+				throw new IllegalStateException("cleanup failed");
+			}
+		});
+		SnapshotWriterManager manager = new SnapshotWriterManager(scenario.getConfig());
+		RecordingSnapshotWriter writer = new RecordingSnapshotWriter();
+		manager.addSnapshotWriter(writer);
+		qsim.addQueueSimulationListeners(manager);
+		qsim.addQueueSimulationListeners(new MobsimAfterSimStepListener() {
+			@Override
+			public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+				if (e.getSimulationTime() >= 6 * 3600. + 100.) {
+					throw new IllegalStateException("mobsim aborted");
+				}
+			}
+		});
+		try {
+			qsim.run();
+			Assert.fail("the mobsim should abort");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("cleanup failed", e.getMessage());
+		}
+
+		Assert.assertFalse(writer.times.isEmpty());
+		Assert.assertTrue(writer.finished);
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			Assert.assertNotEquals("SnapshotWriterManager", thread.getName());
+		}
+	}
+
+	private static RecordingSnapshotWriter runQSim(Scenario scenario) {
+		RecordingSnapshotWriter writer = new RecordingSnapshotWriter();
+		runQSim(scenario, writer);
+		return writer;
+	}
+
+	private static void runQSim(Scenario scenario, SnapshotWriter... writers) {
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		QSim qsim = QSimUtils.createDefaultQSim(scenario, EventsUtils.createEventsManager());
+		SnapshotWriterManager manager = new SnapshotWriterManager(scenario.getConfig());
+		for (SnapshotWriter writer : writers) {
+			manager.addSnapshotWriter(writer);
+		}
+		qsim.addQueueSimulationListeners(manager);
+		qsim.run();
+	}
+
+	private static Scenario createScenario() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		scenario.getConfig().qsim().setSnapshotPeriod(10.);
+
+		Network network = scenario.getNetwork();
+		Node node1 = NetworkUtils.createAndAddNode(network, Id.create("1", Node.class), new Coord(0, 0));
+		Node node2 = NetworkUtils.createAndAddNode(network, Id.create("2", Node.class), new Coord(1000, 0));
+		Node node3 = NetworkUtils.createAndAddNode(network, Id.create("3", Node.class), new Coord(2000, 0));
+		Node node4 = NetworkUtils.createAndAddNode(network, Id.create("4", Node.class), new Coord(3000, 0));
+		Link link1 = NetworkUtils.createAndAddLink(network, Id.create("1", Link.class), node1, node2, 1000, 10, 1800, 1);
+		Link link2 = NetworkUtils.createAndAddLink(network, Id.create("2", Link.class), node2, node3, 1000, 10, 1800, 1);
+		Link link3 = NetworkUtils.createAndAddLink(network, Id.create("3", Link.class), node3, node4, 1000, 10, 1800, 1);
+
+		Population population = scenario.getPopulation();
+		for (int i = 0; i < 100; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity home = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", link1.getId());
+			home.setEndTime(6 * 3600. + 5 * i);
+			Leg leg = PopulationUtils.createAndAddLeg(plan, TransportMode.car);
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(link1.getId(), link3.getId());
+			route.setLinkIds(link1.getId(), Arrays.asList(link2.getId()), link3.getId());
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", link3.getId());
+			population.addPerson(person);
+		}
+		return scenario;
+	}
+
+	private static final class RecordingSnapshotWriter implements SnapshotWriter {
+		final List<Double> times = new ArrayList<>();
+		final List<Thread> threads = new ArrayList<>();
+		final List<AgentSnapshotInfo> positions = new ArrayList<>();
+		int ends = 0;
+		boolean finished = false;
+		double minEasting = Double.POSITIVE_INFINITY;
+		double maxEasting = Double.NEGATIVE_INFINITY;
+
+		@Override
+		public void beginSnapshot(double time) {
+			this.times.add(time);
+			if (!this.threads.contains(Thread.currentThread())) {
+				this.threads.add(Thread.currentThread());
+			}
+		}
+
+		@Override
+		public void endSnapshot() {
+			this.ends++;
+		}
+
+		@Override
+		public void addAgent(AgentSnapshotInfo position) {
+			this.positions.add(position);
+			this.minEasting = Math.min(this.minEasting, position.getEasting());
+			this.maxEasting = Math.max(this.maxEasting, position.getEasting());
+		}
+
+		@Override
+		public void finish() {
+			this.finished = true;
+		}
+	}
+
+}
@@ -38,11 +38,18 @@ import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
 import org.matsim.testcases.MatsimTestCase;
 import org.matsim.withinday.controller.WithinDayModule;
 import org.matsim.withinday.events.ReplanningEvent;
+import org.matsim.withinday.mobsim.MobsimDataProvider;
 import org.matsim.withinday.mobsim.WithinDayEngine;
+import org.matsim.withinday.replanning.identifiers.ActivityPerformingIdentifierFactory;
+import org.matsim.withinday.replanning.identifiers.filter.ActivityTypeFilterFactory;
+import org.matsim.withinday.replanning.identifiers.interfaces.DuringActivityAgentSelector;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class ActivityReplanningMapTest extends MatsimTestCase {
 
@@ -122,6 +129,10 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 		private final ActivityReplanningMap arp;
 		private final WithinDayEngine withinDayEngine;
 		private final Map<Id<Person>, MobsimAgent> agents;
+		private final DuringActivityAgentSelector homeIdentifier;
+		private final Id<Person> agentId = Id.create("40", Person.class);
+		private final Set<String> home = Collections.singleton("h");
+		private final Set<String> work = Collections.singleton("w");
 		private static final int t1 = 5*3600 + 58*60 + 30;
 		private static final int t2 = 5*3600 + 59*60;
 		private static final int t3 = 5*3600 + 59*60 + 30;
@@ -130,16 +141,21 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 		private static final int t6 = 6*3600 + 120;
 		
 		@Inject
-		MobsimListenerForTests(final ActivityReplanningMap arp, WithinDayEngine withinDayEngine) {
+		MobsimListenerForTests(final ActivityReplanningMap arp, WithinDayEngine withinDayEngine, MobsimDataProvider mobsimDataProvider) {
 			this.arp = arp;
 			this.withinDayEngine = withinDayEngine;
 			this.agents = new LinkedHashMap<>();
+			ActivityPerformingIdentifierFactory identifierFactory = new ActivityPerformingIdentifierFactory(arp, mobsimDataProvider);
+			identifierFactory.addAgentFilterFactory(new ActivityTypeFilterFactory(this.home, mobsimDataProvider));
+			this.homeIdentifier = identifierFactory.createIdentifier();
 		}
 
 		@Override
 		public void notifyMobsimInitialized(final MobsimInitializedEvent e) {
 			assertEquals(100, this.arp.getActivityPerformingAgents().size());	// all agents perform an activity
 			assertEquals(0, this.arp.getActivityEndingAgents(0.0).size());		// no agent ends an activity
+			assertEquals(100, this.arp.getActivityPerformingAgents(this.home).size());	// all agents are at home
+			assertEquals(0, this.arp.getActivityPerformingAgents(this.work).size());
 			
 			QSim sim = (QSim) e.getQueueSimulation();
 			for (MobsimAgent agent : sim.getAgents().values()) this.agents.put(agent.getId(), agent);
@@ -150,6 +166,8 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t1) {
 				assertEquals(100, this.arp.getActivityPerformingAgents().size());	// all agents perform an activity before the time step
 				assertEquals(1, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());	// one agent ends an activity
+				assertEquals(100, this.arp.getActivityPerformingAgents(this.home).size());	// all agents are at home
+				assertEquals(100, this.homeIdentifier.getAgentsToReplan(e.getSimulationTime()).size());
 			}
 
 			if (e.getSimulationTime() == t2) {
@@ -165,6 +183,7 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t4) {
 				assertEquals(97, this.arp.getActivityPerformingAgents().size());	// 97 agents perform an activity before the time step
 				assertEquals(97, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());	// 97 agents end an activity
+				assertEquals(97, this.arp.getActivityPerformingAgents(this.home).size());
 								
 				// now reschedule the activity end time of an agent
 				MobsimAgent agent = this.agents.get(Id.create("40", Person.class));
@@ -179,16 +198,26 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 				WithinDayAgentUtils.resetCaches(agent);
 				this.withinDayEngine.getActivityRescheduler().rescheduleActivityEnd(agent);
 				((QSim) e.getQueueSimulation()).getEventsManager().processEvent(new ReplanningEvent(e.getSimulationTime(), agent.getId(), "ActivityRescheduler"));
+				
+				// the agent ends its activity two time steps later but is still at home
+				assertEquals(96, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());
+				assertFalse(this.arp.getActivityEndingAgents(e.getSimulationTime()).contains(agent));
+				assertEquals(0, this.arp.getActivityEndingAgents(t5).size());
+				assertEquals(Collections.singletonList(agent), new ArrayList<>(this.arp.getActivityEndingAgents(t6)));
+				assertEquals(97, this.arp.getActivityPerformingAgents(this.home).size());
 			}
 			
 			if (e.getSimulationTime() == t5) {
 				assertEquals(1, this.arp.getActivityPerformingAgents().size());	// one agent performs an activity before the time step
 				assertEquals(0, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());	// no agent ends an activity
+				assertEquals(Collections.singleton(this.agentId), this.arp.getActivityPerformingAgents(this.home));
+				assertEquals(Collections.singleton(this.agents.get(this.agentId)), this.homeIdentifier.getAgentsToReplan(e.getSimulationTime()));
 			}
 			
 			if (e.getSimulationTime() == t6) {
 				assertEquals(1, this.arp.getActivityPerformingAgents().size());	// one agent performs an activity before the time step
 				assertEquals(1, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());	// one agent ends an activity
+				assertEquals(Collections.singleton(this.agentId), this.arp.getActivityPerformingAgents(this.home));
 			}
 
 		}
@@ -198,6 +227,7 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t1) {
 				assertEquals(99, this.arp.getActivityPerformingAgents().size());	// 99 agents perform an activity after the time step
 				assertEquals(0, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());		// no agent ends an activity
+				assertEquals(99, this.arp.getActivityPerformingAgents(this.home).size());	// the agent has left home
 			}
 
 			if (e.getSimulationTime() == t2) {
@@ -213,6 +243,8 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t4) {
 				assertEquals(1, this.arp.getActivityPerformingAgents().size());	// one agents perform an activity after the time step
 				assertEquals(0, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());		// no agent ends an activity
+				assertEquals(Collections.singleton(this.agentId), this.arp.getActivityPerformingAgents(this.home));	// only the rescheduled agent is at home
+				assertEquals(0, this.arp.getActivityPerformingAgents(this.work).size());
 			}
 			
 			if (e.getSimulationTime() == t5) {
@@ -223,6 +255,8 @@ public class ActivityReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t6) {
 				assertEquals(0, this.arp.getActivityPerformingAgents().size());	// no agents perform an activity after the time step
 				assertEquals(0, this.arp.getActivityEndingAgents(e.getSimulationTime()).size());		// no agent ends an activity
+				assertEquals(0, this.arp.getActivityPerformingAgents(this.home).size());
+				assertEquals(0, this.homeIdentifier.getAgentsToReplan(e.getSimulationTime()).size());
 			}
 		}
 	}
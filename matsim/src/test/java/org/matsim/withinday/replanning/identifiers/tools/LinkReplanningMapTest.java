@@ -20,6 +20,9 @@
 
 package org.matsim.withinday.replanning.identifiers.tools;
 
+import java.util.Collections;
+
+import org.matsim.api.core.v01.Id;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.controler.AbstractModule;
@@ -144,6 +147,7 @@ public class LinkReplanningMapTest extends MatsimTestCase {
 			if (e.getSimulationTime() == t4) {
 				assertEquals(100, this.lrp.getLegPerformingAgents().size());	// all agents  perform a Leg
 				assertEquals(97, this.lrp.getReplanningAgents(e.getSimulationTime()).size());	// 97 agents have just departed but cannot do a replanning
+				assertEquals(97, this.lrp.getLegPerformingAgents(Collections.singleton(Id.createLinkId("1"))).size());	// 97 agents are still on their departure link
 			}
 			if (e.getSimulationTime() == t4 + linkTravelTime) {
 				assertEquals(97, this.lrp.getReplanningAgents(e.getSimulationTime()).size());	// 97 agents could leave the second link in its route and should be identified as to be replanned
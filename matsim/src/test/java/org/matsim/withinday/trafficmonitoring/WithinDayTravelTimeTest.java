@@ -25,10 +25,14 @@ import java.util.Random;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.QSimConfigGroup;
@@ -40,6 +44,7 @@ import org.matsim.core.controler.listener.StartupListener;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.core.gbl.MatsimRandom;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
 import org.matsim.core.mobsim.framework.listeners.*;
@@ -68,6 +73,163 @@ public class WithinDayTravelTimeTest extends MatsimTestCase {
 	private static Link link22;
 	private static double originalFreeSpeed22;
 	
+	@Test
+	public void testTripRingBufferWrapsAround() {
+		WithinDayTravelTime.UpdateMeanTravelTimesRunnable runnable = new WithinDayTravelTime.UpdateMeanTravelTimesRunnable();
+		WithinDayTravelTime.TravelTimeInfo info = createTravelTimeInfo(runnable, 10.0); // keeps trips for 25 seconds
+
+		info.addTrip(10.0, 10.0);
+		info.addTrip(20.0, 20.0);
+		info.addTrip(30.0, 30.0);
+		info.addTrip(40.0, 40.0);
+		info.checkActiveState();
+		runnable.setTime(50.0);
+		runnable.updateTravelTimes();
+		assertEquals(2, info.tripCount);
+		assertEquals(35.0, info.travelTime, MatsimTestUtils.EPSILON);
+
+		// the next trips are stored at the beginning of the arrays, then the buffer is full and grows
+		info.addTrip(60.0, 60.0);
+		info.addTrip(70.0, 70.0);
+		assertEquals(4, info.tripLeaveTimes.length);
+		info.addTrip(80.0, 80.0);
+		assertEquals(5, info.tripCount);
+		assertEquals(8, info.tripLeaveTimes.length);
+		runnable.setTime(90.0);
+		runnable.updateTravelTimes();
+		assertEquals(2, info.tripCount);
+		assertEquals(75.0, info.travelTime, MatsimTestUtils.EPSILON);
+
+		// without trips, the free speed travel time is used again
+		runnable.setTime(200.0);
+		runnable.updateTravelTimes();
+		assertEquals(0, info.tripCount);
+		assertEquals(10.0, info.travelTime, MatsimTestUtils.EPSILON);
+		assertFalse(info.isActive);
+	}
+
+	@Test
+	public void testInactiveLinksAreRemoved() {
+		WithinDayTravelTime.UpdateMeanTravelTimesRunnable runnable = new WithinDayTravelTime.UpdateMeanTravelTimesRunnable();
+		WithinDayTravelTime.TravelTimeInfo first = createTravelTimeInfo(runnable, 10.0);
+		WithinDayTravelTime.TravelTimeInfo middle = createTravelTimeInfo(runnable, 10.0);
+		WithinDayTravelTime.TravelTimeInfo last = createTravelTimeInfo(runnable, 10.0);
+		first.addTrip(100.0, 15.0);
+		first.checkActiveState();
+		middle.addTrip(10.0, 20.0);
+		middle.checkActiveState();
+		last.addTrip(100.0, 30.0);
+		last.checkActiveState();
+		assertEquals(3, runnable.getActiveLinksCount());
+
+		// only the trip of the link in the middle is too old, the last link takes its place
+		runnable.setTime(100.0);
+		runnable.updateTravelTimes();
+		assertEquals(2, runnable.getActiveLinksCount());
+		assertTrue(first.isActive);
+		assertFalse(middle.isActive);
+		assertTrue(last.isActive);
+		assertEquals(15.0, first.travelTime, MatsimTestUtils.EPSILON);
+		assertEquals(10.0, middle.travelTime, MatsimTestUtils.EPSILON);
+		assertEquals(30.0, last.travelTime, MatsimTestUtils.EPSILON);
+
+		// the moved link must still be updated
+		runnable.setTime(200.0);
+		runnable.updateTravelTimes();
+		assertEquals(0, runnable.getActiveLinksCount());
+		assertFalse(last.isActive);
+		assertEquals(10.0, last.travelTime, MatsimTestUtils.EPSILON);
+
+		// and links can become active again
+		middle.addTrip(210.0, 12.0);
+		middle.checkActiveState();
+		runnable.setTime(210.0);
+		runnable.updateTravelTimes();
+		assertEquals(1, runnable.getActiveLinksCount());
+		assertEquals(12.0, middle.travelTime, MatsimTestUtils.EPSILON);
+	}
+
+	@Test
+	public void testManyVehicles() {
+		Scenario scenario = createOneLinkScenario();
+		Link link = scenario.getNetwork().getLinks().get(Id.createLinkId("1"));
+		WithinDayTravelTime travelTime = new WithinDayTravelTime(scenario, null);
+		travelTime.notifyMobsimInitialized(new MobsimInitializedEvent<>(null));
+		try {
+			// more vehicles than the initial capacity of the vehicle index
+			int nofVehicles = 3000;
+			for (int i = 0; i < nofVehicles; i++) {
+				travelTime.handleEvent(new LinkEnterEvent(i < 1500 ? 0.0 : 50.0, Id.createVehicleId(i), link.getId()));
+			}
+			for (int i = 0; i < nofVehicles; i++) {
+				travelTime.handleEvent(new LinkLeaveEvent(100.0, Id.createVehicleId(i), link.getId()));
+			}
+			travelTime.notifyMobsimBeforeSimStep(new MobsimBeforeSimStepEvent<>(null, 101.0));
+			assertEquals(75.0, travelTime.getLinkTravelTime(link, 101.0, null, null), MatsimTestUtils.EPSILON);
+
+			// links which are not part of the network are ignored
+			travelTime.handleEvent(new LinkEnterEvent(100.0, Id.createVehicleId(0), Id.createLinkId("unknown")));
+			travelTime.handleEvent(new LinkLeaveEvent(110.0, Id.createVehicleId(0), Id.createLinkId("unknown")));
+		} finally {
+			travelTime.notifyMobsimBeforeCleanup(new MobsimBeforeCleanupEvent<>(null));
+		}
+	}
+
+	@Test
+	public void testNetworkChangeEventsAreAppliedInOrder() {
+		Scenario scenario = createOneLinkScenario();
+		Link link = scenario.getNetwork().getLinks().get(Id.createLinkId("1"));
+		WithinDayTravelTime travelTime = new WithinDayTravelTime(scenario, null);
+
+		// added out of order; of two changes at the same time, the one added last wins
+		travelTime.addNetworkChangeEvent(createFreespeedChange(link, 200.0, 5.0));
+		travelTime.addNetworkChangeEvent(createFreespeedChange(link, 100.0, 2.0));
+		travelTime.addNetworkChangeEvent(createFreespeedChange(link, 100.0, 4.0));
+
+		travelTime.notifyMobsimInitialized(new MobsimInitializedEvent<>(null));
+		try {
+			travelTime.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 99.0));
+			travelTime.notifyMobsimBeforeSimStep(new MobsimBeforeSimStepEvent<>(null, 100.0));
+			assertEquals(10.0, travelTime.getLinkTravelTime(link, 100.0, null, null), MatsimTestUtils.EPSILON);
+
+			travelTime.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 100.0));
+			travelTime.notifyMobsimBeforeSimStep(new MobsimBeforeSimStepEvent<>(null, 101.0));
+			assertEquals(25.0, travelTime.getLinkTravelTime(link, 101.0, null, null), MatsimTestUtils.EPSILON);
+
+			travelTime.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 200.0));
+			travelTime.notifyMobsimBeforeSimStep(new MobsimBeforeSimStepEvent<>(null, 201.0));
+			assertEquals(20.0, travelTime.getLinkTravelTime(link, 201.0, null, null), MatsimTestUtils.EPSILON);
+		} finally {
+			travelTime.notifyMobsimBeforeCleanup(new MobsimBeforeCleanupEvent<>(null));
+		}
+	}
+
+	private static WithinDayTravelTime.TravelTimeInfo createTravelTimeInfo(WithinDayTravelTime.UpdateMeanTravelTimesRunnable runnable, double freeSpeedTravelTime) {
+		WithinDayTravelTime.TravelTimeInfo info = new WithinDayTravelTime.TravelTimeInfo();
+		info.runnable = runnable;
+		info.travelTime = freeSpeedTravelTime;
+		info.init(freeSpeedTravelTime);
+		return info;
+	}
+
+	private static Scenario createOneLinkScenario() {
+		Config config = ConfigUtils.createConfig();
+		config.global().setNumberOfThreads(1);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Network network = scenario.getNetwork();
+		Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("1"), new Coord(0, 0));
+		Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("2"), new Coord(100, 0));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("1"), node1, node2, 100.0, 10.0, 3600.0, 1.0);
+		return scenario;
+	}
+
+	private static NetworkChangeEvent createFreespeedChange(Link link, double time, double freespeed) {
+		NetworkChangeEvent event = new NetworkChangeEvent(time);
+		event.addLink(link);
+		event.setFreespeedChange(new ChangeValue(ChangeType.ABSOLUTE_IN_SI_UNITS, freespeed));
+		return event;
+	}
+
 	@Test
 	@Parameters({"false", "true"})
 	public void testGetLinkTravelTime(boolean isUsingFastCapacityUpdate) {